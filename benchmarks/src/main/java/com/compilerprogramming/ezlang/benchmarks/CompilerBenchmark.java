@@ -0,0 +1,42 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The full optvm pipeline - parse, semantic analysis, IR generation
+ * and optimization - for each set of options.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+
+    @Param({"mergesort", "sieve", "matmul", "linkedlist"})
+    public String program;
+
+    @Param({"NONE", "OPT", "OPT_B", "OPT_ISSA", "OPT_ISSA_B"})
+    public String preset;
+
+    String src;
+    EnumSet<Options> options;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        src = Corpus.source(program, Corpus.size(program, 1));
+        options = Corpus.options(preset);
+    }
+
+    @Benchmark
+    public TypeDictionary compile() {
+        return new Compiler().compileSrc(src, options);
+    }
+}
@@ -0,0 +1,86 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.Options;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+
+/**
+ * The benchmark programs. Each program in the corpus defines a function
+ * {@code run(n: Int)->Int}, we append a {@code main()} function that
+ * calls it with the requested input size.
+ */
+public class Corpus {
+
+    public static final String MAIN = "main";
+
+    public static String load(String program) {
+        try (InputStream in = Corpus.class.getResourceAsStream("/corpus/" + program + ".ez")) {
+            if (in == null)
+                throw new IllegalArgumentException("Unknown program: " + program);
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public static String source(String program, int size) {
+        return load(program) + "\nfunc " + MAIN + "()->Int\n{\n    return run(" + size + ")\n}\n";
+    }
+
+    /**
+     * A generated program with the given number of functions, each with a
+     * loop and a branch, and each calling the previous one. Used to measure
+     * module level compile time.
+     */
+    public static String generated(int functions) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            sb.append("func f").append(i).append("(n: Int)->Int\n{\n");
+            sb.append("    var i = 0\n");
+            sb.append("    var sum = ").append(i).append("\n");
+            sb.append("    while (i < n) {\n");
+            sb.append("        if (i % 3 == 0) sum = sum + i * 2\n");
+            sb.append("        else sum = sum - 1\n");
+            sb.append("        i = i + 1\n");
+            sb.append("    }\n");
+            if (i > 0)
+                sb.append("    return sum + f").append(i - 1).append("(n - 1)\n");
+            else
+                sb.append("    return sum\n");
+            sb.append("}\n");
+        }
+        sb.append("func ").append(MAIN).append("()->Int\n{\n    return f").append(functions - 1).append("(10)\n}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Input size of a program for the given scale factor, chosen so that
+     * at scale 1 all programs take roughly the same time to run.
+     */
+    public static int size(String program, int scale) {
+        return switch (program) {
+            case "mergesort" -> 1000 * scale;
+            case "sieve" -> 10000 * scale;
+            case "matmul" -> 16 * scale;
+            case "linkedlist" -> 2000 * scale;
+            case "bintree" -> 50 * scale;
+            case "calls" -> 2000 * scale;
+            default -> throw new IllegalArgumentException("Unknown program: " + program);
+        };
+    }
+
+    public static EnumSet<Options> options(String preset) {
+        return switch (preset) {
+            case "NONE" -> Options.NONE;
+            case "OPT" -> Options.OPT;
+            case "OPT_B" -> Options.OPT_B;
+            case "OPT_ISSA" -> Options.OPT_ISSA;
+            case "OPT_ISSA_B" -> Options.OPT_ISSA_B;
+            default -> throw new IllegalArgumentException("Unknown preset: " + preset);
+        };
+    }
+}
@@ -0,0 +1,54 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.interpreter.ExecutionService;
+import com.compilerprogramming.ezlang.interpreter.Value;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test of the {@link ExecutionService}: runs a corpus program many
+ * times concurrently, in batches, and prints the throughput and latency
+ * histogram. Runs offline, without JMH:
+ *
+ * <pre>
+ * java -cp target/benchmarks.jar com.compilerprogramming.ezlang.benchmarks.ExecutionServiceLoadTest \
+ *     [program] [invocations] [batch] [preset]
+ * </pre>
+ *
+ * The defaults are linkedlist, 100000 invocations in batches of 1000,
+ * compiled with OPT. Each invocation calls the program's {@code run}
+ * function with the program's size at scale 1. A first run of the same
+ * number of invocations warms up the JIT and is not reported.
+ */
+public class ExecutionServiceLoadTest {
+
+    public static void main(String[] args) {
+        String program = args.length > 0 ? args[0] : "linkedlist";
+        int invocations = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int batch = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        String preset = args.length > 3 ? args[3] : "OPT";
+
+        String src = Corpus.load(program);
+        Value[] runArgs = { Value.IntegerValue.valueOf(Corpus.size(program, 1)) };
+        System.out.printf("%s, %d invocations in batches of %d, %s, %d processors%n",
+                program, invocations, batch, preset, Runtime.getRuntime().availableProcessors());
+        try (var warmup = ExecutionService.compile(src, Corpus.options(preset))) {
+            run(warmup, runArgs, invocations, batch);
+        }
+        try (var service = ExecutionService.compile(src, Corpus.options(preset))) {
+            run(service, runArgs, invocations, batch);
+            System.out.print(service.stats());
+        }
+    }
+
+    static void run(ExecutionService service, Value[] runArgs, int invocations, int batch) {
+        List<Value[]> argLists = new ArrayList<>(batch);
+        for (int i = 0; i < batch; i++)
+            argLists.add(runArgs);
+        for (int done = 0; done < invocations; done += batch) {
+            List<Value[]> work = invocations - done < batch ? argLists.subList(0, invocations - done) : argLists;
+            service.invokeAll("run", work);
+        }
+    }
+}
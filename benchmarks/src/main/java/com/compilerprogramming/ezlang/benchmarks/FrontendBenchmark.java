@@ -0,0 +1,65 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.lexer.Lexer;
+import com.compilerprogramming.ezlang.lexer.Token;
+import com.compilerprogramming.ezlang.parser.AST;
+import com.compilerprogramming.ezlang.parser.Parser;
+import com.compilerprogramming.ezlang.semantic.SemaAssignTypes;
+import com.compilerprogramming.ezlang.semantic.SemaDefineTypes;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the lexer, parser and semantic analysis
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontendBenchmark {
+
+    @Param({"mergesort", "sieve", "matmul", "linkedlist"})
+    public String program;
+
+    String src;
+    // Semantic analysis annotates the AST, so it needs a fresh one each time
+    AST.Program ast;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        src = Corpus.source(program, Corpus.size(program, 1));
+    }
+
+    @Setup(Level.Invocation)
+    public void parseForSema() {
+        ast = new Parser().parse(new Lexer(src));
+    }
+
+    @Benchmark
+    public void lex(Blackhole bh) {
+        Lexer lexer = new Lexer(src);
+        Token token;
+        do {
+            token = lexer.scan();
+            bh.consume(token);
+        } while (token.kind != Token.Kind.EOZ);
+    }
+
+    @Benchmark
+    public AST.Program parse() {
+        return new Parser().parse(new Lexer(src));
+    }
+
+    @Benchmark
+    public TypeDictionary sema() {
+        var typeDict = new TypeDictionary();
+        new SemaDefineTypes(typeDict).analyze(ast);
+        new SemaAssignTypes(typeDict).analyze(ast);
+        return typeDict;
+    }
+}
@@ -0,0 +1,67 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of the call heavy corpus program compiled by the seaofnodes
+ * compiler, with and without inlining. The programs are run on the seaofnodes
+ * evaluator of the scheduled graph, so the difference is in the calls and the
+ * blocks executed, not in the machine code.
+ * The seaofnodes compiler is loaded via {@link IsolatedVM}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InliningBenchmark {
+
+    @Param({"false", "true"})
+    public boolean inlining;
+
+    @Param({"calls"})
+    public String program;
+
+    @Param({"1", "4"})
+    public int scale;
+
+    Object eval;
+    MethodHandle call;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        ClassLoader loader = IsolatedVM.loader("seaofnodes");
+        Class<?> codeGenClass = loader.loadClass("com.compilerprogramming.ezlang.compiler.codegen.CodeGen");
+        Class<?> phaseClass = loader.loadClass("com.compilerprogramming.ezlang.compiler.codegen.CodeGen$Phase");
+        Class<?> profileClass = loader.loadClass("com.compilerprogramming.ezlang.compiler.codegen.Profile");
+        Class<?> evalClass = loader.loadClass("com.compilerprogramming.ezlang.compiler.Eval");
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        String src = Corpus.source(program, Corpus.size(program, scale));
+        Object code = codeGenClass.getConstructor(String.class).newInstance(src);
+        code = lookup.findVirtual(codeGenClass, "inlining", MethodType.methodType(codeGenClass, boolean.class))
+                .invoke(code, inlining);
+        Object localSched = phaseClass.getField("LocalSched").get(null);
+        lookup.findVirtual(codeGenClass, "driver", MethodType.methodType(codeGenClass, phaseClass))
+                .invoke(code, localSched);
+        eval = evalClass.getConstructor(codeGenClass, profileClass, long.class).newInstance(code, null, Long.MAX_VALUE);
+        call = lookup.findVirtual(evalClass, "call", MethodType.methodType(Object.class, String.class, Object[].class))
+                .asType(MethodType.methodType(Object.class, Object.class, String.class, Object[].class));
+    }
+
+    @Benchmark
+    public Object run() {
+        try {
+            return call.invokeExact(eval, Corpus.MAIN, new Object[0]);
+        }
+        catch (Throwable e) {
+            throw IsolatedVM.rethrow(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.InterferenceGraph;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The operations of the register allocator on large random interference
+ * graphs, for optvm's InterferenceGraph and for the map based graph it
+ * replaced, see {@link MapInterferenceGraph}.
+ *
+ * <ul>
+ *     <li>build - adds all edges to an empty graph</li>
+ *     <li>interfere - tests every pair of nodes</li>
+ *     <li>dup - copies the graph</li>
+ *     <li>simplify - copies the graph then removes the nodes one by one,
+ *     reading the degree of each node before it is removed</li>
+ *     <li>coalesce - copies the graph then renames non interfering pairs
+ *     of nodes into each other</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterferenceGraphBenchmark {
+
+    @Param({"1000", "4000"})
+    public int nodes;
+
+    // Average number of neighbours of a node
+    @Param({"32"})
+    public int degree;
+
+    @Param({"bitset", "map"})
+    public String impl;
+
+    int[] from;
+    int[] to;
+    int[] renames;
+    InterferenceGraph bitsetGraph;
+    MapInterferenceGraph mapGraph;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        int numEdges = nodes * degree / 2;
+        from = new int[numEdges];
+        to = new int[numEdges];
+        for (int i = 0; i < numEdges; i++) {
+            from[i] = random.nextInt(nodes);
+            to[i] = random.nextInt(nodes);
+        }
+        // Pairs of nodes to rename, one for every 8 nodes
+        renames = new int[nodes / 8 * 2];
+        for (int i = 0; i < renames.length; i++)
+            renames[i] = random.nextInt(nodes);
+        bitsetGraph = new InterferenceGraph(nodes);
+        mapGraph = new MapInterferenceGraph();
+        for (int i = 0; i < numEdges; i++) {
+            bitsetGraph.addEdge(from[i], to[i]);
+            mapGraph.addEdge(from[i], to[i]);
+        }
+    }
+
+    @Benchmark
+    public Object build() {
+        if (impl.equals("bitset")) {
+            InterferenceGraph g = new InterferenceGraph(nodes);
+            for (int i = 0; i < from.length; i++)
+                g.addEdge(from[i], to[i]);
+            return g;
+        }
+        MapInterferenceGraph g = new MapInterferenceGraph();
+        for (int i = 0; i < from.length; i++)
+            g.addEdge(from[i], to[i]);
+        return g;
+    }
+
+    @Benchmark
+    public int interfere() {
+        int count = 0;
+        if (impl.equals("bitset")) {
+            for (int i = 0; i < nodes; i++)
+                for (int j = 0; j < nodes; j++)
+                    if (bitsetGraph.interfere(i, j)) count++;
+        }
+        else {
+            for (int i = 0; i < nodes; i++)
+                for (int j = 0; j < nodes; j++)
+                    if (mapGraph.interfere(i, j)) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Object dup() {
+        return impl.equals("bitset") ? bitsetGraph.dup() : mapGraph.dup();
+    }
+
+    @Benchmark
+    public int simplify() {
+        int sum = 0;
+        if (impl.equals("bitset")) {
+            InterferenceGraph g = bitsetGraph.dup();
+            for (int n = 0; n < nodes; n++) {
+                sum += g.degree(n);
+                g.subtract(n);
+            }
+        }
+        else {
+            MapInterferenceGraph g = mapGraph.dup();
+            for (int n = 0; n < nodes; n++) {
+                sum += g.neighbors(n).size();
+                g.subtract(n);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public Object coalesce() {
+        if (impl.equals("bitset")) {
+            InterferenceGraph g = bitsetGraph.dup();
+            for (int i = 0; i < renames.length; i += 2)
+                if (renames[i] != renames[i+1] && !g.interfere(renames[i], renames[i+1]))
+                    g.rename(renames[i], renames[i+1]);
+            return g;
+        }
+        MapInterferenceGraph g = mapGraph.dup();
+        for (int i = 0; i < renames.length; i += 2)
+            if (renames[i] != renames[i+1] && !g.interfere(renames[i], renames[i+1]))
+                g.rename(renames[i], renames[i+1]);
+        return g;
+    }
+}
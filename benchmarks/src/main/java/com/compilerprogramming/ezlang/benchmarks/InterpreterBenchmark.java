@@ -0,0 +1,44 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of the corpus on the optvm interpreter, for each set of
+ * options. The input size is the program's base size times the scale.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({"mergesort", "sieve", "matmul", "linkedlist", "bintree"})
+    public String program;
+
+    @Param({"NONE", "OPT", "OPT_B", "OPT_ISSA", "OPT_ISSA_B"})
+    public String preset;
+
+    @Param({"1", "4"})
+    public int scale;
+
+    Interpreter interpreter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String src = Corpus.source(program, Corpus.size(program, scale));
+        var typeDict = new Compiler().compileSrc(src, Corpus.options(preset));
+        interpreter = new Interpreter(typeDict);
+    }
+
+    @Benchmark
+    public Value run() {
+        return interpreter.run(Corpus.MAIN);
+    }
+}
@@ -0,0 +1,133 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The stackvm, registervm, optvm and seaofnodes modules all define their compiler
+ * and interpreter in the same packages, so only one of them can be on the classpath.
+ * The benchmarks use optvm directly, the other VMs are loaded from their jars
+ * in a class loader of their own. The jars are copied to {@code target/vms}
+ * when the benchmarks module is packaged, the location can be changed with
+ * the {@code ezlang.vms} system property.
+ */
+public class IsolatedVM {
+
+    private static final String[] VM_PACKAGES = {
+            "com.compilerprogramming.ezlang.compiler.",
+            "com.compilerprogramming.ezlang.interpreter."
+    };
+
+    private final Object compiler;
+    private final MethodHandle compileSrc;
+    private final MethodHandle newInterpreter;
+    private final MethodHandle run;
+
+    public IsolatedVM(String name) {
+        try {
+            ClassLoader loader = loader(name);
+            Class<?> compilerClass = loader.loadClass("com.compilerprogramming.ezlang.compiler.Compiler");
+            Class<?> interpreterClass = loader.loadClass("com.compilerprogramming.ezlang.interpreter.Interpreter");
+            Class<?> valueClass = loader.loadClass("com.compilerprogramming.ezlang.interpreter.Value");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            this.compiler = compilerClass.getConstructor().newInstance();
+            this.compileSrc = lookup.findVirtual(compilerClass, "compileSrc", MethodType.methodType(TypeDictionary.class, String.class));
+            this.newInterpreter = lookup.findConstructor(interpreterClass, MethodType.methodType(void.class, TypeDictionary.class))
+                    .asType(MethodType.methodType(Object.class, TypeDictionary.class));
+            this.run = lookup.findVirtual(interpreterClass, "run", MethodType.methodType(valueClass, String.class))
+                    .asType(MethodType.methodType(Object.class, Object.class, String.class));
+        }
+        catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to load VM " + name, e);
+        }
+    }
+
+    /**
+     * A class loader for the VM's jar
+     */
+    static ClassLoader loader(String name) {
+        Path jar = Path.of(System.getProperty("ezlang.vms", "target/vms"), name + ".jar");
+        if (!Files.exists(jar))
+            throw new IllegalStateException("VM jar not found: " + jar.toAbsolutePath() + ", run mvn package first");
+        try {
+            return new VMClassLoader(new URL[] { jar.toUri().toURL() }, IsolatedVM.class.getClassLoader());
+        }
+        catch (MalformedURLException e) {
+            throw new IllegalStateException("Failed to load VM " + name, e);
+        }
+    }
+
+    public TypeDictionary compileSrc(String src) {
+        try {
+            return (TypeDictionary) compileSrc.invoke(compiler, src);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    public Object interpreter(TypeDictionary typeDictionary) {
+        try {
+            return newInterpreter.invokeExact(typeDictionary);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Runs the function and returns the VM's Value
+     */
+    public Object run(Object interpreter, String functionName) {
+        try {
+            return run.invokeExact(interpreter, functionName);
+        }
+        catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException re)
+            return re;
+        if (e instanceof Error error)
+            throw error;
+        return new RuntimeException(e);
+    }
+
+    /**
+     * Loads the VM's own packages from its jar before delegating to the parent,
+     * so that they are not resolved to the optvm classes on the classpath.
+     * The shared modules - types, parser, semantic - come from the parent.
+     */
+    static class VMClassLoader extends URLClassLoader {
+        VMClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            for (String prefix: VM_PACKAGES) {
+                if (name.startsWith(prefix)) {
+                    synchronized (getClassLoadingLock(name)) {
+                        Class<?> c = findLoadedClass(name);
+                        if (c == null)
+                            c = findClass(name);
+                        if (resolve)
+                            resolveClass(c);
+                        return c;
+                    }
+                }
+            }
+            return super.loadClass(name, resolve);
+        }
+    }
+}
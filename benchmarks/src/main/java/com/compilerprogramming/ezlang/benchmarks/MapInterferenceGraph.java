@@ -0,0 +1,82 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import java.util.*;
+
+/**
+ * The interference graph as optvm implemented it before it moved to a bit
+ * matrix: a map from node to its set of neighbours. Kept as the baseline
+ * for {@link InterferenceGraphBenchmark}. Unlike the original, subtract
+ * removes the node from the sets of its neighbours, as the bit matrix
+ * version does.
+ */
+class MapInterferenceGraph {
+    private Map<Integer, Set<Integer>> edges = new HashMap<>();
+
+    private Set<Integer> addNode(Integer node) {
+        var set = edges.get(node);
+        if (set == null) {
+            set = new HashSet<>();
+            edges.put(node, set);
+        }
+        return set;
+    }
+
+    public void addEdge(Integer from, Integer to) {
+        if (from.equals(to)) {
+            return;
+        }
+        var set1 = addNode(from);
+        var set2 = addNode(to);
+        set1.add(to);
+        set2.add(from);
+    }
+
+    public MapInterferenceGraph subtract(Integer node) {
+        edges.remove(node);
+        for (var key : edges.keySet()) {
+            var neighbours = edges.get(key);
+            neighbours.remove(node);
+        }
+        return this;
+    }
+
+    public MapInterferenceGraph dup() {
+        var igraph = new MapInterferenceGraph();
+        igraph.edges = new HashMap<>();
+        for (var key : edges.keySet()) {
+            var neighbours = edges.get(key);
+            igraph.edges.put(key, new HashSet<>(neighbours));
+        }
+        return igraph;
+    }
+
+    public boolean interfere(Integer from, Integer to) {
+        var set = edges.get(from);
+        return set != null && set.contains(to);
+    }
+
+    public void rename(Integer source, Integer target) {
+        var fromSet = edges.remove(source);
+        if (fromSet == null)
+            return;
+        var toSet = edges.get(target);
+        if (toSet == null)
+            return;
+        toSet.addAll(fromSet);
+        for (var k: edges.keySet()) {
+            var set = edges.get(k);
+            if (set.contains(source)) {
+                set.remove(source);
+                if (!k.equals(target))
+                    set.add(target);
+            }
+        }
+    }
+
+    public Set<Integer> neighbors(Integer node) {
+        var adjacents = edges.get(node);
+        if (adjacents == null)
+            adjacents = Collections.emptySet();
+        return adjacents;
+    }
+}
@@ -0,0 +1,68 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.Optimizer;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.lexer.Lexer;
+import com.compilerprogramming.ezlang.parser.Parser;
+import com.compilerprogramming.ezlang.semantic.SemaAssignTypes;
+import com.compilerprogramming.ezlang.semantic.SemaDefineTypes;
+import com.compilerprogramming.ezlang.types.Symbol;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optimizer.optimize() alone, on freshly generated IR, for each set of options
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OptimizerBenchmark {
+
+    @Param({"mergesort", "sieve", "matmul", "linkedlist"})
+    public String program;
+
+    @Param({"OPT", "OPT_B", "OPT_ISSA", "OPT_ISSA_B"})
+    public String preset;
+
+    EnumSet<Options> options;
+    TypeDictionary typeDict;
+    List<CompiledFunction> functions;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        options = Corpus.options(preset);
+        String src = Corpus.source(program, Corpus.size(program, 1));
+        typeDict = new TypeDictionary();
+        var ast = new Parser().parse(new Lexer(src));
+        new SemaDefineTypes(typeDict).analyze(ast);
+        new SemaAssignTypes(typeDict).analyze(ast);
+    }
+
+    // The optimizer transforms the IR in place, so each invocation needs new IR
+    @Setup(Level.Invocation)
+    public void generateIR() {
+        functions = new ArrayList<>();
+        for (Symbol symbol: typeDict.getLocalSymbols()) {
+            if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol)
+                functions.add(new CompiledFunction(functionSymbol, typeDict, options));
+        }
+    }
+
+    @Benchmark
+    public void optimize(Blackhole bh) {
+        for (CompiledFunction function: functions) {
+            new Optimizer().optimize(function, options);
+            bh.consume(function);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.ModuleOptimizer;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.lexer.Lexer;
+import com.compilerprogramming.ezlang.parser.Parser;
+import com.compilerprogramming.ezlang.semantic.SemaAssignTypes;
+import com.compilerprogramming.ezlang.semantic.SemaDefineTypes;
+import com.compilerprogramming.ezlang.types.Symbol;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ModuleOptimizer on generated programs with many functions, for each
+ * level of parallelism. The report of the last invocation, with the time
+ * saved per phase, is printed at the end of each trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelOptimizerBenchmark {
+
+    @Param({"64", "512"})
+    public int functions;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    @Param({"OPT"})
+    public String preset;
+
+    EnumSet<Options> options;
+    TypeDictionary typeDict;
+    List<CompiledFunction> compiledFunctions;
+    ModuleOptimizer.Report report;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        options = Corpus.options(preset);
+        String src = Corpus.generated(functions);
+        typeDict = new TypeDictionary();
+        var ast = new Parser().parse(new Lexer(src));
+        new SemaDefineTypes(typeDict).analyze(ast);
+        new SemaAssignTypes(typeDict).analyze(ast);
+    }
+
+    // The optimizer transforms the IR in place, so each invocation needs new IR
+    @Setup(Level.Invocation)
+    public void generateIR() {
+        compiledFunctions = new ArrayList<>();
+        for (Symbol symbol: typeDict.getLocalSymbols()) {
+            if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol)
+                compiledFunctions.add(new CompiledFunction(functionSymbol, typeDict, options));
+        }
+    }
+
+    @Benchmark
+    public ModuleOptimizer.Report optimize() {
+        report = new ModuleOptimizer(parallelism).optimize(compiledFunctions, options);
+        return report;
+    }
+
+    @TearDown(Level.Trial)
+    public void printReport() {
+        System.out.println();
+        System.out.print(report);
+    }
+}
@@ -0,0 +1,43 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of the corpus on the stackvm and registervm interpreters,
+ * for comparison with {@link InterpreterBenchmark}.
+ * The VMs are loaded via {@link IsolatedVM}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VMBenchmark {
+
+    @Param({"stackvm", "registervm"})
+    public String vm;
+
+    @Param({"mergesort", "sieve", "matmul", "linkedlist", "bintree"})
+    public String program;
+
+    @Param({"1", "4"})
+    public int scale;
+
+    IsolatedVM isolatedVM;
+    Object interpreter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        isolatedVM = new IsolatedVM(vm);
+        String src = Corpus.source(program, Corpus.size(program, scale));
+        interpreter = isolatedVM.interpreter(isolatedVM.compileSrc(src));
+    }
+
+    @Benchmark
+    public Object run() {
+        return isolatedVM.run(interpreter, Corpus.MAIN);
+    }
+}
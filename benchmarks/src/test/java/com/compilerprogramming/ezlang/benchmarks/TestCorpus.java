@@ -0,0 +1,66 @@
+package com.compilerprogramming.ezlang.benchmarks;
+
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCorpus {
+
+    static final String[] PRESETS = {"NONE", "OPT", "OPT_B", "OPT_ISSA", "OPT_ISSA_B"};
+
+    long compileAndRun(String program, int size, String preset) {
+        var typeDict = new Compiler().compileSrc(Corpus.source(program, size), Corpus.options(preset));
+        var value = new Interpreter(typeDict).run(Corpus.MAIN);
+        Assert.assertTrue(value instanceof Value.IntegerValue);
+        return ((Value.IntegerValue) value).value;
+    }
+
+    void check(String program, int size, long expected) {
+        for (String preset: PRESETS)
+            Assert.assertEquals(program + " " + preset, expected, compileAndRun(program, size, preset));
+    }
+
+    @Test
+    public void testMergeSort() {
+        check("mergesort", 100, 100);
+    }
+
+    @Test
+    public void testSieve() {
+        check("sieve", 100, 25);
+    }
+
+    @Test
+    public void testMatMul() {
+        int n = 5;
+        long sum = 0;
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j < n; j++)
+                for (int k = 0; k < n; k++)
+                    sum += ((i*n+k) % 7) * ((k*n+j) % 5);
+        check("matmul", n, sum);
+    }
+
+    @Test
+    public void testLinkedList() {
+        check("linkedlist", 50, 50*49);
+    }
+
+    @Test
+    public void testBinaryTree() {
+        check("bintree", 10, 10*127);
+    }
+
+    @Test
+    public void testCalls() {
+        int n = 100;
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            long x = i % 7, y = i % 5 + 1;
+            sum += Math.min(x*x + y*y, 40);
+        }
+        check("calls", n, sum);
+    }
+}
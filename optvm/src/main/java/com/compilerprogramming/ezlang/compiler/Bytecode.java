@@ -0,0 +1,236 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.types.EZType;
+
+/**
+ * Flat pre-decoded form of a function, produced by the {@link BytecodeGenerator}
+ * from the final IR and executed by the interpreter.
+ *
+ * The code is a dense int array. Each instruction starts with one of the
+ * {@code Instruction.I_*} opcodes, followed by its operands:
+ *
+ * <pre>
+ * I_MOVE        dst src
+ * I_RET         src
+ * I_UNARY       op dst src
+ * I_BINARY      op dst left right
+ * I_BR          target
+ * I_CBR         cond trueTarget falseTarget
+ * I_CALL        typeIndex retSlot nargs arg...
+ * I_NEW_ARRAY   typeIndex dst len init
+ * I_NEW_STRUCT  typeIndex dst
+ * I_ARRAY_STORE array index src
+ * I_ARRAY_LOAD  dst array index
+ * I_FIELD_GET   dst struct fieldIndex
+ * I_FIELD_SET   struct fieldIndex src
+ * I_SPILL       spillSlot src
+ * I_RELOAD      dst spillSlot
+ * I_NULL_CHECK  src
+ * I_BOUNDS_CHECK array index isStore
+ * I_EXIT
+ * </pre>
+ *
+ * Destinations are frame slots. Source operands are encoded as follows:
+ * a value &gt;= 0 is a frame slot, {@link #NULL} is the null constant,
+ * {@link #NONE} is an absent operand, and any other negative value
+ * {@code v} refers to the integer constant {@code constants[-1-v]}.
+ * Branch targets are absolute indices into the code array. Spill slots
+ * index the function's part of the spill area, which is separate from
+ * the frame.
+ */
+public class Bytecode {
+
+    public static final int NONE = Integer.MIN_VALUE;
+    public static final int NULL = Integer.MIN_VALUE + 1;
+
+    // Binary operators
+    public static final int BIN_ADD = 0;
+    public static final int BIN_SUB = 1;
+    public static final int BIN_MUL = 2;
+    public static final int BIN_DIV = 3;
+    public static final int BIN_MOD = 4;
+    public static final int BIN_EQ = 5;
+    public static final int BIN_NE = 6;
+    public static final int BIN_LT = 7;
+    public static final int BIN_GT = 8;
+    public static final int BIN_LE = 9;
+    public static final int BIN_GE = 10;
+    // Comparisons against the null literal, only the left operand is used
+    public static final int BIN_EQ_NULL = 11;
+    public static final int BIN_NE_NULL = 12;
+
+    // Unary operators
+    public static final int UN_NEG = 0;
+    public static final int UN_NOT = 1;
+
+    public final int[] code;
+    public final long[] constants;
+    /**
+     * Array, struct and function types referenced by the code
+     */
+    public final EZType[] types;
+    public final int frameSize;
+    public final int spillSize;
+
+    public Bytecode(int[] code, long[] constants, EZType[] types, int frameSize) {
+        this(code, constants, types, frameSize, 0);
+    }
+
+    public Bytecode(int[] code, long[] constants, EZType[] types, int frameSize, int spillSize) {
+        this.code = code;
+        this.constants = constants;
+        this.types = types;
+        this.frameSize = frameSize;
+        this.spillSize = spillSize;
+    }
+
+    /**
+     * Whether the call at pc is a tail call, i.e. it is followed by a
+     * return of its result, and then by the exit or a branch to the exit.
+     */
+    public boolean isTailCall(int pc) {
+        assert code[pc] == Instruction.I_CALL;
+        int retSlot = code[pc+2];
+        int next = pc + 4 + code[pc+3];
+        if (retSlot == NONE || code[next] != Instruction.I_RET || code[next+1] != retSlot)
+            return false;
+        next += 2;
+        if (code[next] == Instruction.I_BR)
+            next = code[next+1];
+        return code[next] == Instruction.I_EXIT;
+    }
+
+    public static boolean isSlot(int operand) {
+        return operand >= 0;
+    }
+
+    public static int constantIndex(int operand) {
+        return -1 - operand;
+    }
+
+    public static int constantOperand(int index) {
+        return -1 - index;
+    }
+
+    private static final String[] BINOPS = {"+", "-", "*", "/", "%", "==", "!=", "<", ">", "<=", ">=", "== null", "!= null"};
+    private static final String[] UNOPS = {"-", "!"};
+
+    private StringBuilder operand(StringBuilder sb, int operand) {
+        if (operand >= 0)
+            return sb.append('%').append(operand);
+        else if (operand == NULL)
+            return sb.append("null");
+        else if (operand == NONE)
+            return sb.append('_');
+        return sb.append(constants[constantIndex(operand)]);
+    }
+
+    public StringBuilder toStr(StringBuilder sb) {
+        int pc = 0;
+        while (pc < code.length) {
+            sb.append(pc).append(": ");
+            switch (code[pc]) {
+                case Instruction.I_MOVE -> {
+                    sb.append("move %").append(code[pc+1]).append(", ");
+                    operand(sb, code[pc+2]);
+                    pc += 3;
+                }
+                case Instruction.I_RET -> {
+                    sb.append("ret ");
+                    operand(sb, code[pc+1]);
+                    pc += 2;
+                }
+                case Instruction.I_UNARY -> {
+                    sb.append("unary ").append(UNOPS[code[pc+1]]).append(" %").append(code[pc+2]).append(", ");
+                    operand(sb, code[pc+3]);
+                    pc += 4;
+                }
+                case Instruction.I_BINARY -> {
+                    sb.append("binary ").append(BINOPS[code[pc+1]]).append(" %").append(code[pc+2]).append(", ");
+                    operand(sb, code[pc+3]);
+                    if (code[pc+4] != NONE) {
+                        sb.append(", ");
+                        operand(sb, code[pc+4]);
+                    }
+                    pc += 5;
+                }
+                case Instruction.I_BR -> {
+                    sb.append("br ").append(code[pc+1]);
+                    pc += 2;
+                }
+                case Instruction.I_CBR -> {
+                    sb.append("cbr ");
+                    operand(sb, code[pc+1]).append(", ").append(code[pc+2]).append(", ").append(code[pc+3]);
+                    pc += 4;
+                }
+                case Instruction.I_CALL -> {
+                    sb.append("call ").append(types[code[pc+1]].name());
+                    if (code[pc+2] != NONE)
+                        sb.append(" -> %").append(code[pc+2]);
+                    int nargs = code[pc+3];
+                    for (int i = 0; i < nargs; i++) {
+                        sb.append(i == 0 ? " " : ", ");
+                        operand(sb, code[pc+4+i]);
+                    }
+                    pc += 4 + nargs;
+                }
+                case Instruction.I_NEW_ARRAY -> {
+                    sb.append("new_array ").append(types[code[pc+1]].name()).append(" %").append(code[pc+2]).append(", ");
+                    operand(sb, code[pc+3]).append(", ");
+                    operand(sb, code[pc+4]);
+                    pc += 5;
+                }
+                case Instruction.I_NEW_STRUCT -> {
+                    sb.append("new_struct ").append(types[code[pc+1]].name()).append(" %").append(code[pc+2]);
+                    pc += 3;
+                }
+                case Instruction.I_ARRAY_STORE -> {
+                    sb.append("array_store %").append(code[pc+1]).append(", ");
+                    operand(sb, code[pc+2]).append(", ");
+                    operand(sb, code[pc+3]);
+                    pc += 4;
+                }
+                case Instruction.I_ARRAY_LOAD -> {
+                    sb.append("array_load %").append(code[pc+1]).append(", %").append(code[pc+2]).append(", ");
+                    operand(sb, code[pc+3]);
+                    pc += 4;
+                }
+                case Instruction.I_FIELD_GET -> {
+                    sb.append("field_get %").append(code[pc+1]).append(", %").append(code[pc+2]).append(", ").append(code[pc+3]);
+                    pc += 4;
+                }
+                case Instruction.I_FIELD_SET -> {
+                    sb.append("field_set %").append(code[pc+1]).append(", ").append(code[pc+2]).append(", ");
+                    operand(sb, code[pc+3]);
+                    pc += 4;
+                }
+                case Instruction.I_SPILL -> {
+                    sb.append("spill ").append(code[pc+1]).append(", %").append(code[pc+2]);
+                    pc += 3;
+                }
+                case Instruction.I_RELOAD -> {
+                    sb.append("reload %").append(code[pc+1]).append(", ").append(code[pc+2]);
+                    pc += 3;
+                }
+                case Instruction.I_NULL_CHECK -> {
+                    sb.append("null_check %").append(code[pc+1]);
+                    pc += 2;
+                }
+                case Instruction.I_BOUNDS_CHECK -> {
+                    sb.append("bounds_check %").append(code[pc+1]).append(", ");
+                    operand(sb, code[pc+2]);
+                    if (code[pc+3] != 0)
+                        sb.append(", store");
+                    pc += 4;
+                }
+                case Instruction.I_EXIT -> {
+                    sb.append("exit");
+                    pc += 1;
+                }
+                default -> throw new IllegalStateException("Unexpected opcode " + code[pc] + " at " + pc);
+            }
+            sb.append("\n");
+        }
+        return sb;
+    }
+}
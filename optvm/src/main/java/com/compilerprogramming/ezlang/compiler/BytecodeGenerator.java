@@ -0,0 +1,233 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.types.EZType;
+
+import java.util.*;
+
+/**
+ * Lowers the final (non SSA) IR of a function into the flat {@link Bytecode}
+ * format. Blocks are laid out in reverse post order with the exit block last,
+ * operands are resolved to frame slots or constant pool entries, and branch
+ * targets are resolved to absolute code offsets. Jumps to the block that
+ * immediately follows in the layout are elided.
+ */
+public class BytecodeGenerator {
+
+    private int[] code = new int[64];
+    private int pc = 0;
+    private final List<Long> constants = new ArrayList<>();
+    private final Map<Long, Integer> constantIndex = new HashMap<>();
+    private final List<EZType> types = new ArrayList<>();
+    private final Map<EZType, Integer> typeIndex = new IdentityHashMap<>();
+    // Code offsets that hold a branch target, with the target block
+    private final List<Integer> fixupOffsets = new ArrayList<>();
+    private final List<BasicBlock> fixupTargets = new ArrayList<>();
+
+    public Bytecode generate(CompiledFunction function) {
+        if (function.isSSA)
+            throw new IllegalStateException("SSA form is not executable");
+        List<BasicBlock> blocks = BBHelper.findAllBlocksReversePostOrderForwardCFG(function);
+        blocks.remove(function.exit);
+        blocks.add(function.exit);
+        Map<BasicBlock, Integer> blockOffsets = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            blockOffsets.put(block, pc);
+            if (block == function.exit) {
+                emit(Instruction.I_EXIT);
+                break;
+            }
+            BasicBlock next = i+1 < blocks.size() ? blocks.get(i+1) : null;
+            for (Instruction instruction: block.instructions)
+                generate(instruction, next);
+        }
+        for (int i = 0; i < fixupOffsets.size(); i++)
+            code[fixupOffsets.get(i)] = blockOffsets.get(fixupTargets.get(i));
+        long[] constantPool = new long[constants.size()];
+        for (int i = 0; i < constantPool.length; i++)
+            constantPool[i] = constants.get(i);
+        return new Bytecode(Arrays.copyOf(code, pc), constantPool, types.toArray(new EZType[0]),
+                function.frameSize(), function.spillSize());
+    }
+
+    private void generate(Instruction instruction, BasicBlock next) {
+        switch (instruction) {
+            case Instruction.Move moveInst -> {
+                emit(Instruction.I_MOVE);
+                emit(slot(moveInst.to()));
+                emit(operand(moveInst.from()));
+            }
+            case Instruction.Ret retInst -> {
+                emit(Instruction.I_RET);
+                emit(operand(retInst.value()));
+            }
+            case Instruction.Unary unaryInst -> {
+                emit(Instruction.I_UNARY);
+                emit(switch (unaryInst.unop) {
+                    case "-" -> Bytecode.UN_NEG;
+                    case "!" -> Bytecode.UN_NOT;
+                    default -> throw new IllegalStateException("Invalid unary op " + unaryInst.unop);
+                });
+                emit(slot(unaryInst.result()));
+                emit(operand(unaryInst.operand()));
+            }
+            case Instruction.Binary binaryInst -> generateBinary(binaryInst);
+            case Instruction.Jump jumpInst -> {
+                if (jumpInst.jumpTo != next) {
+                    emit(Instruction.I_BR);
+                    emitTarget(jumpInst.jumpTo);
+                }
+            }
+            case Instruction.ConditionalBranch cbrInst -> {
+                emit(Instruction.I_CBR);
+                emit(operand(cbrInst.condition()));
+                emitTarget(cbrInst.trueBlock);
+                emitTarget(cbrInst.falseBlock);
+            }
+            case Instruction.Call callInst -> {
+                emit(Instruction.I_CALL);
+                emit(type(callInst.callee));
+                if (callInst.callee.returnType instanceof EZType.EZTypeVoid)
+                    emit(Bytecode.NONE);
+                else
+                    emit(slot(callInst.returnOperand()));
+                Operand[] args = callInst.args();
+                emit(args.length);
+                for (Operand arg: args)
+                    emit(operand(arg));
+            }
+            case Instruction.NewArray newArrayInst -> {
+                emit(Instruction.I_NEW_ARRAY);
+                emit(type(newArrayInst.type));
+                emit(slot(newArrayInst.destOperand()));
+                emit(newArrayInst.len() != null ? operand(newArrayInst.len()) : Bytecode.NONE);
+                emit(newArrayInst.initValue() != null ? operand(newArrayInst.initValue()) : Bytecode.NONE);
+            }
+            case Instruction.NewStruct newStructInst -> {
+                emit(Instruction.I_NEW_STRUCT);
+                emit(type(newStructInst.type));
+                emit(slot(newStructInst.destOperand()));
+            }
+            case Instruction.ArrayStore arrayStoreInst -> {
+                emit(Instruction.I_ARRAY_STORE);
+                emit(slot(arrayStoreInst.arrayOperand()));
+                emit(operand(arrayStoreInst.indexOperand()));
+                emit(operand(arrayStoreInst.sourceOperand()));
+            }
+            case Instruction.ArrayLoad arrayLoadInst -> {
+                emit(Instruction.I_ARRAY_LOAD);
+                emit(slot(arrayLoadInst.destOperand()));
+                emit(slot(arrayLoadInst.arrayOperand()));
+                emit(operand(arrayLoadInst.indexOperand()));
+            }
+            case Instruction.GetField getFieldInst -> {
+                emit(Instruction.I_FIELD_GET);
+                emit(slot(getFieldInst.destOperand()));
+                emit(slot(getFieldInst.structOperand()));
+                emit(getFieldInst.fieldIndex);
+            }
+            case Instruction.SetField setFieldInst -> {
+                emit(Instruction.I_FIELD_SET);
+                emit(slot(setFieldInst.structOperand()));
+                emit(setFieldInst.fieldIndex);
+                emit(operand(setFieldInst.sourceOperand()));
+            }
+            case Instruction.Spill spillInst -> {
+                emit(Instruction.I_SPILL);
+                emit(spillInst.spillSlot);
+                emit(slot(spillInst.from()));
+            }
+            case Instruction.Reload reloadInst -> {
+                emit(Instruction.I_RELOAD);
+                emit(slot(reloadInst.to()));
+                emit(reloadInst.spillSlot);
+            }
+            case Instruction.NullCheck nullCheckInst -> {
+                emit(Instruction.I_NULL_CHECK);
+                emit(slot(nullCheckInst.operand()));
+            }
+            case Instruction.BoundsCheck boundsCheckInst -> {
+                emit(Instruction.I_BOUNDS_CHECK);
+                emit(slot(boundsCheckInst.arrayOperand()));
+                emit(operand(boundsCheckInst.indexOperand()));
+                emit(boundsCheckInst.isStore ? 1 : 0);
+            }
+            case Instruction.ArgInstruction argInst -> {}
+            default -> throw new IllegalStateException("Cannot generate bytecode for " + instruction);
+        }
+    }
+
+    private void generateBinary(Instruction.Binary binaryInst) {
+        emit(Instruction.I_BINARY);
+        Operand left = binaryInst.left();
+        Operand right = binaryInst.right();
+        if ((binaryInst.binOp.equals("==") || binaryInst.binOp.equals("!="))
+                && (left instanceof Operand.NullConstantOperand || right instanceof Operand.NullConstantOperand)) {
+            // Semantic analysis only allows comparing a nullable value with null
+            emit(binaryInst.binOp.equals("==") ? Bytecode.BIN_EQ_NULL : Bytecode.BIN_NE_NULL);
+            emit(slot(binaryInst.result()));
+            emit(operand(left instanceof Operand.NullConstantOperand ? right : left));
+            emit(Bytecode.NONE);
+            return;
+        }
+        emit(switch (binaryInst.binOp) {
+            case "+" -> Bytecode.BIN_ADD;
+            case "-" -> Bytecode.BIN_SUB;
+            case "*" -> Bytecode.BIN_MUL;
+            case "/" -> Bytecode.BIN_DIV;
+            case "%" -> Bytecode.BIN_MOD;
+            case "==" -> Bytecode.BIN_EQ;
+            case "!=" -> Bytecode.BIN_NE;
+            case "<" -> Bytecode.BIN_LT;
+            case ">" -> Bytecode.BIN_GT;
+            case "<=" -> Bytecode.BIN_LE;
+            case ">=" -> Bytecode.BIN_GE;
+            default -> throw new IllegalStateException("Invalid binary op " + binaryInst.binOp);
+        });
+        emit(slot(binaryInst.result()));
+        emit(operand(left));
+        emit(operand(right));
+    }
+
+    private int slot(Operand operand) {
+        if (operand instanceof Operand.RegisterOperand registerOperand)
+            return registerOperand.frameSlot();
+        throw new IllegalStateException("Expected register operand but got " + operand);
+    }
+
+    private int operand(Operand operand) {
+        if (operand instanceof Operand.RegisterOperand registerOperand)
+            return registerOperand.frameSlot();
+        else if (operand instanceof Operand.ConstantOperand constantOperand)
+            return Bytecode.constantOperand(constant(constantOperand.value));
+        else if (operand instanceof Operand.NullConstantOperand)
+            return Bytecode.NULL;
+        throw new IllegalStateException("Unexpected operand " + operand);
+    }
+
+    private int constant(long value) {
+        return constantIndex.computeIfAbsent(value, v -> {
+            constants.add(v);
+            return constants.size()-1;
+        });
+    }
+
+    private int type(EZType type) {
+        return typeIndex.computeIfAbsent(type, t -> {
+            types.add(t);
+            return types.size()-1;
+        });
+    }
+
+    private void emitTarget(BasicBlock target) {
+        fixupOffsets.add(pc);
+        fixupTargets.add(target);
+        emit(-1);
+    }
+
+    private void emit(int word) {
+        if (pc == code.length)
+            code = Arrays.copyOf(code, code.length * 2);
+        code[pc++] = word;
+    }
+}
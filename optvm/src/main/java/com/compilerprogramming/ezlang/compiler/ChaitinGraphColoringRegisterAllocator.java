@@ -1,5 +1,7 @@
 package com.compilerprogramming.ezlang.compiler;
 
+import com.compilerprogramming.ezlang.exceptions.CompilerException;
+
 import java.util.*;
 import java.util.stream.IntStream;
 
@@ -9,38 +11,95 @@ import java.util.stream.IntStream;
  * number of registers except how we set them, our goal here is to get to
  * the minimum number of registers required to execute the function.
  * <p>
- * We do want to implement spilling even though we do not need it for the
- * abstract machine, but it is not yet implemented. We would spill to a
- * stack attached to the abstract machine.
- *
- * TODO spilling
+ * The number of registers is the number of colors, and also caps the
+ * frame size of the function. When the graph cannot be colored, registers
+ * are spilled to a spill area attached to the abstract machine, separate
+ * from the frame. As in Chaitin's allocator, when no node has fewer
+ * neighbours than colors, the node with the lowest spill cost per neighbour
+ * is spilled. The spill cost of a register is its number of defs and uses,
+ * each weighted by 10 to the power of the loop depth of its block, so that
+ * registers used in inner loops are spilled last.
+ * <p>
+ * A spilled register is spilled everywhere: each def is replaced by a new
+ * register that is stored to the register's spill slot right after, and
+ * each use by a new register that is reloaded from the spill slot right
+ * before. These new registers live across at most one instruction and are
+ * never spilled themselves. The interference graph is then rebuilt and
+ * coloring restarts.
  */
 public class ChaitinGraphColoringRegisterAllocator {
 
+    // Number of copy operations removed by coalescing
+    private int copiesCoalesced;
+    // Number of registers spilled
+    private int registersSpilled;
+    // Number of spill and reload instructions inserted
+    private int spillInstructions;
+
     public Map<Integer, Integer> assignRegisters(CompiledFunction function, int numRegisters, EnumSet<Options> options) {
         if (function.isSSA) throw new IllegalStateException("Register allocation should be done after exiting SSA");
+        if (numRegisters < function.functionType.args.size())
+            throw new CompilerException("Function " + function.functionType.name + " needs at least "
+                    + function.functionType.args.size() + " registers for its arguments, got " + numRegisters);
         // Remove useless copy operations
         InterferenceGraph g = coalesce(function, options);
-        // Get used registers, indexed by reg.id
-        Set<Integer> registers = registersInIR(function);
-        // Create color set
-        List<Integer> colors = new ArrayList<>(IntStream.range(0, numRegisters).boxed().toList());
-        // Function args are pre-assigned colors
-        // and we remove them from the register set
-        Map<Integer, Integer> assignments = preAssignArgsToColors(function, registers, colors);
-        // TODO spilling
-        // execute graph coloring on remaining registers
-        assignments = colorGraph(g, registers, new HashSet<>(colors), assignments);
+        // Registers created by spilling, indexed by reg.id
+        BitSet unspillable = new BitSet();
+        int spillSlots = 0;
+        Map<Integer, Integer> assignments;
+        while (true) {
+            // Get used registers, indexed by reg.id
+            Set<Integer> registers = registersInIR(function);
+            // Create color set
+            List<Integer> colors = new ArrayList<>(IntStream.range(0, numRegisters).boxed().toList());
+            // Function args are pre-assigned colors
+            // and we remove them from the register set
+            assignments = preAssignArgsToColors(function, registers, colors);
+            // Simplify the graph, collecting the nodes to spill if it gets stuck
+            List<Integer> spills = new ArrayList<>();
+            int[] stack = simplify(function, g, registers, assignments.keySet(), numRegisters, spills, unspillable);
+            if (spills.isEmpty()) {
+                // execute graph coloring on remaining registers
+                assignments = colorGraph(g, stack, new HashSet<>(colors), assignments);
+                break;
+            }
+            for (Integer reg: spills)
+                insertSpillCode(function, function.registerPool.getReg(reg), spillSlots++, unspillable);
+            registersSpilled += spills.size();
+            g = new InterferenceGraphBuilder().build(function);
+        }
         // update all instructions
         // We simply set the slot on each register - rather than actually trying to replace them
         updateInstructions(function, assignments);
         // Compute and set the new framesize
         function.setFrameSize(computeFrameSize(assignments));
+        function.setSpillSize(spillSlots);
         if (options.contains(Options.DUMP_POST_CHAITIN_IR))
             function.dumpIR(false, "Post Chaitin Register Allocation");
         return assignments;
     }
 
+    /**
+     * Number of copy operations removed by coalescing
+     */
+    public int copiesCoalesced() {
+        return copiesCoalesced;
+    }
+
+    /**
+     * Number of registers spilled
+     */
+    public int registersSpilled() {
+        return registersSpilled;
+    }
+
+    /**
+     * Number of spill and reload instructions inserted
+     */
+    public int spillInstructions() {
+        return spillInstructions;
+    }
+
     /**
      * Frame size = max number of registers needed to execute the function
      */
@@ -117,6 +176,7 @@ public class ChaitinGraphColoringRegisterAllocator {
                         igraph.rename(source.id, target.id);
                         rewriteInstructions(function, instruction, source, target);
                         iter.remove();
+                        copiesCoalesced++;
                         changed = true;
                     }
                 }
@@ -160,20 +220,24 @@ public class ChaitinGraphColoringRegisterAllocator {
 
     /**
      * Chaitin: color_graph line 2-3
+     *
+     * Finds the first node, in the order given, that is still in the graph
+     * and has fewer neighbours than colors. Nodes before first have all
+     * been removed.
      */
-    private Integer findNodeWithNeighborCountLessThan(InterferenceGraph g, Set<Integer> nodes, int numColors) {
-        for (var node: nodes) {
-            if (g.neighbors(node).size() < numColors) {
-                return node;
-            }
+    private int findNodeWithNeighborCountLessThan(InterferenceGraph g, int[] nodes, boolean[] removed, int first, int numColors) {
+        for (int i = first; i < nodes.length; i++) {
+            if (!removed[i] && g.degree(nodes[i]) < numColors)
+                return i;
         }
-        return null;
+        return -1;
     }
 
-    private Set<Integer> getNeighborColors(InterferenceGraph g, Integer node, Map<Integer,Integer> assignedColors) {
+    private Set<Integer> getNeighborColors(InterferenceGraph g, int node, Map<Integer,Integer> assignedColors) {
         Set<Integer> colors = new HashSet<>();
-        for (var neighbour: g.neighbors(node)) {
-            Integer c = assignedColors.get(neighbour);
+        int[] adjacents = g.adjacents(node);
+        for (int i = 0; i < g.degree(node); i++) {
+            Integer c = assignedColors.get(adjacents[i]);
             if (c != null) {
                 colors.add(c);
             }
@@ -189,29 +253,188 @@ public class ChaitinGraphColoringRegisterAllocator {
         return set.stream().findAny().orElseThrow();
     }
 
-    private static HashSet<Integer> subtract(Set<Integer> originalSet, Integer node) {
-        var reducedSet = new HashSet<>(originalSet);
-        reducedSet.remove(node);
-        return reducedSet;
+    /**
+     * Chaitin: color_graph
+     *
+     * Chaitin's formulation is recursive: remove a node with fewer neighbours
+     * than colors, color the remaining graph, then give the node a color not
+     * used by its neighbours. Here simplify removes the nodes from a copy
+     * of the graph and pushes them on a stack, then they are colored as they
+     * are popped, which assigns the same colors without copying the graph at
+     * each step.
+     *
+     * When no node has fewer neighbours than colors, the node with the lowest
+     * spill cost per neighbour is removed and added to spills, and simplify
+     * continues, so that all registers to spill are found in one pass.
+     * Pre-colored arguments are never simplified, but they can be spilled.
+     * Returns the stack of nodes to color, which is only complete when
+     * nothing was spilled.
+     */
+    private int[] simplify(CompiledFunction function, InterferenceGraph g, Set<Integer> nodes, Set<Integer> precolored,
+                           int numColors, List<Integer> spills, BitSet unspillable) {
+        List<Integer> spillableArgs = new ArrayList<>(precolored);
+        int[] order = nodes.stream().mapToInt(Integer::intValue).toArray();
+        boolean[] removed = new boolean[order.length];
+        int[] stack = new int[order.length];
+        int top = 0;
+        InterferenceGraph reduced = g.dup();
+        double[] spillCosts = null;
+        int first = 0;
+        for (int n = 0; n < order.length; n++) {
+            while (removed[first])
+                first++;
+            int i = findNodeWithNeighborCountLessThan(reduced, order, removed, first, numColors);
+            if (i >= 0) {
+                stack[top++] = order[i];
+            }
+            else {
+                // Costs are only computed once we know we have to spill
+                if (spillCosts == null)
+                    spillCosts = spillCosts(function);
+                i = findNodeToSpill(reduced, order, removed, first, spillCosts, unspillable);
+                int arg = findArgToSpill(reduced, spillableArgs, spillCosts, unspillable);
+                if (arg >= 0 && (i < 0 || spillCost(reduced, arg, spillCosts) < spillCost(reduced, order[i], spillCosts))) {
+                    // Spilling the argument frees a color, the node is tried again
+                    spillableArgs.remove(Integer.valueOf(arg));
+                    spills.add(arg);
+                    reduced.subtract(arg);
+                    n--;
+                    continue;
+                }
+                if (i < 0)
+                    throw new CompilerException("Cannot allocate registers for function " + function.functionType.name
+                            + " with " + numColors + " registers");
+                spills.add(order[i]);
+            }
+            removed[i] = true;
+            reduced.subtract(order[i]);
+        }
+        return Arrays.copyOf(stack, top);
     }
 
     /**
-     * Chaitin: color_graph
+     * Chaitin: the node with the lowest cost / degree
      */
-    private Map<Integer, Integer> colorGraph(InterferenceGraph g, Set<Integer> nodes, Set<Integer> colors, Map<Integer, Integer> preAssignedColors) {
-        if (nodes.size() == 0)
-            return preAssignedColors;
-        int numColors = colors.size();
-        Integer node = findNodeWithNeighborCountLessThan(g, nodes, numColors);
-        if (node == null)
-            return null;
-        Map<Integer, Integer> coloring = colorGraph(g.dup().subtract(node), subtract(nodes, node), colors, preAssignedColors);
-        if (coloring == null)
-            return null;
-        Set<Integer> neighbourColors = getNeighborColors(g, node, coloring);
-        Integer color = chooseSomeColorNotAssignedToNeighbors(colors, neighbourColors);
-        coloring.put(node, color);
+    private int findNodeToSpill(InterferenceGraph g, int[] nodes, boolean[] removed, int first, double[] spillCosts, BitSet unspillable) {
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int i = first; i < nodes.length; i++) {
+            int node = nodes[i];
+            if (removed[i] || unspillable.get(node))
+                continue;
+            double cost = spillCost(g, node, spillCosts);
+            if (cost < bestCost) {
+                best = i;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    private int findArgToSpill(InterferenceGraph g, List<Integer> args, double[] spillCosts, BitSet unspillable) {
+        int best = -1;
+        double bestCost = Double.MAX_VALUE;
+        for (int arg: args) {
+            if (unspillable.get(arg))
+                continue;
+            double cost = spillCost(g, arg, spillCosts);
+            if (cost < bestCost) {
+                best = arg;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    private static double spillCost(InterferenceGraph g, int node, double[] spillCosts) {
+        return spillCosts[node] / Math.max(1, g.degree(node));
+    }
+
+    private Map<Integer, Integer> colorGraph(InterferenceGraph g, int[] stack, Set<Integer> colors, Map<Integer, Integer> preAssignedColors) {
+        Map<Integer, Integer> coloring = preAssignedColors;
+        for (int top = stack.length-1; top >= 0; top--) {
+            int node = stack[top];
+            Set<Integer> neighbourColors = getNeighborColors(g, node, coloring);
+            Integer color = chooseSomeColorNotAssignedToNeighbors(colors, neighbourColors);
+            coloring.put(node, color);
+        }
         return coloring;
     }
 
+    /**
+     * Spill cost of each register, indexed by reg.id: the number of defs
+     * and uses weighted by 10 to the power of the loop depth
+     */
+    private double[] spillCosts(CompiledFunction function) {
+        Map<BasicBlock, Integer> loopDepths = loopDepths(function);
+        double[] costs = new double[function.registerPool.numRegisters()];
+        for (BasicBlock block: function.getBlocks()) {
+            // Cap the depth so that the weights stay finite
+            double weight = Math.pow(10, Math.min(loopDepths.getOrDefault(block, 0), 10));
+            for (Instruction instruction: block.instructions) {
+                if (instruction.definesVar())
+                    costs[instruction.def().id] += weight;
+                for (Register use: instruction.uses())
+                    costs[use.id] += weight;
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Loop depth of each block, blocks outside loops are not included.
+     * Loops with the same head are merged, the depth of a block is the
+     * number of loops it is part of.
+     */
+    private static Map<BasicBlock, Integer> loopDepths(CompiledFunction function) {
+        List<BasicBlock> blocks = function.getBlocks();
+        // Loops are found using dominators
+        new DominatorTree(function.entry);
+        Map<BasicBlock, Integer> depths = new HashMap<>();
+        for (LoopNest loop: LoopFinder.mergeLoopsWithSameHead(LoopFinder.findLoops(blocks))) {
+            for (BasicBlock block: loop._blocks)
+                depths.merge(block, 1, Integer::sum);
+        }
+        return depths;
+    }
+
+    /**
+     * Spill everywhere: replaces each def of the register by a new register
+     * stored to the spill slot after the def, and each use by a new
+     * register reloaded from the spill slot before the use.
+     */
+    private void insertSpillCode(CompiledFunction function, Register reg, int spillSlot, BitSet unspillable) {
+        var regPool = function.registerPool;
+        for (BasicBlock block: function.getBlocks()) {
+            List<Instruction> instructions = block.instructions;
+            for (int i = 0; i < instructions.size(); i++) {
+                Instruction instruction = instructions.get(i);
+                if (instruction instanceof Instruction.Spill || instruction instanceof Instruction.Reload)
+                    continue;
+                if (instruction.uses().contains(reg)) {
+                    Register reload = regPool.newTempReg(reg.name(), reg.type);
+                    unspillable.set(reload.id);
+                    instruction.replaceUse(reg, reload);
+                    block.add(i++, new Instruction.Reload(new Operand.RegisterOperand(reload), spillSlot));
+                    spillInstructions++;
+                }
+                if (instruction.definesVar() && instruction.def().id == reg.id) {
+                    Register spill = regPool.newTempReg(reg.name(), reg.type);
+                    unspillable.set(spill.id);
+                    instruction.replaceDef(spill);
+                    // Arguments must stay together at the start of the entry block
+                    int at = i+1;
+                    if (instruction instanceof Instruction.ArgInstruction) {
+                        while (at < instructions.size() && instructions.get(at) instanceof Instruction.ArgInstruction)
+                            at++;
+                    }
+                    block.add(at, new Instruction.Spill(new Operand.RegisterOperand(spill), spillSlot));
+                    spillInstructions++;
+                    if (at == i+1)
+                        i++;
+                }
+            }
+        }
+    }
+
 }
@@ -22,13 +22,23 @@ public class CompiledFunction {
     private final TypeDictionary typeDictionary;
 
     private int frameSlots;
+    // Number of slots in the spill area, set by the register allocator
+    private int spillSlots;
 
     public boolean isSSA;
     public boolean hasLiveness;
     private final IncrementalSSA issa;
+    // Generate explicit null and bounds checks
+    private final boolean checks;
 
     private StringBuilder dumpTarget;
 
+    /**
+     * Flat bytecode for the interpreter, generated on first use,
+     * i.e. after all transformations of the IR are done.
+     */
+    private volatile Bytecode bytecode;
+
     /**
      * We essentially do a form of abstract interpretation as we generate
      * the bytecode instructions. For this purpose we use a virtual operand stack.
@@ -45,6 +55,7 @@ public class CompiledFunction {
         this.registerPool = new RegisterPool();
         // Incremental SSA is an optional feature
         this.issa = (options != null && options.contains(Options.ISSA)) ? new IncrementalSSABraun(this) : new NoopIncrementalSSA();
+        this.checks = options != null && options.contains(Options.CHECKS);
         setVirtualRegisters(funcDecl.scope);
         this.BID = 0;
         this.entry = this.currentBlock = createBlock();
@@ -66,6 +77,7 @@ public class CompiledFunction {
         this.functionType = (EZType.EZTypeFunction) functionType;
         this.registerPool = new RegisterPool();
         this.issa = new NoopIncrementalSSA();        this.BID = 0;
+        this.checks = false;
         this.entry = this.currentBlock = createBlock();
         this.exit = createBlock();
         this.currentBreakTarget = null;
@@ -93,6 +105,19 @@ public class CompiledFunction {
     public void setFrameSize(int size) {
         frameSlots = size;
     }
+    public int spillSize() {
+        return spillSlots;
+    }
+    public void setSpillSize(int size) {
+        spillSlots = size;
+    }
+
+    public Bytecode bytecode() {
+        Bytecode code = bytecode;
+        if (code == null)
+            bytecode = code = new BytecodeGenerator().generate(this);
+        return code;
+    }
 
     private void exitBlockIfNeeded() {
         if (currentBlock != null &&
@@ -395,7 +420,7 @@ public class CompiledFunction {
     }
 
     private boolean compileSetFieldExpr(AST.SetFieldExpr setFieldExpr) {
-        EZType.EZTypeStruct structType = (EZType.EZTypeStruct) setFieldExpr.object.type;
+        EZType.EZTypeStruct structType = getStructType(setFieldExpr.object.type);
         int fieldIndex = structType.getFieldIndex(setFieldExpr.fieldName);
         if (fieldIndex == -1)
             throw new CompilerException("Field " + setFieldExpr.fieldName + " not found in struct " + structType.name);
@@ -772,6 +797,7 @@ public class CompiledFunction {
 
     private void codeArrayLoad(Operand.LoadIndexedOperand loadIndexedOperand, Operand.RegisterOperand target) {
         loadIndexedOperand = new Operand.LoadIndexedOperand(issa.read(loadIndexedOperand.arrayOperand), issa.read(loadIndexedOperand.indexOperand));
+        codeBoundsCheck(loadIndexedOperand, false);
         target = (Operand.RegisterOperand) issa.write(target);
         var insn = new Instruction.ArrayLoad(loadIndexedOperand, target);
         issa.recordDef(target, insn);
@@ -782,6 +808,7 @@ public class CompiledFunction {
 
     private void codeGetField(Operand.LoadFieldOperand loadFieldOperand, Operand.RegisterOperand target) {
         loadFieldOperand = new Operand.LoadFieldOperand(issa.read(loadFieldOperand.structOperand), loadFieldOperand.fieldName, loadFieldOperand.fieldIndex);
+        codeNullCheck(loadFieldOperand.structOperand);
         target = (Operand.RegisterOperand) issa.write(target);
         var insn = new Instruction.GetField(loadFieldOperand, target);
         issa.recordDef(target, insn);
@@ -792,6 +819,7 @@ public class CompiledFunction {
     private void codeArrayStore(Operand value, Operand.LoadIndexedOperand loadIndexedOperand) {
         loadIndexedOperand = new Operand.LoadIndexedOperand(issa.read(loadIndexedOperand.arrayOperand), issa.read(loadIndexedOperand.indexOperand));
         value = issa.read(value);
+        codeBoundsCheck(loadIndexedOperand, true);
         var insn = new Instruction.ArrayStore(value, loadIndexedOperand);
         issa.recordUse(loadIndexedOperand.arrayOperand, insn);
         issa.recordUse(loadIndexedOperand.indexOperand, insn);
@@ -802,12 +830,41 @@ public class CompiledFunction {
     private void codeSetField(Operand value, Operand.LoadFieldOperand loadFieldOperand) {
         loadFieldOperand = new Operand.LoadFieldOperand(issa.read(loadFieldOperand.structOperand), loadFieldOperand.fieldName, loadFieldOperand.fieldIndex);
         value = issa.read(value);
+        codeNullCheck(loadFieldOperand.structOperand);
         var insn = new Instruction.SetField(value, loadFieldOperand);
         issa.recordUse(loadFieldOperand.structOperand, insn);
         issa.recordUse(value, insn);
         code(insn);
     }
 
+    /**
+     * With the CHECKS option, checks that a struct or array is not null
+     * before it is accessed. This is done whatever its declared type, as
+     * fields and elements that were never assigned are null too.
+     * Operands must have been read.
+     */
+    private void codeNullCheck(Operand operand) {
+        if (checks && operand instanceof Operand.RegisterOperand) {
+            var insn = new Instruction.NullCheck(operand);
+            issa.recordUse(operand, insn);
+            code(insn);
+        }
+    }
+
+    /**
+     * With the CHECKS option, checks the array and index before an element
+     * is accessed. Operands must have been read.
+     */
+    private void codeBoundsCheck(Operand.LoadIndexedOperand loadIndexedOperand, boolean isStore) {
+        if (checks) {
+            codeNullCheck(loadIndexedOperand.arrayOperand);
+            var insn = new Instruction.BoundsCheck(loadIndexedOperand.arrayOperand, loadIndexedOperand.indexOperand, isStore);
+            issa.recordUse(loadIndexedOperand.arrayOperand, insn);
+            issa.recordUse(loadIndexedOperand.indexOperand, insn);
+            code(insn);
+        }
+    }
+
     public StringBuilder toStr(StringBuilder sb, boolean verbose) {
         if (verbose) {
             sb.append(this.functionType.describe()).append("\n");
@@ -828,9 +885,10 @@ public class CompiledFunction {
         }
     }
 
-    public void livenessAnalysis() {
-        new Liveness(this);
+    public Liveness livenessAnalysis() {
+        var liveness = new Liveness(this);
         this.hasLiveness = true;
+        return liveness;
     }
 
     public List<BasicBlock> getBlocks() {
@@ -1021,7 +1079,12 @@ public class CompiledFunction {
                 throw new CompilerException("Expected error: undefined var " + newValue);
             }
             if (oldDefUseChain != null) {
+                // An instruction that uses the value more than once, e.g. n*n,
+                // appears more than once in the use list, but is replaced in one go
+                Set<Instruction> visited = Collections.newSetFromMap(new IdentityHashMap<>());
                 for (Instruction instruction: oldDefUseChain.useList) {
+                    if (!visited.add(instruction))
+                        continue;
                     boolean replaced;
                     if (instruction instanceof Instruction.Phi somePhi) {
                         replaced = somePhi.replaceInput(oldValue, newValue);
@@ -12,6 +12,26 @@ import java.util.EnumSet;
 
 public class Compiler {
 
+    // Number of functions optimized concurrently
+    private final int parallelism;
+    // Number of registers available to the register allocator
+    private final int numRegisters;
+
+    public Compiler() {
+        this(1);
+    }
+    public Compiler(int parallelism) {
+        this(parallelism, 64);
+    }
+    public Compiler(int parallelism, int numRegisters) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+        if (numRegisters < 1)
+            throw new IllegalArgumentException("Number of registers must be at least 1, got " + numRegisters);
+        this.parallelism = parallelism;
+        this.numRegisters = numRegisters;
+    }
+
     private void compile(TypeDictionary typeDictionary, EnumSet<Options> options) {
         for (Symbol symbol: typeDictionary.getLocalSymbols()) {
             if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol) {
@@ -20,9 +40,12 @@ public class Compiler {
                 if (options.contains(Options.DUMP_INITIAL_IR))
                     function.dumpIR(false, "Initial IR");
                 functionType.code = function;
-                new Optimizer().optimize(function, options);
+                if (parallelism == 1)
+                    new Optimizer(numRegisters).optimize(function, options);
             }
         }
+        if (parallelism > 1)
+            new ModuleOptimizer(parallelism, numRegisters).optimize(typeDictionary, options);
     }
     public TypeDictionary compileSrc(String src) {
         return compileSrc(src, EnumSet.noneOf(Options.class));
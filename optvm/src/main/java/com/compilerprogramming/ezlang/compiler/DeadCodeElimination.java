@@ -0,0 +1,166 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dead code elimination on SSA form.
+ *
+ * Rather than looking for dead instructions, we look for live ones. All
+ * instructions that have an effect apart from defining a register are
+ * marked live: branches, returns, calls, stores, the arguments, and the
+ * instructions that may fail at runtime, such as loads, allocations of
+ * arrays and division. Then, following the SSA def-use chains backwards,
+ * the definition of every register used by a live instruction is marked
+ * live too. Everything else is deleted; this includes cycles of phis and
+ * increments whose values are never used outside the cycle.
+ *
+ * Branches are always live, so the flow graph is not changed by the above.
+ * Afterwards, blocks that only jump to their successor, as left behind by
+ * SCCP, are bypassed and removed, provided that this does not introduce a
+ * critical edge into a block with phis.
+ *
+ * See section 10.2 of Engineering a Compiler.
+ */
+public class DeadCodeElimination {
+
+    private final CompiledFunction function;
+    private int instructionsRemoved;
+    private int blocksRemoved;
+
+    public DeadCodeElimination(CompiledFunction function) {
+        this.function = function;
+    }
+
+    public boolean apply(EnumSet<Options> options) {
+        if (options.contains(Options.DCE)) {
+            instructionsRemoved = 0;
+            blocksRemoved = 0;
+            var ssaDefUse = SSAEdges.buildDefUseChains(function);
+            sweep(mark(ssaDefUse));
+            removeEmptyBlocks();
+            if (options.contains(Options.DUMP_DCE_POSTAPPLY)) function.dumpIR(false, "Post DCE\n");
+        }
+        return instructionsRemoved > 0 || blocksRemoved > 0;
+    }
+
+    /**
+     * Number of dead instructions removed, not counting the
+     * jumps of the empty blocks removed
+     */
+    public int instructionsRemoved() {
+        return instructionsRemoved;
+    }
+
+    public int blocksRemoved() {
+        return blocksRemoved;
+    }
+
+    private Set<Instruction> mark(Map<Register, SSAEdges.SSADef> ssaDefUse) {
+        Set<Instruction> live = new HashSet<>();
+        List<Instruction> workList = new ArrayList<>();
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.instructions) {
+                if (isCritical(instruction) && live.add(instruction))
+                    workList.add(instruction);
+            }
+        }
+        while (!workList.isEmpty()) {
+            Instruction instruction = workList.removeLast();
+            Register[] uses = instruction instanceof Instruction.Phi phi
+                    ? phi.inputRegisters()
+                    : instruction.uses().toArray(new Register[0]);
+            for (Register register : uses) {
+                Instruction def = ssaDefUse.get(register).instruction;
+                if (live.add(def))
+                    workList.add(def);
+            }
+        }
+        return live;
+    }
+
+    /**
+     * Instructions that are live even if the register they define is not used
+     */
+    private static boolean isCritical(Instruction instruction) {
+        if (instruction instanceof Instruction.Move
+                || instruction instanceof Instruction.Phi
+                || instruction instanceof Instruction.Unary
+                || instruction instanceof Instruction.NewStruct)
+            return false;
+        if (instruction instanceof Instruction.Binary binary) {
+            // Division by zero fails
+            return (binary.binOp.equals("/") || binary.binOp.equals("%"))
+                    && !(binary.right() instanceof Operand.ConstantOperand constant && constant.value != 0);
+        }
+        return true;
+    }
+
+    private void sweep(Set<Instruction> live) {
+        for (BasicBlock block : function.getBlocks()) {
+            int size = block.instructions.size();
+            block.instructions.removeIf(instruction -> !live.contains(instruction));
+            instructionsRemoved += size - block.instructions.size();
+        }
+    }
+
+    private void removeEmptyBlocks() {
+        for (BasicBlock block : function.getBlocks()) {
+            if (canRemove(block)) {
+                bypass(block);
+                blocksRemoved++;
+            }
+        }
+    }
+
+    /**
+     * A block can be removed if it does nothing but jump to its successor,
+     * and its predecessors can jump to the successor directly
+     */
+    private boolean canRemove(BasicBlock block) {
+        if (block == function.entry || block.loopHead
+                || block.instructions.size() != 1
+                || !(block.instructions.getFirst() instanceof Instruction.Jump jump)
+                || jump.jumpTo == block)
+            return false;
+        BasicBlock successor = jump.jumpTo;
+        for (BasicBlock pred : block.predecessors) {
+            if (successor.predecessors.contains(pred))
+                return false;
+        }
+        // The phis in the successor need one input per predecessor, and
+        // their copies are placed at the end of the predecessor, which must
+        // therefore have no other successor
+        if (!successor.phis().isEmpty())
+            return block.predecessors.size() == 1
+                    && block.predecessors.getFirst().successors.size() == 1;
+        return true;
+    }
+
+    private void bypass(BasicBlock block) {
+        BasicBlock successor = block.successors.getFirst();
+        List<BasicBlock> preds = new ArrayList<>(block.predecessors);
+        // The first predecessor takes the place of the block, so that
+        // the inputs of the phis in the successor stay in order
+        successor.predecessors.set(successor.whichPred(block), preds.getFirst());
+        for (int i = 1; i < preds.size(); i++)
+            successor.predecessors.add(preds.get(i));
+        for (BasicBlock pred : preds) {
+            pred.successors.set(pred.whichSucc(block), successor);
+            int last = pred.instructions.size() - 1;
+            Instruction terminator = pred.instructions.get(last);
+            if (terminator instanceof Instruction.Jump)
+                pred.update(last, new Instruction.Jump(successor));
+            else if (terminator instanceof Instruction.ConditionalBranch cbr)
+                pred.update(last, new Instruction.ConditionalBranch(pred, cbr.condition(),
+                        cbr.trueBlock == block ? successor : cbr.trueBlock,
+                        cbr.falseBlock == block ? successor : cbr.falseBlock));
+        }
+        block.predecessors.clear();
+        block.successors.clear();
+    }
+}
@@ -0,0 +1,216 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dominator based value numbering, a form of global common subexpression
+ * elimination over the SSA form.
+ *
+ * The dominator tree is walked from the entry, and each expression
+ * computed by an instruction is entered into a scoped table, keyed by the
+ * operation and the value numbers of its operands. An expression that is
+ * already in the table was computed by an instruction that dominates the
+ * current one, so the current instruction is redundant: all its uses are
+ * replaced by the earlier result, and it is deleted. Entries are removed
+ * again when the walk leaves the block that made them.
+ *
+ * Pure unary and binary operations are numbered everywhere. Loads of
+ * fields and array elements are numbered with a simple memory model:
+ *
+ * <ul>
+ *     <li>A field store kills the loads of the same field of any struct,
+ *     and makes the stored value available to later loads of that field.</li>
+ *     <li>An array store kills all array loads.</li>
+ *     <li>A call kills all loads.</li>
+ *     <li>Loads are carried from a block to a dominated block only if that is
+ *     its sole predecessor, so they are never reused across a join or a loop
+ *     back-edge, where another path could have stored to memory.</li>
+ * </ul>
+ *
+ * See 'Value Numbering' by Preston Briggs, Keith D. Cooper and L. Taylor
+ * Simpson, and section 8.5.2 of Engineering a Compiler.
+ */
+public class GlobalValueNumbering {
+
+    // Value number of the null constant
+    private static final Object NULL = new Object();
+
+    private final CompiledFunction function;
+    private Map<Register, SSAEdges.SSADef> ssaDefUse;
+    // Value numbers of registers that are copies of another value
+    private final Map<Register, Object> valueNumbers = new HashMap<>();
+    // Pure expressions available in the current block, scoped by the dominator tree
+    private final Map<Expression, Register> expressions = new HashMap<>();
+    private int redundanciesRemoved;
+
+    public GlobalValueNumbering(CompiledFunction function) {
+        this.function = function;
+    }
+
+    public boolean apply(EnumSet<Options> options) {
+        if (options.contains(Options.GVN)) {
+            redundanciesRemoved = 0;
+            new DominatorTree(function.entry);
+            ssaDefUse = SSAEdges.buildDefUseChains(function);
+            walkBlock(function.entry, new HashMap<>());
+            if (options.contains(Options.DUMP_GVN_POSTAPPLY)) function.dumpIR(false, "Post GVN\n");
+        }
+        return redundanciesRemoved > 0;
+    }
+
+    /**
+     * Number of instructions found to be redundant, and removed
+     */
+    public int redundanciesRemoved() {
+        return redundanciesRemoved;
+    }
+
+    private void walkBlock(BasicBlock block, Map<Expression, Register> loads) {
+        List<Expression> added = new ArrayList<>();
+        Iterator<Instruction> iter = block.instructions.iterator();
+        while (iter.hasNext()) {
+            Instruction instruction = iter.next();
+            if (instruction instanceof Instruction.Move move) {
+                Object vn = valueNumber(move.from());
+                if (vn != null)
+                    valueNumbers.put(move.to().reg, vn);
+            }
+            else if (instruction instanceof Instruction.Binary || instruction instanceof Instruction.Unary) {
+                Expression expression = expression(instruction);
+                if (expression == null)
+                    continue;
+                Register leader = expressions.get(expression);
+                if (leader != null) {
+                    replaceAllUses(instruction.def(), leader);
+                    iter.remove();
+                }
+                else {
+                    expressions.put(expression, instruction.def());
+                    added.add(expression);
+                }
+            }
+            else if (instruction instanceof Instruction.GetField || instruction instanceof Instruction.ArrayLoad) {
+                Expression expression = expression(instruction);
+                if (expression == null)
+                    continue;
+                Register leader = loads.get(expression);
+                if (leader != null) {
+                    replaceAllUses(instruction.def(), leader);
+                    iter.remove();
+                }
+                else
+                    loads.put(expression, instruction.def());
+            }
+            else if (instruction instanceof Instruction.SetField setField) {
+                loads.keySet().removeIf(e -> e.opcode == Instruction.I_FIELD_GET
+                        && e.op.equals(setField.fieldName)
+                        && e.right.equals(setField.fieldIndex));
+                Object struct = valueNumber(setField.structOperand());
+                if (struct != null && setField.sourceOperand() instanceof Operand.RegisterOperand source)
+                    loads.put(new Expression(Instruction.I_FIELD_GET, setField.fieldName, struct, setField.fieldIndex), source.reg);
+            }
+            else if (instruction instanceof Instruction.ArrayStore) {
+                loads.keySet().removeIf(e -> e.opcode == Instruction.I_ARRAY_LOAD);
+            }
+            else if (instruction instanceof Instruction.Call) {
+                loads.clear();
+            }
+        }
+        for (BasicBlock c : block.dominatedChildren) {
+            // Only a block entered from here alone sees the loads available here
+            boolean extended = c.predecessors.size() == 1 && c.predecessors.get(0) == block;
+            walkBlock(c, extended ? new HashMap<>(loads) : new HashMap<>());
+        }
+        for (Expression expression : added)
+            expressions.remove(expression);
+    }
+
+    private Expression expression(Instruction instruction) {
+        if (instruction instanceof Instruction.Binary binary) {
+            Object left = valueNumber(binary.left());
+            Object right = valueNumber(binary.right());
+            if (left == null || right == null)
+                return null;
+            // Order the operands of commutative operators, so that a+b and b+a are the same
+            if (isCommutative(binary.binOp) && order(left) > order(right)) {
+                Object temp = left;
+                left = right;
+                right = temp;
+            }
+            return new Expression(instruction.opcode, binary.binOp, left, right);
+        }
+        else if (instruction instanceof Instruction.Unary unary) {
+            Object operand = valueNumber(unary.operand());
+            return operand != null ? new Expression(instruction.opcode, unary.unop, operand, null) : null;
+        }
+        else if (instruction instanceof Instruction.GetField getField) {
+            Object struct = valueNumber(getField.structOperand());
+            return struct != null ? new Expression(instruction.opcode, getField.fieldName, struct, getField.fieldIndex) : null;
+        }
+        else if (instruction instanceof Instruction.ArrayLoad arrayLoad) {
+            Object array = valueNumber(arrayLoad.arrayOperand());
+            Object index = valueNumber(arrayLoad.indexOperand());
+            return array != null && index != null ? new Expression(instruction.opcode, "[]", array, index) : null;
+        }
+        return null;
+    }
+
+    private static boolean isCommutative(String binOp) {
+        return switch (binOp) {
+            case "+", "*", "==", "!=" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * Orders the value numbers of operands, registers by id come
+     * before constants
+     */
+    private static long order(Object vn) {
+        if (vn instanceof Register register)
+            return register.id;
+        return Integer.MAX_VALUE + 1L;
+    }
+
+    /**
+     * The value number of a register is the register itself, unless it is
+     * a copy of another value. Constants are numbered by their value.
+     * Returns null for operands that are not numbered.
+     */
+    private Object valueNumber(Operand operand) {
+        if (operand instanceof Operand.RegisterOperand registerOperand)
+            return valueNumbers.getOrDefault(registerOperand.reg, registerOperand.reg);
+        if (operand instanceof Operand.ConstantOperand constantOperand)
+            return constantOperand.value;
+        if (operand instanceof Operand.NullConstantOperand)
+            return NULL;
+        return null;
+    }
+
+    /**
+     * Replaces the uses of a redundant definition with the register
+     * that computed the same value earlier, and updates the SSA def use chains.
+     * The uses are all dominated by the redundant definition, and so by
+     * the earlier one.
+     */
+    private void replaceAllUses(Register redundant, Register leader) {
+        SSAEdges.SSADef leaderDef = ssaDefUse.get(leader);
+        for (Instruction use : ssaDefUse.get(redundant).useList) {
+            if (use instanceof Instruction.Phi phi)
+                phi.replaceInput(redundant, leader);
+            else
+                use.replaceUse(redundant, leader);
+            leaderDef.addUse(use);
+        }
+        ssaDefUse.remove(redundant);
+        valueNumbers.put(redundant, leader);
+        redundanciesRemoved++;
+    }
+
+    record Expression(int opcode, String op, Object left, Object right) {}
+}
@@ -0,0 +1,573 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.types.EZType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Strength reduction of induction variables, and linear function test
+ * replacement, on SSA form.
+ *
+ * A basic induction variable is a phi at the head of a loop, whose value
+ * on the back-edge is the phi plus or minus a loop invariant step:
+ *
+ * <pre>
+ *     i_1 = phi(i_0, i_2)
+ *     ...
+ *     %t1 = i_1+1
+ *     i_2 = %t1
+ * </pre>
+ *
+ * A derived induction variable is the product of an induction variable
+ * with a loop invariant, or its sum with, or difference from, a loop
+ * invariant. Each derived induction variable is replaced by a new phi at
+ * the loop head, which starts at the derived value of the initial value,
+ * computed in the loop's preheader, and is updated by a derived step
+ * right after the basic induction variable is updated. So {@code i*k}
+ * becomes a phi that starts at {@code i_0*k} and adds {@code k} in each
+ * iteration, and the multiplication in the loop is gone. Derived
+ * induction variables are themselves induction variables, so in
+ * {@code i*k+c} both the multiplication and the addition are replaced.
+ * A sum or difference of a basic induction variable, as in {@code i+c},
+ * is replaced only if that leaves the basic induction variable dead,
+ * otherwise the update of the new phi would cost as much as the addition.
+ *
+ * After strength reduction the basic induction variable is often only
+ * used to test for the end of the loop. Then the test is replaced by a
+ * test of a derived induction variable against the derived limit, and the
+ * basic induction variable is left dead for {@link DeadCodeElimination}.
+ * We only do this for derived induction variables that are multiplied by
+ * constants, so that we know whether the comparison is reversed. Since
+ * integers wrap around, the derived test is only equivalent if the
+ * derived variable and limit do not overflow. We only replace the test if
+ * that can be checked at compile time: the initial value, step and limit
+ * of the basic induction variable, and the operands it is derived with,
+ * must be constants, the loop must step towards the limit, and the
+ * derived values of the initial value, the limit and one step past the
+ * limit must not overflow.
+ *
+ * See 'Operator Strength Reduction' by Keith D. Cooper, L. Taylor Simpson
+ * and Christopher A. Vick, and section 10.7.2 of Engineering a Compiler.
+ */
+public class InductionVariableStrengthReduction {
+
+    private final CompiledFunction function;
+    private int strengthReductions;
+    private int testsReplaced;
+
+    public InductionVariableStrengthReduction(CompiledFunction function) {
+        this.function = function;
+    }
+
+    public boolean apply(EnumSet<Options> options) {
+        if (options.contains(Options.IVSR)) {
+            strengthReductions = 0;
+            testsReplaced = 0;
+            new DominatorTree(function.entry);
+            List<LoopNest> loops = LoopFinder.mergeLoopsWithSameHead(LoopFinder.findLoops(function.getBlocks()));
+            // Inner loops first, as in LICM
+            loops.sort(Comparator.comparingInt((LoopNest loop) -> loop._blocks.size())
+                    .thenComparingInt(loop -> loop._loopHead.bid));
+            for (LoopNest loop : loops)
+                reduce(loop, loops);
+            if (options.contains(Options.DUMP_IVSR_POSTAPPLY)) function.dumpIR(false, "Post IVSR\n");
+        }
+        return strengthReductions > 0 || testsReplaced > 0;
+    }
+
+    /**
+     * Number of instructions replaced by new induction variables
+     */
+    public int strengthReductions() {
+        return strengthReductions;
+    }
+
+    /**
+     * Number of loop tests replaced by tests of derived induction variables
+     */
+    public int testsReplaced() {
+        return testsReplaced;
+    }
+
+    static final class InductionVariable {
+        // Value of the phi at the loop head
+        final Register value;
+        // Value on entry to the loop
+        final Operand init;
+        // Step added or subtracted in each iteration
+        final Operand step;
+        final String op;
+        // Update of the basic induction variable, this one or the one
+        // this was derived from
+        final Instruction update;
+        // For derived induction variables, the basic induction variable
+        // and the operations applied to it, in order
+        final InductionVariable basic;
+        final List<String> derivedOps;
+        final List<Operand> derivedOperands;
+
+        InductionVariable(Register value, Operand init, Operand step, String op, Instruction update) {
+            this.value = value;
+            this.init = init;
+            this.step = step;
+            this.op = op;
+            this.update = update;
+            this.basic = null;
+            this.derivedOps = List.of();
+            this.derivedOperands = List.of();
+        }
+
+        InductionVariable(Register value, Operand init, Operand step, InductionVariable from, String derivedOp, Operand derivedOperand) {
+            this.value = value;
+            this.init = init;
+            this.step = step;
+            this.op = from.op;
+            this.update = from.update;
+            this.basic = from.basic != null ? from.basic : from;
+            this.derivedOps = new ArrayList<>(from.derivedOps);
+            this.derivedOps.add(derivedOp);
+            this.derivedOperands = new ArrayList<>(from.derivedOperands);
+            this.derivedOperands.add(derivedOperand);
+        }
+    }
+
+    private void reduce(LoopNest loop, List<LoopNest> loops) {
+        BasicBlock head = loop._loopHead;
+        if (head == function.entry || head.predecessors.size() != 2)
+            return;
+        // One predecessor enters the loop, the other is the only back-edge
+        int outsideIndex = loop._blocks.contains(head.predecessor(0)) ? 1 : 0;
+        int latchIndex = 1 - outsideIndex;
+        if (loop._blocks.contains(head.predecessor(outsideIndex)) || !loop._blocks.contains(head.predecessor(latchIndex)))
+            return;
+        List<BasicBlock> blocks = new ArrayList<>(loop._blocks);
+        blocks.sort(Comparator.comparingInt(block -> block.bid));
+        Map<Register, Instruction> defs = new HashMap<>();
+        for (BasicBlock block : blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof Instruction.Phi phi)
+                    defs.put(phi.value(), phi);
+                else if (instruction.definesVar())
+                    defs.put(instruction.def(), instruction);
+            }
+        }
+        Map<Register, InductionVariable> inductionVariables = new HashMap<>();
+        List<InductionVariable> basics = new ArrayList<>();
+        for (Instruction.Phi phi : head.phis()) {
+            InductionVariable iv = basicInductionVariable(phi, outsideIndex, latchIndex, defs, loop, loops);
+            if (iv != null) {
+                inductionVariables.put(iv.value, iv);
+                basics.add(iv);
+            }
+        }
+        if (basics.isEmpty())
+            return;
+        Set<Instruction> updates = new HashSet<>();
+        for (InductionVariable iv : basics)
+            updates.add(iv.update);
+        BasicBlock preheader = null;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : blocks) {
+                for (Instruction instruction : new ArrayList<>(block.instructions)) {
+                    if (!(instruction instanceof Instruction.Binary binary) || updates.contains(binary))
+                        continue;
+                    InductionVariable from = null;
+                    Operand invariant = null;
+                    if (isInductionVariable(binary.left(), inductionVariables) && isInvariant(binary.right(), defs)) {
+                        from = inductionVariables.get(register(binary.left()));
+                        invariant = binary.right();
+                    }
+                    else if (!binary.binOp.equals("-")
+                            && isInductionVariable(binary.right(), inductionVariables) && isInvariant(binary.left(), defs)) {
+                        from = inductionVariables.get(register(binary.right()));
+                        invariant = binary.left();
+                    }
+                    if (from == null || !(binary.binOp.equals("*") || binary.binOp.equals("+") || binary.binOp.equals("-")))
+                        continue;
+                    // Adding to an induction variable takes as long as the
+                    // update of a new one, so it is only worth it if that
+                    // makes the basic induction variable dead
+                    if (!binary.binOp.equals("*") && !from.derivedOps.contains("*")
+                            && (from.basic != null
+                                || !isTestReplaceable(from, binary.binOp, invariant, head, latchIndex, blocks, defs)))
+                        continue;
+                    if (preheader == null) {
+                        preheader = LoopInvariantCodeMotion.preheader(function, loop, loops);
+                        if (preheader == null)
+                            return;
+                    }
+                    var iv = derive(binary, from, invariant, preheader, head, outsideIndex, latchIndex, defs, updates);
+                    inductionVariables.put(iv.value, iv);
+                    replaceAllUses(binary.def(), iv.value);
+                    block.deleteInstruction(binary);
+                    strengthReductions++;
+                    changed = true;
+                }
+            }
+        }
+        if (preheader == null)
+            return;
+        for (InductionVariable basic : basics)
+            replaceTest(basic, inductionVariables, head, latchIndex, blocks, defs, preheader);
+    }
+
+    /**
+     * Checks if the phi is a basic induction variable, updated once in each
+     * iteration by adding or subtracting a loop invariant
+     */
+    private InductionVariable basicInductionVariable(Instruction.Phi phi, int outsideIndex, int latchIndex,
+                                                     Map<Register, Instruction> defs, LoopNest loop, List<LoopNest> loops) {
+        if (!phi.isRegisterInput(latchIndex))
+            return null;
+        Instruction def = defs.get(phi.inputAsRegister(latchIndex));
+        while (def instanceof Instruction.Move move && move.from() instanceof Operand.RegisterOperand from)
+            def = defs.get(from.reg);
+        if (!(def instanceof Instruction.Binary binary) || inInnerLoop(def.block, loop, loops))
+            return null;
+        Operand init = phi.input(outsideIndex);
+        if (!(init instanceof Operand.RegisterOperand) && !(init instanceof Operand.ConstantOperand))
+            return null;
+        if (binary.binOp.equals("+") || binary.binOp.equals("-")) {
+            if (isRegister(binary.left(), phi.value()) && isInvariant(binary.right(), defs))
+                return new InductionVariable(phi.value(), init, binary.right(), binary.binOp, binary);
+            if (binary.binOp.equals("+") && isRegister(binary.right(), phi.value()) && isInvariant(binary.left(), defs))
+                return new InductionVariable(phi.value(), init, binary.left(), binary.binOp, binary);
+        }
+        return null;
+    }
+
+    /**
+     * Creates the induction variable for the result of the binary, a phi
+     * at the loop head whose initial value and step are computed in the
+     * preheader, and its update right after the update of the basic
+     * induction variable
+     */
+    private InductionVariable derive(Instruction.Binary binary, InductionVariable from, Operand invariant,
+                                     BasicBlock preheader, BasicBlock head, int outsideIndex, int latchIndex,
+                                     Map<Register, Instruction> defs, Set<Instruction> updates) {
+        EZType type = binary.def().type;
+        String derivedOp = binary.binOp;
+        Operand init = emit(preheader, derivedOp, from.init, invariant, type);
+        if (init instanceof Operand.ConstantOperand) {
+            // Phi inputs are registers
+            Register initReg = function.registerPool.newTempReg(type);
+            preheader.add(preheader.instructions.size() - 1, new Instruction.Move(init, new Operand.TempRegisterOperand(initReg)));
+            init = new Operand.TempRegisterOperand(initReg);
+        }
+        Operand step = derivedOp.equals("*") ? emit(preheader, "*", from.step, invariant, type) : from.step;
+        Register value = function.registerPool.newTempReg(type);
+        Register next = function.registerPool.newTempReg(type);
+        Register[] inputs = new Register[2];
+        inputs[outsideIndex] = register(init);
+        inputs[latchIndex] = next;
+        var phi = new Instruction.Phi(value, Arrays.asList(inputs));
+        head.add(0, phi);
+        var update = new Instruction.Binary(from.op, new Operand.TempRegisterOperand(next), new Operand.TempRegisterOperand(value), step);
+        BasicBlock block = from.update.block;
+        block.add(block.instructions.indexOf(from.update) + 1, update);
+        // The new registers vary in the loop
+        defs.put(value, phi);
+        defs.put(next, update);
+        updates.add(update);
+        return new InductionVariable(value, init, step, from, derivedOp, invariant);
+    }
+
+    /**
+     * Replaces the test of the basic induction variable against a loop
+     * invariant limit by a test of a derived induction variable, if the
+     * basic induction variable is not used for anything else
+     */
+    private void replaceTest(InductionVariable basic, Map<Register, InductionVariable> inductionVariables,
+                             BasicBlock head, int latchIndex, List<BasicBlock> blocks,
+                             Map<Register, Instruction> defs, BasicBlock preheader) {
+        Instruction.Binary test = findTest(basic, head, latchIndex, defs, false);
+        if (test == null || !blocks.contains(test.block))
+            return;
+        // The last one derived is usually the one used in the loop, the
+        // ones it was derived from are then left dead
+        InductionVariable derived = null;
+        for (InductionVariable iv : inductionVariables.values()) {
+            if (iv.basic == basic && scale(iv) != 0 && (derived == null || iv.value.id > derived.value.id)
+                    && cannotOverflow(basic, test, iv.derivedOps, iv.derivedOperands))
+                derived = iv;
+        }
+        if (derived == null)
+            return;
+        boolean swapped = !isRegister(test.left(), basic.value);
+        Operand limit = swapped ? test.left() : test.right();
+        EZType type = derived.value.type;
+        for (int i = 0; i < derived.derivedOps.size(); i++)
+            limit = emit(preheader, derived.derivedOps.get(i), limit, derived.derivedOperands.get(i), type);
+        String op = test.binOp;
+        if (swapped)
+            op = reverse(op);
+        // Multiplying by a negative number reverses the order
+        if (scale(derived) < 0)
+            op = reverse(op);
+        BasicBlock block = test.block;
+        block.update(block.instructions.indexOf(test),
+                new Instruction.Binary(op, test.result(), new Operand.TempRegisterOperand(derived.value), limit));
+        testsReplaced++;
+    }
+
+    /**
+     * Checks if the test of the basic induction variable can be replaced by
+     * a test of its derivation by the given operation, so that the basic
+     * induction variable is left dead
+     */
+    private boolean isTestReplaceable(InductionVariable basic, String op, Operand operand, BasicBlock head, int latchIndex,
+                                      List<BasicBlock> blocks, Map<Register, Instruction> defs) {
+        Instruction.Binary test = findTest(basic, head, latchIndex, defs, true);
+        return test != null && blocks.contains(test.block)
+                && cannotOverflow(basic, test, List.of(op), List.of(operand));
+    }
+
+    /**
+     * Checks that the test of the basic induction variable against its limit
+     * gives the same result as the test of the derived induction variable
+     * against the derived limit. The basic induction variable stays between
+     * its initial value and one step past the limit, and the derivation is
+     * monotonic, so it is enough that the derived values of these do not
+     * overflow, which we can only check if they are all constants.
+     */
+    private boolean cannotOverflow(InductionVariable basic, Instruction.Binary test, List<String> ops, List<Operand> operands) {
+        boolean swapped = !isRegister(test.left(), basic.value);
+        String op = swapped ? reverse(test.binOp) : test.binOp;
+        Long init = constantValue(basic.init);
+        Long step = constantValue(basic.step);
+        Long limit = constantValue(swapped ? test.left() : test.right());
+        if (init == null || step == null || limit == null)
+            return false;
+        List<Long> values = new ArrayList<>();
+        for (Operand operand : operands) {
+            Long value = constantValue(operand);
+            if (value == null)
+                return false;
+            values.add(value);
+        }
+        try {
+            long delta = basic.op.equals("+") ? step : Math.negateExact(step);
+            // The loop must end before the basic induction variable wraps around
+            boolean towardsLimit = switch (op) {
+                case "<", "<=" -> delta > 0;
+                case ">", ">=" -> delta < 0;
+                default -> false;
+            };
+            if (!towardsLimit)
+                return false;
+            for (long value : new long[] {init, limit, Math.addExact(limit, delta)}) {
+                for (int i = 0; i < ops.size(); i++) {
+                    value = switch (ops.get(i)) {
+                        case "*" -> Math.multiplyExact(value, values.get(i));
+                        case "+" -> Math.addExact(value, values.get(i));
+                        case "-" -> Math.subtractExact(value, values.get(i));
+                        default -> throw new IllegalStateException(ops.get(i));
+                    };
+                }
+            }
+            return true;
+        }
+        catch (ArithmeticException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The value of a constant, or of a register that is a copy of
+     * a constant, or null
+     */
+    private Long constantValue(Operand operand) {
+        if (operand instanceof Operand.ConstantOperand constant)
+            return constant.value;
+        if (!(operand instanceof Operand.RegisterOperand registerOperand))
+            return null;
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof Instruction.Move move && move.to().reg.equals(registerOperand.reg))
+                    return constantValue(move.from());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the test of the basic induction variable, if that is the only
+     * instruction using it apart from its update. If derivations is set,
+     * the derivations that strength reduction removes are allowed as uses
+     * too. Returns null if there is no such test.
+     */
+    private Instruction.Binary findTest(InductionVariable basic, BasicBlock head, int latchIndex,
+                                        Map<Register, Instruction> defs, boolean derivations) {
+        // The registers holding the updated value on its way to the phi
+        Set<Register> updated = new HashSet<>();
+        Instruction.Phi basicPhi = null;
+        for (Instruction.Phi phi : head.phis()) {
+            if (phi.value().equals(basic.value))
+                basicPhi = phi;
+        }
+        Instruction def = defs.get(basicPhi.inputAsRegister(latchIndex));
+        updated.add(basicPhi.inputAsRegister(latchIndex));
+        while (def instanceof Instruction.Move move && move.from() instanceof Operand.RegisterOperand from) {
+            updated.add(from.reg);
+            def = defs.get(from.reg);
+        }
+        Instruction.Binary test = null;
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.instructions) {
+                List<Register> uses = instruction instanceof Instruction.Phi phi
+                        ? Arrays.asList(phi.inputRegisters())
+                        : instruction.uses();
+                if (instruction == basic.update || instruction == basicPhi)
+                    continue;
+                if (instruction instanceof Instruction.Move move && move.to().reg != null
+                        && updated.contains(move.to().reg))
+                    continue;
+                if (derivations && isDerivation(instruction, basic.value, defs))
+                    continue;
+                for (Register use : uses) {
+                    if (updated.contains(use))
+                        return null;
+                    if (use.equals(basic.value)) {
+                        if (test != null || !isTest(instruction, basic.value, defs))
+                            return null;
+                        test = (Instruction.Binary) instruction;
+                    }
+                }
+            }
+        }
+        return test;
+    }
+
+    private static boolean isDerivation(Instruction instruction, Register value, Map<Register, Instruction> defs) {
+        if (!(instruction instanceof Instruction.Binary binary))
+            return false;
+        return switch (binary.binOp) {
+            case "*", "+" ->
+                    (isRegister(binary.left(), value) && isInvariant(binary.right(), defs))
+                    || (isRegister(binary.right(), value) && isInvariant(binary.left(), defs));
+            case "-" -> isRegister(binary.left(), value) && isInvariant(binary.right(), defs);
+            default -> false;
+        };
+    }
+
+    private static boolean isTest(Instruction instruction, Register value, Map<Register, Instruction> defs) {
+        if (!(instruction instanceof Instruction.Binary binary))
+            return false;
+        return switch (binary.binOp) {
+            case "<", "<=", ">", ">=", "==", "!=" ->
+                    (isRegister(binary.left(), value) && isInvariant(binary.right(), defs))
+                    || (isRegister(binary.right(), value) && isInvariant(binary.left(), defs));
+            default -> false;
+        };
+    }
+
+    /**
+     * The product of the constant factors of a derived induction
+     * variable, or 0 if a factor is not a constant or zero
+     */
+    private static long scale(InductionVariable iv) {
+        long scale = 1;
+        for (int i = 0; i < iv.derivedOps.size(); i++) {
+            if (iv.derivedOps.get(i).equals("*")) {
+                if (!(iv.derivedOperands.get(i) instanceof Operand.ConstantOperand constant) || constant.value == 0)
+                    return 0;
+                scale = constant.value < 0 ? -scale : scale;
+            }
+        }
+        return scale;
+    }
+
+    /**
+     * The comparison with the operands swapped
+     */
+    private static String reverse(String op) {
+        return switch (op) {
+            case "<" -> ">";
+            case "<=" -> ">=";
+            case ">" -> "<";
+            case ">=" -> "<=";
+            default -> op;
+        };
+    }
+
+    /**
+     * Adds the binary to the end of the preheader, or folds it if both
+     * operands are constants, or one is zero or the identity of the operation
+     */
+    private Operand emit(BasicBlock preheader, String op, Operand left, Operand right, EZType type) {
+        if (left instanceof Operand.ConstantOperand l && right instanceof Operand.ConstantOperand r) {
+            long value = switch (op) {
+                case "*" -> l.value * r.value;
+                case "+" -> l.value + r.value;
+                case "-" -> l.value - r.value;
+                default -> throw new IllegalStateException(op);
+            };
+            return new Operand.ConstantOperand(value, type);
+        }
+        if (op.equals("*") && (isConstant(left, 0) || isConstant(right, 0)))
+            return new Operand.ConstantOperand(0, type);
+        long identity = op.equals("*") ? 1 : 0;
+        if (isConstant(right, identity))
+            return left;
+        if (!op.equals("-") && isConstant(left, identity))
+            return right;
+        Register result = function.registerPool.newTempReg(type);
+        preheader.add(preheader.instructions.size() - 1,
+                new Instruction.Binary(op, new Operand.TempRegisterOperand(result), left, right));
+        return new Operand.TempRegisterOperand(result);
+    }
+
+    private void replaceAllUses(Register source, Register target) {
+        for (BasicBlock block : function.getBlocks()) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof Instruction.Phi phi)
+                    phi.replaceInput(source, target);
+                else
+                    instruction.replaceUse(source, target);
+            }
+        }
+    }
+
+    private static boolean isInductionVariable(Operand operand, Map<Register, InductionVariable> inductionVariables) {
+        return operand instanceof Operand.RegisterOperand registerOperand && inductionVariables.containsKey(registerOperand.reg);
+    }
+
+    private static boolean isInvariant(Operand operand, Map<Register, Instruction> defs) {
+        if (operand instanceof Operand.ConstantOperand)
+            return true;
+        return operand instanceof Operand.RegisterOperand registerOperand && !defs.containsKey(registerOperand.reg);
+    }
+
+    private static boolean isConstant(Operand operand, long value) {
+        return operand instanceof Operand.ConstantOperand constant && constant.value == value;
+    }
+
+    private static boolean isRegister(Operand operand, Register register) {
+        return operand instanceof Operand.RegisterOperand registerOperand && registerOperand.reg.equals(register);
+    }
+
+    private static Register register(Operand operand) {
+        return ((Operand.RegisterOperand) operand).reg;
+    }
+
+    /**
+     * Checks if the block is part of a loop nested in the given loop
+     */
+    private static boolean inInnerLoop(BasicBlock block, LoopNest loop, List<LoopNest> loops) {
+        for (LoopNest other : loops) {
+            if (other != loop && other._blocks.contains(block) && loop.contains(other))
+                return true;
+        }
+        return false;
+    }
+}
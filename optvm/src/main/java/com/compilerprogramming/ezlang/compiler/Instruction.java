@@ -9,23 +9,29 @@ import java.util.List;
 
 public abstract class Instruction {
 
-    static final int I_NOOP = 0;
-    static final int I_MOVE = 1;
-    static final int I_RET  = 2;
-    static final int I_UNARY = 3;
-    static final int I_BINARY = 4;
-    static final int I_BR = 5;
-    static final int I_CBR = 6;
-    static final int I_ARG = 7;
-    static final int I_CALL = 8;
-    static final int I_PHI = 9;
-    static final int I_NEW_ARRAY = 10;
-    static final int I_NEW_STRUCT = 11;
-    static final int I_ARRAY_STORE = 12;
-    static final int I_ARRAY_LOAD = 13;
-    static final int I_FIELD_GET = 14;
-    static final int I_FIELD_SET = 15;
-    static final int I_PARALLEL_COPY = 16;
+    public static final int I_NOOP = 0;
+    public static final int I_MOVE = 1;
+    public static final int I_RET  = 2;
+    public static final int I_UNARY = 3;
+    public static final int I_BINARY = 4;
+    public static final int I_BR = 5;
+    public static final int I_CBR = 6;
+    public static final int I_ARG = 7;
+    public static final int I_CALL = 8;
+    public static final int I_PHI = 9;
+    public static final int I_NEW_ARRAY = 10;
+    public static final int I_NEW_STRUCT = 11;
+    public static final int I_ARRAY_STORE = 12;
+    public static final int I_ARRAY_LOAD = 13;
+    public static final int I_FIELD_GET = 14;
+    public static final int I_FIELD_SET = 15;
+    public static final int I_PARALLEL_COPY = 16;
+    // Only appears in flat bytecode, marks the end of the function
+    public static final int I_EXIT = 17;
+    public static final int I_SPILL = 18;
+    public static final int I_RELOAD = 19;
+    public static final int I_NULL_CHECK = 20;
+    public static final int I_BOUNDS_CHECK = 21;
 
     public final int opcode;
     protected Operand.RegisterOperand def;
@@ -263,6 +269,49 @@ public abstract class Instruction {
                     .append(sourceOperand());
         }
     }
+    /**
+     * Fails if the struct or array is null. Only generated for values of
+     * nullable types, with the {@code CHECKS} option, in front of the
+     * field or element access it guards.
+     */
+    public static class NullCheck extends Instruction {
+        public NullCheck(Operand operand) {
+            super(I_NULL_CHECK, (Operand.RegisterOperand) null, operand);
+        }
+        public Operand operand() { return uses[0]; }
+        @Override
+        public StringBuilder toStr(StringBuilder sb) {
+            return sb.append("nullcheck ").append(operand());
+        }
+    }
+
+    /**
+     * Fails if the index is not within the array. A store may also append
+     * an element to the array, so for a store the index may be equal to
+     * the size of the array. Generated with the {@code CHECKS} option,
+     * in front of the element access it guards.
+     */
+    public static class BoundsCheck extends Instruction {
+        public final boolean isStore;
+        public BoundsCheck(Operand arrayOperand, Operand indexOperand, boolean isStore) {
+            super(I_BOUNDS_CHECK, (Operand.RegisterOperand) null, arrayOperand, indexOperand);
+            this.isStore = isStore;
+        }
+        public Operand arrayOperand() { return uses[0]; }
+        public Operand indexOperand() { return uses[1]; }
+        @Override
+        public StringBuilder toStr(StringBuilder sb) {
+            sb.append("boundscheck ")
+                    .append(arrayOperand())
+                    .append("[")
+                    .append(indexOperand())
+                    .append("]");
+            if (isStore)
+                sb.append(" store");
+            return sb;
+        }
+    }
+
     public static class Ret extends Instruction {
         public Ret(Operand value) {
             super(I_RET, (Operand.RegisterOperand) null, value);
@@ -467,6 +516,39 @@ public abstract class Instruction {
         }
     }
 
+    /**
+     * Stores a register in a slot of the spill area, inserted by the
+     * register allocator when it runs out of registers
+     */
+    public static class Spill extends Instruction {
+        public final int spillSlot;
+        public Spill(Operand.RegisterOperand from, int spillSlot) {
+            super(I_SPILL, (Operand.RegisterOperand) null, from);
+            this.spillSlot = spillSlot;
+        }
+        public Operand.RegisterOperand from() { return (Operand.RegisterOperand) uses[0]; }
+        @Override
+        public StringBuilder toStr(StringBuilder sb) {
+            return sb.append("spill[").append(spillSlot).append("] = ").append(from());
+        }
+    }
+
+    /**
+     * Loads a register from a slot of the spill area
+     */
+    public static class Reload extends Instruction {
+        public final int spillSlot;
+        public Reload(Operand.RegisterOperand to, int spillSlot) {
+            super(I_RELOAD, to);
+            this.spillSlot = spillSlot;
+        }
+        public Operand.RegisterOperand to() { return def; }
+        @Override
+        public StringBuilder toStr(StringBuilder sb) {
+            return sb.append(to()).append(" = spill[").append(spillSlot).append("]");
+        }
+    }
+
     public static class ArgInstruction extends Instruction {
         public ArgInstruction(Operand.RegisterOperand arg) {
             super(I_ARG, arg);
@@ -2,99 +2,231 @@ package com.compilerprogramming.ezlang.compiler;
 
 import java.util.*;
 
+/**
+ * Interference graph over register ids.
+ *
+ * Edges are held twice: in a triangular bit matrix, for constant time
+ * interference tests, and in an adjacency list per node, so that the
+ * neighbours of a node can be visited without scanning the matrix.
+ * The length of the adjacency list is the degree of the node, and is
+ * kept up to date as edges are added and nodes removed or renamed.
+ *
+ * Register ids are dense, so both structures are indexed by the id,
+ * and grow as nodes with larger ids are added. A node is in the graph
+ * once an edge to it has been added, until it is removed by subtract
+ * or rename.
+ */
 public class InterferenceGraph {
-    private Map<Integer, Set<Integer>> edges = new HashMap<>();
+    // Lower triangle of the adjacency matrix, bit (i,j) with i > j is at i*(i-1)/2+j
+    private long[] matrix;
+    // Neighbours of each node, the first degree[n] entries of adjacents[n] are used
+    private int[][] adjacents;
+    private int[] degree;
+    // Nodes in the graph
+    private final BitSet nodes;
 
-    private Set<Integer> addNode(Integer node) {
-        var set = edges.get(node);
-        if (set == null) {
-            set = new HashSet<>();
-            edges.put(node, set);
+    private static final int[] NO_ADJACENTS = new int[0];
+
+    public InterferenceGraph() {
+        this(16);
+    }
+
+    /**
+     * Creates a graph with room for nodes with ids below numNodes,
+     * the graph grows if larger ids are added
+     */
+    public InterferenceGraph(int numNodes) {
+        numNodes = Math.max(numNodes, 1);
+        this.matrix = new long[matrixWords(numNodes)];
+        this.adjacents = new int[numNodes][];
+        Arrays.fill(adjacents, NO_ADJACENTS);
+        this.degree = new int[numNodes];
+        this.nodes = new BitSet(numNodes);
+    }
+
+    private InterferenceGraph(InterferenceGraph other) {
+        this.matrix = other.matrix.clone();
+        this.adjacents = new int[other.adjacents.length][];
+        for (int n = 0; n < adjacents.length; n++) {
+            int[] list = other.adjacents[n];
+            adjacents[n] = list.length == 0 ? NO_ADJACENTS : Arrays.copyOf(list, other.degree[n]);
+        }
+        this.degree = other.degree.clone();
+        this.nodes = (BitSet) other.nodes.clone();
+    }
+
+    private static int matrixWords(int numNodes) {
+        long bits = (long) numNodes * (numNodes - 1) / 2;
+        return (int) ((bits + 63) >>> 6);
+    }
+
+    private static long bitIndex(int a, int b) {
+        int i = Math.max(a, b);
+        int j = Math.min(a, b);
+        return (long) i * (i - 1) / 2 + j;
+    }
+
+    private boolean testBit(int a, int b) {
+        long bit = bitIndex(a, b);
+        return (matrix[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    private void setBit(int a, int b) {
+        long bit = bitIndex(a, b);
+        matrix[(int) (bit >>> 6)] |= 1L << bit;
+    }
+
+    private void clearBit(int a, int b) {
+        long bit = bitIndex(a, b);
+        matrix[(int) (bit >>> 6)] &= ~(1L << bit);
+    }
+
+    private void ensureCapacity(int node) {
+        if (node < adjacents.length)
+            return;
+        int numNodes = Math.max(node + 1, adjacents.length * 2);
+        // Bit indices do not depend on the number of nodes, so the matrix just grows
+        matrix = Arrays.copyOf(matrix, matrixWords(numNodes));
+        int oldLength = adjacents.length;
+        adjacents = Arrays.copyOf(adjacents, numNodes);
+        Arrays.fill(adjacents, oldLength, numNodes, NO_ADJACENTS);
+        degree = Arrays.copyOf(degree, numNodes);
+    }
+
+    private void addAdjacent(int node, int adjacent) {
+        int[] list = adjacents[node];
+        int n = degree[node];
+        if (n == list.length)
+            adjacents[node] = list = Arrays.copyOf(list, Math.max(4, n * 2));
+        list[n] = adjacent;
+        degree[node] = n + 1;
+    }
+
+    private void removeAdjacent(int node, int adjacent) {
+        int[] list = adjacents[node];
+        int n = degree[node];
+        for (int i = 0; i < n; i++) {
+            if (list[i] == adjacent) {
+                // Order of neighbours is not significant
+                list[i] = list[n - 1];
+                degree[node] = n - 1;
+                return;
+            }
         }
-        return set;
     }
 
-    public void addEdge(Integer from, Integer to) {
+    private boolean contains(int node) {
+        return node >= 0 && nodes.get(node);
+    }
+
+    public void addEdge(int from, int to) {
         if (from == to) {
             return;
         }
-        var set1 = addNode(from);
-        var set2 = addNode(to);
-        set1.add(to);
-        set2.add(from);
+        ensureCapacity(Math.max(from, to));
+        nodes.set(from);
+        nodes.set(to);
+        if (testBit(from, to))
+            return;
+        setBit(from, to);
+        addAdjacent(from, to);
+        addAdjacent(to, from);
     }
 
     /**
      * Remove a node from the interference graph
      * deleting it from all adjacency lists
      */
-    public InterferenceGraph subtract(Integer node) {
-        edges.remove(node);
-        for (var key : edges.keySet()) {
-            var neighbours = edges.get(key);
-            neighbours.remove(key);
+    public InterferenceGraph subtract(int node) {
+        if (!contains(node))
+            return this;
+        int[] list = adjacents[node];
+        for (int i = 0; i < degree[node]; i++) {
+            int adjacent = list[i];
+            clearBit(node, adjacent);
+            removeAdjacent(adjacent, node);
         }
+        removeNode(node);
         return this;
     }
 
+    private void removeNode(int node) {
+        adjacents[node] = NO_ADJACENTS;
+        degree[node] = 0;
+        nodes.clear(node);
+    }
+
     /**
      * Duplicate an interference graph
      */
     public InterferenceGraph dup() {
-        var igraph = new InterferenceGraph();
-        igraph.edges = new HashMap<>();
-        for (var key : edges.keySet()) {
-            var neighbours = edges.get(key);
-            igraph.edges.put(key, new HashSet<>(neighbours));
-        }
-        return igraph;
+        return new InterferenceGraph(this);
     }
 
-    public boolean interfere(Integer from, Integer to) {
-        var set = edges.get(from);
-        return set != null && set.contains(to);
+    public boolean interfere(int from, int to) {
+        return from != to && contains(from) && contains(to) && testBit(from, to);
     }
 
     /**
      * The source is replaced by target in the graph.
      * All nodes that interfered with source are made to interfere with target.
      */
-    public void rename(Integer source, Integer target) {
-        // Move all interferences
-        var fromSet = edges.remove(source);
-        if (fromSet == null) {
+    public void rename(int source, int target) {
+        if (!contains(source)) {
             // FIXME figure out why
             // Test case testSSA21 / when run using Boissinot SSA Destruction without coalescing
             // This is eq() function in mergesort test case
             return;
         }
-        var toSet = edges.get(target);
-        if (toSet == null) {
+        if (!contains(target)) {
             //throw new RuntimeException("Cannot find edge " + target + " from " + source);
             return; // FIXME this is workaround to handle scenario where target is arg register but we need a better way
         }
-        toSet.addAll(fromSet);
-        // If any node interfered with from
-        // it should now interfere with to
-        for (var k: edges.keySet()) {
-            var set = edges.get(k);
-            if (set.contains(source)) {
-                set.remove(source);
-                if (k != target)
-                    set.add(target);
+        // Move all interferences
+        // If any node interfered with source
+        // it should now interfere with target
+        int[] list = adjacents[source];
+        for (int i = 0; i < degree[source]; i++) {
+            int adjacent = list[i];
+            clearBit(source, adjacent);
+            removeAdjacent(adjacent, source);
+            if (adjacent != target && !testBit(adjacent, target)) {
+                setBit(adjacent, target);
+                addAdjacent(adjacent, target);
+                addAdjacent(target, adjacent);
             }
         }
+        removeNode(source);
+    }
+
+    /**
+     * Number of neighbours of the node
+     */
+    public int degree(int node) {
+        return contains(node) ? degree[node] : 0;
     }
 
     /**
      * Get neighbours of the node
      * Chaitin: neighbors()
      */
-    public Set<Integer> neighbors(Integer node) {
-        var adjacents = edges.get(node);
-        if (adjacents == null)
-            adjacents = Collections.emptySet();
-        return adjacents;
+    public Set<Integer> neighbors(int node) {
+        if (!contains(node))
+            return Collections.emptySet();
+        Set<Integer> set = new HashSet<>();
+        int[] list = adjacents[node];
+        for (int i = 0; i < degree[node]; i++)
+            set.add(list[i]);
+        return set;
+    }
+
+    /**
+     * Neighbours of the node as an array, the array must not be modified
+     * and is only valid until the graph changes; only the first
+     * {@link #degree(int)} entries are neighbours.
+     */
+    int[] adjacents(int node) {
+        return contains(node) ? adjacents[node] : NO_ADJACENTS;
     }
 
     public static final class Edge {
@@ -122,10 +254,10 @@ public class InterferenceGraph {
 
     public Set<Edge> getEdges() {
         Set<Edge> all = new HashSet<>();
-        for (Integer from: edges.keySet()) {
-            var set  = edges.get(from);
-            for (Integer to: set) {
-                all.add(new Edge(from, to));
+        for (int from = nodes.nextSetBit(0); from >= 0; from = nodes.nextSetBit(from+1)) {
+            int[] list = adjacents[from];
+            for (int i = 0; i < degree[from]; i++) {
+                all.add(new Edge(from, list[i]));
             }
         }
         return all;
@@ -3,10 +3,9 @@ package com.compilerprogramming.ezlang.compiler;
 public class InterferenceGraphBuilder {
 
     public InterferenceGraph build(CompiledFunction function) {
-        InterferenceGraph graph = new InterferenceGraph();
+        InterferenceGraph graph = new InterferenceGraph(function.registerPool.numRegisters());
         // Calculate liveOut for all basic blocks
         function.livenessAnalysis();
-        System.out.println(function.toStr(new StringBuilder(), true));
         var blocks = BBHelper.findAllBlocks(function.entry);
         for (var b : blocks) {
             // Start with the set of live vars at the end of the block
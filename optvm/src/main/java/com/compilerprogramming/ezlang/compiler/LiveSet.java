@@ -4,6 +4,12 @@ import java.util.BitSet;
 import java.util.List;
 
 public class LiveSet extends BitSet {
+    /**
+     * Creates an empty set, that grows as registers are added
+     */
+    public LiveSet() {
+        super();
+    }
     public LiveSet(int numRegs) {
         super(numRegs);
     }
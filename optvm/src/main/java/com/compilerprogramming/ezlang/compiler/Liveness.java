@@ -1,6 +1,6 @@
 package com.compilerprogramming.ezlang.compiler;
 
-import java.util.List;
+import java.util.*;
 
 /**
  * Compute LiveOut for each Basic Block
@@ -22,35 +22,69 @@ import java.util.List;
  * Computing Liveness Sets for SSA-Form Programs
  * Florian Brandner, Benoit Boissinot, Alain Darte, Benoît Dupont de Dinechin, Fabrice Rastello
  *
- * The implementation is the unoptimized simple data analysis form.
- * However, we have a modification to ensure that if we see a block
- * which loops to itself and has Phi cycles, then the Phi is only added to
- * PhiDefs.
+ * The sets are computed by a worklist solver. Blocks are visited in
+ * reverse postorder on the reverse CFG, so that a block is mostly visited
+ * after its successors, and a block is only visited again when the
+ * live in set of one of its successors changed. We have a modification
+ * to ensure that if we see a block which loops to itself and has Phi
+ * cycles, then the Phi is only added to PhiDefs.
+ *
+ * Live sets are not sized by the number of registers, a set only grows
+ * to hold the largest register id added to it. The solver reuses a spare
+ * set rather than allocating while iterating. The number of sets
+ * allocated and of block visits are available after the analysis.
  */
 public class Liveness {
 
+    // Blocks in the order they are visited
+    private final List<BasicBlock> blocks;
+    private int allocatedSets;
+    private int blockVisits;
+
     public Liveness(CompiledFunction function) {
         // EaC states that it is most efficient to do RPO on reverse CFG.
         // The problem is that if there are infinite loops, we will not visit all basic blocks
         // if we started at the exit block (this could be solved by adding artificial edges from infinite loop
-        // to exit block, but we do not do that yet).
-        List<BasicBlock> blocks = BBHelper.findAllBlocksPostOrderForwardCFG(function);
-        RegisterPool regPool = function.registerPool;
-        initBlocks(regPool, blocks);
+        // to exit block, but we do not do that yet), so blocks that cannot reach the exit
+        // are visited last, in postorder on the forward CFG.
+        blocks = visitOrder(function);
+        initBlocks(blocks);
         init(blocks);
         computeLiveness(blocks);
         function.hasLiveness = true;
     }
 
-    private void initBlocks(RegisterPool regPool, List<BasicBlock> blocks) {
-        int numRegisters = regPool.numRegisters();
+    private static List<BasicBlock> visitOrder(CompiledFunction function) {
+        List<BasicBlock> forward = BBHelper.findAllBlocksPostOrderForwardCFG(function);
+        Set<BasicBlock> reachable = new HashSet<>(forward);
+        List<BasicBlock> order = new ArrayList<>(forward.size());
+        if (reachable.contains(function.exit)) {
+            for (BasicBlock block: BBHelper.findAllBlocksReversePostOrderReverseCFG(function)) {
+                // Skip unreachable predecessors
+                if (reachable.remove(block))
+                    order.add(block);
+            }
+        }
+        for (BasicBlock block: forward) {
+            if (reachable.contains(block))
+                order.add(block);
+        }
+        return order;
+    }
+
+    private LiveSet newSet() {
+        allocatedSets++;
+        return new LiveSet();
+    }
+
+    private void initBlocks(List<BasicBlock> blocks) {
         for (BasicBlock block : blocks) {
-            block.UEVar = new LiveSet(numRegisters);
-            block.varKill = new LiveSet(numRegisters);
-            block.liveOut = new LiveSet(numRegisters);
-            block.liveIn = new LiveSet(numRegisters);
-            block.phiUses = new LiveSet(numRegisters);
-            block.phiDefs = new LiveSet(numRegisters);
+            block.UEVar = newSet();
+            block.varKill = newSet();
+            block.liveOut = newSet();
+            block.liveIn = newSet();
+            block.phiUses = newSet();
+            block.phiDefs = newSet();
         }
     }
 
@@ -111,13 +145,33 @@ public class Liveness {
     }
 
     private void computeLiveness(List<BasicBlock> blocks) {
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (BasicBlock block : blocks) {
-                if (recomputeLiveOut(block))
-                    changed = true;
+        Map<BasicBlock, Integer> index = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++)
+            index.put(blocks.get(i), i);
+        // Indices of blocks to visit, initially all blocks
+        BitSet worklist = new BitSet(blocks.size());
+        worklist.set(0, blocks.size());
+        LiveSet spare = newSet();
+        int i = 0;
+        while (!worklist.isEmpty()) {
+            // Visit pending blocks in order, wrapping around at the end
+            i = worklist.nextSetBit(i);
+            if (i < 0)
+                i = worklist.nextSetBit(0);
+            worklist.clear(i);
+            BasicBlock block = blocks.get(i);
+            blockVisits++;
+            LiveSet oldLiveIn = block.liveIn;
+            recomputeLiveOut(block, spare);
+            if (!oldLiveIn.equals(block.liveIn)) {
+                for (BasicBlock pred: block.predecessors) {
+                    Integer p = index.get(pred);
+                    if (p != null)
+                        worklist.set(p);
+                }
             }
+            // The old live in set is not referenced anymore
+            spare = oldLiveIn;
         }
     }
 
@@ -133,20 +187,37 @@ public class Liveness {
     //   it is not live-in for B_0.
     // This corresponds to placing a copy of a_i to a_0 on each edge from B_i to B_0.
     //
-    private boolean recomputeLiveOut(BasicBlock block) {
-        LiveSet oldLiveIn = block.liveIn.dup();
+    private void recomputeLiveOut(BasicBlock block, LiveSet liveIn) {
         // LiveOut(B) = U all S  (LiveIn(S) \ PhiDefs(S)) U PhiUses
-        block.liveOut.clear();
+        LiveSet liveOut = block.liveOut;
+        liveOut.clear();
         for (BasicBlock s: block.successors) {
-            LiveSet t = s.liveIn.dup().subtract(s.phiDefs);
-            block.liveOut.union(t);
+            // LiveIn(S) \ PhiDefs(S), using liveIn as scratch
+            liveIn.clear();
+            liveOut.union(liveIn.union(s.liveIn).subtract(s.phiDefs));
         }
-        block.liveOut.union(block.phiUses);
+        liveOut.union(block.phiUses);
         // LiveIn(B) = PhiDefs(B) U UpwardExposed(B) U (LiveOut(B) \ Defs(B))
-        LiveSet t = block.liveOut.dup().subtract(block.varKill);
-        block.liveIn = t.union(block.phiDefs).union(block.UEVar);
-        // we check changes to both live in and out sets to
-        // make the code robust against order of traversal
-        return  !oldLiveIn.equals(block.liveIn);
+        liveIn.clear();
+        block.liveIn = liveIn.union(liveOut).subtract(block.varKill).union(block.phiDefs).union(block.UEVar);
+    }
+
+    /**
+     * Number of live sets allocated by the analysis
+     */
+    public int allocatedSets() {
+        return allocatedSets;
+    }
+
+    /**
+     * Number of times a block's live sets were computed,
+     * at least once per block
+     */
+    public int blockVisits() {
+        return blockVisits;
+    }
+
+    public int numBlocks() {
+        return blocks.size();
     }
 }
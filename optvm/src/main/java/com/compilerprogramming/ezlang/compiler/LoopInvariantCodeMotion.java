@@ -0,0 +1,231 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loop invariant code motion on SSA form.
+ *
+ * Loops are found with {@link LoopFinder}, and processed innermost first,
+ * so that an expression hoisted out of an inner loop can be hoisted again
+ * out of the enclosing loop. An instruction is invariant if every register
+ * it uses is defined outside the loop, or by an instruction that is itself
+ * invariant. Invariant instructions are moved to the end of the loop's
+ * preheader, the block that enters the loop head from outside the loop;
+ * a preheader is created if there is no such block. Since the preheader
+ * dominates the loop, and the registers used are defined before it, the
+ * moved instructions still dominate their uses, and SSA remains valid.
+ *
+ * Copies, unary and binary operations are hoisted from anywhere in the
+ * loop, they cannot fail, so it does not matter if they would not have
+ * executed. Instructions that can fail, i.e. field and array loads,
+ * division, and null and bounds checks, are only hoisted from blocks that
+ * dominate all exits of the loop, as these are executed whenever the loop
+ * is entered. A check comes before the load it guards, so it is found
+ * invariant first, and stays in front of it. A load is
+ * also required to read memory the loop does not write: a field load
+ * is not hoisted if the loop stores to that field of any struct, an array
+ * load is not hoisted if the loop stores to any array, and no load is
+ * hoisted out of a loop that contains a call.
+ *
+ * See section 10.3.1 of Engineering a Compiler.
+ */
+public class LoopInvariantCodeMotion {
+
+    private final CompiledFunction function;
+    private int instructionsHoisted;
+
+    public LoopInvariantCodeMotion(CompiledFunction function) {
+        this.function = function;
+    }
+
+    public boolean apply(EnumSet<Options> options) {
+        if (options.contains(Options.LICM)) {
+            instructionsHoisted = 0;
+            new DominatorTree(function.entry);
+            List<LoopNest> loops = LoopFinder.mergeLoopsWithSameHead(LoopFinder.findLoops(function.getBlocks()));
+            // Inner loops are strict subsets of the loops enclosing them
+            loops.sort(Comparator.comparingInt((LoopNest loop) -> loop._blocks.size())
+                    .thenComparingInt(loop -> loop._loopHead.bid));
+            for (LoopNest loop : loops)
+                hoist(loop, loops);
+            if (options.contains(Options.DUMP_LICM_POSTAPPLY)) function.dumpIR(false, "Post LICM\n");
+        }
+        return instructionsHoisted > 0;
+    }
+
+    /**
+     * Number of instructions moved out of loops, an instruction moved
+     * out of two nested loops is counted twice
+     */
+    public int instructionsHoisted() {
+        return instructionsHoisted;
+    }
+
+    private void hoist(LoopNest loop, List<LoopNest> loops) {
+        if (loop._loopHead == function.entry)
+            return;
+        List<BasicBlock> blocks = new ArrayList<>(loop._blocks);
+        blocks.sort(Comparator.comparingInt(block -> block.bid));
+        Set<Register> definedInLoop = new HashSet<>();
+        List<BasicBlock> exiting = new ArrayList<>();
+        boolean hasCall = false;
+        boolean hasArrayStore = false;
+        Set<String> storedFields = new HashSet<>();
+        for (BasicBlock block : blocks) {
+            for (Instruction instruction : block.instructions) {
+                if (instruction instanceof Instruction.Phi phi)
+                    definedInLoop.add(phi.value());
+                else if (instruction.definesVar())
+                    definedInLoop.add(instruction.def());
+                if (instruction instanceof Instruction.Call)
+                    hasCall = true;
+                else if (instruction instanceof Instruction.ArrayStore)
+                    hasArrayStore = true;
+                else if (instruction instanceof Instruction.SetField setField)
+                    storedFields.add(field(setField.fieldName, setField.fieldIndex));
+            }
+            for (BasicBlock successor : block.successors) {
+                if (!loop._blocks.contains(successor)) {
+                    exiting.add(block);
+                    break;
+                }
+            }
+        }
+        // Find invariant instructions until there are no more, the order
+        // in which they are found respects the dependencies between them
+        List<Instruction> invariants = new ArrayList<>();
+        Set<Instruction> found = new HashSet<>();
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (BasicBlock block : blocks) {
+                // A loop without exits may never get to blocks other than the head
+                boolean alwaysExecuted = exiting.isEmpty() ? block == loop._loopHead : dominatesAll(block, exiting);
+                for (Instruction instruction : block.instructions) {
+                    if (found.contains(instruction) || !isInvariant(instruction, definedInLoop))
+                        continue;
+                    if (!canHoist(instruction, alwaysExecuted, hasCall, hasArrayStore, storedFields))
+                        continue;
+                    found.add(instruction);
+                    invariants.add(instruction);
+                    definedInLoop.remove(instruction.def());
+                    changed = true;
+                }
+            }
+        }
+        if (invariants.isEmpty())
+            return;
+        BasicBlock preheader = preheader(function, loop, loops);
+        if (preheader == null)
+            return;
+        for (BasicBlock block : blocks)
+            block.instructions.removeIf(found::contains);
+        for (Instruction instruction : invariants) {
+            // Before the jump to the loop head
+            preheader.add(preheader.instructions.size() - 1, instruction);
+        }
+        instructionsHoisted += invariants.size();
+    }
+
+    private static boolean isInvariant(Instruction instruction, Set<Register> definedInLoop) {
+        if (!(instruction instanceof Instruction.Move
+                || instruction instanceof Instruction.Unary
+                || instruction instanceof Instruction.Binary
+                || instruction instanceof Instruction.GetField
+                || instruction instanceof Instruction.ArrayLoad
+                || instruction instanceof Instruction.NullCheck
+                || instruction instanceof Instruction.BoundsCheck))
+            return false;
+        for (Register use : instruction.uses()) {
+            if (definedInLoop.contains(use))
+                return false;
+        }
+        return true;
+    }
+
+    private static boolean canHoist(Instruction instruction, boolean alwaysExecuted,
+                                    boolean hasCall, boolean hasArrayStore, Set<String> storedFields) {
+        if (instruction instanceof Instruction.GetField getField)
+            return alwaysExecuted && !hasCall
+                    && !storedFields.contains(field(getField.fieldName, getField.fieldIndex));
+        if (instruction instanceof Instruction.ArrayLoad)
+            return alwaysExecuted && !hasCall && !hasArrayStore;
+        if (instruction instanceof Instruction.NullCheck)
+            return alwaysExecuted;
+        if (instruction instanceof Instruction.BoundsCheck)
+            // Arrays grow when stored to
+            return alwaysExecuted && !hasCall && !hasArrayStore;
+        if (instruction instanceof Instruction.Binary binary
+                && (binary.binOp.equals("/") || binary.binOp.equals("%")))
+            // Division by zero fails
+            return alwaysExecuted
+                    || (binary.right() instanceof Operand.ConstantOperand constant && constant.value != 0);
+        return true;
+    }
+
+    private static String field(String fieldName, int fieldIndex) {
+        return fieldName + "#" + fieldIndex;
+    }
+
+    private static boolean dominatesAll(BasicBlock block, List<BasicBlock> blocks) {
+        for (BasicBlock other : blocks) {
+            if (!block.dominates(other))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the block that enters the loop from outside, creating it if
+     * there is no predecessor of the loop head that only jumps to the head.
+     * Returns null if a preheader would need phis, i.e. when the loop head
+     * has phis and is entered from more than one block outside the loop,
+     * or if the loop cannot be entered.
+     */
+    static BasicBlock preheader(CompiledFunction function, LoopNest loop, List<LoopNest> loops) {
+        BasicBlock head = loop._loopHead;
+        List<BasicBlock> outside = new ArrayList<>();
+        for (BasicBlock pred : head.predecessors) {
+            if (!loop._blocks.contains(pred))
+                outside.add(pred);
+        }
+        if (outside.isEmpty())
+            return null;
+        if (outside.size() == 1 && outside.getFirst().successors.size() == 1)
+            return outside.getFirst();
+        if (outside.size() != 1 && !head.phis().isEmpty())
+            return null;
+        BasicBlock preheader = function.createBlock();
+        // The first block outside takes the place of the preheader among
+        // the predecessors of the head, so that the inputs of phis stay in order
+        head.predecessors.set(head.whichPred(outside.getFirst()), preheader);
+        for (int i = 1; i < outside.size(); i++)
+            head.predecessors.remove(outside.get(i));
+        preheader.successors.add(head);
+        for (BasicBlock pred : outside) {
+            pred.successors.set(pred.whichSucc(head), preheader);
+            preheader.predecessors.add(pred);
+            int last = pred.instructions.size() - 1;
+            Instruction terminator = pred.instructions.get(last);
+            if (terminator instanceof Instruction.Jump)
+                pred.update(last, new Instruction.Jump(preheader));
+            else if (terminator instanceof Instruction.ConditionalBranch cbr)
+                pred.update(last, new Instruction.ConditionalBranch(pred, cbr.condition(),
+                        cbr.trueBlock == head ? preheader : cbr.trueBlock,
+                        cbr.falseBlock == head ? preheader : cbr.falseBlock));
+        }
+        preheader.add(new Instruction.Jump(head));
+        // The preheader is part of the loops enclosing this one
+        for (LoopNest other : loops) {
+            if (other != loop && other._blocks.contains(head))
+                other._blocks.add(preheader);
+        }
+        new DominatorTree(function.entry);
+        return preheader;
+    }
+}
@@ -0,0 +1,172 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.exceptions.CompilerException;
+import com.compilerprogramming.ezlang.types.Symbol;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the {@link Optimizer} over all the functions of a module.
+ *
+ * All phases of the optimizer only look at the function being optimized,
+ * so functions can be optimized concurrently. Each function is a separate
+ * task on a ForkJoinPool with the requested parallelism. With a parallelism
+ * of 1 the functions are optimized one after the other on the calling thread.
+ *
+ * The dump options print as each phase runs, so the output of concurrently
+ * optimized functions is interleaved.
+ */
+public class ModuleOptimizer {
+
+    private final int parallelism;
+    // Number of registers available to the register allocator
+    private final int numRegisters;
+
+    public ModuleOptimizer(int parallelism) {
+        this(parallelism, 64);
+    }
+
+    public ModuleOptimizer(int parallelism, int numRegisters) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1, got " + parallelism);
+        if (numRegisters < 1)
+            throw new IllegalArgumentException("Number of registers must be at least 1, got " + numRegisters);
+        this.parallelism = parallelism;
+        this.numRegisters = numRegisters;
+    }
+
+    /**
+     * Returns the compiled functions defined in the type dictionary
+     */
+    public static List<CompiledFunction> functions(TypeDictionary typeDictionary) {
+        List<CompiledFunction> functions = new ArrayList<>();
+        for (Symbol symbol: typeDictionary.getLocalSymbols()) {
+            if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol
+                    && functionSymbol.code() instanceof CompiledFunction function)
+                functions.add(function);
+        }
+        return functions;
+    }
+
+    public Report optimize(TypeDictionary typeDictionary, EnumSet<Options> options) {
+        return optimize(functions(typeDictionary), options);
+    }
+
+    public Report optimize(List<CompiledFunction> functions, EnumSet<Options> options) {
+        long start = System.nanoTime();
+        List<Optimizer> optimizers = new ArrayList<>();
+        if (parallelism == 1 || functions.size() < 2) {
+            Optimizer optimizer = new Optimizer(numRegisters);
+            for (CompiledFunction function: functions)
+                optimizer.optimize(function, options);
+            optimizers.add(optimizer);
+        }
+        else {
+            List<Callable<Optimizer>> tasks = new ArrayList<>();
+            for (CompiledFunction function: functions) {
+                tasks.add(() -> {
+                    Optimizer optimizer = new Optimizer(numRegisters);
+                    optimizer.optimize(function, options);
+                    return optimizer;
+                });
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (Future<Optimizer> future: pool.invokeAll(tasks))
+                    optimizers.add(future.get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompilerException("Interrupted while optimizing", e);
+            }
+            catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException re)
+                    throw re;
+                if (e.getCause() instanceof Error error)
+                    throw error;
+                throw new CompilerException("Optimization failed", e.getCause());
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        // Optimizers are in function order, so are the merged metrics
+        OptimizerMetrics metrics = new OptimizerMetrics();
+        for (Optimizer optimizer: optimizers)
+            metrics.addAll(optimizer.metrics());
+        return new Report(parallelism, functions.size(), wallNanos, metrics);
+    }
+
+    /**
+     * Timings of a module optimization. The phase times are summed over all
+     * functions, so their total is roughly what optimizing the functions one
+     * after the other would take; the difference to the wall-clock time is
+     * the time saved by running in parallel. The phase times are elapsed
+     * times, so with a parallelism above the number of available processors
+     * they include time spent waiting for a processor, and overstate the
+     * time saved.
+     */
+    public static class Report {
+        public final int parallelism;
+        public final int functions;
+        public final long wallNanos;
+        public final OptimizerMetrics metrics;
+
+        public Report(int parallelism, int functions, long wallNanos, OptimizerMetrics metrics) {
+            this.parallelism = parallelism;
+            this.functions = functions;
+            this.wallNanos = wallNanos;
+            this.metrics = metrics;
+        }
+
+        public long phaseNanos(Optimizer.Phase phase) {
+            return metrics.phaseNanos(phase);
+        }
+
+        /**
+         * Sum of the time spent in all phases by all functions
+         */
+        public long serialNanos() {
+            long total = 0;
+            for (Optimizer.Phase phase: Optimizer.Phase.values())
+                total += phaseNanos(phase);
+            return total;
+        }
+
+        public long savedNanos() {
+            return serialNanos() - wallNanos;
+        }
+
+        /**
+         * Time saved in a phase, assuming that parallel execution
+         * speeds up all phases equally
+         */
+        public long savedNanos(Optimizer.Phase phase) {
+            long serial = serialNanos();
+            return serial == 0 ? 0 : savedNanos() * phaseNanos(phase) / serial;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d functions, parallelism %d: wall %.3f ms, serial %.3f ms, saved %.3f ms%n",
+                    functions, parallelism, millis(wallNanos), millis(serialNanos()), millis(savedNanos())));
+            for (Optimizer.Phase phase: Optimizer.Phase.values())
+                sb.append(String.format("  %-10s %10.3f ms, saved %10.3f ms%n",
+                        phase, millis(phaseNanos(phase)), millis(savedNanos(phase))));
+            return sb.toString();
+        }
+
+        private static double millis(long nanos) {
+            return nanos / 1_000_000.0;
+        }
+    }
+}
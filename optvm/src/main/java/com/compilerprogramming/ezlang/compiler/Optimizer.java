@@ -4,21 +4,139 @@ import java.util.EnumSet;
 
 public class Optimizer {
 
+    /**
+     * The phases of the optimizer, in the order they run
+     */
+    public enum Phase {
+        ENTER_SSA,
+        SCCP,
+        CCP,
+        GVN,
+        RCE,
+        LICM,
+        IVSR,
+        DCE,
+        EXIT_SSA,
+        REGALLOC
+    }
+
+    // Metrics of all functions optimized
+    private final OptimizerMetrics metrics = new OptimizerMetrics();
+    // Number of registers available to the register allocator
+    private final int numRegisters;
+
+    public Optimizer() {
+        this(64);
+    }
+
+    /**
+     * @param numRegisters Registers available to the register allocator, this
+     *                     caps the frame size, registers that do not fit are spilled
+     */
+    public Optimizer(int numRegisters) {
+        if (numRegisters < 1)
+            throw new IllegalArgumentException("Number of registers must be at least 1, got " + numRegisters);
+        this.numRegisters = numRegisters;
+    }
+
     public void optimize(CompiledFunction function, EnumSet<Options> options) {
+        var functionMetrics = new OptimizerMetrics.FunctionMetrics(function.functionType.name);
         if (options.contains(Options.OPTIMIZE)) {
+            var phase = functionMetrics.begin(Phase.ENTER_SSA, function);
+            long start = System.nanoTime();
             if (!function.isSSA)
                 new EnterSSA(function, options);
+            phase.finish(function, System.nanoTime() - start);
             if (options.contains(Options.SCCP)) {
-                new SparseConditionalConstantPropagation().constantPropagation(function).apply(options);
-                if (new ConstantComparisonPropagation(function).apply(options)) {
+                sccp(function, options, functionMetrics);
+                phase = functionMetrics.begin(Phase.CCP, function);
+                start = System.nanoTime();
+                boolean changed = new ConstantComparisonPropagation(function).apply(options);
+                phase.finish(function, System.nanoTime() - start);
+                if (changed) {
                     // Run SCCP again
                     // We could repeat this until no further changes occur
-                    new SparseConditionalConstantPropagation().constantPropagation(function).apply(options);
+                    sccp(function, options, functionMetrics);
                 }
             }
+            if (options.contains(Options.GVN)) {
+                phase = functionMetrics.begin(Phase.GVN, function);
+                start = System.nanoTime();
+                var gvn = new GlobalValueNumbering(function);
+                gvn.apply(options);
+                phase.finish(function, System.nanoTime() - start);
+                phase.redundanciesRemoved(gvn.redundanciesRemoved());
+            }
+            if (options.contains(Options.RCE)) {
+                phase = functionMetrics.begin(Phase.RCE, function);
+                start = System.nanoTime();
+                var rce = new RedundantCheckElimination(function);
+                rce.apply(options);
+                phase.finish(function, System.nanoTime() - start);
+                phase.checksRemoved(rce.checksRemoved());
+            }
+            if (options.contains(Options.LICM)) {
+                phase = functionMetrics.begin(Phase.LICM, function);
+                start = System.nanoTime();
+                var licm = new LoopInvariantCodeMotion(function);
+                licm.apply(options);
+                phase.finish(function, System.nanoTime() - start);
+                phase.instructionsHoisted(licm.instructionsHoisted());
+            }
+            if (options.contains(Options.IVSR)) {
+                phase = functionMetrics.begin(Phase.IVSR, function);
+                start = System.nanoTime();
+                var ivsr = new InductionVariableStrengthReduction(function);
+                ivsr.apply(options);
+                phase.finish(function, System.nanoTime() - start);
+                phase.strengthReductions(ivsr.strengthReductions());
+                phase.testsReplaced(ivsr.testsReplaced());
+            }
+            if (options.contains(Options.DCE)) {
+                phase = functionMetrics.begin(Phase.DCE, function);
+                start = System.nanoTime();
+                var dce = new DeadCodeElimination(function);
+                dce.apply(options);
+                phase.finish(function, System.nanoTime() - start);
+                phase.deadInstructionsRemoved(dce.instructionsRemoved());
+            }
+            phase = functionMetrics.begin(Phase.EXIT_SSA, function);
+            start = System.nanoTime();
             new ExitSSA(function, options);
+            phase.finish(function, System.nanoTime() - start);
+        }
+        if (options.contains(Options.REGALLOC)) {
+            var phase = functionMetrics.begin(Phase.REGALLOC, function);
+            long start = System.nanoTime();
+            var allocator = new ChaitinGraphColoringRegisterAllocator();
+            allocator.assignRegisters(function, numRegisters, options);
+            phase.finish(function, System.nanoTime() - start);
+            phase.copiesCoalesced(allocator.copiesCoalesced());
+            phase.registersSpilled(allocator.registersSpilled());
         }
-        if (options.contains(Options.REGALLOC))
-            new ChaitinGraphColoringRegisterAllocator().assignRegisters(function, 64, options);
+        functionMetrics.finish(function);
+        metrics.add(functionMetrics);
+    }
+
+    private void sccp(CompiledFunction function, EnumSet<Options> options, OptimizerMetrics.FunctionMetrics functionMetrics) {
+        var phase = functionMetrics.begin(Phase.SCCP, function);
+        long start = System.nanoTime();
+        var sccp = new SparseConditionalConstantPropagation().constantPropagation(function).apply(options);
+        phase.finish(function, System.nanoTime() - start);
+        phase.constantsFound(sccp.constantsFound());
+    }
+
+    /**
+     * Time spent in the phase in nanoseconds, over all functions optimized so far
+     */
+    public long phaseNanos(Phase phase) {
+        return metrics.phaseNanos(phase);
+    }
+
+    /**
+     * Per function and per phase metrics of all functions optimized so far
+     */
+    public OptimizerMetrics metrics() {
+        return metrics;
     }
 }
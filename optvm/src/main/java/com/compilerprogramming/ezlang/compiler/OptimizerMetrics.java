@@ -0,0 +1,300 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Metrics collected by the {@link Optimizer}, per function and per phase.
+ *
+ * Each run of a phase on a function is recorded separately, in the order
+ * the phases ran, so a phase that runs more than once (SCCP is repeated
+ * when CCP makes changes) appears more than once. The instruction, block
+ * and phi counts are taken just before and just after the phase, outside
+ * of the timed region.
+ *
+ * The metrics can be exported as JSON with {@link #toJson()}.
+ */
+public class OptimizerMetrics {
+
+    private final List<FunctionMetrics> functions = new ArrayList<>();
+
+    public List<FunctionMetrics> functions() {
+        return Collections.unmodifiableList(functions);
+    }
+
+    void add(FunctionMetrics function) {
+        functions.add(function);
+    }
+
+    void addAll(OptimizerMetrics other) {
+        functions.addAll(other.functions);
+    }
+
+    /**
+     * Time spent in the phase in nanoseconds, over all functions
+     */
+    public long phaseNanos(Optimizer.Phase phase) {
+        long total = 0;
+        for (FunctionMetrics function: functions)
+            total += function.phaseNanos(phase);
+        return total;
+    }
+
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"functions\":[");
+        for (int i = 0; i < functions.size(); i++) {
+            if (i > 0) sb.append(',');
+            functions.get(i).toJson(sb);
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return toJson();
+    }
+
+    public static class FunctionMetrics {
+        public final String name;
+        private final List<PhaseMetrics> phases = new ArrayList<>();
+        private int frameSize;
+        private int spillSize;
+
+        public FunctionMetrics(String name) {
+            this.name = name;
+        }
+
+        public List<PhaseMetrics> phases() {
+            return Collections.unmodifiableList(phases);
+        }
+
+        /**
+         * Frame size of the function after all phases ran
+         */
+        public int frameSize() {
+            return frameSize;
+        }
+
+        /**
+         * Slots of the spill area used by the function
+         */
+        public int spillSize() {
+            return spillSize;
+        }
+
+        public long phaseNanos(Optimizer.Phase phase) {
+            long total = 0;
+            for (PhaseMetrics metrics: phases) {
+                if (metrics.phase == phase)
+                    total += metrics.nanos();
+            }
+            return total;
+        }
+
+        PhaseMetrics begin(Optimizer.Phase phase, CompiledFunction function) {
+            PhaseMetrics metrics = new PhaseMetrics(phase, function);
+            phases.add(metrics);
+            return metrics;
+        }
+
+        void finish(CompiledFunction function) {
+            frameSize = function.frameSize();
+            spillSize = function.spillSize();
+        }
+
+        void toJson(StringBuilder sb) {
+            sb.append("{\"name\":");
+            quote(sb, name);
+            sb.append(",\"frameSize\":").append(frameSize);
+            sb.append(",\"spillSize\":").append(spillSize);
+            sb.append(",\"phases\":[");
+            for (int i = 0; i < phases.size(); i++) {
+                if (i > 0) sb.append(',');
+                phases.get(i).toJson(sb);
+            }
+            sb.append("]}");
+        }
+    }
+
+    public static class PhaseMetrics {
+        public final Optimizer.Phase phase;
+        private long nanos;
+        private final int instructionsBefore;
+        private final int blocksBefore;
+        private final int phisBefore;
+        private int instructionsAfter;
+        private int blocksAfter;
+        private int phisAfter;
+        private int constantsFound;
+        private int redundanciesRemoved;
+        private int checksRemoved;
+        private int instructionsHoisted;
+        private int strengthReductions;
+        private int testsReplaced;
+        private int deadInstructionsRemoved;
+        private int copiesCoalesced;
+        private int registersSpilled;
+
+        PhaseMetrics(Optimizer.Phase phase, CompiledFunction function) {
+            this.phase = phase;
+            this.instructionsBefore = instructions(function);
+            this.blocksBefore = blocks(function);
+            this.phisBefore = phis(function);
+        }
+
+        void finish(CompiledFunction function, long nanos) {
+            this.nanos = nanos;
+            this.instructionsAfter = instructions(function);
+            this.blocksAfter = blocks(function);
+            this.phisAfter = phis(function);
+        }
+
+        void constantsFound(int count) {
+            constantsFound = count;
+        }
+
+        void redundanciesRemoved(int count) {
+            redundanciesRemoved = count;
+        }
+
+        void checksRemoved(int count) {
+            checksRemoved = count;
+        }
+
+        void instructionsHoisted(int count) {
+            instructionsHoisted = count;
+        }
+
+        void strengthReductions(int count) {
+            strengthReductions = count;
+        }
+
+        void testsReplaced(int count) {
+            testsReplaced = count;
+        }
+
+        void deadInstructionsRemoved(int count) {
+            deadInstructionsRemoved = count;
+        }
+
+        void copiesCoalesced(int count) {
+            copiesCoalesced = count;
+        }
+
+        void registersSpilled(int count) {
+            registersSpilled = count;
+        }
+
+        public long nanos() { return nanos; }
+        public int instructionsBefore() { return instructionsBefore; }
+        public int instructionsAfter() { return instructionsAfter; }
+        public int blocksBefore() { return blocksBefore; }
+        public int blocksAfter() { return blocksAfter; }
+        /**
+         * Phis are only inserted by entering SSA, and only removed
+         * by the other phases, so the change in the number of phis
+         * is the number inserted or removed.
+         */
+        public int phisInserted() { return Math.max(0, phisAfter - phisBefore); }
+        public int phisRemoved() { return Math.max(0, phisBefore - phisAfter); }
+        /**
+         * Definitions replaced by constants, only set for SCCP
+         */
+        public int constantsFound() { return constantsFound; }
+        /**
+         * Redundant computations removed, only set for GVN
+         */
+        public int redundanciesRemoved() { return redundanciesRemoved; }
+        /**
+         * Null and bounds checks removed, only set for RCE
+         */
+        public int checksRemoved() { return checksRemoved; }
+        /**
+         * Instructions moved out of loops, only set for LICM
+         */
+        public int instructionsHoisted() { return instructionsHoisted; }
+        /**
+         * Instructions replaced by induction variables, only set for IVSR
+         */
+        public int strengthReductions() { return strengthReductions; }
+        /**
+         * Loop tests replaced by tests of derived induction variables, only set for IVSR
+         */
+        public int testsReplaced() { return testsReplaced; }
+        /**
+         * Dead instructions removed, only set for DCE
+         */
+        public int deadInstructionsRemoved() { return deadInstructionsRemoved; }
+        /**
+         * Copies removed by coalescing, only set for register allocation
+         */
+        public int copiesCoalesced() { return copiesCoalesced; }
+        /**
+         * Registers spilled, only set for register allocation
+         */
+        public int registersSpilled() { return registersSpilled; }
+
+        void toJson(StringBuilder sb) {
+            sb.append("{\"phase\":\"").append(phase).append('"');
+            sb.append(",\"nanos\":").append(nanos);
+            sb.append(",\"instructionsBefore\":").append(instructionsBefore);
+            sb.append(",\"instructionsAfter\":").append(instructionsAfter);
+            sb.append(",\"blocksBefore\":").append(blocksBefore);
+            sb.append(",\"blocksAfter\":").append(blocksAfter);
+            sb.append(",\"phisInserted\":").append(phisInserted());
+            sb.append(",\"phisRemoved\":").append(phisRemoved());
+            sb.append(",\"constantsFound\":").append(constantsFound);
+            sb.append(",\"redundanciesRemoved\":").append(redundanciesRemoved);
+            sb.append(",\"checksRemoved\":").append(checksRemoved);
+            sb.append(",\"instructionsHoisted\":").append(instructionsHoisted);
+            sb.append(",\"strengthReductions\":").append(strengthReductions);
+            sb.append(",\"testsReplaced\":").append(testsReplaced);
+            sb.append(",\"deadInstructionsRemoved\":").append(deadInstructionsRemoved);
+            sb.append(",\"copiesCoalesced\":").append(copiesCoalesced);
+            sb.append(",\"registersSpilled\":").append(registersSpilled);
+            sb.append('}');
+        }
+
+        private static int instructions(CompiledFunction function) {
+            int count = 0;
+            for (BasicBlock block: function.getBlocks())
+                count += block.instructions.size();
+            return count;
+        }
+
+        private static int blocks(CompiledFunction function) {
+            return function.getBlocks().size();
+        }
+
+        private static int phis(CompiledFunction function) {
+            int count = 0;
+            for (BasicBlock block: function.getBlocks())
+                count += block.phis().size();
+            return count;
+        }
+    }
+
+    private static void quote(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20)
+                        sb.append(String.format("\\u%04x", (int) c));
+                    else
+                        sb.append(c);
+                }
+            }
+        }
+        sb.append('"');
+    }
+}
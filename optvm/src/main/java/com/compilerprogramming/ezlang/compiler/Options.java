@@ -4,11 +4,17 @@ import java.util.EnumSet;
 
 public enum Options {
     ISSA, // Incremental SSA
+    CHECKS, // explicit null and bounds checks
     OPTIMIZE,
     SSA_DESTRUCTION_BRIGGS,
     SSA_DESTRUCTION_BOISSINOT_NOCOALESCE,
     SCCP,
     CCP, // constant comparison propagation
+    GVN, // global value numbering
+    RCE, // redundant check elimination
+    LICM, // loop invariant code motion
+    IVSR, // induction variable strength reduction
+    DCE, // dead code elimination
     REGALLOC,
     DUMP_INITIAL_IR,
     DUMP_PRE_SSA_DOMTREE,
@@ -18,6 +24,11 @@ public enum Options {
     DUMP_SCCP_PREAPPLY,
     DUMP_SCCP_POSTAPPLY,
     DUMP_CCP_POSTAPPLY,
+    DUMP_GVN_POSTAPPLY,
+    DUMP_RCE_POSTAPPLY,
+    DUMP_LICM_POSTAPPLY,
+    DUMP_IVSR_POSTAPPLY,
+    DUMP_DCE_POSTAPPLY,
     DUMP_SSA_LIVENESS,
     DUMP_SSA_DOMTREE,
     DUMP_SSA_TO_CSSA,
@@ -28,10 +39,10 @@ public enum Options {
     DUMP_POST_CHAITIN_IR;
 
     public static final EnumSet<Options> NONE = EnumSet.noneOf(Options.class);
-    public static final EnumSet<Options> OPT = EnumSet.of(Options.OPTIMIZE,Options.SCCP,Options.CCP,Options.REGALLOC);
-    public static final EnumSet<Options> OPT_B = EnumSet.of(Options.OPTIMIZE,Options.SCCP,Options.CCP,Options.REGALLOC,Options.SSA_DESTRUCTION_BOISSINOT_NOCOALESCE);
-    public static final EnumSet<Options> OPT_ISSA = EnumSet.of(Options.OPTIMIZE,Options.ISSA,Options.SCCP,Options.CCP,Options.REGALLOC);
-    public static final EnumSet<Options> OPT_ISSA_B = EnumSet.of(Options.OPTIMIZE,Options.ISSA,Options.SCCP,Options.CCP,Options.REGALLOC,Options.SSA_DESTRUCTION_BOISSINOT_NOCOALESCE);
+    public static final EnumSet<Options> OPT = EnumSet.of(Options.OPTIMIZE,Options.SCCP,Options.CCP,Options.GVN,Options.RCE,Options.LICM,Options.IVSR,Options.DCE,Options.REGALLOC);
+    public static final EnumSet<Options> OPT_B = EnumSet.of(Options.OPTIMIZE,Options.SCCP,Options.CCP,Options.GVN,Options.RCE,Options.LICM,Options.IVSR,Options.DCE,Options.REGALLOC,Options.SSA_DESTRUCTION_BOISSINOT_NOCOALESCE);
+    public static final EnumSet<Options> OPT_ISSA = EnumSet.of(Options.OPTIMIZE,Options.ISSA,Options.SCCP,Options.CCP,Options.GVN,Options.RCE,Options.LICM,Options.IVSR,Options.DCE,Options.REGALLOC);
+    public static final EnumSet<Options> OPT_ISSA_B = EnumSet.of(Options.OPTIMIZE,Options.ISSA,Options.SCCP,Options.CCP,Options.GVN,Options.RCE,Options.LICM,Options.IVSR,Options.DCE,Options.REGALLOC,Options.SSA_DESTRUCTION_BOISSINOT_NOCOALESCE);
     public static final EnumSet<Options> VERBOSE = EnumSet.range(DUMP_INITIAL_IR, DUMP_POST_CHAITIN_IR);
     public static final EnumSet<Options> OPT_VERBOSE = EnumSet.range(OPTIMIZE, DUMP_POST_CHAITIN_IR);
 }
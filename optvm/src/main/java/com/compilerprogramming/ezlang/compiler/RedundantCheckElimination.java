@@ -0,0 +1,446 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Elimination of redundant null and bounds checks on SSA form.
+ *
+ * With the {@code CHECKS} option the compiler puts explicit
+ * {@link Instruction.NullCheck} and {@link Instruction.BoundsCheck}
+ * instructions in front of field and element accesses. This pass proves
+ * checks redundant with two analyses, and deletes them.
+ *
+ * The first is flow insensitive, and finds the registers that are never
+ * null and never negative, optimistically, so that it sees through loop
+ * phis. Allocated structs and arrays are never null. The types do not
+ * tell, a field or element that was never assigned is null whatever its
+ * type, so other values, including arguments, are only known not to be
+ * null from the facts below. Non negative integers are constants, copies,
+ * comparisons, remainders and quotients of non negative values, and sums
+ * of non negative values that cannot overflow: {@code i+1} where {@code i}
+ * is known to be less than something, or {@code i+j} where both are known
+ * to be less than the size of an array.
+ *
+ * The second walks the dominator tree, like {@link GlobalValueNumbering},
+ * and collects facts that hold in the blocks dominated by where they were
+ * learnt:
+ *
+ * <ul>
+ *     <li>The branch of {@code i < n} that is taken when true tells that
+ *     {@code i < n}, and likewise for the other comparisons, and a branch
+ *     on {@code p != null} tells that {@code p} is not null.</li>
+ *     <li>A check or an access of {@code a[i]} tells that {@code a} is not
+ *     null, and {@code 0 <= i < size(a)}; an access of {@code p.f} tells
+ *     that {@code p} is not null.</li>
+ * </ul>
+ *
+ * The size of an array is at least the length it was created with, as
+ * arrays only grow. So in {@code while (i < n) a[i] = 0} the check is
+ * removed if {@code a} was created with length {@code n}, and {@code i}
+ * counts up from 0. Values are compared by their SSA register, looking
+ * through copies, so this runs after GVN has given the same computations
+ * the same register, and before LICM and IVSR change the loops.
+ *
+ * See 'ABCD: Eliminating Array Bounds Checks on Demand' by Rastislav Bodik,
+ * Rajiv Gupta and Vivek Sarkar for a more general approach.
+ */
+public class RedundantCheckElimination {
+
+    // Value number of the null constant
+    private static final Object NULL = new Object();
+
+    private final CompiledFunction function;
+    private final Map<Register, Instruction> defs = new HashMap<>();
+    private final Map<Register, List<Instruction>> uses = new HashMap<>();
+    // Registers that are never null, and never negative
+    private final Set<Register> nonNull = new HashSet<>();
+    private final Set<Register> nonNegative = new HashSet<>();
+    // Facts known in the current block, scoped by the dominator tree
+    private final Set<Object> facts = new HashSet<>();
+    private int checksRemoved;
+
+    record NotNull(Object value) {}
+    record NonNegative(Object value) {}
+    // index < bound, where bound is a value or the size of an array
+    record Less(Object index, Object bound) {}
+    record Size(Object array) {}
+
+    public RedundantCheckElimination(CompiledFunction function) {
+        this.function = function;
+    }
+
+    public boolean apply(EnumSet<Options> options) {
+        if (options.contains(Options.RCE)) {
+            checksRemoved = 0;
+            new DominatorTree(function.entry);
+            List<BasicBlock> blocks = function.getBlocks();
+            for (BasicBlock block : blocks) {
+                for (Instruction instruction : block.instructions) {
+                    if (instruction instanceof Instruction.Phi phi)
+                        defs.put(phi.value(), phi);
+                    else if (instruction.definesVar())
+                        defs.put(instruction.def(), instruction);
+                    if (!(instruction instanceof Instruction.Phi))
+                        for (Register use : instruction.uses())
+                            uses.computeIfAbsent(use, k -> new ArrayList<>()).add(instruction);
+                }
+            }
+            findNonNull();
+            findNonNegative();
+            walkBlock(function.entry);
+            if (options.contains(Options.DUMP_RCE_POSTAPPLY)) function.dumpIR(false, "Post RCE\n");
+        }
+        return checksRemoved > 0;
+    }
+
+    /**
+     * Number of null and bounds checks removed
+     */
+    public int checksRemoved() {
+        return checksRemoved;
+    }
+
+    private void findNonNull() {
+        for (Register register : defs.keySet()) {
+            Instruction def = defs.get(register);
+            if (def instanceof Instruction.NewArray || def instanceof Instruction.NewStruct
+                    || def instanceof Instruction.Move || def instanceof Instruction.Phi)
+                nonNull.add(register);
+        }
+        // Copies and phis are optimistically non null until one of their inputs is not
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Register register : new ArrayList<>(nonNull)) {
+                Instruction def = defs.get(register);
+                boolean holds = true;
+                if (def instanceof Instruction.Move move)
+                    holds = isNonNull(move.from());
+                else if (def instanceof Instruction.Phi phi) {
+                    for (int i = 0; i < phi.numInputs() && holds; i++)
+                        holds = isNonNull(phi.input(i));
+                }
+                if (!holds) {
+                    nonNull.remove(register);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean isNonNull(Operand operand) {
+        return operand instanceof Operand.RegisterOperand registerOperand && nonNull.contains(registerOperand.reg);
+    }
+
+    private void findNonNegative() {
+        for (Register register : defs.keySet()) {
+            Instruction def = defs.get(register);
+            if (def instanceof Instruction.Move || def instanceof Instruction.Phi || def instanceof Instruction.Binary)
+                nonNegative.add(register);
+        }
+        // Optimistic, as for non null
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Register register : new ArrayList<>(nonNegative)) {
+                if (!holdsNonNegative(defs.get(register))) {
+                    nonNegative.remove(register);
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private boolean holdsNonNegative(Instruction def) {
+        if (def instanceof Instruction.Move move)
+            return isNonNegative(move.from());
+        if (def instanceof Instruction.Phi phi) {
+            for (int i = 0; i < phi.numInputs(); i++) {
+                if (!isNonNegative(phi.input(i)))
+                    return false;
+            }
+            return true;
+        }
+        Instruction.Binary binary = (Instruction.Binary) def;
+        return switch (binary.binOp) {
+            case "==", "!=", "<", ">", "<=", ">=" -> true;
+            case "%" -> isNonNegative(binary.left()) && isConstant(binary.right(), 1, Long.MAX_VALUE);
+            case "/" -> isNonNegative(binary.left()) && isConstant(binary.right(), 1, Long.MAX_VALUE);
+            case "+" -> isNonNegative(binary.left()) && isNonNegative(binary.right()) && cannotOverflow(binary);
+            default -> false;
+        };
+    }
+
+    private boolean isNonNegative(Operand operand) {
+        if (operand instanceof Operand.ConstantOperand constant)
+            return constant.value >= 0;
+        return operand instanceof Operand.RegisterOperand registerOperand && nonNegative.contains(registerOperand.reg);
+    }
+
+    private static boolean isConstant(Operand operand, long min, long max) {
+        return operand instanceof Operand.ConstantOperand constant && constant.value >= min && constant.value <= max;
+    }
+
+    /**
+     * The sum of two non negative values does not overflow if one of them
+     * is one and the other is less than something, or both are less than
+     * the size of an array
+     */
+    private boolean cannotOverflow(Instruction.Binary binary) {
+        Operand left = binary.left();
+        Operand right = binary.right();
+        if (isConstant(left, 0, 0) || isConstant(right, 0, 0))
+            return true;
+        if (isConstant(right, 1, 1))
+            return !bounds(left, binary).isEmpty();
+        if (isConstant(left, 1, 1))
+            return !bounds(right, binary).isEmpty();
+        return isSmall(left, binary) && isSmall(right, binary);
+    }
+
+    private boolean isSmall(Operand operand, Instruction instruction) {
+        if (operand instanceof Operand.ConstantOperand)
+            return isConstant(operand, 0, Integer.MAX_VALUE);
+        for (Object bound : bounds(operand, instruction)) {
+            if (bound instanceof Size
+                    || bound instanceof Long constant && constant <= Integer.MAX_VALUE
+                    || bound instanceof Register register && isLength(register, instruction))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an array was created with the register as length before
+     * the instruction, so that its value fits in an array size
+     */
+    private boolean isLength(Register register, Instruction instruction) {
+        for (Instruction use : uses.getOrDefault(register, List.of())) {
+            if (use instanceof Instruction.NewArray newArray && register.equals(valueNumber(newArray.len()))
+                    && dominates(newArray, instruction))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * What the operand is known to be less than where the instruction is,
+     * from the branches and the element accesses that dominate it
+     */
+    private List<Object> bounds(Operand operand, Instruction instruction) {
+        Object value = valueNumber(operand);
+        List<Object> bounds = new ArrayList<>();
+        for (BasicBlock b = instruction.block; b != null; b = b.idom) {
+            for (Object fact : edgeFacts(b)) {
+                if (fact instanceof Less less && less.index.equals(value))
+                    bounds.add(less.bound);
+            }
+            for (Instruction access : b.instructions) {
+                if (access == instruction)
+                    break;
+                Operand array = null;
+                Operand index = null;
+                if (access instanceof Instruction.ArrayLoad arrayLoad) {
+                    array = arrayLoad.arrayOperand();
+                    index = arrayLoad.indexOperand();
+                }
+                else if (access instanceof Instruction.ArrayStore arrayStore) {
+                    array = arrayStore.arrayOperand();
+                    index = arrayStore.indexOperand();
+                }
+                if (index != null && value.equals(valueNumber(index)))
+                    bounds.add(new Size(valueNumber(array)));
+            }
+        }
+        return bounds;
+    }
+
+    private static boolean dominates(Instruction first, Instruction second) {
+        if (first.block == second.block)
+            return first.block.instructions.indexOf(first) < first.block.instructions.indexOf(second);
+        return first.block.dominates(second.block);
+    }
+
+    /**
+     * Facts known on entry to the block from the branch of its only predecessor
+     */
+    private List<Object> edgeFacts(BasicBlock block) {
+        List<Object> edgeFacts = new ArrayList<>();
+        if (block.predecessors.size() != 1)
+            return edgeFacts;
+        BasicBlock pred = block.predecessors.getFirst();
+        if (pred.instructions.isEmpty()
+                || !(pred.instructions.getLast() instanceof Instruction.ConditionalBranch cbr)
+                || cbr.trueBlock == cbr.falseBlock
+                || !(cbr.condition() instanceof Operand.RegisterOperand condition)
+                || !(defs.get(condition.reg) instanceof Instruction.Binary compare))
+            return edgeFacts;
+        String op = block == cbr.trueBlock ? compare.binOp : negate(compare.binOp);
+        Object left = valueNumber(compare.left());
+        Object right = valueNumber(compare.right());
+        if (left == null || right == null)
+            return edgeFacts;
+        switch (op) {
+            case "<" -> edgeFacts.add(new Less(left, right));
+            case ">" -> edgeFacts.add(new Less(right, left));
+            case "!=" -> {
+                if (right == NULL)
+                    edgeFacts.add(new NotNull(left));
+                else if (left == NULL)
+                    edgeFacts.add(new NotNull(right));
+            }
+        }
+        if (op.equals(">=") && right instanceof Long bound && bound >= 0)
+            edgeFacts.add(new NonNegative(left));
+        if (op.equals("<=") && left instanceof Long bound && bound >= 0)
+            edgeFacts.add(new NonNegative(right));
+        return edgeFacts;
+    }
+
+    private static String negate(String op) {
+        return switch (op) {
+            case "<" -> ">=";
+            case ">=" -> "<";
+            case ">" -> "<=";
+            case "<=" -> ">";
+            case "==" -> "!=";
+            case "!=" -> "==";
+            default -> op;
+        };
+    }
+
+    private void walkBlock(BasicBlock block) {
+        List<Object> added = new ArrayList<>();
+        for (Object fact : edgeFacts(block))
+            learn(fact, added);
+        Iterator<Instruction> iter = block.instructions.iterator();
+        while (iter.hasNext()) {
+            Instruction instruction = iter.next();
+            if (instruction instanceof Instruction.NullCheck nullCheck) {
+                Object value = valueNumber(nullCheck.operand());
+                if (isKnownNonNull(nullCheck.operand(), value)) {
+                    iter.remove();
+                    checksRemoved++;
+                }
+                else
+                    learn(new NotNull(value), added);
+            }
+            else if (instruction instanceof Instruction.BoundsCheck boundsCheck) {
+                Object array = valueNumber(boundsCheck.arrayOperand());
+                Object index = valueNumber(boundsCheck.indexOperand());
+                if (isKnownNonNull(boundsCheck.arrayOperand(), array)
+                        && isKnownNonNegative(boundsCheck.indexOperand(), index)
+                        && isKnownInBounds(array, index, boundsCheck.isStore)) {
+                    iter.remove();
+                    checksRemoved++;
+                }
+                else {
+                    learn(new NotNull(array), added);
+                    learn(new NonNegative(index), added);
+                    // A store may append, so the index is only known to be
+                    // below the size once the store is done
+                    if (!boundsCheck.isStore)
+                        learn(new Less(index, new Size(array)), added);
+                }
+            }
+            else if (instruction instanceof Instruction.ArrayLoad arrayLoad)
+                learnAccess(arrayLoad.arrayOperand(), arrayLoad.indexOperand(), added);
+            else if (instruction instanceof Instruction.ArrayStore arrayStore)
+                learnAccess(arrayStore.arrayOperand(), arrayStore.indexOperand(), added);
+            else if (instruction instanceof Instruction.GetField getField)
+                learn(new NotNull(valueNumber(getField.structOperand())), added);
+            else if (instruction instanceof Instruction.SetField setField)
+                learn(new NotNull(valueNumber(setField.structOperand())), added);
+        }
+        for (BasicBlock c : block.dominatedChildren)
+            walkBlock(c);
+        facts.removeAll(added);
+    }
+
+    private void learnAccess(Operand arrayOperand, Operand indexOperand, List<Object> added) {
+        Object array = valueNumber(arrayOperand);
+        Object index = valueNumber(indexOperand);
+        learn(new NotNull(array), added);
+        learn(new NonNegative(index), added);
+        learn(new Less(index, new Size(array)), added);
+    }
+
+    private void learn(Object fact, List<Object> added) {
+        if (facts.add(fact))
+            added.add(fact);
+    }
+
+    private boolean isKnownNonNull(Operand operand, Object value) {
+        return isNonNull(operand) || facts.contains(new NotNull(value));
+    }
+
+    private boolean isKnownNonNegative(Operand operand, Object value) {
+        return isNonNegative(operand) || facts.contains(new NonNegative(value));
+    }
+
+    /**
+     * Checks if the index is below the size of the array, or for a store,
+     * at most the size. The size is at least the length the array was
+     * created with, or the index of an element accessed earlier plus one.
+     */
+    private boolean isKnownInBounds(Object array, Object index, boolean isStore) {
+        Object length = length(array);
+        if (facts.contains(new Less(index, new Size(array)))
+                || length != null && facts.contains(new Less(index, length)))
+            return true;
+        if (isStore && index.equals(length))
+            return true;
+        if (!(index instanceof Long constant))
+            return false;
+        // The largest constant known to be below the size, an element
+        // accessed earlier is at least at index 0
+        long below = length instanceof Long l ? l - 1 : -1;
+        for (Object fact : facts) {
+            if (!(fact instanceof Less less))
+                continue;
+            if (less.bound.equals(new Size(array)))
+                below = Math.max(below, less.index instanceof Long k ? k : 0);
+            else if (less.index instanceof Long k && less.bound instanceof Long bound
+                    && length instanceof Long l && bound <= l)
+                below = Math.max(below, k);
+        }
+        return constant <= below || isStore && constant == below + 1;
+    }
+
+    /**
+     * The length the array was created with, null if not known
+     */
+    private Object length(Object array) {
+        if (array instanceof Register register && defs.get(register) instanceof Instruction.NewArray newArray)
+            return newArray.len() != null ? valueNumber(newArray.len()) : Long.valueOf(0);
+        return null;
+    }
+
+    /**
+     * The value number of a register is the register it is a copy of,
+     * constants are numbered by their value.
+     */
+    private Object valueNumber(Operand operand) {
+        if (operand instanceof Operand.RegisterOperand registerOperand) {
+            Register register = registerOperand.reg;
+            while (defs.get(register) instanceof Instruction.Move move
+                    && move.from() instanceof Operand.RegisterOperand from)
+                register = from.reg;
+            if (defs.get(register) instanceof Instruction.Move move && move.from() instanceof Operand.ConstantOperand constant)
+                return constant.value;
+            return register;
+        }
+        if (operand instanceof Operand.ConstantOperand constant)
+            return constant.value;
+        if (operand instanceof Operand.NullConstantOperand)
+            return NULL;
+        return null;
+    }
+}
@@ -50,6 +50,8 @@ public class SparseConditionalConstantPropagation {
 
     /** Used to track reachable blocks when the SCCP changes are applied */
     BitSet executableBlocks = new BitSet();
+    /** Number of definitions replaced by constants when the changes are applied */
+    int constantsFound;
 
     public SparseConditionalConstantPropagation constantPropagation(CompiledFunction function) {
         init(function);
@@ -215,10 +217,19 @@ public class SparseConditionalConstantPropagation {
                 // delete defining instruction
                 block.deleteInstruction(defUseChain.instruction);
                 ssaEdges.remove(register);
+                constantsFound++;
             }
         }
     }
 
+    /**
+     * Number of definitions that were found to be constant,
+     * and replaced by the constant
+     */
+    public int constantsFound() {
+        return constantsFound;
+    }
+
     static final byte V_UNDEFINED = 1;  // TOP
     static final byte V_CONSTANT = 2;
     static final byte V_VARYING = 3;    // BOTTOM
@@ -332,6 +343,9 @@ public class SparseConditionalConstantPropagation {
                         changed = cell.meet(valueLattice.get(fromReg.reg));
                     } else if (moveInst.from() instanceof Operand.ConstantOperand constantOperand) {
                         changed = cell.meet(constantOperand.value);
+                    } else if (moveInst.from() instanceof Operand.NullConstantOperand) {
+                        // We only track integer constants
+                        changed = cell.setKind(V_VARYING);
                     } else throw new IllegalStateException();
                 } else throw new IllegalStateException();
             }
@@ -430,6 +444,10 @@ public class SparseConditionalConstantPropagation {
             }
             case Instruction.SetField setFieldInst -> {
             }
+            case Instruction.NullCheck nullCheckInst -> {
+            }
+            case Instruction.BoundsCheck boundsCheckInst -> {
+            }
             case Instruction.GetField getFieldInst -> {
                 var cell = valueLattice.get(getFieldInst.destOperand().reg);
                 changed = cell.setKind(V_VARYING);
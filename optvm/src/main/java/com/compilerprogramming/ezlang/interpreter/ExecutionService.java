@@ -0,0 +1,186 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.compiler.ModuleOptimizer;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs many independent invocations of the functions of one program
+ * concurrently, each on its own virtual thread.
+ *
+ * The program is compiled once, and the compiled code is shared by all
+ * invocations; it is read only while executing. What an invocation
+ * writes, its execution stack and the interpreter's caches, is held by
+ * a worker that runs one invocation at a time. Workers are pooled, so
+ * that execution stacks are reused rather than allocated for every
+ * invocation. When all pooled workers are busy a new one is created;
+ * at most {@code poolSize} idle workers are kept.
+ *
+ * The latency of every invocation is recorded in a histogram; see
+ * {@link #stats()} for the latencies and the throughput so far.
+ */
+public class ExecutionService implements AutoCloseable {
+
+    // Stacks that grew beyond this many slots are not pooled
+    static final int MAX_POOLED_STACK = 64 * 1024;
+
+    private final TypeDictionary typeDictionary;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final BlockingQueue<Worker> workers;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder failures = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    public ExecutionService(TypeDictionary typeDictionary) {
+        this(typeDictionary, Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param typeDictionary The compiled program
+     * @param poolSize       Maximum number of idle workers kept for reuse
+     */
+    public ExecutionService(TypeDictionary typeDictionary, int poolSize) {
+        if (poolSize < 1)
+            throw new IllegalArgumentException("Pool size must be at least 1, got " + poolSize);
+        this.typeDictionary = typeDictionary;
+        this.workers = new ArrayBlockingQueue<>(poolSize);
+        // Generate the bytecode up front, rather than on first call from any thread
+        for (CompiledFunction function: ModuleOptimizer.functions(typeDictionary))
+            function.bytecode();
+    }
+
+    /**
+     * Compiles the program once, for all invocations
+     */
+    public static ExecutionService compile(String src, EnumSet<Options> options) {
+        return new ExecutionService(new Compiler().compileSrc(src, options));
+    }
+
+    /**
+     * Runs the function on a virtual thread
+     */
+    public Future<Value> submit(String functionName, Value... args) {
+        return executor.submit(() -> run(functionName, args));
+    }
+
+    /**
+     * Runs the function once for each argument list, concurrently, and
+     * returns the results in the order of the argument lists
+     */
+    public List<Value> invokeAll(String functionName, List<Value[]> argLists) {
+        List<Future<Value>> futures = new ArrayList<>(argLists.size());
+        for (Value[] args: argLists)
+            futures.add(submit(functionName, args));
+        List<Value> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<Value> future: futures)
+                results.add(future.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterpreterException("Interrupted while running " + functionName, e);
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException re)
+                throw re;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw new InterpreterException("Running " + functionName + " failed", e.getCause());
+        }
+        return results;
+    }
+
+    /**
+     * Runs the function on the calling thread, with a pooled worker
+     */
+    public Value run(String functionName, Value... args) {
+        Worker worker = workers.poll();
+        if (worker == null)
+            worker = new Worker(new Interpreter(typeDictionary));
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Value value = worker.interpreter.run(functionName, worker.execStack, args);
+            failed = false;
+            return value;
+        }
+        finally {
+            latencies.record(System.nanoTime() - start);
+            if (failed)
+                failures.increment();
+            // Clear the stack, even after a failure, so that the pool does
+            // not keep the arguments and results of earlier invocations alive
+            if (worker.execStack.stack.length <= MAX_POOLED_STACK) {
+                worker.execStack.clear();
+                workers.offer(worker);
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(latencies.snapshot(), failures.sum(), System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Waits for the submitted invocations to finish
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    private static final class Worker {
+        final Interpreter interpreter;
+        final ExecutionStack execStack = new ExecutionStack(1024);
+
+        Worker(Interpreter interpreter) {
+            this.interpreter = interpreter;
+        }
+    }
+
+    /**
+     * Invocations so far, and the time since the service started.
+     * The histogram is a snapshot, it does not change as the service
+     * records more invocations.
+     */
+    public static class Stats {
+        public final LatencyHistogram latencies;
+        public final long invocations;
+        public final long failures;
+        public final long elapsedNanos;
+
+        Stats(LatencyHistogram latencies, long failures, long elapsedNanos) {
+            this.latencies = latencies;
+            this.invocations = latencies.count();
+            this.failures = failures;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Invocations per second
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0 : invocations * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d invocations, %d failed, %.1f per second%n",
+                    invocations, failures, throughput()) + latencies;
+        }
+    }
+}
@@ -1,12 +1,144 @@
 package com.compilerprogramming.ezlang.interpreter;
 
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+
+import java.util.Arrays;
+
+/**
+ * The execution stack holds the frames of executing functions.
+ *
+ * Each slot has two parts: an unboxed integer in {@link #ints} and a
+ * reference in {@link #stack}. The reference part doubles as the tag -
+ * a null reference means the slot holds an Int, and the value is in
+ * the integer part. Arrays, structs and null are held as references.
+ * This allows integer arithmetic, comparisons and branches to execute
+ * without allocating a Value for every result.
+ *
+ * Registers spilled by the register allocator are kept in a separate
+ * spill area, with the same layout of slots. Each executing function
+ * has its own part of the spill area, just as it has its own frame.
+ *
+ * Both areas start at their initial size and grow as calls nest deeper,
+ * up to {@link #maxSize} slots. The arrays are replaced when they grow,
+ * so callers must not hold on to them across {@link #ensureCapacity}.
+ */
 public class ExecutionStack {
 
+    public static final int DEFAULT_MAX_SIZE = 1 << 24;
+
     public Value[] stack;
+    public long[] ints;
     public int sp;
+    public Value[] spillStack;
+    public long[] spillInts;
+    public final int maxSize;
+    // Slots used so far, the most asked for by ensureCapacity
+    private int used;
+    private int spillUsed;
+
+    public ExecutionStack(int initialSize) {
+        this(initialSize, initialSize);
+    }
+
+    public ExecutionStack(int initialSize, int initialSpillSize) {
+        this(initialSize, initialSpillSize, DEFAULT_MAX_SIZE);
+    }
 
-    public ExecutionStack(int maxStackSize) {
-        this.stack = new Value[maxStackSize];
+    public ExecutionStack(int initialSize, int initialSpillSize, int maxSize) {
+        this.stack = new Value[initialSize];
+        this.ints = new long[initialSize];
         this.sp = -1;
+        this.spillStack = new Value[initialSpillSize];
+        this.spillInts = new long[initialSpillSize];
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Grows the stack to hold at least the given number of slots,
+     * and the spill area to hold the given number of spill slots.
+     *
+     * @throws InterpreterException if either exceeds {@link #maxSize}
+     */
+    public void ensureCapacity(int size, int spillSize) {
+        used = Math.max(used, size);
+        spillUsed = Math.max(spillUsed, spillSize);
+        if (size > stack.length) {
+            int newSize = newSize(stack.length, size);
+            stack = Arrays.copyOf(stack, newSize);
+            ints = Arrays.copyOf(ints, newSize);
+        }
+        if (spillSize > spillStack.length) {
+            int newSize = newSize(spillStack.length, spillSize);
+            spillStack = Arrays.copyOf(spillStack, newSize);
+            spillInts = Arrays.copyOf(spillInts, newSize);
+        }
+    }
+
+    /**
+     * Clears the slots used so far, so that the values they held can be
+     * garbage collected while the stack is kept for reuse
+     */
+    public void clear() {
+        Arrays.fill(stack, 0, Math.min(used, stack.length), null);
+        Arrays.fill(spillStack, 0, Math.min(spillUsed, spillStack.length), null);
+        used = 0;
+        spillUsed = 0;
+        sp = -1;
+    }
+
+    private int newSize(int length, int size) {
+        if (size > maxSize)
+            throw new InterpreterException("Stack overflow: " + size + " slots needed, at most " + maxSize + " allowed");
+        return (int) Math.min(maxSize, Math.max(size, 2L * length));
+    }
+
+    public boolean isInt(int slot) {
+        return stack[slot] == null;
+    }
+
+    public long getInt(int slot) {
+        return ints[slot];
+    }
+
+    public void setInt(int slot, long value) {
+        ints[slot] = value;
+        stack[slot] = null;
+    }
+
+    /**
+     * Stores a boxed value, unboxing integers
+     */
+    public void setValue(int slot, Value value) {
+        if (value instanceof Value.IntegerValue integerValue)
+            setInt(slot, integerValue.value);
+        else if (value != null)
+            stack[slot] = value;
+        else
+            throw new IllegalStateException("Cannot store uninitialized value");
+    }
+
+    /**
+     * Gets the value in the slot, boxing integers
+     */
+    public Value getValue(int slot) {
+        Value value = stack[slot];
+        if (value == null)
+            value = Value.IntegerValue.valueOf(ints[slot]);
+        return value;
+    }
+
+    public void copy(int fromSlot, int toSlot) {
+        ints[toSlot] = ints[fromSlot];
+        stack[toSlot] = stack[fromSlot];
+    }
+
+    public void spill(int fromSlot, int spillSlot) {
+        spillInts[spillSlot] = ints[fromSlot];
+        spillStack[spillSlot] = stack[fromSlot];
+    }
+
+    public void reload(int spillSlot, int toSlot) {
+        ints[toSlot] = spillInts[spillSlot];
+        stack[toSlot] = spillStack[spillSlot];
     }
 }
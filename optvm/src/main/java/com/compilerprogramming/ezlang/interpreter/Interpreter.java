@@ -1,28 +1,46 @@
 package com.compilerprogramming.ezlang.interpreter;
 
-import com.compilerprogramming.ezlang.compiler.BasicBlock;
+import com.compilerprogramming.ezlang.compiler.Bytecode;
 import com.compilerprogramming.ezlang.compiler.CompiledFunction;
 import com.compilerprogramming.ezlang.compiler.Instruction;
-import com.compilerprogramming.ezlang.compiler.Operand;
 import com.compilerprogramming.ezlang.exceptions.CompilerException;
 import com.compilerprogramming.ezlang.exceptions.InterpreterException;
 import com.compilerprogramming.ezlang.types.Symbol;
 import com.compilerprogramming.ezlang.types.EZType;
 import com.compilerprogramming.ezlang.types.TypeDictionary;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 public class Interpreter {
 
     TypeDictionary typeDictionary;
+    // Struct types compare by name, layouts are kept per type instance
+    private final Map<EZType.EZTypeStruct, Value.StructLayout> layouts = new IdentityHashMap<>();
 
     public Interpreter(TypeDictionary typeDictionary) {
         this.typeDictionary = typeDictionary;
     }
 
     public Value run(String functionName) {
+        return run(functionName, new ExecutionStack(1024));
+    }
+
+    /**
+     * Runs the function with the given arguments on the execution stack,
+     * which may be reused for later runs.
+     */
+    public Value run(String functionName, ExecutionStack execStack, Value... args) {
         Symbol symbol = typeDictionary.lookup(functionName);
         if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol) {
-            Frame frame = new Frame(functionSymbol);
-            ExecutionStack execStack = new ExecutionStack(1024);
+            EZType.EZTypeFunction functionType = (EZType.EZTypeFunction) functionSymbol.type;
+            if (args.length != functionType.args.size())
+                throw new InterpreterException("Function " + functionName + " expects " + functionType.args.size()
+                        + " arguments, got " + args.length);
+            Frame frame = new Frame(enter(functionType));
+            execStack.ensureCapacity(args.length, 0);
+            for (int i = 0; i < args.length; i++)
+                execStack.setValue(i, args[i]);
             return interpret(execStack, frame);
         }
         else {
@@ -30,282 +48,364 @@ public class Interpreter {
         }
     }
 
+    /**
+     * The layout of the struct type's values, computed on first use.
+     */
+    Value.StructLayout layout(EZType.EZTypeStruct structType) {
+        return layouts.computeIfAbsent(structType, Value.StructLayout::new);
+    }
+
+    /**
+     * Returns the code to execute for a call of the function.
+     * Tiered execution overrides this to count calls and to swap in
+     * optimized code, see {@link TieredInterpreter}.
+     */
+    protected CompiledFunction enter(EZType.EZTypeFunction function) {
+        return (CompiledFunction) function.code;
+    }
+
+    /**
+     * Called when the function returns, with the number of loop
+     * back-edges taken by this invocation.
+     */
+    protected void exit(CompiledFunction function, int backEdges) {
+    }
+
+    /**
+     * Executes the function in the frame and returns the boxed
+     * return value, or null if the function did not return a value.
+     */
     public Value interpret(ExecutionStack execStack, Frame frame) {
-        CompiledFunction currentFunction = frame.bytecodeFunction;
-        BasicBlock currentBlock = currentFunction.entry;
-        int ip = -1;
-        int base = frame.base;
-        boolean done = false;
-        Value returnValue = null;
+        if (execute(execStack, frame))
+            return execStack.getValue(frame.base);
+        return null;
+    }
 
-        while (!done) {
-            Instruction instruction;
+    /**
+     * Executes the function in the frame. The return value, if any,
+     * is left in the first slot of the frame.
+     *
+     * The function is executed from its flat bytecode, where operands
+     * and branch targets have been resolved ahead of time, see {@link Bytecode}.
+     * Integers are kept unboxed in the execution stack, so that
+     * integer arithmetic, comparisons and branches do not allocate.
+     *
+     * Calls do not recurse on the Java stack. A call saves the state of
+     * the caller in its frame and continues in the callee, and the exit
+     * of the callee resumes the caller. Frame records are linked to
+     * their caller and reused by later calls at the same depth. A call
+     * whose result is returned right away, i.e. {@code return f(...)},
+     * replaces the caller's frame instead of pushing a new one.
+     *
+     * @return true if the function returned a value
+     */
+    private boolean execute(ExecutionStack execStack, final Frame entry) {
+        Frame frame = entry;
+        Bytecode bytecode = frame.bytecodeFunction.bytecode();
+        int[] code = bytecode.code;
+        long[] constants = bytecode.constants;
+        int base = frame.base;
+        int spillBase = frame.spillBase;
+        execStack.ensureCapacity(base + bytecode.frameSize, spillBase + bytecode.spillSize);
+        long[] ints = execStack.ints;
+        Value[] stack = execStack.stack;
+        int pc = 0;
+        boolean returnedValue = false;
+        // Branches to the same or an earlier pc
+        int backEdges = 0;
 
-            ip++;
-            instruction = currentBlock.instructions.get(ip);
-            switch (instruction) {
-                case Instruction.Ret retInst -> {
-                    if (retInst.value() instanceof Operand.ConstantOperand constantOperand) {
-                        execStack.stack[base] = new Value.IntegerValue(constantOperand.value);
-                    }
-                    else if (retInst.value() instanceof Operand.NullConstantOperand) {
-                        execStack.stack[base] = new Value.NullValue();
-                    }
-                    else if (retInst.value() instanceof Operand.RegisterOperand registerOperand) {
-                        execStack.stack[base] = execStack.stack[base+registerOperand.frameSlot()];
-                    }
-                    else throw new IllegalStateException();
-                    returnValue = execStack.stack[base];
+        while (true) {
+            switch (code[pc]) {
+                case Instruction.I_MOVE -> {
+                    move(execStack, constants, base, code[pc+2], base + code[pc+1]);
+                    pc += 3;
                 }
-
-                case Instruction.Move moveInst -> {
-                    if (moveInst.to() instanceof Operand.RegisterOperand toReg) {
-                        if (moveInst.from() instanceof Operand.RegisterOperand fromReg) {
-                            execStack.stack[base + toReg.frameSlot()] = execStack.stack[base + fromReg.frameSlot()];
-                        }
-                        else if (moveInst.from() instanceof Operand.ConstantOperand constantOperand) {
-                            execStack.stack[base + toReg.frameSlot()] = new Value.IntegerValue(constantOperand.value);
-                        }
-                        else if (moveInst.from() instanceof Operand.NullConstantOperand) {
-                            execStack.stack[base + toReg.frameSlot()] = new Value.NullValue();
-                        }
-                        else throw new IllegalStateException();
-                    }
-                    else throw new IllegalStateException();
+                case Instruction.I_RET -> {
+                    move(execStack, constants, base, code[pc+1], base);
+                    returnedValue = true;
+                    pc += 2;
                 }
-                case Instruction.Jump jumpInst -> {
-                    currentBlock = jumpInst.jumpTo;
-                    ip = -1;
-                    if (currentBlock == currentFunction.exit)
-                        done = true;
+                case Instruction.I_BR -> {
+                    int target = code[pc+1];
+                    if (target <= pc)
+                        backEdges++;
+                    pc = target;
                 }
-                case Instruction.ConditionalBranch cbrInst -> {
+                case Instruction.I_CBR -> {
+                    int cond = code[pc+1];
                     boolean condition;
-                    if (cbrInst.condition() instanceof Operand.RegisterOperand registerOperand) {
-                        Value value = execStack.stack[base + registerOperand.frameSlot()];
-                        if (value instanceof Value.IntegerValue integerValue) {
-                            condition = integerValue.value != 0;
-                        }
-                        else {
-                            condition = value != null;
-                        }
-                    }
-                    else if (cbrInst.condition() instanceof Operand.ConstantOperand constantOperand) {
-                        condition = constantOperand.value != 0;
-                    }
-                    else throw new IllegalStateException();
-                    if (condition)
-                        currentBlock = cbrInst.trueBlock;
+                    if (cond >= 0)
+                        // Non-integer values are always true
+                        condition = stack[base + cond] != null || ints[base + cond] != 0;
                     else
-                        currentBlock = cbrInst.falseBlock;
-                    ip = -1;
-                    if (currentBlock == currentFunction.exit)
-                        done = true;
+                        condition = constants[Bytecode.constantIndex(cond)] != 0;
+                    int target = condition ? code[pc+2] : code[pc+3];
+                    if (target <= pc)
+                        backEdges++;
+                    pc = target;
                 }
-                case Instruction.Call callInst -> {
-                    // Copy args to new frame
-                    int baseReg = base+currentFunction.frameSize();
-                    int reg = baseReg;
-                    for (Operand arg: callInst.args()) {
-                        if (arg instanceof Operand.RegisterOperand param) {
-                            execStack.stack[reg] = execStack.stack[base + param.frameSlot()];
-                        }
-                        else if (arg instanceof Operand.ConstantOperand constantOperand) {
-                            execStack.stack[reg] = new Value.IntegerValue(constantOperand.value);
+                case Instruction.I_BINARY -> {
+                    int dst = base + code[pc+2];
+                    long value;
+                    switch (code[pc+1]) {
+                        case Bytecode.BIN_EQ_NULL -> value = stack[base + code[pc+3]] instanceof Value.NullValue ? 1 : 0;
+                        case Bytecode.BIN_NE_NULL -> value = stack[base + code[pc+3]] instanceof Value.NullValue ? 0 : 1;
+                        default -> {
+                            int l = code[pc+3];
+                            int r = code[pc+4];
+                            long x = l >= 0 ? ints[base + l] : constants[Bytecode.constantIndex(l)];
+                            long y = r >= 0 ? ints[base + r] : constants[Bytecode.constantIndex(r)];
+                            value = switch (code[pc+1]) {
+                                case Bytecode.BIN_ADD -> x + y;
+                                case Bytecode.BIN_SUB -> x - y;
+                                case Bytecode.BIN_MUL -> x * y;
+                                case Bytecode.BIN_DIV -> x / y;
+                                case Bytecode.BIN_MOD -> x % y;
+                                case Bytecode.BIN_EQ -> x == y ? 1 : 0;
+                                case Bytecode.BIN_NE -> x != y ? 1 : 0;
+                                case Bytecode.BIN_LT -> x < y ? 1 : 0;
+                                case Bytecode.BIN_GT -> x > y ? 1 : 0;
+                                case Bytecode.BIN_LE -> x <= y ? 1 : 0;
+                                case Bytecode.BIN_GE -> x >= y ? 1 : 0;
+                                default -> throw new IllegalStateException();
+                            };
                         }
-                        else if (arg instanceof Operand.NullConstantOperand) {
-                            execStack.stack[reg] = new Value.NullValue();
-                        }
-                        reg += 1;
-                    }
-                    // Call function
-                    Frame newFrame = new Frame(frame, baseReg, callInst.callee);
-                    interpret(execStack, newFrame);
-                    // Copy return value in expected location
-                    if (!(callInst.callee.returnType instanceof EZType.EZTypeVoid)) {
-                        execStack.stack[base + callInst.returnOperand().frameSlot()] = execStack.stack[baseReg];
                     }
+                    ints[dst] = value;
+                    stack[dst] = null;
+                    pc += 5;
                 }
-                case Instruction.Unary unaryInst -> {
+                case Instruction.I_UNARY -> {
                     // We don't expect constant here because we fold constants in unary expressions
-                    Operand.RegisterOperand unaryOperand = (Operand.RegisterOperand) unaryInst.operand();
-                    Value unaryValue = execStack.stack[base + unaryOperand.frameSlot()];
-                    if (unaryValue instanceof Value.IntegerValue integerValue) {
-                        switch (unaryInst.unop) {
-                            case "-": execStack.stack[base + unaryInst.result().frameSlot()] = new Value.IntegerValue(-integerValue.value); break;
-                            // Maybe below we should explicitly set Int
-                            case "!": execStack.stack[base + unaryInst.result().frameSlot()] = new Value.IntegerValue(integerValue.value==0?1:0); break;
-                            default: throw new CompilerException("Invalid unary op");
-                        }
+                    int slot = base + code[pc+3];
+                    if (!execStack.isInt(slot))
+                        throw new IllegalStateException("Unexpected unary operand in slot " + code[pc+3]);
+                    long value = ints[slot];
+                    switch (code[pc+1]) {
+                        case Bytecode.UN_NEG -> execStack.setInt(base + code[pc+2], -value);
+                        case Bytecode.UN_NOT -> execStack.setInt(base + code[pc+2], value == 0 ? 1 : 0);
+                        default -> throw new CompilerException("Invalid unary op");
                     }
-                    else
-                        throw new IllegalStateException("Unexpected unary operand: " + unaryOperand);
+                    pc += 4;
                 }
-                case Instruction.Binary binaryInst -> {
-                    long x, y;
-                    long value = 0;
-                    boolean intOp = true;
-                    if (binaryInst.binOp.equals("==") || binaryInst.binOp.equals("!=")) {
-                        Operand.RegisterOperand nonNullLitOperand = null;
-                        if (binaryInst.left() instanceof Operand.NullConstantOperand) {
-                            nonNullLitOperand = (Operand.RegisterOperand)binaryInst.right();
-                        }
-                        else if (binaryInst.right() instanceof Operand.NullConstantOperand) {
-                            nonNullLitOperand = (Operand.RegisterOperand)binaryInst.left();
-                        }
-                        if (nonNullLitOperand != null) {
-                            intOp = false;
-                            Value otherValue = execStack.stack[base + nonNullLitOperand.frameSlot()];
-                            switch (binaryInst.binOp) {
-                                case "==": {
-                                    value = otherValue instanceof Value.NullValue ? 1 : 0;
-                                    break;
-                                }
-                                case "!=": {
-                                    value = otherValue instanceof Value.NullValue ? 0 : 1;
-                                    break;
-                                }
-                                default:
-                                    throw new IllegalStateException();
-                            }
-                            execStack.stack[base + binaryInst.result().frameSlot()] = new Value.IntegerValue(value);
-                        }
+                case Instruction.I_CALL -> {
+                    EZType.EZTypeFunction callee = (EZType.EZTypeFunction) bytecode.types[code[pc+1]];
+                    int nargs = code[pc+3];
+                    CompiledFunction function = enter(callee);
+                    Bytecode calleeBytecode = function.bytecode();
+                    // Copy args to new frame
+                    int baseReg = base + bytecode.frameSize;
+                    execStack.ensureCapacity(baseReg + Math.max(nargs, calleeBytecode.frameSize),
+                            spillBase + bytecode.spillSize + calleeBytecode.spillSize);
+                    ints = execStack.ints;
+                    stack = execStack.stack;
+                    for (int i = 0; i < nargs; i++)
+                        move(execStack, constants, base, code[pc+4+i], baseReg + i);
+                    if (bytecode.isTailCall(pc)) {
+                        // The callee takes over this frame, and returns to our caller
+                        exit(frame.bytecodeFunction, backEdges);
+                        for (int i = 0; i < nargs; i++)
+                            execStack.copy(baseReg + i, base + i);
+                        frame.bytecodeFunction = function;
                     }
-                    if (intOp) {
-                        if (binaryInst.left() instanceof Operand.ConstantOperand constant)
-                            x = constant.value;
-                        else if (binaryInst.left() instanceof Operand.RegisterOperand registerOperand)
-                            x = ((Value.IntegerValue) execStack.stack[base + registerOperand.frameSlot()]).value;
-                        else throw new IllegalStateException();
-                        if (binaryInst.right() instanceof Operand.ConstantOperand constant)
-                            y = constant.value;
-                        else if (binaryInst.right() instanceof Operand.RegisterOperand registerOperand)
-                            y = ((Value.IntegerValue) execStack.stack[base + registerOperand.frameSlot()]).value;
-                        else throw new IllegalStateException();
-                        switch (binaryInst.binOp) {
-                            case "+": value = x + y; break;
-                            case "-": value = x - y; break;
-                            case "*": value = x * y; break;
-                            case "/": value = x / y; break;
-                            case "%": value = x % y; break;
-                            case "==": value = x == y ? 1 : 0; break;
-                            case "!=": value = x != y ? 1 : 0; break;
-                            case "<": value = x < y ? 1: 0; break;
-                            case ">": value = x > y ? 1 : 0; break;
-                            case "<=": value = x <= y ? 1 : 0; break;
-                            case ">=": value = x >= y ? 1 : 0; break;
-                            default: throw new IllegalStateException();
-                        }
-                        execStack.stack[base + binaryInst.result().frameSlot()] = new Value.IntegerValue(value);
+                    else {
+                        // Save the caller, the return value is copied into retSlot on exit
+                        frame.pc = pc + 4 + nargs;
+                        frame.retSlot = code[pc+2];
+                        frame.backEdges = backEdges;
+                        frame.returnedValue = returnedValue;
+                        frame = frame.push(baseReg, spillBase + bytecode.spillSize, function);
+                        base = frame.base;
+                        spillBase = frame.spillBase;
                     }
+                    bytecode = calleeBytecode;
+                    code = bytecode.code;
+                    constants = bytecode.constants;
+                    pc = 0;
+                    backEdges = 0;
+                    returnedValue = false;
                 }
-                case Instruction.NewArray newArrayInst -> {
-                    long size = 0;
-                    Value initValue = null;
-                    if (newArrayInst.len() instanceof Operand.ConstantOperand constantOperand)
-                        size = constantOperand.value;
-                    else if (newArrayInst.len() instanceof Operand.RegisterOperand registerOperand) {
-                        Value.IntegerValue indexValue = (Value.IntegerValue) execStack.stack[base + registerOperand.frameSlot()];
-                        size = (long) indexValue.value;
-                    }
-                    if (newArrayInst.initValue() instanceof Operand.ConstantOperand constantOperand)
-                        initValue = new Value.IntegerValue(constantOperand.value);
-                    else if (newArrayInst.initValue() instanceof Operand.RegisterOperand registerOperand)
-                        initValue = execStack.stack[base + registerOperand.frameSlot()];
-                    execStack.stack[base + newArrayInst.destOperand().frameSlot()] = new Value.ArrayValue(newArrayInst.type, size, initValue);
+                case Instruction.I_NEW_ARRAY -> {
+                    int len = code[pc+3];
+                    int init = code[pc+4];
+                    long size = len == Bytecode.NONE ? 0 : intOperand(ints, constants, base, len);
+                    Value initValue = init == Bytecode.NONE ? null : value(execStack, constants, base, init);
+                    stack[base + code[pc+2]] = new Value.ArrayValue((EZType.EZTypeArray) bytecode.types[code[pc+1]], size, initValue);
+                    pc += 5;
                 }
-                case Instruction.NewStruct newStructInst -> {
-                    execStack.stack[base + newStructInst.destOperand().frameSlot()] = new Value.StructValue(newStructInst.type);
+                case Instruction.I_NEW_STRUCT -> {
+                    stack[base + code[pc+2]] = new Value.StructValue(layout((EZType.EZTypeStruct) bytecode.types[code[pc+1]]));
+                    pc += 3;
                 }
-                case Instruction.ArrayStore arrayStoreInst -> {
-                    if (arrayStoreInst.arrayOperand() instanceof Operand.RegisterOperand arrayOperand) {
-                        Value.ArrayValue arrayValue = (Value.ArrayValue) execStack.stack[base + arrayOperand.frameSlot()];
-                        int index = 0;
-                        if (arrayStoreInst.indexOperand() instanceof Operand.ConstantOperand constant) {
-                            index = (int) constant.value;
-                        }
-                        else if (arrayStoreInst.indexOperand() instanceof Operand.RegisterOperand registerOperand) {
-                            Value.IntegerValue indexValue = (Value.IntegerValue) execStack.stack[base + registerOperand.frameSlot()];
-                            index = (int) indexValue.value;
-                        }
-                        else throw new IllegalStateException();
-                        Value value;
-                        if (arrayStoreInst.sourceOperand() instanceof Operand.ConstantOperand constantOperand) {
-                            value = new Value.IntegerValue(constantOperand.value);
-                        }
-                        else if (arrayStoreInst.sourceOperand() instanceof Operand.NullConstantOperand) {
-                            value = new Value.NullValue();
-                        }
-                        else if (arrayStoreInst.sourceOperand() instanceof Operand.RegisterOperand registerOperand) {
-                            value = execStack.stack[base + registerOperand.frameSlot()];
-                        }
-                        else throw new IllegalStateException();
-                        if (index == arrayValue.values.size())
-                            arrayValue.values.add(value);
-                        else
-                            arrayValue.values.set(index, value);
-                    } else throw new IllegalStateException();
+                case Instruction.I_ARRAY_STORE -> {
+                    Value.ArrayValue arrayValue = (Value.ArrayValue) stack[base + code[pc+1]];
+                    int index = (int) intOperand(ints, constants, base, code[pc+2]);
+                    if (arrayValue.isIntArray())
+                        arrayValue.setInt(index, intOperand(ints, constants, base, code[pc+3]));
+                    else
+                        arrayValue.set(index, value(execStack, constants, base, code[pc+3]));
+                    pc += 4;
                 }
-                case Instruction.ArrayLoad arrayLoadInst -> {
-                    if (arrayLoadInst.arrayOperand() instanceof Operand.RegisterOperand arrayOperand) {
-                        Value.ArrayValue arrayValue = (Value.ArrayValue) execStack.stack[base + arrayOperand.frameSlot()];
-                        if (arrayLoadInst.indexOperand() instanceof Operand.ConstantOperand constant) {
-                            execStack.stack[base + arrayLoadInst.destOperand().frameSlot()] = arrayValue.values.get((int) constant.value);
-                        }
-                        else if (arrayLoadInst.indexOperand() instanceof Operand.RegisterOperand registerOperand) {
-                            Value.IntegerValue index = (Value.IntegerValue) execStack.stack[base + registerOperand.frameSlot()];
-                            execStack.stack[base + arrayLoadInst.destOperand().frameSlot()] = arrayValue.values.get((int) index.value);
-                        }
-                        else throw new IllegalStateException();
-                    } else throw new IllegalStateException();
+                case Instruction.I_ARRAY_LOAD -> {
+                    Value.ArrayValue arrayValue = (Value.ArrayValue) stack[base + code[pc+2]];
+                    int index = (int) intOperand(ints, constants, base, code[pc+3]);
+                    if (arrayValue.isIntArray())
+                        execStack.setInt(base + code[pc+1], arrayValue.getInt(index));
+                    else
+                        loadElement(execStack, base + code[pc+1], arrayValue.get(index));
+                    pc += 4;
                 }
-                case Instruction.SetField setFieldInst -> {
-                    if (setFieldInst.structOperand() instanceof Operand.RegisterOperand structOperand) {
-                        Value.StructValue structValue = (Value.StructValue) execStack.stack[base + structOperand.frameSlot()];
-                        int index = setFieldInst.fieldIndex;
-                        Value value;
-                        if (setFieldInst.sourceOperand() instanceof Operand.ConstantOperand constant) {
-                            value = new Value.IntegerValue(constant.value);
-                        }
-                        else if (setFieldInst.sourceOperand() instanceof Operand.NullConstantOperand) {
-                            value = new Value.NullValue();
-                        }
-                        else if (setFieldInst.sourceOperand() instanceof Operand.RegisterOperand registerOperand) {
-                            value = execStack.stack[base + registerOperand.frameSlot()];
-                        }
-                        else throw new IllegalStateException();
-                        structValue.fields[index] = value;
-                    } else throw new IllegalStateException();
+                case Instruction.I_FIELD_SET -> {
+                    Value.StructValue structValue = (Value.StructValue) stack[base + code[pc+1]];
+                    int index = code[pc+2];
+                    if (structValue.layout.isInt(index))
+                        structValue.setInt(index, intOperand(ints, constants, base, code[pc+3]));
+                    else
+                        structValue.set(index, value(execStack, constants, base, code[pc+3]));
+                    pc += 4;
+                }
+                case Instruction.I_FIELD_GET -> {
+                    Value.StructValue structValue = (Value.StructValue) stack[base + code[pc+2]];
+                    int index = code[pc+3];
+                    if (structValue.layout.isInt(index))
+                        execStack.setInt(base + code[pc+1], structValue.getInt(index));
+                    else
+                        loadElement(execStack, base + code[pc+1], structValue.get(index));
+                    pc += 4;
                 }
-                case Instruction.GetField getFieldInst -> {
-                    if (getFieldInst.structOperand() instanceof Operand.RegisterOperand structOperand) {
-                        Value.StructValue structValue = (Value.StructValue) execStack.stack[base + structOperand.frameSlot()];
-                        int index = getFieldInst.fieldIndex;
-                        execStack.stack[base + getFieldInst.destOperand().frameSlot()] = structValue.fields[index];
-                    } else throw new IllegalStateException();
+                case Instruction.I_NULL_CHECK -> {
+                    // Fields and elements not yet assigned are null
+                    Value value = stack[base + code[pc+1]];
+                    if (value == null || value instanceof Value.NullValue)
+                        throw new InterpreterException("Null value at " + pc);
+                    pc += 2;
                 }
-                case Instruction.ArgInstruction argInst -> {}
-                default -> throw new IllegalStateException("Unexpected value: " + instruction);
+                case Instruction.I_BOUNDS_CHECK -> {
+                    Value.ArrayValue arrayValue = (Value.ArrayValue) stack[base + code[pc+1]];
+                    long index = intOperand(ints, constants, base, code[pc+2]);
+                    // A store may append to the array
+                    long size = code[pc+3] != 0 ? arrayValue.size() + 1 : arrayValue.size();
+                    if (index < 0 || index >= size)
+                        throw new InterpreterException("Array index " + index + " out of bounds at " + pc);
+                    pc += 4;
+                }
+                case Instruction.I_SPILL -> {
+                    execStack.spill(base + code[pc+2], spillBase + code[pc+1]);
+                    pc += 3;
+                }
+                case Instruction.I_RELOAD -> {
+                    execStack.reload(spillBase + code[pc+2], base + code[pc+1]);
+                    pc += 3;
+                }
+                case Instruction.I_EXIT -> {
+                    exit(frame.bytecodeFunction, backEdges);
+                    if (frame == entry)
+                        return returnedValue;
+                    // Resume the caller
+                    int calleeBase = base;
+                    frame = frame.caller;
+                    bytecode = frame.bytecodeFunction.bytecode();
+                    code = bytecode.code;
+                    constants = bytecode.constants;
+                    base = frame.base;
+                    spillBase = frame.spillBase;
+                    pc = frame.pc;
+                    backEdges = frame.backEdges;
+                    returnedValue = frame.returnedValue;
+                    if (frame.retSlot != Bytecode.NONE)
+                        execStack.copy(calleeBase, base + frame.retSlot);
+                }
+                default -> throw new IllegalStateException("Unexpected opcode " + code[pc] + " at " + pc);
             }
         }
-        return returnValue;
+    }
+
+    private static long intOperand(long[] ints, long[] constants, int base, int operand) {
+        return operand >= 0 ? ints[base + operand] : constants[Bytecode.constantIndex(operand)];
+    }
+
+    /**
+     * Copies a source operand into a slot
+     */
+    private static void move(ExecutionStack execStack, long[] constants, int base, int operand, int toSlot) {
+        if (operand >= 0)
+            execStack.copy(base + operand, toSlot);
+        else if (operand == Bytecode.NULL)
+            execStack.stack[toSlot] = Value.NullValue.NULL;
+        else
+            execStack.setInt(toSlot, constants[Bytecode.constantIndex(operand)]);
+    }
+
+    /**
+     * Gets a source operand as a boxed value, for storing in arrays and structs
+     */
+    private static Value value(ExecutionStack execStack, long[] constants, int base, int operand) {
+        if (operand >= 0)
+            return execStack.getValue(base + operand);
+        else if (operand == Bytecode.NULL)
+            return Value.NullValue.NULL;
+        else
+            return Value.IntegerValue.valueOf(constants[Bytecode.constantIndex(operand)]);
+    }
+
+    /**
+     * Loads a reference array element or struct field into a slot.
+     * Int elements are unboxed and loaded directly; references that
+     * were never initialized are null.
+     */
+    private static void loadElement(ExecutionStack execStack, int slot, Value value) {
+        if (value != null)
+            execStack.setValue(slot, value);
+        else
+            execStack.stack[slot] = Value.NullValue.NULL;
     }
 
     static class Frame {
         Frame caller;
         int base;
+        // Start of the function's part of the spill area
+        int spillBase;
         CompiledFunction bytecodeFunction;
+        // Saved while calling another function: where to resume, and
+        // where the return value goes
+        int pc;
+        int retSlot;
+        int backEdges;
+        boolean returnedValue;
+        // The record of the last call made from this frame, for reuse
+        private Frame callee;
 
         public Frame(Symbol.FunctionTypeSymbol functionSymbol) {
             this.caller = null;
             this.base = 0;
+            this.spillBase = 0;
             this.bytecodeFunction = (CompiledFunction) functionSymbol.code();
         }
 
-        Frame(Frame caller, int base, EZType.EZTypeFunction functionType) {
+        Frame(CompiledFunction function) {
+            this(null, 0, 0, function);
+        }
+
+        Frame(Frame caller, int base, int spillBase, CompiledFunction function) {
             this.caller = caller;
             this.base = base;
-            this.bytecodeFunction = (CompiledFunction) functionType.code;
+            this.spillBase = spillBase;
+            this.bytecodeFunction = function;
+        }
+
+        /**
+         * Returns the frame of a call from this frame
+         */
+        Frame push(int base, int spillBase, CompiledFunction function) {
+            Frame frame = callee;
+            if (frame == null)
+                callee = frame = new Frame(this, base, spillBase, function);
+            else {
+                frame.base = base;
+                frame.spillBase = spillBase;
+                frame.bytecodeFunction = function;
+            }
+            return frame;
         }
     }
 }
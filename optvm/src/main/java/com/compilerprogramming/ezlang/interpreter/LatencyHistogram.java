@@ -0,0 +1,115 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in nanoseconds, safe for concurrent recording.
+ *
+ * Bucket i counts latencies in [2^(i-1), 2^i), bucket 0 counts zero,
+ * so percentiles are accurate to within a factor of two. Recording
+ * only increments counters and never allocates.
+ */
+public class LatencyHistogram {
+
+    static final int BUCKETS = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+        counts.incrementAndGet(bucket(nanos));
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * A copy of the counts recorded so far, that does not change as
+     * more latencies are recorded
+     */
+    public LatencyHistogram snapshot() {
+        LatencyHistogram copy = new LatencyHistogram();
+        for (int i = 0; i < BUCKETS; i++)
+            copy.counts.set(i, counts.get(i));
+        copy.totalNanos.set(totalNanos.get());
+        copy.maxNanos.set(maxNanos.get());
+        return copy;
+    }
+
+    static int bucket(long nanos) {
+        return 64 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    /**
+     * Upper bound of the latencies counted in the bucket
+     */
+    static long bucketLimit(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public long count() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++)
+            count += counts.get(i);
+        return count;
+    }
+
+    public long count(int bucket) {
+        return counts.get(bucket);
+    }
+
+    public long totalNanos() {
+        return totalNanos.get();
+    }
+
+    public long maxNanos() {
+        return maxNanos.get();
+    }
+
+    public long meanNanos() {
+        long count = count();
+        return count == 0 ? 0 : totalNanos() / count;
+    }
+
+    /**
+     * Upper bound of the latency below which the given fraction of the
+     * recorded latencies fall, capped at the maximum seen
+     *
+     * @param fraction between 0 and 1, for example 0.99 for the 99th percentile
+     */
+    public long percentileNanos(double fraction) {
+        if (fraction < 0 || fraction > 1)
+            throw new IllegalArgumentException("Fraction must be between 0 and 1, got " + fraction);
+        long count = count();
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank)
+                return Math.min(bucketLimit(i), maxNanos());
+        }
+        return maxNanos();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("count %d, mean %.3f us, p50 %.3f us, p99 %.3f us, max %.3f us%n",
+                count(), micros(meanNanos()), micros(percentileNanos(0.5)), micros(percentileNanos(0.99)), micros(maxNanos())));
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = counts.get(i);
+            if (n > 0)
+                sb.append(String.format("  <= %12.3f us %10d%n", micros(bucketLimit(i)), n));
+        }
+        return sb.toString();
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+}
@@ -0,0 +1,219 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.Optimizer;
+import com.compilerprogramming.ezlang.compiler.OptimizerMetrics;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+import com.compilerprogramming.ezlang.types.EZType;
+import com.compilerprogramming.ezlang.types.Symbol;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Interpreter that starts every function in the code it was compiled to,
+ * normally unoptimized, and promotes hot functions to optimized code.
+ *
+ * Invocations and loop back-edges are counted per function. When either
+ * crosses its threshold the function is compiled again from its AST and
+ * optimized with {@link Options#OPT} on a background thread, while the
+ * interpreter carries on with the unoptimized code. The optimized code is
+ * swapped in at the next call of the function; invocations already running
+ * finish in the code they started in. Both tiers share the calling
+ * convention of the interpreter, so optimized and unoptimized functions
+ * call each other freely.
+ *
+ * The counters belong to the interpreter thread. The background thread
+ * only publishes its result, and the swap itself happens on the interpreter
+ * thread. The optimized code is kept in the function's profile, the code
+ * of the function type is left as it was compiled, so that other
+ * interpreters sharing the type dictionary are not affected.
+ */
+public class TieredInterpreter extends Interpreter implements AutoCloseable {
+
+    public static final int DEFAULT_INVOCATION_THRESHOLD = 100;
+    public static final int DEFAULT_BACKEDGE_THRESHOLD = 10_000;
+
+    private final int invocationThreshold;
+    private final int backEdgeThreshold;
+    private final EnumSet<Options> options;
+    private final ExecutorService compiler;
+    private final Map<EZType.EZTypeFunction, FunctionProfile> profiles = new IdentityHashMap<>();
+    // Metrics of all functions promoted, filled in by the background thread
+    private final Optimizer optimizer = new Optimizer();
+
+    public TieredInterpreter(TypeDictionary typeDictionary) {
+        this(typeDictionary, DEFAULT_INVOCATION_THRESHOLD, DEFAULT_BACKEDGE_THRESHOLD);
+    }
+
+    public TieredInterpreter(TypeDictionary typeDictionary, int invocationThreshold, int backEdgeThreshold) {
+        this(typeDictionary, invocationThreshold, backEdgeThreshold, Options.OPT, Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "ezlang-tiered-compiler");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    /**
+     * @param invocationThreshold Calls after which a function is optimized
+     * @param backEdgeThreshold   Loop back-edges, over all calls, after which a function is optimized
+     * @param options             Options to compile and optimize hot functions with
+     * @param compiler            Runs the compilations of hot functions; closed with this interpreter
+     */
+    public TieredInterpreter(TypeDictionary typeDictionary, int invocationThreshold, int backEdgeThreshold,
+                             EnumSet<Options> options, ExecutorService compiler) {
+        super(typeDictionary);
+        if (invocationThreshold < 1)
+            throw new IllegalArgumentException("Invocation threshold must be at least 1, got " + invocationThreshold);
+        if (backEdgeThreshold < 1)
+            throw new IllegalArgumentException("Back-edge threshold must be at least 1, got " + backEdgeThreshold);
+        this.invocationThreshold = invocationThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        this.options = options;
+        this.compiler = compiler;
+        for (Symbol symbol: typeDictionary.getLocalSymbols()) {
+            if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol
+                    && functionSymbol.code() instanceof CompiledFunction function)
+                profiles.put(function.functionType, new FunctionProfile(functionSymbol, function));
+        }
+    }
+
+    @Override
+    protected CompiledFunction enter(EZType.EZTypeFunction function) {
+        FunctionProfile profile = profiles.get(function);
+        if (profile == null)
+            return super.enter(function);
+        if (profile.state == State.OPTIMIZED)
+            return profile.optimized;
+        if (profile.state == State.COMPILING && profile.result != null) {
+            // Swap in the optimized code
+            profile.optimized = profile.result;
+            profile.state = State.OPTIMIZED;
+            return profile.optimized;
+        }
+        profile.invocations++;
+        checkHot(profile);
+        return profile.baseline;
+    }
+
+    @Override
+    protected void exit(CompiledFunction function, int backEdges) {
+        FunctionProfile profile = profiles.get(function.functionType);
+        if (profile != null && function == profile.baseline) {
+            profile.backEdges += backEdges;
+            checkHot(profile);
+        }
+    }
+
+    private void checkHot(FunctionProfile profile) {
+        if (profile.state != State.INTERPRETED)
+            return;
+        if (profile.invocations < invocationThreshold && profile.backEdges < backEdgeThreshold)
+            return;
+        profile.state = State.COMPILING;
+        try {
+            compiler.execute(() -> compile(profile));
+        }
+        catch (RejectedExecutionException e) {
+            // Closed, stay in the interpreter
+            profile.state = State.FAILED;
+        }
+    }
+
+    /**
+     * Runs on the background thread
+     */
+    private void compile(FunctionProfile profile) {
+        try {
+            // Compiling rewrites the register numbers of the AST's variables
+            // to the same values, the interpreter does not read them
+            var function = new CompiledFunction(profile.symbol, typeDictionary, options);
+            synchronized (optimizer) {
+                optimizer.optimize(function, options);
+            }
+            function.bytecode();
+            profile.result = function;
+        }
+        catch (RuntimeException e) {
+            profile.failure = e;
+        }
+    }
+
+    /**
+     * The tier the named function executes in
+     */
+    public State state(String functionName) {
+        FunctionProfile profile = profile(functionName);
+        // A failure is published by the background thread
+        if (profile.state == State.COMPILING && profile.failure != null)
+            return State.FAILED;
+        return profile.state;
+    }
+
+    public long invocations(String functionName) {
+        return profile(functionName).invocations;
+    }
+
+    public long backEdges(String functionName) {
+        return profile(functionName).backEdges;
+    }
+
+    /**
+     * Metrics of the optimizations of all functions promoted so far
+     */
+    public OptimizerMetrics metrics() {
+        synchronized (optimizer) {
+            return optimizer.metrics();
+        }
+    }
+
+    private FunctionProfile profile(String functionName) {
+        Symbol symbol = typeDictionary.lookup(functionName);
+        if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol) {
+            FunctionProfile profile = profiles.get((EZType.EZTypeFunction) functionSymbol.type);
+            if (profile != null)
+                return profile;
+        }
+        throw new InterpreterException("Unknown function: " + functionName);
+    }
+
+    /**
+     * Stops the background compilations; functions not yet
+     * promoted stay in the interpreter
+     */
+    @Override
+    public void close() {
+        compiler.shutdownNow();
+    }
+
+    public enum State {
+        INTERPRETED,
+        COMPILING,
+        OPTIMIZED,
+        // Optimization failed or was cancelled, the function stays interpreted
+        FAILED
+    }
+
+    static final class FunctionProfile {
+        final CompiledFunction baseline;
+        final Symbol.FunctionTypeSymbol symbol;
+        State state = State.INTERPRETED;
+        long invocations;
+        long backEdges;
+        CompiledFunction optimized;
+        // Published by the background thread
+        volatile CompiledFunction result;
+        volatile RuntimeException failure;
+
+        FunctionProfile(Symbol.FunctionTypeSymbol symbol, CompiledFunction baseline) {
+            this.symbol = symbol;
+            this.baseline = baseline;
+        }
+    }
+}
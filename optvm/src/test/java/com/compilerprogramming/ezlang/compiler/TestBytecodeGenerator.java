@@ -0,0 +1,87 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.types.Symbol;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestBytecodeGenerator {
+
+    String compileSrc(String src, String functionName, EnumSet<Options> options) {
+        var compiler = new Compiler();
+        var typeDict = compiler.compileSrc(src, options);
+        var functionSymbol = (Symbol.FunctionTypeSymbol) typeDict.lookup(functionName);
+        var function = (CompiledFunction) functionSymbol.code();
+        return function.bytecode().toStr(new StringBuilder()).toString();
+    }
+
+    @Test
+    public void testReturnConstant() {
+        String src = """
+                func foo(n: Int)->Int {
+                    return 1;
+                }
+                """;
+        String result = compileSrc(src, "foo", Options.NONE);
+        Assert.assertEquals("""
+0: ret 1
+2: exit
+""", result);
+    }
+
+    @Test
+    public void testLoop() {
+        String src = """
+                func foo(n: Int)->Int {
+                    var i = 0
+                    var sum = 0
+                    while (i < n) {
+                        sum = sum + i
+                        i = i + 1
+                    }
+                    return sum
+                }
+                """;
+        String result = compileSrc(src, "foo", Options.NONE);
+        Assert.assertEquals("""
+0: move %1, 0
+3: move %2, 0
+6: binary < %3, %1, %0
+11: cbr %3, 19, 15
+15: ret %2
+17: br 37
+19: binary + %4, %2, %1
+24: move %2, %4
+27: binary + %5, %1, 1
+32: move %1, %5
+35: br 6
+37: exit
+""", result);
+    }
+
+    @Test
+    public void testCallAndNullCompare() {
+        String src = """
+                struct Node { var next: Node? }
+                func isLast(n: Node)->Int {
+                    return n.next == null
+                }
+                func foo()->Int {
+                    return isLast(new Node{})
+                }
+                """;
+        Assert.assertEquals("""
+0: field_get %0, %0, 0
+4: binary == null %0, %0
+9: ret %0
+11: exit
+""", compileSrc(src, "isLast", Options.OPT));
+        Assert.assertEquals("""
+0: new_struct Node %0
+3: call isLast -> %0 %0
+8: ret %0
+10: exit
+""", compileSrc(src, "foo", Options.OPT));
+    }
+}
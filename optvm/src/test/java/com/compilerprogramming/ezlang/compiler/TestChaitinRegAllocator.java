@@ -1,8 +1,15 @@
 package com.compilerprogramming.ezlang.compiler;
 
+import com.compilerprogramming.ezlang.exceptions.CompilerException;
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.EnumSet;
+import java.util.List;
+
 public class TestChaitinRegAllocator {
 
     /* Test move does not interfere with uses */
@@ -28,4 +35,97 @@ L1:
         Assert.assertEquals(regAssignments.size(), 3);
         Assert.assertEquals(regAssignments.values().stream().sorted().distinct().count(), 2);
     }
-}
\ No newline at end of file
+
+    static final String SPILL_SRC = """
+            func sum4(a: Int, b: Int, c: Int, d: Int)->Int {
+                var x = a*b + c*d
+                var y = a*c + b*d
+                var z = a+b+c+d
+                var i = 0
+                var s = 0
+                while (i < 10) {
+                    var t1 = x + i
+                    var t2 = y - i
+                    var t3 = z * i
+                    s = s + t1 + t2 + t3 + a - d
+                    i = i + 1
+                }
+                return s + x + y + z
+            }
+            func fib(n: Int)->Int {
+                if (n < 2) return n
+                return fib(n-1) + fib(n-2)
+            }
+            func arr(n: Int)->Int {
+                var a = new [Int] {len=n}
+                var i = 0
+                while (i < n) {
+                    a[i] = i * i
+                    i = i + 1
+                }
+                var s = 0
+                i = 0
+                while (i < n) {
+                    s = s + a[i]
+                    i = i + 1
+                }
+                return s
+            }
+            func main()->Int {
+                return sum4(1,2,3,4) + fib(12) + arr(20)
+            }
+            """;
+
+    static long run(TypeDictionary typeDict) {
+        Value value = new Interpreter(typeDict).run("main");
+        return ((Value.IntegerValue) value).value;
+    }
+
+    @Test
+    public void testSpilling() {
+        for (EnumSet<Options> options: List.of(Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B)) {
+            long expected = run(new Compiler().compileSrc(SPILL_SRC, options));
+            for (int k: new int[] {8, 6, 4}) {
+                var typeDict = new Compiler(1, k).compileSrc(SPILL_SRC, options);
+                Assert.assertEquals(expected, run(typeDict));
+                for (CompiledFunction function: ModuleOptimizer.functions(typeDict))
+                    Assert.assertTrue(function.frameSize() <= k);
+            }
+        }
+    }
+
+    @Test
+    public void testSpillCode() {
+        var typeDict = new Compiler().compileSrc(SPILL_SRC, Options.NONE);
+        var function = ModuleOptimizer.functions(typeDict).stream()
+                .filter(f -> f.functionType.name.equals("sum4")).findFirst().orElseThrow();
+        var optimizer = new Optimizer(5);
+        optimizer.optimize(function, Options.OPT);
+        var regalloc = optimizer.metrics().functions().get(0).phases().stream()
+                .filter(p -> p.phase == Optimizer.Phase.REGALLOC).findFirst().orElseThrow();
+        Assert.assertTrue(regalloc.registersSpilled() > 0);
+        Assert.assertTrue(function.spillSize() > 0);
+        Assert.assertEquals(function.spillSize(), regalloc.registersSpilled());
+        Assert.assertTrue(function.frameSize() <= 5);
+        String ir = function.toStr(new StringBuilder(), false).toString();
+        Assert.assertTrue(ir.contains(" = spill["));
+        Assert.assertTrue(ir.contains("spill[0] = "));
+        // Arguments stay at the start of the entry block
+        var entry = function.entry.instructions;
+        for (int i = 0; i < 4; i++)
+            Assert.assertTrue(entry.get(i) instanceof Instruction.ArgInstruction);
+        Assert.assertTrue(function.bytecode().toStr(new StringBuilder()).toString().contains("reload %"));
+    }
+
+    @Test
+    public void testNoSpillingWithEnoughRegisters() {
+        var typeDict = new Compiler().compileSrc(SPILL_SRC, Options.OPT);
+        for (CompiledFunction function: ModuleOptimizer.functions(typeDict))
+            Assert.assertEquals(0, function.spillSize());
+    }
+
+    @Test(expected = CompilerException.class)
+    public void testTooFewRegistersForArgs() {
+        new Compiler(1, 4).compileSrc("func foo(a: Int, b: Int, c: Int, d: Int, e: Int)->Int { return a+e }", Options.OPT);
+    }
+}
@@ -0,0 +1,173 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestDCE {
+
+    static String compileSrc(String src) {
+        var function = TestOptimizerMetrics.function(src, "foo");
+        var options = EnumSet.of(Options.DCE);
+        new EnterSSA(function, options);
+        new SparseConditionalConstantPropagation().constantPropagation(function).apply(options);
+        StringBuilder sb = new StringBuilder();
+        function.toStr(sb, false);
+        var dce = new DeadCodeElimination(function);
+        dce.apply(options);
+        sb.append("After DCE removed ").append(dce.instructionsRemoved())
+                .append(" instructions and ").append(dce.blocksRemoved()).append(" blocks:\n");
+        function.toStr(sb, false);
+        return sb.toString();
+    }
+
+    static final String LOOP_SRC = """
+                func foo(n: Int, d: Int)->Int {
+                    var i = 0
+                    var unused = 0
+                    var sum = 0
+                    var k = 1
+                    var q = n / d
+                    var r = n / 2
+                    var neg = -n
+                    while (i < n) {
+                        unused = unused + i * 2
+                        if (k == 1) sum = sum + i
+                        else sum = sum - 1
+                        i = i + 1
+                    }
+                    return sum
+                }
+                func main()->Int {
+                    return foo(10, 3)
+                }
+                """;
+
+    @Test
+    public void testDeadCode() {
+        // unused is only used by itself, the phi cycle goes away.
+        // n/d may fail, so it stays, n/2 cannot.
+        // The empty block left where SCCP removed the if goes away.
+        String expected = """
+                L0:
+                    arg n_0
+                    arg d_0
+                    %t9_0 = n_0/d_0
+                    q_0 = %t9_0
+                    %t10_0 = n_0/2
+                    r_0 = %t10_0
+                    %t11_0 = -n_0
+                    neg_0 = %t11_0
+                    goto  L2
+                L2:
+                    sum_1 = phi(0, sum_4)
+                    unused_1 = phi(0, unused_2)
+                    i_1 = phi(0, i_2)
+                    %t12_0 = i_1<n_0
+                    if %t12_0 goto L3 else goto L4
+                L3:
+                    %t13_0 = i_1*2
+                    %t14_0 = unused_1+%t13_0
+                    unused_2 = %t14_0
+                    goto  L5
+                L5:
+                    %t16_0 = sum_1+i_1
+                    sum_3 = %t16_0
+                    goto  L7
+                L7:
+                    sum_4 = phi(sum_3)
+                    %t18_0 = i_1+1
+                    i_2 = %t18_0
+                    goto  L2
+                L4:
+                    ret sum_1
+                    goto  L1
+                L1:
+                After DCE removed 9 instructions and 1 blocks:
+                L0:
+                    arg n_0
+                    arg d_0
+                    %t9_0 = n_0/d_0
+                    goto  L2
+                L2:
+                    sum_1 = phi(0, sum_4)
+                    i_1 = phi(0, i_2)
+                    %t12_0 = i_1<n_0
+                    if %t12_0 goto L5 else goto L4
+                L5:
+                    %t16_0 = sum_1+i_1
+                    sum_3 = %t16_0
+                    goto  L7
+                L7:
+                    sum_4 = phi(sum_3)
+                    %t18_0 = i_1+1
+                    i_2 = %t18_0
+                    goto  L2
+                L4:
+                    ret sum_1
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(LOOP_SRC));
+    }
+
+    @Test
+    public void testNoCriticalEdges() {
+        String src = """
+                func foo(n: Int)->Int {
+                    var x = 1
+                    if (n > 0) x = 2
+                    else {
+                        var t = n * 3
+                    }
+                    return x
+                }
+                """;
+        // L3 is empty after DCE, but without it the edge from L0 to L4
+        // would be critical, and there would be no place for the copy of x
+        String expected = """
+                After DCE removed 2 instructions and 0 blocks:
+                L0:
+                    arg n_0
+                    %t3_0 = n_0>0
+                    if %t3_0 goto L2 else goto L3
+                L2:
+                    goto  L4
+                L4:
+                    x_2 = phi(2, 1)
+                    ret x_2
+                    goto  L1
+                L1:
+                L3:
+                    goto  L4
+                """;
+        String actual = compileSrc(src);
+        Assert.assertEquals(expected, actual.substring(actual.indexOf("After DCE")));
+    }
+
+    @Test
+    public void testOptimizedRun() {
+        long expected = ((Value.IntegerValue) new Interpreter(new Compiler().compileSrc(LOOP_SRC, Options.NONE)).run("main")).value;
+        Assert.assertEquals(45, expected);
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA}) {
+            var typeDict = new Compiler().compileSrc(LOOP_SRC, options);
+            Assert.assertEquals(expected, ((Value.IntegerValue) new Interpreter(typeDict).run("main")).value);
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        var function = TestOptimizerMetrics.function(LOOP_SRC, "foo");
+        var optimizer = new Optimizer();
+        optimizer.optimize(function, Options.OPT);
+        var dce = TestOptimizerMetrics.phase(optimizer.metrics().functions().get(0), Optimizer.Phase.DCE);
+        // Including the induction variable IVSR made of the unused i * 2
+        Assert.assertEquals(11, dce.deadInstructionsRemoved());
+        Assert.assertEquals(dce.instructionsBefore() - 11 - 1, dce.instructionsAfter());
+        Assert.assertEquals(dce.blocksBefore() - 1, dce.blocksAfter());
+        Assert.assertEquals(2, dce.phisRemoved());
+    }
+}
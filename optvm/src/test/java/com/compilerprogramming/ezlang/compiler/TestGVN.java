@@ -0,0 +1,205 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestGVN {
+
+    String compileSrc(String src) {
+        var typeDict = new Compiler().compileSrc(src, Options.NONE);
+        StringBuilder sb = new StringBuilder();
+        var options = EnumSet.of(Options.GVN);
+        for (CompiledFunction function: ModuleOptimizer.functions(typeDict)) {
+            if (!function.functionType.name.equals("foo"))
+                continue;
+            new EnterSSA(function, options);
+            var gvn = new GlobalValueNumbering(function);
+            gvn.apply(options);
+            sb.append("Removed ").append(gvn.redundanciesRemoved()).append("\n");
+            function.toStr(sb, false);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testPureExpressions() {
+        String src = """
+                func foo(a: Int, b: Int)->Int {
+                    var x = a * b + 1
+                    var y = b * a + 1
+                    return x + y
+                }
+                """;
+        String expected = """
+                Removed 2
+                L0:
+                    arg a_0
+                    arg b_0
+                    %t4_0 = a_0*b_0
+                    %t5_0 = %t4_0+1
+                    x_0 = %t5_0
+                    y_0 = %t5_0
+                    %t8_0 = x_0+y_0
+                    ret %t8_0
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(src));
+    }
+
+    @Test
+    public void testLoads() {
+        String src = """
+                struct P { var x: Int; var y: Int }
+                func bar(p: P) {}
+                func foo(p: P, a: [Int], i: Int)->Int {
+                    var s = p.x + p.x
+                    p.y = s
+                    s = s + p.x + p.y
+                    a[i] = s
+                    s = s + a[i] + a[i+1]
+                    s = s + a[i+1]
+                    bar(p)
+                    return s + p.x
+                }
+                """;
+        // p.y is the value stored, p.x survives the store to p.y,
+        // a[i] is reloaded after the store to a, p.x after the call
+        String expected = """
+                Removed 5
+                L0:
+                    arg p_0
+                    arg a_0
+                    arg i_0
+                    %t4_0 = p_0.x
+                    %t6_0 = %t4_0+%t4_0
+                    s_0 = %t6_0
+                    p_0.y = s_0
+                    %t8_0 = s_0+%t4_0
+                    %t10_0 = %t8_0+s_0
+                    s_1 = %t10_0
+                    a_0[i_0] = s_1
+                    %t11_0 = a_0[i_0]
+                    %t12_0 = s_1+%t11_0
+                    %t13_0 = i_0+1
+                    %t14_0 = a_0[%t13_0]
+                    %t15_0 = %t12_0+%t14_0
+                    s_2 = %t15_0
+                    %t18_0 = s_2+%t14_0
+                    s_3 = %t18_0
+                    %t19_0 = p_0
+                    call bar params %t19_0
+                    %t20_0 = p_0.x
+                    %t21_0 = s_3+%t20_0
+                    ret %t21_0
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(src));
+    }
+
+    static final String LOOP_SRC = """
+                func foo(a: [Int], n: Int)->Int {
+                    var s = a[n] * 2
+                    var i = 0
+                    if (n > 3) {
+                        s = s + a[n] * 2
+                    }
+                    while (i < n) {
+                        s = s + a[n] + (n * 2)
+                        a[i] = s
+                        i = i + 1
+                    }
+                    return s + n * 2 - -n + -n
+                }
+                func main()->Int {
+                    var a = new [Int]{len=10}
+                    var i = 0
+                    while (i < 10) {
+                        a[i] = i
+                        i = i + 1
+                    }
+                    return foo(a, 5) + foo(a, 2)
+                }
+                """;
+
+    @Test
+    public void testDominatedBlocks() {
+        // The if block is only entered from the entry, so it reuses the load,
+        // the loop body can be entered from the back-edge, so it reloads a[n].
+        // n*2 at the exit is not dominated by the one in the loop body.
+        String expected = """
+                Removed 3
+                L0:
+                    arg a_0
+                    arg n_0
+                    %t4_0 = a_0[n_0]
+                    %t5_0 = %t4_0*2
+                    s_0 = %t5_0
+                    i_0 = 0
+                    %t6_0 = n_0>3
+                    if %t6_0 goto L2 else goto L3
+                L2:
+                    %t9_0 = s_0+%t5_0
+                    s_1 = %t9_0
+                    goto  L3
+                L3:
+                    s_2 = phi(s_0, s_1)
+                    goto  L4
+                L4:
+                    i_1 = phi(i_0, i_2)
+                    s_3 = phi(s_2, s_4)
+                    %t10_0 = i_1<n_0
+                    if %t10_0 goto L5 else goto L6
+                L5:
+                    %t11_0 = a_0[n_0]
+                    %t12_0 = s_3+%t11_0
+                    %t13_0 = n_0*2
+                    %t14_0 = %t12_0+%t13_0
+                    s_4 = %t14_0
+                    a_0[i_1] = s_4
+                    %t15_0 = i_1+1
+                    i_2 = %t15_0
+                    goto  L4
+                L6:
+                    %t16_0 = n_0*2
+                    %t17_0 = s_3+%t16_0
+                    %t18_0 = -n_0
+                    %t19_0 = %t17_0-%t18_0
+                    %t21_0 = %t19_0+%t18_0
+                    ret %t21_0
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(LOOP_SRC));
+    }
+
+    @Test
+    public void testOptimizedRun() {
+        long expected = ((Value.IntegerValue) new Interpreter(new Compiler().compileSrc(LOOP_SRC, Options.NONE)).run("main")).value;
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA}) {
+            var typeDict = new Compiler().compileSrc(LOOP_SRC, options);
+            Assert.assertEquals(expected, ((Value.IntegerValue) new Interpreter(typeDict).run("main")).value);
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        var gvn = TestOptimizerMetrics.phase(optimize(LOOP_SRC, Options.OPT), Optimizer.Phase.GVN);
+        Assert.assertEquals(3, gvn.redundanciesRemoved());
+        Assert.assertEquals(gvn.instructionsBefore() - 3, gvn.instructionsAfter());
+        Assert.assertNull(TestOptimizerMetrics.phase(
+                optimize(LOOP_SRC, EnumSet.of(Options.OPTIMIZE, Options.SCCP, Options.CCP)), Optimizer.Phase.GVN));
+    }
+
+    static OptimizerMetrics.FunctionMetrics optimize(String src, EnumSet<Options> options) {
+        var function = TestOptimizerMetrics.function(src, "foo");
+        var optimizer = new Optimizer();
+        optimizer.optimize(function, options);
+        return optimizer.metrics().functions().get(0);
+    }
+}
@@ -0,0 +1,475 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestIVSR {
+
+    static String compileSrc(String src, EnumSet<Options> options) {
+        var function = TestOptimizerMetrics.function(src, "foo");
+        new EnterSSA(function, options);
+        if (options.contains(Options.LICM))
+            new LoopInvariantCodeMotion(function).apply(options);
+        var ivsr = new InductionVariableStrengthReduction(function);
+        ivsr.apply(options);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Reduced ").append(ivsr.strengthReductions())
+                .append(", replaced ").append(ivsr.testsReplaced()).append(" tests\n");
+        function.toStr(sb, false);
+        new DeadCodeElimination(function).apply(options);
+        sb.append("After DCE:\n");
+        function.toStr(sb, false);
+        return sb.toString();
+    }
+
+    static long run(String src, EnumSet<Options> options) {
+        return ((Value.IntegerValue) new Interpreter(new Compiler().compileSrc(src, options)).run("main")).value;
+    }
+
+    static final String SUM_SRC = """
+                func foo(a: [Int], n: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (i < n) {
+                        s = s + a[i*4+1]
+                        i = i + 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    var a = new [Int]{len=40, value=3}
+                    return foo(a, 9)
+                }
+                """;
+
+    static final String MATMUL_SRC = """
+                func foo(a: [Int], b: [Int], c: [Int], n: Int) {
+                    var i = 0
+                    while (i < n) {
+                        var j = 0
+                        while (j < n) {
+                            var sum = 0
+                            var k = 0
+                            while (k < n) {
+                                sum = sum + a[i*n+k] * b[k*n+j]
+                                k = k + 1
+                            }
+                            c[i*n+j] = sum
+                            j = j + 1
+                        }
+                        i = i + 1
+                    }
+                }
+                func main()->Int {
+                    var n = 5
+                    var a = new [Int]{len=n*n, value=0}
+                    var b = new [Int]{len=n*n, value=0}
+                    var c = new [Int]{len=n*n, value=0}
+                    var i = 0
+                    while (i < n*n) {
+                        a[i] = i % 7
+                        b[i] = i - 3
+                        i = i + 1
+                    }
+                    foo(a, b, c, n)
+                    var sum = 0
+                    i = 0
+                    while (i < n*n) {
+                        sum = sum + c[i] * (i + 1)
+                        i = i + 1
+                    }
+                    return sum
+                }
+                """;
+
+    @Test
+    public void testSum() {
+        // i*4 and i*4+1 become induction variables, and i*4 is left dead.
+        // The test of i is kept, as i*4+1 could overflow where i does not
+        String expected = """
+                Reduced 2, replaced 0 tests
+                L0:
+                    arg a_0
+                    arg n_0
+                    i_0 = 0
+                    s_0 = 0
+                    %t24 = i_0*4
+                    %t27 = %t24+1
+                    goto  L2
+                L2:
+                    %t28 = phi(%t27, %t29)
+                    %t25 = phi(%t24, %t26)
+                    s_1 = phi(s_0, s_2)
+                    i_1 = phi(i_0, i_2)
+                    %t4_0 = i_1<n_0
+                    if %t4_0 goto L3 else goto L4
+                L3:
+                    %t7_0 = a_0[%t28]
+                    %t8_0 = s_1+%t7_0
+                    s_2 = %t8_0
+                    %t9_0 = i_1+1
+                    %t29 = %t28+4
+                    %t26 = %t25+4
+                    i_2 = %t9_0
+                    goto  L2
+                L4:
+                    ret s_1
+                    goto  L1
+                L1:
+                After DCE:
+                L0:
+                    arg a_0
+                    arg n_0
+                    i_0 = 0
+                    s_0 = 0
+                    %t24 = i_0*4
+                    %t27 = %t24+1
+                    goto  L2
+                L2:
+                    %t28 = phi(%t27, %t29)
+                    s_1 = phi(s_0, s_2)
+                    i_1 = phi(i_0, i_2)
+                    %t4_0 = i_1<n_0
+                    if %t4_0 goto L3 else goto L4
+                L3:
+                    %t7_0 = a_0[%t28]
+                    %t8_0 = s_1+%t7_0
+                    s_2 = %t8_0
+                    %t9_0 = i_1+1
+                    %t29 = %t28+4
+                    i_2 = %t9_0
+                    goto  L2
+                L4:
+                    ret s_1
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(SUM_SRC, EnumSet.of(Options.IVSR, Options.DCE)));
+    }
+
+    @Test
+    public void testReplaceTest() {
+        // With a constant limit the derived values are known not to
+        // overflow, the test of i is replaced by a test of i*4+1, and i
+        // and i*4 are left dead
+        String expected = """
+                Reduced 2, replaced 1 tests
+                L0:
+                    arg a_0
+                    arg n_0
+                    i_0 = 0
+                    s_0 = 0
+                    %t24 = i_0*4
+                    %t27 = %t24+1
+                    goto  L2
+                L2:
+                    %t28 = phi(%t27, %t29)
+                    %t25 = phi(%t24, %t26)
+                    s_1 = phi(s_0, s_2)
+                    i_1 = phi(i_0, i_2)
+                    %t4_0 = %t28<37
+                    if %t4_0 goto L3 else goto L4
+                L3:
+                    %t7_0 = a_0[%t28]
+                    %t8_0 = s_1+%t7_0
+                    s_2 = %t8_0
+                    %t9_0 = i_1+1
+                    %t29 = %t28+4
+                    %t26 = %t25+4
+                    i_2 = %t9_0
+                    goto  L2
+                L4:
+                    ret s_1
+                    goto  L1
+                L1:
+                After DCE:
+                L0:
+                    arg a_0
+                    arg n_0
+                    i_0 = 0
+                    s_0 = 0
+                    %t24 = i_0*4
+                    %t27 = %t24+1
+                    goto  L2
+                L2:
+                    %t28 = phi(%t27, %t29)
+                    s_1 = phi(s_0, s_2)
+                    %t4_0 = %t28<37
+                    if %t4_0 goto L3 else goto L4
+                L3:
+                    %t7_0 = a_0[%t28]
+                    %t8_0 = s_1+%t7_0
+                    s_2 = %t8_0
+                    %t29 = %t28+4
+                    goto  L2
+                L4:
+                    ret s_1
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(SUM_SRC.replace("i < n", "i < 9"), EnumSet.of(Options.IVSR, Options.DCE)));
+    }
+
+    @Test
+    public void testOverflow() {
+        // i*k overflows, so the test of i must not be replaced by a test
+        // of i*k against n*k
+        String src = """
+                func foo(n: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (i < n) {
+                        s = s + i * (1073741824 * 1073741824 * 4)
+                        i = i + 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    return foo(3)
+                }
+                """;
+        Assert.assertEquals(-4611686018427387904L, run(src, Options.NONE));
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(-4611686018427387904L, run(src, options));
+        // Nor against a constant limit
+        src = src.replace("i < n", "i < 3");
+        Assert.assertTrue(compileSrc(src, EnumSet.of(Options.IVSR, Options.DCE)).startsWith("Reduced 1, replaced 0 tests\n"));
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(-4611686018427387904L, run(src, options));
+    }
+
+    @Test
+    public void testMatmul() {
+        // After LICM moves i*n out of the inner loops, the multiplications
+        // are strength reduced. The additions of k and j are not, the tests
+        // of k and j are kept as the limit n is not known, so an induction
+        // variable would cost as much to update as the addition
+        String expected = """
+                Reduced 4, replaced 0 tests
+                L0:
+                    arg a_0
+                    arg b_0
+                    arg c_0
+                    arg n_0
+                    i_0 = 0
+                    j_0 = 0
+                    sum_0 = 0
+                    k_0 = 0
+                    %t62 = i_0*n_0
+                    %t65 = i_0*n_0
+                    goto  L2
+                L2:
+                    %t66 = phi(%t65, %t67)
+                    %t63 = phi(%t62, %t64)
+                    i_1 = phi(i_0, i_2)
+                    %t8_0 = i_1<n_0
+                    if %t8_0 goto L3 else goto L4
+                L3:
+                    goto  L5
+                L5:
+                    j_1 = phi(j_0, j_2)
+                    %t9_0 = j_1<n_0
+                    if %t9_0 goto L6 else goto L7
+                L6:
+                    %t56 = k_0*n_0
+                    %t59 = %t56+j_1
+                    goto  L8
+                L8:
+                    %t60 = phi(%t59, %t61)
+                    %t57 = phi(%t56, %t58)
+                    k_1 = phi(k_0, k_2)
+                    sum_1 = phi(sum_0, sum_2)
+                    %t10_0 = k_1<n_0
+                    if %t10_0 goto L9 else goto L10
+                L9:
+                    %t12_0 = %t63+k_1
+                    %t13_0 = a_0[%t12_0]
+                    %t16_0 = b_0[%t60]
+                    %t17_0 = %t13_0*%t16_0
+                    %t18_0 = sum_1+%t17_0
+                    sum_2 = %t18_0
+                    %t19_0 = k_1+1
+                    %t61 = %t60+n_0
+                    %t58 = %t57+n_0
+                    k_2 = %t19_0
+                    goto  L8
+                L10:
+                    %t21_0 = %t66+j_1
+                    c_0[%t21_0] = sum_1
+                    %t22_0 = j_1+1
+                    j_2 = %t22_0
+                    goto  L5
+                L7:
+                    %t23_0 = i_1+1
+                    %t67 = %t66+n_0
+                    %t64 = %t63+n_0
+                    i_2 = %t23_0
+                    goto  L2
+                L4:
+                    goto  L1
+                L1:
+                After DCE:
+                L0:
+                    arg a_0
+                    arg b_0
+                    arg c_0
+                    arg n_0
+                    i_0 = 0
+                    j_0 = 0
+                    sum_0 = 0
+                    k_0 = 0
+                    %t62 = i_0*n_0
+                    %t65 = i_0*n_0
+                    goto  L2
+                L2:
+                    %t66 = phi(%t65, %t67)
+                    %t63 = phi(%t62, %t64)
+                    i_1 = phi(i_0, i_2)
+                    %t8_0 = i_1<n_0
+                    if %t8_0 goto L3 else goto L1
+                L3:
+                    goto  L5
+                L5:
+                    j_1 = phi(j_0, j_2)
+                    %t9_0 = j_1<n_0
+                    if %t9_0 goto L6 else goto L7
+                L6:
+                    %t56 = k_0*n_0
+                    %t59 = %t56+j_1
+                    goto  L8
+                L8:
+                    %t60 = phi(%t59, %t61)
+                    k_1 = phi(k_0, k_2)
+                    sum_1 = phi(sum_0, sum_2)
+                    %t10_0 = k_1<n_0
+                    if %t10_0 goto L9 else goto L10
+                L9:
+                    %t12_0 = %t63+k_1
+                    %t13_0 = a_0[%t12_0]
+                    %t16_0 = b_0[%t60]
+                    %t17_0 = %t13_0*%t16_0
+                    %t18_0 = sum_1+%t17_0
+                    sum_2 = %t18_0
+                    %t19_0 = k_1+1
+                    %t61 = %t60+n_0
+                    k_2 = %t19_0
+                    goto  L8
+                L10:
+                    %t21_0 = %t66+j_1
+                    c_0[%t21_0] = sum_1
+                    %t22_0 = j_1+1
+                    j_2 = %t22_0
+                    goto  L5
+                L7:
+                    %t23_0 = i_1+1
+                    %t67 = %t66+n_0
+                    %t64 = %t63+n_0
+                    i_2 = %t23_0
+                    goto  L2
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(MATMUL_SRC, EnumSet.of(Options.LICM, Options.IVSR, Options.DCE)));
+    }
+
+    @Test
+    public void testOffset() {
+        // i+2 is left alone, as i is needed anyway, only i*3 is reduced
+        String src = """
+                func foo(a: [Int], n: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (i < n) {
+                        s = s + a[i+2] + a[i*3] + i
+                        i = i + 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    var a = new [Int]{len=30, value=2}
+                    return foo(a, 9)
+                }
+                """;
+        String result = compileSrc(src, EnumSet.of(Options.IVSR, Options.DCE));
+        Assert.assertTrue(result.startsWith("Reduced 1, replaced 0 tests\n"));
+        Assert.assertTrue(result.contains("= i_1+2\n"));
+        // Without the other uses of i, and with a constant limit, i+2 replaces it
+        result = compileSrc(src.replace(" + a[i*3] + i", "").replace("i < n", "i < 9"), EnumSet.of(Options.IVSR, Options.DCE));
+        Assert.assertTrue(result.startsWith("Reduced 1, replaced 1 tests\n"));
+        Assert.assertFalse(result.contains("= i_1+2\n"));
+        long expected = run(src, Options.NONE);
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(expected, run(src, options));
+    }
+
+    @Test
+    public void testCountDown() {
+        // The basic induction variable is decremented, and the test is replaced
+        String src = """
+                func foo(a: [Int], n: Int)->Int {
+                    var i = n
+                    var s = 0
+                    while (i > 0) {
+                        s = s + a[i*2-1]
+                        i = i - 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    var a = new [Int]{len=10, value=0}
+                    var i = 0
+                    while (i < 10) {
+                        a[i] = i * i
+                        i = i + 1
+                    }
+                    return foo(a, 5)
+                }
+                """;
+        Assert.assertEquals(1 + 9 + 25 + 49 + 81, run(src, Options.OPT));
+    }
+
+    @Test
+    public void testNegativeScale() {
+        // Multiplying by a negative constant reverses the comparison
+        String src = """
+                func foo(n: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (n > i) {
+                        s = s + i * -3
+                        i = i + 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    return foo(4) * 10 + foo(0)
+                }
+                """;
+        long expected = run(src, Options.NONE);
+        Assert.assertEquals(-180, expected);
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(expected, run(src, options));
+    }
+
+    @Test
+    public void testOptimizedRun() {
+        for (String src: new String[] {SUM_SRC, MATMUL_SRC}) {
+            long expected = run(src, Options.NONE);
+            for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+                Assert.assertEquals(expected, run(src, options));
+        }
+    }
+
+    @Test
+    public void testMetrics() {
+        var function = TestOptimizerMetrics.function(SUM_SRC.replace("i < n", "i < 9"), "foo");
+        var optimizer = new Optimizer();
+        optimizer.optimize(function, Options.OPT);
+        var ivsr = TestOptimizerMetrics.phase(optimizer.metrics().functions().get(0), Optimizer.Phase.IVSR);
+        Assert.assertEquals(2, ivsr.strengthReductions());
+        Assert.assertEquals(1, ivsr.testsReplaced());
+    }
+}
@@ -6,6 +6,8 @@ import com.compilerprogramming.ezlang.types.TypeDictionary;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.*;
+
 public class TestInterferenceGraph {
 
     private CompiledFunction buildTest1() {
@@ -269,4 +271,86 @@ public class TestInterferenceGraph {
         Assert.assertTrue(graph.neighbors(3).contains(2));
     }
 
+    @Test
+    public void testSubtract() {
+        InterferenceGraph graph = new InterferenceGraph();
+        graph.addEdge(1, 2);
+        graph.addEdge(1, 3);
+        graph.addEdge(2, 3);
+        Assert.assertEquals(2, graph.degree(1));
+        var copy = graph.dup();
+        graph.subtract(1);
+        Assert.assertEquals(0, graph.degree(1));
+        Assert.assertEquals(1, graph.degree(2));
+        Assert.assertEquals(1, graph.degree(3));
+        Assert.assertFalse(graph.interfere(1, 2));
+        Assert.assertFalse(graph.neighbors(2).contains(1));
+        Assert.assertTrue(graph.interfere(2, 3));
+        Assert.assertEquals(1, graph.getEdges().size());
+        // The copy is not affected
+        Assert.assertEquals(3, copy.getEdges().size());
+        Assert.assertEquals(2, copy.degree(1));
+        Assert.assertTrue(copy.interfere(1, 2));
+    }
+
+    @Test
+    public void testGrow() {
+        InterferenceGraph graph = new InterferenceGraph(2);
+        graph.addEdge(0, 1);
+        graph.addEdge(1, 1000);
+        graph.addEdge(1000, 1);
+        Assert.assertTrue(graph.interfere(1000, 1));
+        Assert.assertTrue(graph.interfere(0, 1));
+        Assert.assertFalse(graph.interfere(0, 1000));
+        Assert.assertFalse(graph.interfere(5000, 1));
+        Assert.assertEquals(2, graph.degree(1));
+        Assert.assertEquals(Set.of(0, 1000), graph.neighbors(1));
+    }
+
+    /**
+     * Compare against adjacency sets under random edits
+     */
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        int numNodes = 200;
+        InterferenceGraph graph = new InterferenceGraph(numNodes);
+        Map<Integer, Set<Integer>> expected = new HashMap<>();
+        for (int i = 0; i < 3000; i++) {
+            int a = random.nextInt(numNodes);
+            int b = random.nextInt(numNodes);
+            int op = random.nextInt(20);
+            if (op == 0) {
+                graph.subtract(a);
+                var removed = expected.remove(a);
+                if (removed != null)
+                    for (int n: removed) expected.get(n).remove(a);
+            }
+            else if (op == 1) {
+                graph.rename(a, b);
+                if (a != b && expected.containsKey(a) && expected.containsKey(b)) {
+                    for (int n: expected.remove(a)) {
+                        expected.get(n).remove(a);
+                        if (n != b) {
+                            expected.get(n).add(b);
+                            expected.get(b).add(n);
+                        }
+                    }
+                }
+            }
+            else if (a != b) {
+                graph.addEdge(a, b);
+                expected.computeIfAbsent(a, k -> new HashSet<>()).add(b);
+                expected.computeIfAbsent(b, k -> new HashSet<>()).add(a);
+            }
+        }
+        for (int n = 0; n < numNodes; n++) {
+            var neighbors = expected.getOrDefault(n, Set.of());
+            Assert.assertEquals(neighbors, graph.neighbors(n));
+            Assert.assertEquals(neighbors.size(), graph.degree(n));
+            for (int m = 0; m < numNodes; m++)
+                Assert.assertEquals(neighbors.contains(m), graph.interfere(n, m));
+        }
+    }
+
 }
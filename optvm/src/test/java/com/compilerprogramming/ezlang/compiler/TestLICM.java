@@ -0,0 +1,191 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestLICM {
+
+    static String compileSrc(String src) {
+        var function = TestOptimizerMetrics.function(src, "foo");
+        var options = EnumSet.of(Options.LICM);
+        new EnterSSA(function, options);
+        var licm = new LoopInvariantCodeMotion(function);
+        licm.apply(options);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Hoisted ").append(licm.instructionsHoisted()).append("\n");
+        function.toStr(sb, false);
+        return sb.toString();
+    }
+
+    static long run(String src, EnumSet<Options> options) {
+        return ((Value.IntegerValue) new Interpreter(new Compiler().compileSrc(src, options)).run("main")).value;
+    }
+
+    static final String NESTED_SRC = """
+                struct P { var n: Int; var m: Int }
+                func foo(p: P, a: [Int], k: Int, d: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (i < p.n) {
+                        var j = 0
+                        while (j < a[k]) {
+                            s = s + i * k + j * (k + 1) + k / d
+                            j = j + 1
+                        }
+                        p.m = s
+                        i = i + 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    var p = new P{n=5}
+                    var a = new [Int]{len=3, value=4}
+                    return foo(p, a, 2, 1) + p.m
+                }
+                """;
+
+    @Test
+    public void testNestedLoops() {
+        // a[k] is hoisted out of the inner loop, whose head always runs,
+        // but not out of the outer loop, whose body may not run.
+        // p.n is not written in the loop, only p.m is.
+        // k+1 is hoisted out of both loops, k/d is not always executed.
+        String expected = """
+                Hoisted 6
+                L0:
+                    arg p_0
+                    arg a_0
+                    arg k_0
+                    arg d_0
+                    i_0 = 0
+                    s_0 = 0
+                    %t7_0 = p_0.n
+                    j_0 = 0
+                    %t13_0 = k_0+1
+                    goto  L2
+                L2:
+                    s_1 = phi(s_0, s_2)
+                    i_1 = phi(i_0, i_2)
+                    %t8_0 = i_1<%t7_0
+                    if %t8_0 goto L3 else goto L4
+                L3:
+                    %t9_0 = a_0[k_0]
+                    %t11_0 = i_1*k_0
+                    goto  L5
+                L5:
+                    j_1 = phi(j_0, j_2)
+                    s_2 = phi(s_1, s_3)
+                    %t10_0 = j_1<%t9_0
+                    if %t10_0 goto L6 else goto L7
+                L6:
+                    %t12_0 = s_2+%t11_0
+                    %t14_0 = j_1*%t13_0
+                    %t15_0 = %t12_0+%t14_0
+                    %t16_0 = k_0/d_0
+                    %t17_0 = %t15_0+%t16_0
+                    s_3 = %t17_0
+                    %t18_0 = j_1+1
+                    j_2 = %t18_0
+                    goto  L5
+                L7:
+                    p_0.m = s_2
+                    %t19_0 = i_1+1
+                    i_2 = %t19_0
+                    goto  L2
+                L4:
+                    ret s_1
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(NESTED_SRC));
+    }
+
+    @Test
+    public void testPreheader() {
+        var function = TestOptimizerMetrics.function("""
+                struct P { var n: Int }
+                func foo(p: P, c: Int, k: Int)->Int {
+                    if (c > 0) {
+                        while (p.n > 0) {
+                            p.n = p.n - k * 2
+                        }
+                    }
+                    return p.n
+                }
+                """, "foo");
+        var options = EnumSet.of(Options.LICM, Options.DCE);
+        new EnterSSA(function, options);
+        // Removes the empty then block, so the loop is entered from the branch
+        new DeadCodeElimination(function).apply(options);
+        Assert.assertTrue(new LoopInvariantCodeMotion(function).apply(options));
+        String expected = """
+                L0:
+                    arg p_0
+                    arg c_0
+                    arg k_0
+                    %t3_0 = c_0>0
+                    if %t3_0 goto L7 else goto L3
+                L7:
+                    %t7_0 = k_0*2
+                    goto  L4
+                L4:
+                    %t4_0 = p_0.n
+                    %t5_0 = %t4_0>0
+                    if %t5_0 goto L5 else goto L3
+                L5:
+                    %t6_0 = p_0.n
+                    %t8_0 = %t6_0-%t7_0
+                    p_0.n = %t8_0
+                    goto  L4
+                L3:
+                    %t9_0 = p_0.n
+                    ret %t9_0
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, function.toStr(new StringBuilder(), false).toString());
+    }
+
+    @Test
+    public void testLoopNotEntered() {
+        // The loads would fail, but the loop is never entered
+        String src = """
+                struct P { var n: Int }
+                func foo(p: P?, a: [Int], n: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (i < n) {
+                        s = s + p.n + a[n] + n / i
+                        i = i + 1
+                    }
+                    return s
+                }
+                func main()->Int {
+                    return foo(null, new [Int]{len=0}, 0)
+                }
+                """;
+        Assert.assertEquals(0, run(src, Options.OPT));
+    }
+
+    @Test
+    public void testOptimizedRun() {
+        long expected = run(NESTED_SRC, Options.NONE);
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(expected, run(NESTED_SRC, options));
+    }
+
+    @Test
+    public void testMetrics() {
+        var function = TestOptimizerMetrics.function(NESTED_SRC, "foo");
+        var optimizer = new Optimizer();
+        optimizer.optimize(function, Options.OPT);
+        var licm = TestOptimizerMetrics.phase(optimizer.metrics().functions().get(0), Optimizer.Phase.LICM);
+        // SCCP already replaced j = 0 by the constant
+        Assert.assertEquals(5, licm.instructionsHoisted());
+        Assert.assertEquals(licm.instructionsBefore(), licm.instructionsAfter());
+    }
+}
@@ -564,4 +564,66 @@ L3:
     #LIVEOUT = {1}
 """, result.toString());
     }
+
+    static CompiledFunction function(TypeDictionary typeDict, String name) {
+        return (CompiledFunction) ((Symbol.FunctionTypeSymbol) typeDict.lookup(name)).code();
+    }
+
+    @Test
+    public void testWorklistCounts() {
+        String src = """
+                func straight(a: Int, b: Int)->Int {
+                    var c = a + b
+                    if (c > 10) c = c - 10
+                    else c = c + 1
+                    return c * a
+                }
+                func loop(n: Int)->Int {
+                    var i = 0
+                    var s = 0
+                    while (i < n) {
+                        s = s + i
+                        i = i + 1
+                    }
+                    return s
+                }
+                """;
+        var typeDict = compileSrc(src);
+        var liveness = function(typeDict, "straight").livenessAnalysis();
+        // Without loops, successors are visited first and each block once
+        Assert.assertEquals(liveness.numBlocks(), liveness.blockVisits());
+        // Six sets per block plus the spare set of the solver
+        Assert.assertEquals(6 * liveness.numBlocks() + 1, liveness.allocatedSets());
+
+        var loop = function(typeDict, "loop");
+        liveness = loop.livenessAnalysis();
+        Assert.assertTrue(liveness.blockVisits() > liveness.numBlocks());
+        Assert.assertTrue(liveness.blockVisits() <= 3 * liveness.numBlocks());
+        Assert.assertEquals(6 * liveness.numBlocks() + 1, liveness.allocatedSets());
+        // n is live around the loop
+        for (BasicBlock block: loop.getBlocks()) {
+            if (block != loop.entry && block != loop.exit && block.liveIn.get(0))
+                return;
+        }
+        Assert.fail("n is not live in the loop");
+    }
+
+    @Test
+    public void testInfiniteLoop() {
+        String src = """
+                func foo(n: Int) {
+                    var i = 0
+                    while (1) {
+                        i = i + n
+                    }
+                }
+                """;
+        var typeDict = compileSrc(src);
+        var function = function(typeDict, "foo");
+        var liveness = function.livenessAnalysis();
+        // Blocks that cannot reach the exit are still analyzed
+        Assert.assertEquals(function.getBlocks().size(), liveness.numBlocks());
+        for (BasicBlock block: function.getBlocks())
+            Assert.assertNotNull(block.liveIn);
+    }
 }
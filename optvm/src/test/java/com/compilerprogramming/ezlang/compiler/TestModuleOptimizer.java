@@ -0,0 +1,67 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+import java.util.List;
+
+public class TestModuleOptimizer {
+
+    /**
+     * A program with many functions, each calling the previous one
+     */
+    static String manyFunctions(int count) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            sb.append("func f").append(i).append("(n: Int)->Int {\n");
+            sb.append("    var i = 0\n");
+            sb.append("    var sum = ").append(i).append("\n");
+            sb.append("    while (i < n) {\n");
+            sb.append("        if (i % 2 == 0) sum = sum + i\n");
+            sb.append("        else sum = sum - 1\n");
+            sb.append("        i = i + 1\n");
+            sb.append("    }\n");
+            if (i > 0)
+                sb.append("    return sum + f").append(i-1).append("(n - 1)\n");
+            else
+                sb.append("    return sum\n");
+            sb.append("}\n");
+        }
+        sb.append("func main()->Int {\n    return f").append(count-1).append("(20)\n}\n");
+        return sb.toString();
+    }
+
+    @Test
+    public void testParallelMatchesSerial() {
+        String src = manyFunctions(40);
+        for (EnumSet<Options> options: List.of(Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B)) {
+            var serial = new Compiler().compileSrc(src, options);
+            var parallel = new Compiler(4).compileSrc(src, options);
+            Assert.assertEquals(Compiler.dumpIR(serial), Compiler.dumpIR(parallel));
+            Value serialResult = new Interpreter(serial).run("main");
+            Value parallelResult = new Interpreter(parallel).run("main");
+            Assert.assertEquals(((Value.IntegerValue) serialResult).value, ((Value.IntegerValue) parallelResult).value);
+        }
+    }
+
+    @Test
+    public void testReport() {
+        String src = manyFunctions(10);
+        var typeDict = new Compiler().compileSrc(src, Options.NONE);
+        var report = new ModuleOptimizer(2).optimize(typeDict, Options.OPT);
+        Assert.assertEquals(2, report.parallelism);
+        Assert.assertEquals(11, report.functions);
+        Assert.assertTrue(report.wallNanos > 0);
+        Assert.assertTrue(report.phaseNanos(Optimizer.Phase.SCCP) > 0);
+        Assert.assertTrue(report.phaseNanos(Optimizer.Phase.REGALLOC) > 0);
+        Assert.assertEquals(report.serialNanos() - report.wallNanos, report.savedNanos());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidParallelism() {
+        new ModuleOptimizer(0);
+    }
+}
@@ -0,0 +1,127 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestOptimizerMetrics {
+
+    static CompiledFunction function(String src, String name) {
+        var typeDict = new Compiler().compileSrc(src, Options.NONE);
+        for (CompiledFunction function: ModuleOptimizer.functions(typeDict)) {
+            if (function.functionType.name.equals(name))
+                return function;
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    static OptimizerMetrics.PhaseMetrics phase(OptimizerMetrics.FunctionMetrics metrics, Optimizer.Phase phase) {
+        for (var phaseMetrics: metrics.phases()) {
+            if (phaseMetrics.phase == phase)
+                return phaseMetrics;
+        }
+        return null;
+    }
+
+    static OptimizerMetrics optimize(CompiledFunction function, EnumSet<Options> options) {
+        var optimizer = new Optimizer();
+        optimizer.optimize(function, options);
+        return optimizer.metrics();
+    }
+
+    @Test
+    public void testPhases() {
+        String src = """
+                func foo(n: Int)->Int {
+                    var i = 0
+                    var sum = 0
+                    var k = 1
+                    while (i < n) {
+                        if (k == 1) sum = sum + i
+                        else sum = sum - 1
+                        i = i + 1
+                    }
+                    return sum
+                }
+                """;
+        var function = function(src, "foo");
+        var metrics = optimize(function, Options.OPT);
+        Assert.assertEquals(1, metrics.functions().size());
+        var functionMetrics = metrics.functions().get(0);
+        Assert.assertEquals("foo", functionMetrics.name);
+        Assert.assertEquals(function.frameSize(), functionMetrics.frameSize());
+
+        var enterSSA = phase(functionMetrics, Optimizer.Phase.ENTER_SSA);
+        Assert.assertTrue(enterSSA.phisInserted() > 0);
+        Assert.assertEquals(0, enterSSA.phisRemoved());
+        Assert.assertEquals(enterSSA.instructionsBefore() + enterSSA.phisInserted(), enterSSA.instructionsAfter());
+
+        // k is always 1, so the else branch goes away
+        var sccp = phase(functionMetrics, Optimizer.Phase.SCCP);
+        Assert.assertTrue(sccp.constantsFound() > 0);
+        Assert.assertTrue(sccp.instructionsAfter() < sccp.instructionsBefore());
+
+        var exitSSA = phase(functionMetrics, Optimizer.Phase.EXIT_SSA);
+        Assert.assertEquals(0, exitSSA.phisInserted());
+        Assert.assertTrue(exitSSA.phisRemoved() > 0);
+
+        var regalloc = phase(functionMetrics, Optimizer.Phase.REGALLOC);
+        Assert.assertTrue(regalloc.copiesCoalesced() > 0);
+        Assert.assertEquals(regalloc.instructionsBefore() - regalloc.copiesCoalesced(), regalloc.instructionsAfter());
+
+        long total = 0;
+        for (var phaseMetrics: functionMetrics.phases())
+            total += phaseMetrics.nanos();
+        Assert.assertTrue(total > 0);
+    }
+
+    @Test
+    public void testIncrementalSSA() {
+        String src = """
+                func foo(n: Int)->Int {
+                    var i = 0
+                    while (i < n) i = i + 1
+                    return i
+                }
+                """;
+        var typeDict = new Compiler().compileSrc(src, EnumSet.of(Options.ISSA));
+        var function = ModuleOptimizer.functions(typeDict).get(0);
+        var metrics = optimize(function, Options.OPT_ISSA).functions().get(0);
+        // The phis were inserted while generating the IR
+        Assert.assertEquals(0, phase(metrics, Optimizer.Phase.ENTER_SSA).phisInserted());
+        Assert.assertTrue(phase(metrics, Optimizer.Phase.EXIT_SSA).phisRemoved() > 0);
+    }
+
+    @Test
+    public void testJson() {
+        var typeDict = new Compiler().compileSrc(TestModuleOptimizer.manyFunctions(3), Options.NONE);
+        var report = new ModuleOptimizer(1).optimize(typeDict, Options.OPT);
+        var metrics = report.metrics;
+        Assert.assertEquals(4, metrics.functions().size());
+        String json = metrics.toJson();
+        Assert.assertTrue(json.startsWith("{\"functions\":[{\"name\":\""));
+        Assert.assertTrue(json.endsWith("]}]}"));
+        Assert.assertTrue(json.contains("\"name\":\"main\""));
+        Assert.assertTrue(json.contains("\"phase\":\"REGALLOC\""));
+        for (String key: new String[] {"nanos", "instructionsBefore", "instructionsAfter", "blocksBefore", "blocksAfter",
+                "phisInserted", "phisRemoved", "constantsFound", "copiesCoalesced", "frameSize"})
+            Assert.assertTrue(key, json.contains("\"" + key + "\":"));
+        int depth = 0;
+        for (char c: json.toCharArray()) {
+            if (c == '{' || c == '[') depth++;
+            else if (c == '}' || c == ']') depth--;
+            Assert.assertTrue(depth >= 0);
+        }
+        Assert.assertEquals(0, depth);
+        Assert.assertEquals(report.serialNanos(), sumOfPhases(metrics));
+    }
+
+    static long sumOfPhases(OptimizerMetrics metrics) {
+        long total = 0;
+        for (var function: metrics.functions())
+            for (var phase: function.phases())
+                total += phase.nanos();
+        return total;
+    }
+}
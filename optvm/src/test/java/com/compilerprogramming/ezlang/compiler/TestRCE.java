@@ -0,0 +1,259 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+import com.compilerprogramming.ezlang.interpreter.Interpreter;
+import com.compilerprogramming.ezlang.interpreter.Value;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.EnumSet;
+
+public class TestRCE {
+
+    static CompiledFunction function(String src) {
+        var typeDict = new Compiler().compileSrc(src, EnumSet.of(Options.CHECKS));
+        for (CompiledFunction function: ModuleOptimizer.functions(typeDict)) {
+            if (function.functionType.name.equals("foo"))
+                return function;
+        }
+        throw new IllegalArgumentException();
+    }
+
+    static String compileSrc(String src) {
+        var function = function(src);
+        var options = EnumSet.of(Options.RCE);
+        new EnterSSA(function, options);
+        var rce = new RedundantCheckElimination(function);
+        rce.apply(options);
+        StringBuilder sb = new StringBuilder();
+        sb.append("Removed ").append(rce.checksRemoved()).append("\n");
+        function.toStr(sb, false);
+        return sb.toString();
+    }
+
+    static long run(String src, EnumSet<Options> options) {
+        return ((Value.IntegerValue) new Interpreter(new Compiler().compileSrc(src, options)).run("main")).value;
+    }
+
+    static EnumSet<Options> withChecks(EnumSet<Options> options) {
+        var result = EnumSet.copyOf(options);
+        result.add(Options.CHECKS);
+        return result;
+    }
+
+    static final String LOOP_SRC = """
+                func foo(n: Int)->Int {
+                    var a = new [Int]{len=n, value=1}
+                    var i = 0
+                    while (i < n) {
+                        a[i] = a[i] + i
+                        i = i + 1
+                    }
+                    var s = 0
+                    i = n - 1
+                    while (i >= 0) {
+                        s = s + a[i] + a[0]
+                        i = i - 1
+                    }
+                    return s + a[n]
+                }
+                func main()->Int {
+                    return foo(10)
+                }
+                """;
+
+    static final String NULL_SRC = """
+                struct P { var n: Int; var next: P? }
+                func foo(p: P?, q: P?)->Int {
+                    var s = 0
+                    if (p != null)
+                        s = p.n
+                    var r = new P{n=3}
+                    r.next = q
+                    q.n = s + r.n
+                    while (q != null) {
+                        s = s + q.n
+                        q = q.next
+                    }
+                    return s + p.n
+                }
+                func main()->Int {
+                    var p = new P{n=2}
+                    return foo(p, new P{n=5, next=p})
+                }
+                """;
+
+    @Test
+    public void testLoop() {
+        // The first loop runs from 0 below the length of the array, and
+        // needs no checks. In the second, i may be out of bounds, but a[0]
+        // is not once a[i] was accessed. a[n] is out of bounds.
+        String expected = """
+                Removed 8
+                L0:
+                    arg n_0
+                    %t4_0 = New([Int], len=n_0, initValue=1)
+                    a_0 = %t4_0
+                    i_0 = 0
+                    goto  L2
+                L2:
+                    i_1 = phi(i_0, i_5)
+                    %t5_0 = i_1<n_0
+                    if %t5_0 goto L3 else goto L4
+                L3:
+                    %t6_0 = a_0[i_1]
+                    %t7_0 = %t6_0+i_1
+                    a_0[i_1] = %t7_0
+                    %t8_0 = i_1+1
+                    i_5 = %t8_0
+                    goto  L2
+                L4:
+                    s_0 = 0
+                    %t9_0 = n_0-1
+                    i_2 = %t9_0
+                    goto  L5
+                L5:
+                    s_1 = phi(s_0, s_2)
+                    i_3 = phi(i_2, i_4)
+                    %t10_0 = i_3>=0
+                    if %t10_0 goto L6 else goto L7
+                L6:
+                    boundscheck a_0[i_3]
+                    %t11_0 = a_0[i_3]
+                    %t12_0 = s_1+%t11_0
+                    %t13_0 = a_0[0]
+                    %t14_0 = %t12_0+%t13_0
+                    s_2 = %t14_0
+                    %t15_0 = i_3-1
+                    i_4 = %t15_0
+                    goto  L5
+                L7:
+                    boundscheck a_0[n_0]
+                    %t16_0 = a_0[n_0]
+                    %t17_0 = s_1+%t16_0
+                    ret %t17_0
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(LOOP_SRC));
+    }
+
+    @Test
+    public void testNullChecks() {
+        // p and q are not null where they are compared with null, r is
+        // allocated, and p is not known to be non null after the if
+        String expected = """
+                Removed 6
+                L0:
+                    arg p_0
+                    arg q_0
+                    s_0 = 0
+                    %t4_0 = p_0!=null
+                    if %t4_0 goto L2 else goto L3
+                L2:
+                    %t5_0 = p_0.n
+                    s_1 = %t5_0
+                    goto  L3
+                L3:
+                    s_2 = phi(s_0, s_1)
+                    %t6_0 = New(P)
+                    %t6_0.n = 3
+                    r_0 = %t6_0
+                    r_0.next = q_0
+                    %t7_0 = r_0.n
+                    %t8_0 = s_2+%t7_0
+                    nullcheck q_0
+                    q_0.n = %t8_0
+                    goto  L4
+                L4:
+                    s_3 = phi(s_2, s_4)
+                    q_1 = phi(q_0, q_2)
+                    %t9_0 = q_1!=null
+                    if %t9_0 goto L5 else goto L6
+                L5:
+                    %t10_0 = q_1.n
+                    %t11_0 = s_3+%t10_0
+                    s_4 = %t11_0
+                    %t12_0 = q_1.next
+                    q_2 = %t12_0
+                    goto  L4
+                L6:
+                    nullcheck p_0
+                    %t13_0 = p_0.n
+                    %t14_0 = s_3+%t13_0
+                    ret %t14_0
+                    goto  L1
+                L1:
+                """;
+        Assert.assertEquals(expected, compileSrc(NULL_SRC));
+    }
+
+    @Test
+    public void testFailures() {
+        for (var options: new EnumSet[] {Options.NONE, Options.OPT, Options.OPT_ISSA}) {
+            try {
+                run(LOOP_SRC, withChecks(options));
+                Assert.fail();
+            }
+            catch (InterpreterException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Array index 10 out of bounds"));
+            }
+            try {
+                run(NULL_SRC.replace("foo(p, ", "foo(null, "), withChecks(options));
+                Assert.fail();
+            }
+            catch (InterpreterException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Null value"));
+            }
+            // Fields and elements of types that are not nullable are null
+            // until assigned
+            try {
+                run("""
+                    struct P { var n: Int; var next: P }
+                    func main()->Int {
+                        return new P{n=1}.next.n
+                    }
+                    """, withChecks(options));
+                Assert.fail();
+            }
+            catch (InterpreterException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Null value"));
+            }
+            try {
+                run("""
+                    struct P { var n: Int }
+                    func main()->Int {
+                        var a = new [P]{len=2}
+                        return a[1].n
+                    }
+                    """, withChecks(options));
+                Assert.fail();
+            }
+            catch (InterpreterException e) {
+                Assert.assertTrue(e.getMessage().startsWith("Null value"));
+            }
+        }
+    }
+
+    @Test
+    public void testOptimizedRun() {
+        String src = LOOP_SRC.replace("a[n]", "a[n-1]");
+        long expected = run(src, Options.NONE);
+        Assert.assertEquals(expected, run(src, withChecks(Options.NONE)));
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(expected, run(src, withChecks(options)));
+        expected = run(NULL_SRC, Options.NONE);
+        for (var options: new EnumSet[] {Options.OPT, Options.OPT_B, Options.OPT_ISSA, Options.OPT_ISSA_B})
+            Assert.assertEquals(expected, run(NULL_SRC, withChecks(options)));
+    }
+
+    @Test
+    public void testMetrics() {
+        var function = function(LOOP_SRC);
+        var optimizer = new Optimizer();
+        optimizer.optimize(function, Options.OPT);
+        var rce = TestOptimizerMetrics.phase(optimizer.metrics().functions().get(0), Optimizer.Phase.RCE);
+        Assert.assertEquals(8, rce.checksRemoved());
+        Assert.assertEquals(rce.instructionsBefore() - 8, rce.instructionsAfter());
+    }
+}
@@ -0,0 +1,129 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+
+public class TestExecutionService {
+
+    static final String SRC = """
+            struct Node {
+                var next: Node?
+                var value: Int
+            }
+            func fib(n: Int)->Int {
+                if (n < 2) return n
+                return fib(n - 1) + fib(n - 2)
+            }
+            func list(n: Int)->Int {
+                var head: Node?
+                head = null
+                var i = 0
+                while (i < n) {
+                    head = new Node{ next = head, value = i }
+                    i = i + 1
+                }
+                var sum = 0
+                while (head != null) {
+                    sum = sum + head.value
+                    head = head.next
+                }
+                return sum
+            }
+            func div(n: Int)->Int {
+                return 100 / n
+            }
+            """;
+
+    static long fib(int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    static long intValue(Value value) {
+        return ((Value.IntegerValue) value).value;
+    }
+
+    @Test
+    public void testInvokeAll() {
+        try (var service = ExecutionService.compile(SRC, Options.OPT)) {
+            List<Value[]> argLists = new ArrayList<>();
+            for (int i = 0; i < 1000; i++)
+                argLists.add(new Value[] { Value.IntegerValue.valueOf(i % 15) });
+            List<Value> fibs = service.invokeAll("fib", argLists);
+            List<Value> lists = service.invokeAll("list", argLists);
+            for (int i = 0; i < 1000; i++) {
+                int n = i % 15;
+                Assert.assertEquals(fib(n), intValue(fibs.get(i)));
+                Assert.assertEquals(n * (n - 1) / 2, intValue(lists.get(i)));
+            }
+            var stats = service.stats();
+            Assert.assertEquals(2000, stats.invocations);
+            Assert.assertEquals(0, stats.failures);
+            Assert.assertTrue(stats.throughput() > 0);
+            Assert.assertTrue(stats.latencies.percentileNanos(0.5) <= stats.latencies.percentileNanos(0.99));
+            Assert.assertTrue(stats.latencies.percentileNanos(1) <= stats.latencies.maxNanos());
+            // The stats are a snapshot
+            service.invokeAll("fib", argLists);
+            Assert.assertEquals(2000, stats.latencies.count());
+            Assert.assertEquals(3000, service.stats().invocations);
+        }
+    }
+
+    @Test
+    public void testFailure() throws InterruptedException {
+        try (var service = ExecutionService.compile(SRC, Options.NONE)) {
+            var future = service.submit("div", Value.IntegerValue.valueOf(0));
+            try {
+                future.get();
+                Assert.fail("Expected division by zero");
+            }
+            catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof ArithmeticException);
+            }
+            Assert.assertEquals(25, intValue(service.run("div", Value.IntegerValue.valueOf(4))));
+            Assert.assertEquals(2, service.stats().invocations);
+            Assert.assertEquals(1, service.stats().failures);
+        }
+    }
+
+    @Test
+    public void testClearStack() {
+        var interpreter = new Interpreter(new Compiler().compileSrc(SRC, Options.NONE));
+        var execStack = new ExecutionStack(4);
+        Assert.assertEquals(45, intValue(interpreter.run("list", execStack, Value.IntegerValue.valueOf(10))));
+        Assert.assertTrue(Arrays.stream(execStack.stack).anyMatch(Objects::nonNull));
+        execStack.clear();
+        Assert.assertTrue(Arrays.stream(execStack.stack).allMatch(Objects::isNull));
+        // The stack can be reused
+        Assert.assertEquals(55, intValue(interpreter.run("fib", execStack, Value.IntegerValue.valueOf(10))));
+    }
+
+    @Test(expected = InterpreterException.class)
+    public void testWrongArguments() {
+        try (var service = ExecutionService.compile(SRC, Options.NONE)) {
+            service.run("fib");
+        }
+    }
+
+    @Test
+    public void testHistogram() {
+        var histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++)
+            histogram.record(i * 1000L);
+        Assert.assertEquals(100, histogram.count());
+        Assert.assertEquals(50_500, histogram.meanNanos());
+        Assert.assertEquals(100_000, histogram.maxNanos());
+        // Within a factor of two
+        long p50 = histogram.percentileNanos(0.5);
+        Assert.assertTrue(p50 >= 50_000 && p50 < 100_000);
+        Assert.assertEquals(100_000, histogram.percentileNanos(1));
+    }
+}
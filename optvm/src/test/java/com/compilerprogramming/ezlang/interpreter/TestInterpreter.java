@@ -2,6 +2,7 @@ package com.compilerprogramming.ezlang.interpreter;
 
 import com.compilerprogramming.ezlang.compiler.Compiler;
 import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.types.Symbol;
 import org.junit.Assert;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -859,4 +860,185 @@ func main()->Int
                 integerValue.value == 1);
     }
 
+    @Test
+    public void testFunction111() {
+        String src = """
+                struct Node
+                {
+                    var next: Node?
+                    var value: Int
+                }
+                func main()->Int
+                {
+                    var counts = new [Int]{len=3}
+                    var n = new Node{}
+                    var sum = 0
+                    var i = 0
+                    while (i < 3) {
+                        sum = sum + counts[i] + n.value
+                        i = i + 1
+                    }
+                    if (n.next == null)
+                        sum = sum + 7
+                    return sum
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 7);
+    }
+
+    @Test
+    public void testFunction112() {
+        String src = """
+                func foo(n: Int)->Int
+                {
+                    var i = 0
+                    var sum = 0
+                    while (i < n*n) {
+                        sum = sum + i
+                        i = i + 1
+                    }
+                    return sum
+                }
+                func main()->Int
+                {
+                    return foo(3)
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 36);
+    }
+
+    @Test
+    public void testFunction113() {
+        String src = """
+                struct Node
+                {
+                    var next: Node?
+                    var value: Int
+                }
+                func main()->Int
+                {
+                    var head: Node?
+                    head = null
+                    var i = 0
+                    while (i < 3) {
+                        head = new Node{ next = head, value = i }
+                        i = i + 1
+                    }
+                    var sum = 0
+                    while (head != null) {
+                        sum = sum + head.value
+                        head = head.next
+                    }
+                    return sum
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 3);
+    }
+
+    @Test
+    public void testArrayAppend() {
+        String src = """
+                struct Box
+                {
+                    var value: Int
+                }
+                func main()->Int
+                {
+                    var a = new [Int]{len=2, value=5}
+                    var b = new [Box]{}
+                    var i = 2
+                    while (i < 100) {
+                        a[i] = i
+                        i = i + 1
+                    }
+                    i = 0
+                    while (i < 50) {
+                        b[i] = new Box{ value = a[i] }
+                        i = i + 1
+                    }
+                    var sum = 0
+                    i = 0
+                    while (i < 50) {
+                        sum = sum + a[i + 50] - b[i].value
+                        i = i + 1
+                    }
+                    return sum
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 2491);
+    }
+
+    @Test
+    public void testStructLayout() {
+        String src = """
+                struct Tree
+                {
+                    var left: Tree?
+                    var value: Int
+                    var right: Tree?
+                    var count: Int
+                }
+                func main()->Int
+                {
+                    var leaf = new Tree{ value = 7 }
+                    var root = new Tree{ left = leaf, value = 3 }
+                    root.right = new Tree{ count = 2 }
+                    root.count = root.left.value + root.right.count
+                    if (leaf.left != null) return -1
+                    return root.count * 100 + root.right.value * 10 + root.value
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 903);
+    }
+
+    @Test
+    public void testDeepRecursion() {
+        String src = """
+                func sum(n: Int)->Int {
+                    if (n == 0) return 0
+                    return n + sum(n - 1)
+                }
+                func main()->Int {
+                    return sum(100000)
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 100000L * 100001 / 2);
+    }
+
+    @Test
+    public void testTailCall() {
+        String src = """
+                func count(n: Int, acc: Int)->Int {
+                    if (n == 0) return acc
+                    return count(n - 1, acc + 2)
+                }
+                """;
+        var typeDict = new Compiler().compileSrc(src, options);
+        var symbol = (Symbol.FunctionTypeSymbol) typeDict.lookup("count");
+        var execStack = new ExecutionStack(16);
+        execStack.setInt(0, 1000000);
+        execStack.setInt(1, 0);
+        var value = new Interpreter(typeDict).interpret(execStack, new Interpreter.Frame(symbol));
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 2000000);
+        // Each call replaced its caller's frame
+        Assert.assertEquals(16, execStack.stack.length);
+    }
 }
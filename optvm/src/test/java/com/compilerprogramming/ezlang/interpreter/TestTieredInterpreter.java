@@ -0,0 +1,135 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.compiler.Options;
+import com.compilerprogramming.ezlang.types.EZType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class TestTieredInterpreter {
+
+    static final String SRC = """
+            func sq(n: Int)->Int {
+                return n * n
+            }
+            func fib(n: Int)->Int {
+                if (n < 2) return n
+                return fib(n - 1) + fib(n - 2)
+            }
+            func sum(a: [Int])->Int {
+                var i = 0
+                var s = 0
+                while (i < 100) {
+                    s = s + a[i]
+                    i = i + 1
+                }
+                return s
+            }
+            func main()->Int {
+                var a = new [Int]{len=100}
+                var i = 0
+                var s = 0
+                while (i < 100) {
+                    a[i] = sq(i)
+                    i = i + 1
+                }
+                i = 0
+                while (i < 20) {
+                    s = s + sum(a)
+                    i = i + 1
+                }
+                return s + fib(15)
+            }
+            """;
+
+    /**
+     * Compiles on the calling thread, so that promotions are deterministic
+     */
+    static class DirectExecutor extends AbstractExecutorService {
+        boolean shutdown;
+        @Override public void execute(Runnable command) {
+            if (shutdown)
+                throw new java.util.concurrent.RejectedExecutionException();
+            command.run();
+        }
+        @Override public void shutdown() { shutdown = true; }
+        @Override public List<Runnable> shutdownNow() { shutdown = true; return List.of(); }
+        @Override public boolean isShutdown() { return shutdown; }
+        @Override public boolean isTerminated() { return shutdown; }
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+
+    static long run(Interpreter interpreter) {
+        return ((Value.IntegerValue) interpreter.run("main")).value;
+    }
+
+    static CompiledFunction code(Interpreter interpreter, String name) {
+        var functionType = (EZType.EZTypeFunction) interpreter.typeDictionary.lookup(name).type;
+        return interpreter.enter(functionType);
+    }
+
+    @Test
+    public void testPromotion() {
+        long expect = run(new Interpreter(new Compiler().compileSrc(SRC, Options.NONE)));
+        Assert.assertEquals(20 * 328350 + 610, expect);
+
+        var typeDict = new Compiler().compileSrc(SRC, Options.NONE);
+        var baseline = code(new Interpreter(typeDict), "sq");
+        try (var interpreter = new TieredInterpreter(typeDict, 10, 110, Options.OPT, new DirectExecutor())) {
+            Assert.assertEquals(expect, run(interpreter));
+            // Calls after the tenth run the optimized code
+            Assert.assertEquals(TieredInterpreter.State.OPTIMIZED, interpreter.state("sq"));
+            Assert.assertEquals(10, interpreter.invocations("sq"));
+            Assert.assertNotSame(baseline, code(interpreter, "sq"));
+            // The type dictionary still holds the unoptimized code
+            Assert.assertSame(baseline, code(new Interpreter(typeDict), "sq"));
+            // Recursion mixes both tiers
+            Assert.assertEquals(TieredInterpreter.State.OPTIMIZED, interpreter.state("fib"));
+            // Hot loops, each call of sum takes 100 back-edges
+            Assert.assertEquals(TieredInterpreter.State.OPTIMIZED, interpreter.state("sum"));
+            Assert.assertEquals(2, interpreter.invocations("sum"));
+            Assert.assertEquals(2 * 100, interpreter.backEdges("sum"));
+            // main takes 120 back-edges, it is compiled but only swapped in at its next call
+            Assert.assertEquals(TieredInterpreter.State.COMPILING, interpreter.state("main"));
+            Assert.assertEquals(expect, run(interpreter));
+            Assert.assertEquals(TieredInterpreter.State.OPTIMIZED, interpreter.state("main"));
+            Assert.assertEquals(4, interpreter.metrics().functions().size());
+        }
+    }
+
+    @Test
+    public void testColdStaysInterpreted() {
+        var typeDict = new Compiler().compileSrc(SRC, Options.NONE);
+        try (var interpreter = new TieredInterpreter(typeDict, 10_000, 1_000_000, Options.OPT, new DirectExecutor())) {
+            run(interpreter);
+            Assert.assertEquals(TieredInterpreter.State.INTERPRETED, interpreter.state("sq"));
+            Assert.assertEquals(100, interpreter.invocations("sq"));
+            Assert.assertEquals(TieredInterpreter.State.INTERPRETED, interpreter.state("main"));
+            Assert.assertEquals(0, interpreter.metrics().functions().size());
+        }
+    }
+
+    @Test
+    public void testBackgroundCompiler() {
+        var typeDict = new Compiler().compileSrc(SRC, Options.NONE);
+        try (var interpreter = new TieredInterpreter(typeDict, 1, 1)) {
+            long expect = run(interpreter);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (interpreter.state("main") != TieredInterpreter.State.OPTIMIZED
+                    && System.currentTimeMillis() < deadline)
+                Assert.assertEquals(expect, run(interpreter));
+            Assert.assertEquals(TieredInterpreter.State.OPTIMIZED, interpreter.state("main"));
+            Assert.assertEquals(expect, run(interpreter));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        new TieredInterpreter(new Compiler().compileSrc(SRC, Options.NONE), 0, 1);
+    }
+}
@@ -39,6 +39,10 @@ public abstract class Instruction {
     }
 
     public boolean isTerminal() { return false; }
+    /**
+     * The operands read by the instruction
+     */
+    public Operand[] uses() { return uses; }
     @Override
     public String toString() {
         return toStr(new StringBuilder()).toString();
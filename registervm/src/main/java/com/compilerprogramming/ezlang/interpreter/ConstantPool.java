@@ -0,0 +1,54 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.BasicBlock;
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.Instruction;
+import com.compilerprogramming.ezlang.compiler.Operand;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * The integer constants of a function, boxed once when the function is
+ * loaded so that constant operands do not allocate at runtime.
+ * Values are immutable, so they are shared by all invocations.
+ */
+public class ConstantPool {
+
+    private final Map<Operand.ConstantOperand, Value.IntegerValue> values = new IdentityHashMap<>();
+
+    public ConstantPool(CompiledFunction function) {
+        BitSet visited = new BitSet();
+        ArrayDeque<BasicBlock> workList = new ArrayDeque<>();
+        workList.add(function.entry);
+        visited.set(function.entry.bid);
+        while (!workList.isEmpty()) {
+            BasicBlock block = workList.remove();
+            for (Instruction instruction: block.instructions) {
+                for (Operand use: instruction.uses()) {
+                    if (use instanceof Operand.ConstantOperand constant)
+                        values.put(constant, Value.IntegerValue.valueOf(constant.value));
+                }
+            }
+            for (BasicBlock succ: block.successors) {
+                if (!visited.get(succ.bid)) {
+                    visited.set(succ.bid);
+                    workList.add(succ);
+                }
+            }
+        }
+    }
+
+    public Value.IntegerValue get(Operand.ConstantOperand constant) {
+        Value.IntegerValue value = values.get(constant);
+        if (value == null)
+            throw new IllegalStateException("Constant not in pool: " + constant);
+        return value;
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -1,12 +1,42 @@
 package com.compilerprogramming.ezlang.interpreter;
 
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+
+import java.util.Arrays;
+
+/**
+ * The execution stack holds the frames of executing functions.
+ * It starts at its initial size and grows as calls nest deeper,
+ * up to {@link #maxSize} slots.
+ */
 public class ExecutionStack {
 
+    public static final int DEFAULT_MAX_SIZE = 1 << 24;
+
     public Value[] stack;
     public int sp;
+    public final int maxSize;
 
-    public ExecutionStack(int maxStackSize) {
-        this.stack = new Value[maxStackSize];
+    public ExecutionStack(int initialSize) {
+        this(initialSize, DEFAULT_MAX_SIZE);
+    }
+
+    public ExecutionStack(int initialSize, int maxSize) {
+        this.stack = new Value[initialSize];
         this.sp = -1;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Grows the stack to hold at least the given number of slots
+     *
+     * @throws InterpreterException if that exceeds {@link #maxSize}
+     */
+    public void ensureCapacity(int size) {
+        if (size <= stack.length)
+            return;
+        if (size > maxSize)
+            throw new InterpreterException("Stack overflow: " + size + " slots needed, at most " + maxSize + " allowed");
+        stack = Arrays.copyOf(stack, (int) Math.min(maxSize, Math.max(size, 2L * stack.length)));
     }
 }
@@ -10,9 +10,15 @@ import com.compilerprogramming.ezlang.types.Symbol;
 import com.compilerprogramming.ezlang.types.EZType;
 import com.compilerprogramming.ezlang.types.TypeDictionary;
 
+import java.util.IdentityHashMap;
+import java.util.Map;
+
 public class Interpreter {
 
     TypeDictionary typeDictionary;
+    // Struct types compare by name, layouts are kept per type instance
+    private final Map<EZType.EZTypeStruct, Value.StructLayout> layouts = new IdentityHashMap<>();
+    private final Map<CompiledFunction, ConstantPool> constantPools = new IdentityHashMap<>();
 
     public Interpreter(TypeDictionary typeDictionary) {
         this.typeDictionary = typeDictionary;
@@ -30,26 +36,74 @@ public class Interpreter {
         }
     }
 
-    public Value interpret(ExecutionStack execStack, Frame frame) {
+    /**
+     * The layout of the struct type's values, computed on first use.
+     */
+    Value.StructLayout layout(EZType.EZTypeStruct structType) {
+        return layouts.computeIfAbsent(structType, Value.StructLayout::new);
+    }
+
+    /**
+     * The function's constants, resolved on its first call.
+     */
+    ConstantPool constantPool(CompiledFunction function) {
+        return constantPools.computeIfAbsent(function, ConstantPool::new);
+    }
+
+    /**
+     * Executes the function in the frame and returns its return value,
+     * or null if it did not return a value.
+     *
+     * Calls do not recurse on the Java stack. A call saves the position
+     * of the caller in its frame and continues in the callee, and when
+     * the callee reaches its exit block the caller resumes. Frame records
+     * are linked to their caller and reused by later calls at the same
+     * depth. A call whose result is returned right away, i.e.
+     * {@code return f(...)}, replaces the caller's frame instead of
+     * pushing a new one.
+     */
+    public Value interpret(ExecutionStack execStack, final Frame entry) {
+        Frame frame = entry;
         CompiledFunction currentFunction = frame.bytecodeFunction;
+        ConstantPool constants = constantPool(currentFunction);
         BasicBlock currentBlock = currentFunction.entry;
         int ip = -1;
         int base = frame.base;
         boolean done = false;
         Value returnValue = null;
+        execStack.ensureCapacity(base + currentFunction.frameSize());
 
-        while (!done) {
+        while (true) {
             Instruction instruction;
 
+            if (done) {
+                if (frame == entry)
+                    return returnValue;
+                // Resume the caller
+                int calleeBase = base;
+                frame = frame.caller;
+                currentFunction = frame.bytecodeFunction;
+                constants = frame.constants;
+                currentBlock = frame.block;
+                ip = frame.ip;
+                base = frame.base;
+                returnValue = frame.returnValue;
+                done = false;
+                // Copy return value in expected location
+                Instruction.Call callInst = (Instruction.Call) currentBlock.instructions.get(ip);
+                if (!(callInst.callee.returnType instanceof EZType.EZTypeVoid)) {
+                    execStack.stack[base + callInst.returnOperand().frameSlot()] = execStack.stack[calleeBase];
+                }
+            }
             ip++;
             instruction = currentBlock.instructions.get(ip);
             switch (instruction) {
                 case Instruction.Ret retInst -> {
                     if (retInst.value() instanceof Operand.ConstantOperand constantOperand) {
-                        execStack.stack[base] = new Value.IntegerValue(constantOperand.value);
+                        execStack.stack[base] = constants.get(constantOperand);
                     }
                     else if (retInst.value() instanceof Operand.NullConstantOperand) {
-                        execStack.stack[base] = new Value.NullValue();
+                        execStack.stack[base] = Value.NullValue.NULL;
                     }
                     else if (retInst.value() instanceof Operand.RegisterOperand registerOperand) {
                         execStack.stack[base] = execStack.stack[base+registerOperand.frameSlot()];
@@ -64,10 +118,10 @@ public class Interpreter {
                             execStack.stack[base + toReg.frameSlot()] = execStack.stack[base + fromReg.frameSlot()];
                         }
                         else if (moveInst.from() instanceof Operand.ConstantOperand constantOperand) {
-                            execStack.stack[base + toReg.frameSlot()] = new Value.IntegerValue(constantOperand.value);
+                            execStack.stack[base + toReg.frameSlot()] = constants.get(constantOperand);
                         }
                         else if (moveInst.from() instanceof Operand.NullConstantOperand) {
-                            execStack.stack[base + toReg.frameSlot()] = new Value.NullValue();
+                            execStack.stack[base + toReg.frameSlot()] = Value.NullValue.NULL;
                         }
                         else throw new IllegalStateException();
                     }
@@ -103,28 +157,42 @@ public class Interpreter {
                         done = true;
                 }
                 case Instruction.Call callInst -> {
+                    CompiledFunction callee = (CompiledFunction) callInst.callee.code;
                     // Copy args to new frame
                     int baseReg = base+currentFunction.frameSize();
+                    execStack.ensureCapacity(baseReg + Math.max(callInst.args().length, callee.frameSize()));
                     int reg = baseReg;
                     for (Operand arg: callInst.args()) {
                         if (arg instanceof Operand.RegisterOperand param) {
                             execStack.stack[reg] = execStack.stack[base + param.frameSlot()];
                         }
                         else if (arg instanceof Operand.ConstantOperand constantOperand) {
-                            execStack.stack[reg] = new Value.IntegerValue(constantOperand.value);
+                            execStack.stack[reg] = constants.get(constantOperand);
                         }
                         else if (arg instanceof Operand.NullConstantOperand) {
-                            execStack.stack[reg] = new Value.NullValue();
+                            execStack.stack[reg] = Value.NullValue.NULL;
                         }
                         reg += 1;
                     }
-                    // Call function
-                    Frame newFrame = new Frame(frame, baseReg, callInst.callee);
-                    interpret(execStack, newFrame);
-                    // Copy return value in expected location
-                    if (!(callInst.callee.returnType instanceof EZType.EZTypeVoid)) {
-                        execStack.stack[base + callInst.returnOperand().frameSlot()] = execStack.stack[baseReg];
+                    if (isTailCall(currentFunction, currentBlock, ip)) {
+                        // The callee takes over this frame, and returns to our caller
+                        System.arraycopy(execStack.stack, baseReg, execStack.stack, base, callInst.args().length);
+                        frame.bytecodeFunction = callee;
+                    }
+                    else {
+                        // Save the caller, it resumes after the call
+                        frame.constants = constants;
+                        frame.block = currentBlock;
+                        frame.ip = ip;
+                        frame.returnValue = returnValue;
+                        frame = frame.push(baseReg, callee);
+                        base = baseReg;
                     }
+                    currentFunction = callee;
+                    constants = constantPool(callee);
+                    currentBlock = callee.entry;
+                    ip = -1;
+                    returnValue = null;
                 }
                 case Instruction.Unary unaryInst -> {
                     // We don't expect constant here because we fold constants in unary expressions
@@ -132,9 +200,9 @@ public class Interpreter {
                     Value unaryValue = execStack.stack[base + unaryOperand.frameSlot()];
                     if (unaryValue instanceof Value.IntegerValue integerValue) {
                         switch (unaryInst.unop) {
-                            case "-": execStack.stack[base + unaryInst.result().frameSlot()] = new Value.IntegerValue(-integerValue.value); break;
+                            case "-": execStack.stack[base + unaryInst.result().frameSlot()] = Value.IntegerValue.valueOf(-integerValue.value); break;
                             // Maybe below we should explicitly set Int
-                            case "!": execStack.stack[base + unaryInst.result().frameSlot()] = new Value.IntegerValue(integerValue.value==0?1:0); break;
+                            case "!": execStack.stack[base + unaryInst.result().frameSlot()] = Value.IntegerValue.valueOf(integerValue.value==0?1:0); break;
                             default: throw new CompilerException("Invalid unary op");
                         }
                     }
@@ -168,7 +236,7 @@ public class Interpreter {
                                 default:
                                     throw new IllegalStateException();
                             }
-                            execStack.stack[base + binaryInst.result().frameSlot()] = new Value.IntegerValue(value);
+                            execStack.stack[base + binaryInst.result().frameSlot()] = Value.IntegerValue.valueOf(value);
                         }
                     }
                     if (intOp) {
@@ -196,7 +264,7 @@ public class Interpreter {
                             case ">=": value = x >= y ? 1 : 0; break;
                             default: throw new IllegalStateException();
                         }
-                        execStack.stack[base + binaryInst.result().frameSlot()] = new Value.IntegerValue(value);
+                        execStack.stack[base + binaryInst.result().frameSlot()] = Value.IntegerValue.valueOf(value);
                     }
                 }
                 case Instruction.NewArray newArrayInst -> {
@@ -209,13 +277,13 @@ public class Interpreter {
                         size = (long) indexValue.value;
                     }
                     if (newArrayInst.initValue() instanceof Operand.ConstantOperand constantOperand)
-                        initValue = new Value.IntegerValue(constantOperand.value);
+                        initValue = constants.get(constantOperand);
                     else if (newArrayInst.initValue() instanceof Operand.RegisterOperand registerOperand)
                         initValue = execStack.stack[base + registerOperand.frameSlot()];
                     execStack.stack[base + newArrayInst.destOperand().frameSlot()] = new Value.ArrayValue(newArrayInst.type, size, initValue);
                 }
                 case Instruction.NewStruct newStructInst -> {
-                    execStack.stack[base + newStructInst.destOperand().frameSlot()] = new Value.StructValue(newStructInst.type);
+                    execStack.stack[base + newStructInst.destOperand().frameSlot()] = new Value.StructValue(layout(newStructInst.type));
                 }
                 case Instruction.ArrayStore arrayStoreInst -> {
                     if (arrayStoreInst.arrayOperand() instanceof Operand.RegisterOperand arrayOperand) {
@@ -231,30 +299,27 @@ public class Interpreter {
                         else throw new IllegalStateException();
                         Value value;
                         if (arrayStoreInst.sourceOperand() instanceof Operand.ConstantOperand constantOperand) {
-                            value = new Value.IntegerValue(constantOperand.value);
+                            value = constants.get(constantOperand);
                         }
                         else if (arrayStoreInst.sourceOperand() instanceof Operand.NullConstantOperand) {
-                            value = new Value.NullValue();
+                            value = Value.NullValue.NULL;
                         }
                         else if (arrayStoreInst.sourceOperand() instanceof Operand.RegisterOperand registerOperand) {
                             value = execStack.stack[base + registerOperand.frameSlot()];
                         }
                         else throw new IllegalStateException();
-                        if (index == arrayValue.values.size())
-                            arrayValue.values.add(value);
-                        else
-                            arrayValue.values.set(index, value);
+                        arrayValue.set(index, value);
                     } else throw new IllegalStateException();
                 }
                 case Instruction.ArrayLoad arrayLoadInst -> {
                     if (arrayLoadInst.arrayOperand() instanceof Operand.RegisterOperand arrayOperand) {
                         Value.ArrayValue arrayValue = (Value.ArrayValue) execStack.stack[base + arrayOperand.frameSlot()];
                         if (arrayLoadInst.indexOperand() instanceof Operand.ConstantOperand constant) {
-                            execStack.stack[base + arrayLoadInst.destOperand().frameSlot()] = arrayValue.values.get((int) constant.value);
+                            execStack.stack[base + arrayLoadInst.destOperand().frameSlot()] = loadElement(arrayValue.get((int) constant.value));
                         }
                         else if (arrayLoadInst.indexOperand() instanceof Operand.RegisterOperand registerOperand) {
                             Value.IntegerValue index = (Value.IntegerValue) execStack.stack[base + registerOperand.frameSlot()];
-                            execStack.stack[base + arrayLoadInst.destOperand().frameSlot()] = arrayValue.values.get((int) index.value);
+                            execStack.stack[base + arrayLoadInst.destOperand().frameSlot()] = loadElement(arrayValue.get((int) index.value));
                         }
                         else throw new IllegalStateException();
                     } else throw new IllegalStateException();
@@ -265,35 +330,63 @@ public class Interpreter {
                         int index = setFieldInst.fieldIndex;
                         Value value;
                         if (setFieldInst.sourceOperand() instanceof Operand.ConstantOperand constant) {
-                            value = new Value.IntegerValue(constant.value);
+                            value = constants.get(constant);
                         }
                         else if (setFieldInst.sourceOperand() instanceof Operand.NullConstantOperand) {
-                            value = new Value.NullValue();
+                            value = Value.NullValue.NULL;
                         }
                         else if (setFieldInst.sourceOperand() instanceof Operand.RegisterOperand registerOperand) {
                             value = execStack.stack[base + registerOperand.frameSlot()];
                         }
                         else throw new IllegalStateException();
-                        structValue.fields[index] = value;
+                        structValue.set(index, value);
                     } else throw new IllegalStateException();
                 }
                 case Instruction.GetField getFieldInst -> {
                     if (getFieldInst.structOperand() instanceof Operand.RegisterOperand structOperand) {
                         Value.StructValue structValue = (Value.StructValue) execStack.stack[base + structOperand.frameSlot()];
                         int index = getFieldInst.fieldIndex;
-                        execStack.stack[base + getFieldInst.destOperand().frameSlot()] = structValue.fields[index];
+                        execStack.stack[base + getFieldInst.destOperand().frameSlot()] = loadElement(structValue.get(index));
                     } else throw new IllegalStateException();
                 }
                 default -> throw new IllegalStateException("Unexpected value: " + instruction);
             }
         }
-        return returnValue;
+    }
+
+    /**
+     * Whether the call at ip is followed by a return of its result,
+     * and then by a jump to the exit block
+     */
+    private static boolean isTailCall(CompiledFunction function, BasicBlock block, int ip) {
+        Instruction.Call callInst = (Instruction.Call) block.instructions.get(ip);
+        if (callInst.returnOperand() == null || ip + 2 >= block.instructions.size())
+            return false;
+        return block.instructions.get(ip + 1) instanceof Instruction.Ret retInst
+                && retInst.value() instanceof Operand.RegisterOperand registerOperand
+                && registerOperand.frameSlot() == callInst.returnOperand().frameSlot()
+                && block.instructions.get(ip + 2) instanceof Instruction.Jump jumpInst
+                && jumpInst.jumpTo == function.exit;
+    }
+
+    /**
+     * Reference elements and fields that were never initialized are null
+     */
+    private static Value loadElement(Value value) {
+        return value != null ? value : Value.NullValue.NULL;
     }
 
     static class Frame {
         Frame caller;
         int base;
         CompiledFunction bytecodeFunction;
+        // Saved while calling another function: the call to resume after
+        BasicBlock block;
+        int ip;
+        ConstantPool constants;
+        Value returnValue;
+        // The record of the last call made from this frame, for reuse
+        private Frame callee;
 
         public Frame(Symbol.FunctionTypeSymbol functionSymbol) {
             this.caller = null;
@@ -301,10 +394,24 @@ public class Interpreter {
             this.bytecodeFunction = (CompiledFunction) functionSymbol.code();
         }
 
-        Frame(Frame caller, int base, EZType.EZTypeFunction functionType) {
+        Frame(Frame caller, int base, CompiledFunction function) {
             this.caller = caller;
             this.base = base;
-            this.bytecodeFunction = (CompiledFunction) functionType.code;
+            this.bytecodeFunction = function;
+        }
+
+        /**
+         * Returns the frame of a call from this frame
+         */
+        Frame push(int base, CompiledFunction function) {
+            Frame frame = callee;
+            if (frame == null)
+                callee = frame = new Frame(this, base, function);
+            else {
+                frame.base = base;
+                frame.bytecodeFunction = function;
+            }
+            return frame;
         }
     }
 }
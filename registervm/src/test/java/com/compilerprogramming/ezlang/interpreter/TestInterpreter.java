@@ -1,6 +1,8 @@
 package com.compilerprogramming.ezlang.interpreter;
 
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
 import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.types.Symbol;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -497,4 +499,127 @@ func main()->Int
                 integerValue.value == 1);
     }
 
+    @Test
+    public void testArrayAppend() {
+        String src = """
+                struct Box
+                {
+                    var value: Int
+                }
+                func main()->Int
+                {
+                    var a = new [Int]{len=2, value=5}
+                    var b = new [Box]{}
+                    var i = 2
+                    while (i < 100) {
+                        a[i] = i
+                        i = i + 1
+                    }
+                    i = 0
+                    while (i < 50) {
+                        b[i] = new Box{ value = a[i] }
+                        i = i + 1
+                    }
+                    var sum = 0
+                    i = 0
+                    while (i < 50) {
+                        sum = sum + a[i + 50] - b[i].value
+                        i = i + 1
+                    }
+                    return sum
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 2491);
+    }
+
+    @Test
+    public void testStructLayout() {
+        String src = """
+                struct Tree
+                {
+                    var left: Tree?
+                    var value: Int
+                    var right: Tree?
+                    var count: Int
+                }
+                func main()->Int
+                {
+                    var leaf = new Tree{ value = 7 }
+                    var root = new Tree{ left = leaf, value = 3 }
+                    root.right = new Tree{ count = 2 }
+                    root.count = root.left.value + root.right.count
+                    if (leaf.left != null) return -1
+                    return root.count * 100 + root.right.value * 10 + root.value
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 903);
+    }
+
+    @Test
+    public void testConstantsShared() {
+        String src = """
+                func big(n: Int)->Int {
+                    if (n == 0) return 100000
+                    return 7
+                }
+                func main()->Int {
+                    return big(0)
+                }
+                """;
+        var typeDict = new Compiler().compileSrc(src);
+        var interpreter = new Interpreter(typeDict);
+        var function = (CompiledFunction) ((Symbol.FunctionTypeSymbol) typeDict.lookup("big")).code();
+        Assert.assertEquals(3, interpreter.constantPool(function).size());
+        // Constants are boxed once, small integers are always shared
+        var first = interpreter.run("main");
+        Assert.assertTrue(first instanceof Value.IntegerValue integerValue && integerValue.value == 100000);
+        Assert.assertSame(first, interpreter.run("main"));
+        Assert.assertSame(Value.IntegerValue.valueOf(7), Value.IntegerValue.valueOf(7));
+        Assert.assertSame(Value.NullValue.NULL, compileAndRun("""
+                struct S { var s: S? }
+                func f()->S? { return null }
+                """, "f"));
+    }
+
+    @Test
+    public void testDeepRecursion() {
+        String src = """
+                func sum(n: Int)->Int {
+                    if (n == 0) return 0
+                    return n + sum(n - 1)
+                }
+                func main()->Int {
+                    return sum(100000)
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 100000L * 100001 / 2);
+    }
+
+    @Test
+    public void testTailCall() {
+        String src = """
+                func count(n: Int, acc: Int)->Int {
+                    if (n == 0) return acc
+                    return count(n - 1, acc + 2)
+                }
+                """;
+        var typeDict = new Compiler().compileSrc(src);
+        var symbol = (Symbol.FunctionTypeSymbol) typeDict.lookup("count");
+        var execStack = new ExecutionStack(16);
+        execStack.stack[0] = Value.IntegerValue.valueOf(1000000);
+        execStack.stack[1] = Value.IntegerValue.valueOf(0);
+        var value = new Interpreter(typeDict).interpret(execStack, new Interpreter.Frame(symbol));
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 2000000);
+        // Each call replaced its caller's frame
+        Assert.assertEquals(16, execStack.stack.length);
+    }
 }
@@ -23,9 +23,9 @@ import java.util.Stack;
 
 public class Compiler {
 
-    public static ConstantNode ZERO; // Very common node, cached here
-    public static ConstantNode NIL;  // Very common node, cached here
-    public static XCtrlNode XCTRL;   // Very common node, cached here
+    public ConstantNode ZERO; // Very common node, cached here
+    public ConstantNode NIL;  // Very common node, cached here
+    public XCtrlNode XCTRL;   // Very common node, cached here
 
     TypeDictionary typeDictionary;
 
@@ -58,7 +58,7 @@ public class Compiler {
     // Mapping from a type name to a Type.  The string name matches
     // `type.str()` call.  No TypeMemPtrs are in here, because Simple does not
     // have C-style '*ptr' references.
-    public static HashMap<String, Type> TYPES = new HashMap<>();
+    public final HashMap<String, Type> TYPES = new HashMap<>();
 
     private ArrayList<Node> ctorStack = new ArrayList<>();
 
@@ -963,7 +963,7 @@ public class Compiler {
         return last;
     }
 
-    public static Node con(long con ) { return con==0 ? ZERO : con(TypeInteger.constant(con));  }
+    public static Node con(long con ) { return con==0 ? CodeGen.CODE().P.ZERO : con(TypeInteger.constant(con));  }
     public static ConstantNode con( Type t ) { return (ConstantNode)new ConstantNode(t).peephole();  }
     public Node peep( Node n ) {
         // Peephole, then improve with lexically scoped guards
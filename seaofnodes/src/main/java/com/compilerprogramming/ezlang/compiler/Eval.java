@@ -0,0 +1,249 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
+import com.compilerprogramming.ezlang.compiler.codegen.Profile;
+import com.compilerprogramming.ezlang.compiler.node.*;
+import com.compilerprogramming.ezlang.compiler.type.*;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+
+/**
+ *  Instrumented evaluator for the scheduled ideal graph.
+ * <p>
+ *  Runs a program compiled up to local scheduling without instruction
+ *  selection, i.e. {@code code.driver(CodeGen.Phase.LocalSched)}, and
+ *  records the taken/not-taken counts of every If and the entry/back-edge
+ *  counts of every Loop into a {@link Profile}.  The profile can be saved and
+ *  handed to a later compile of the same source, which uses it for basic
+ *  block layout.
+ * <p>
+ *  Blocks are run in schedule order: on entry to a Region the Phis pick the
+ *  input matching the predecessor, then the block's nodes are evaluated in
+ *  local schedule order.  Memory is a heap of Java objects; the memory edges
+ *  carry no values since the schedule already orders loads and stores.
+ * <p>
+ *  Integers are Longs, floats are Doubles, pointers are {@link Obj} or null,
+ *  and function pointers are the FunNode called.
+ */
+public class Eval {
+
+    // An allocated struct or array; slots are indexed by byte offset
+    public static class Obj {
+        public final TypeStruct _ts;
+        final Object[] _slots;
+        Obj( TypeStruct ts, int size ) { _ts = ts; _slots = new Object[size]; }
+        @Override public String toString() { return _ts.str(); }
+    }
+
+    final CodeGen _code;
+    public final Profile _profile;
+    private final long _maxBlocks;
+    private long _blocks;       // Blocks run so far
+
+    public Eval( CodeGen code, Profile profile ) { this(code,profile,100_000_000L); }
+    public Eval( CodeGen code, Profile profile, long maxBlocks ) {
+        if( code._phase != CodeGen.Phase.LocalSched || code._mach != null )
+            throw new IllegalArgumentException("Expected the ideal graph after local scheduling, got phase "+code._phase);
+        if( profile != null && !profile.matches(code) )
+            throw new IllegalArgumentException("Profile was created for a different source or with different options");
+        _code = code;
+        _profile = profile;
+        _maxBlocks = maxBlocks;
+    }
+
+    // Blocks run so far
+    public long blocks() { return _blocks; }
+
+    // Call the named function, Int arguments are Longs
+    public Object call( String name, Object... args ) {
+        for( Node n : _code._start._outputs )
+            if( n instanceof FunNode fun && name.equals(fun._name) ) {
+                // Args are numbered as Call inputs, starting at 2
+                Object[] vals = new Object[args.length+2];
+                System.arraycopy(args,0,vals,2,args.length);
+                return call(fun,vals);
+            }
+        throw new InterpreterException("Unknown function "+name);
+    }
+
+    private Object call( FunNode fun, Object[] args ) {
+        Object[] vals = new Object[_code.UID()];
+        for( Node n : fun._outputs )
+            if( n instanceof ParmNode parm && parm._idx >= 2 )
+                vals[parm._nid] = args[parm._idx];
+
+        CFGNode bb = fun, prior = null;
+        while( true ) {
+            if( ++_blocks > _maxBlocks )
+                throw new InterpreterException("Evaluation exceeded "+_maxBlocks+" blocks");
+            if( bb instanceof RegionNode r && !(bb instanceof FunNode) )
+                phis(r,prior,vals);
+
+            // Evaluate the block in schedule order
+            for( Node n : bb._outputs )
+                if( n.in(0)==bb && !(n instanceof CFGNode) && !(n instanceof PhiNode) && !(n instanceof ProjNode) )
+                    vals[n._nid] = eval(n,vals);
+
+            CFGNode tail = bb.uctrl();
+            switch( tail ) {
+            case NeverNode never -> bb = never.cproj(0);
+            case IfNode iff -> {
+                boolean taken = truthy(val(iff.pred(),vals));
+                if( _profile != null ) _profile.branch(iff,taken);
+                bb = iff.cproj(taken ? 0 : 1);
+            }
+            case CallNode call -> {
+                Object fptr = val(call.fptr(),vals);
+                if( !(fptr instanceof FunNode target) )
+                    throw new InterpreterException("Cannot call "+(fptr==null ? "null" : call.fptr().label()));
+                Object[] xargs = new Object[call.nIns()-1];
+                for( int i=2; i<call.nIns()-1; i++ )
+                    xargs[i] = val(call.arg(i),vals);
+                Object rez = call(target,xargs);
+                CallEndNode cend = call.cend();
+                for( Node n : cend._outputs )
+                    if( n instanceof ProjNode proj )
+                        vals[proj._nid] = proj._idx==2 ? rez : null;
+                bb = cend;
+            }
+            case ReturnNode ret -> { return ret.expr()==null ? null : val(ret.expr(),vals); }
+            default -> { prior = bb; bb = tail; }
+            }
+        }
+    }
+
+    // Parallel assignment of the Phis on entry to a Region
+    private void phis( RegionNode r, CFGNode prior, Object[] vals ) {
+        int idx = r._inputs.find(prior);
+        assert idx > 0;
+        if( r instanceof LoopNode loop && _profile != null )
+            _profile.loop(loop, idx==2);
+        int len = 0;
+        Object[] tmp = new Object[r.nOuts()];
+        for( Node n : r._outputs )
+            if( n instanceof PhiNode phi && phi.in(0)==r )
+                tmp[len++] = val(phi.in(idx),vals);
+        len = 0;
+        for( Node n : r._outputs )
+            if( n instanceof PhiNode phi && phi.in(0)==r )
+                vals[phi._nid] = tmp[len++];
+    }
+
+    private Object val( Node n, Object[] vals ) {
+        return n instanceof ConstantNode con ? constant(con) : vals[n._nid];
+    }
+
+    private Object constant( ConstantNode con ) {
+        return switch( con._con ) {
+        case TypeInteger ti when ti.isConstant() -> ti.value();
+        case TypeFloat   tf when tf.isConstant() -> tf.value();
+        case TypeFunPtr tfp when tfp.isConstant() && !(con instanceof ExternNode) -> _code.link(tfp);
+        default -> null;        // nil, memory and other non-values
+        };
+    }
+
+    private static boolean truthy( Object x ) {
+        return switch( x ) {
+        case null -> false;
+        case Long l -> l != 0;
+        case Double d -> d != 0;
+        default -> true;
+        };
+    }
+
+    private Object eval( Node n, Object[] vals ) {
+        return switch( n ) {
+        case ConstantNode con -> constant(con);
+        case AddNode  add -> i(add,1,vals) + i(add,2,vals);
+        case SubNode  sub -> i(sub,1,vals) - i(sub,2,vals);
+        case MulNode  mul -> i(mul,1,vals) * i(mul,2,vals);
+        case DivNode  div -> { long y = i(div,2,vals); yield y==0 ? 0L : i(div,1,vals) / y; }
+        case AndNode  and -> i(and,1,vals) & i(and,2,vals);
+        case OrNode   or  -> i(or ,1,vals) | i(or ,2,vals);
+        case XorNode  xor -> i(xor,1,vals) ^ i(xor,2,vals);
+        case ShlNode  shl -> i(shl,1,vals) << i(shl,2,vals);
+        case ShrNode  shr -> i(shr,1,vals) >>> i(shr,2,vals);
+        case SarNode  sar -> i(sar,1,vals) >> i(sar,2,vals);
+        case MinusNode neg -> -i(neg,1,vals);
+        case AddFNode add -> d(add,1,vals) + d(add,2,vals);
+        case SubFNode sub -> d(sub,1,vals) - d(sub,2,vals);
+        case MulFNode mul -> d(mul,1,vals) * d(mul,2,vals);
+        case DivFNode div -> d(div,1,vals) / d(div,2,vals);
+        case MinusFNode neg -> -d(neg,1,vals);
+        case ToFloatNode tf -> (double)i(tf,1,vals);
+        case RoundF32Node rnd -> (double)(float)d(rnd,1,vals);
+        case NotNode not -> truthy(val(not.in(1),vals)) ? 0L : 1L;
+        case BoolNode bool -> compare(bool,val(bool.in(1),vals),val(bool.in(2),vals)) ? 1L : 0L;
+        case CastNode cast -> val(cast.in(1),vals);
+        case ReadOnlyNode ro -> val(ro.in(1),vals);
+        case MemMergeNode mem -> null;
+        case NewNode nnn -> alloc(nnn,vals);
+        case LoadNode ld -> {
+            Obj obj = obj(ld,vals);
+            Object x = obj._slots[offset(ld,obj,vals)];
+            if( x != null ) yield x;
+            // Memory is pre-zeroed
+            yield ld._type instanceof TypeInteger ? (Object)0L : ld._type instanceof TypeFloat ? (Object)0.0 : null;
+        }
+        case StoreNode st -> {
+            Obj obj = obj(st,vals);
+            obj._slots[offset(st,obj,vals)] = val(st.val(),vals);
+            yield null;
+        }
+        default -> throw new InterpreterException("Cannot evaluate "+n.label());
+        };
+    }
+
+    private long   i( Node n, int idx, Object[] vals ) { return (Long  )val(n.in(idx),vals); }
+    private double d( Node n, int idx, Object[] vals ) { return (Double)val(n.in(idx),vals); }
+
+    private static boolean compare( BoolNode bool, Object x, Object y ) {
+        if( x instanceof Double dx && y instanceof Double dy )
+            return switch( bool ) {
+            case BoolNode.EQ eq -> dx.doubleValue() == dy.doubleValue();
+            case BoolNode.LT lt -> dx <  dy;
+            case BoolNode.LE le -> dx <= dy;
+            default -> throw new InterpreterException("Cannot evaluate "+bool.label());
+            };
+        if( x instanceof Long lx && y instanceof Long ly )
+            return switch( bool ) {
+            case BoolNode.EQ  eq  -> lx.longValue() == ly.longValue();
+            case BoolNode.NE  ne  -> lx.longValue() != ly.longValue();
+            case BoolNode.LT  lt  -> lx <  ly;
+            case BoolNode.LE  le  -> lx <= ly;
+            case BoolNode.ULT ult -> Long.compareUnsigned(lx,ly) < 0;
+            default -> throw new InterpreterException("Cannot evaluate "+bool.label());
+            };
+        // Pointers compare by identity; null is a zero
+        boolean eq = x==y || (x instanceof Long l && l==0 && y==null) || (y instanceof Long l && l==0 && x==null);
+        return switch( bool ) {
+        case BoolNode.EQ e -> eq;
+        case BoolNode.NE e -> !eq;
+        default -> throw new InterpreterException("Cannot evaluate "+bool.label());
+        };
+    }
+
+    private Obj alloc( NewNode nnn, Object[] vals ) {
+        long size = (Long)val(nnn.size(),vals);
+        if( size < 0 || size > Integer.MAX_VALUE )
+            throw new InterpreterException("Invalid allocation size "+size);
+        Obj obj = new Obj(nnn._ptr._obj,(int)size);
+        for( Node n : nnn._outputs )
+            if( n instanceof ProjNode proj )
+                vals[proj._nid] = proj._idx==1 ? obj : null;
+        return obj;
+    }
+
+    private Obj obj( MemOpNode mop, Object[] vals ) {
+        Object ptr = val(mop.ptr(),vals);
+        if( ptr == null )
+            throw new InterpreterException("Null pointer accessing field "+mop._name);
+        return (Obj)ptr;
+    }
+
+    private int offset( MemOpNode mop, Obj obj, Object[] vals ) {
+        long off = (Long)val(mop.off(),vals);
+        if( off < 0 || off >= obj._slots.length )
+            throw new InterpreterException("Offset "+off+" out of bounds accessing "+obj._ts.str());
+        return (int)off;
+    }
+}
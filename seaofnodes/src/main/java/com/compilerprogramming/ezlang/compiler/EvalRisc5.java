@@ -0,0 +1,569 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
+import com.compilerprogramming.ezlang.compiler.codegen.Encoding;
+import com.compilerprogramming.ezlang.compiler.node.*;
+import com.compilerprogramming.ezlang.compiler.node.cpus.riscv.riscv;
+import com.compilerprogramming.ezlang.compiler.type.*;
+import com.compilerprogramming.ezlang.compiler.util.SB;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ *  RV64IMFD emulator for the code generated for the riscv CPU.
+ * <p>
+ *  Runs the encoded bits of a program linked in memory, i.e.
+ *  {@code code.driver(Phase.Encoding,"riscv","SystemV").exportELF(null)}, so
+ *  the constant pool follows the code and the external calls are patched to
+ *  the sentinel addresses in {@link Encoding}.  Functions are called with the
+ *  SystemV argument passing: integers and pointers in a0-a7, floats in
+ *  fa0-fa7, the result in a0 or fa0.
+ * <p>
+ *  Memory is one flat little-endian array: a guard page at zero to catch
+ *  null pointers, the code and constant pool, a heap for {@code calloc} which
+ *  is never freed, and the stack at the top.  The code is read-only.
+ * <p>
+ *  Every retired instruction is counted against the function containing it,
+ *  along with the loads, stores, conditional branches and calls.  Loads and
+ *  stores off the stack pointer are the register allocator's spills and
+ *  reloads, and are also counted on their own.
+ */
+public class EvalRisc5 {
+
+    // Start of the code; below is the null guard page
+    public static final int CODE_BASE = 0x1000;
+    // Return address of the outermost call; reaching it ends the call
+    static final int HALT = CODE_BASE - 16;
+    static final int CALLOC = CODE_BASE + Encoding.SENTINEL_CALLOC;
+    static final int WRITE  = CODE_BASE + Encoding.SENTINEL_WRITE ;
+
+    static final int STACK_SIZE = 1<<20;
+
+    // Execution counts of a function
+    public static class Counts {
+        public final String _name;
+        public long _insts, _loads, _stores, _branches, _taken, _calls;
+        public long _spillLoads, _spillStores; // Loads and stores off the stack pointer
+        Counts( String name ) { _name = name; }
+        void add( Counts c ) {
+            _insts += c._insts;  _loads += c._loads;  _stores += c._stores;
+            _branches += c._branches;  _taken += c._taken;  _calls += c._calls;
+            _spillLoads += c._spillLoads;  _spillStores += c._spillStores;
+        }
+        @Override public String toString() {
+            return String.format("%-12s %10d %8d %8d %8d %8d %6d %6d %6d",
+                                 _name,_insts,_loads,_stores,_branches,_taken,_calls,_spillLoads,_spillStores);
+        }
+    }
+
+    final CodeGen _code;
+    final byte[] _mem;
+    final ByteBuffer _buf;
+    private final int _codeEnd; // End of code and constant pool
+    private int _heap;          // Next free heap byte
+    private final long _maxInsts;
+
+    final long[] _x = new long[32];    // Integer registers
+    final long[] _f = new long[32];    // Float registers, singles are NaN-boxed
+    private int _pc;
+
+    // Functions and their counts, in code order
+    private final FunNode[] _funs;
+    private final Counts[] _counts;
+    // Function index for every instruction word of code
+    private final short[] _funOf;
+
+    // Bytes written by the program to any file descriptor
+    public final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+
+    public EvalRisc5( CodeGen code ) { this(code, 64<<20, 1_000_000_000L); }
+    public EvalRisc5( CodeGen code, int memSize, long maxInsts ) {
+        if( code._phase != CodeGen.Phase.Export || !(code._mach instanceof riscv) || !code._encoding._linked )
+            throw new IllegalArgumentException("Expected riscv code linked in memory, got phase "+code._phase);
+        _code = code;
+        _maxInsts = maxInsts;
+        _mem = new byte[memSize];
+        _buf = ByteBuffer.wrap(_mem).order(ByteOrder.LITTLE_ENDIAN);
+        Encoding enc = code._encoding;
+        int len = enc._bits.size();
+        if( CODE_BASE+len+STACK_SIZE > memSize )
+            throw new IllegalArgumentException("Memory size "+memSize+" too small for the code");
+        System.arraycopy(enc.bits(),0,_mem,CODE_BASE,len);
+        _codeEnd = CODE_BASE+len;
+        _heap = _codeEnd+15 & -16;
+
+        // Functions in code order, and the function of each instruction
+        FunNode[] funs = _funs = code._start._outputs.stream()
+            .filter(n -> n instanceof FunNode).map(n -> (FunNode)n)
+            .sorted((a,b) -> enc._opStart[a._nid] - enc._opStart[b._nid])
+            .toArray(FunNode[]::new);
+        _counts = new Counts[funs.length];
+        _funOf = new short[(len+3)>>2];
+        for( int i=0; i<funs.length; i++ ) {
+            _counts[i] = new Counts(funs[i]._name);
+            int end = i+1<funs.length ? enc._opStart[funs[i+1]._nid] : len;
+            Arrays.fill(_funOf, enc._opStart[funs[i]._nid]>>2, (end+3)>>2, (short)i);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    // Calls
+
+    // Call the named function; Int and pointer arguments are Longs, Float
+    // arguments are Doubles.  Returns a Long or Double.
+    public Object call( String name, Object... args ) {
+        for( FunNode fun : _funs )
+            if( name.equals(fun._name) )
+                return call(fun,args);
+        throw new InterpreterException("Unknown function "+name);
+    }
+
+    private Object call( FunNode fun, Object[] args ) {
+        TypeFunPtr sig = fun.sig();
+        if( args.length != sig.nargs() )
+            throw new InterpreterException("Expected "+sig.nargs()+" arguments calling "+fun._name+", got "+args.length);
+        Arrays.fill(_x,0);
+        Arrays.fill(_f,0);
+        int icnt=0, fcnt=0;
+        for( int i=0; i<args.length; i++ ) {
+            if( sig.arg(i) instanceof TypeFloat tf ) {
+                if( fcnt==8 ) throw new InterpreterException("Too many float arguments calling "+fun._name);
+                double d = ((Number)args[i]).doubleValue();
+                _f[riscv.FA0-riscv.F_OFFSET+fcnt++] = tf._sz==32 ? box(Float.floatToRawIntBits((float)d)) : Double.doubleToRawLongBits(d);
+            } else {
+                if( icnt==8 ) throw new InterpreterException("Too many arguments calling "+fun._name);
+                _x[riscv.A0+icnt++] = ((Number)args[i]).longValue();
+            }
+        }
+        _x[riscv.RPC] = HALT;
+        _x[riscv.RSP] = _mem.length & -16;
+        _pc = CODE_BASE+_code._encoding._opStart[fun._nid];
+        run();
+        return sig.ret() instanceof TypeFloat tf
+            ? (tf._sz==32 ? (double)Float.intBitsToFloat(unbox(_f[riscv.FA0-riscv.F_OFFSET])) : Double.longBitsToDouble(_f[riscv.FA0-riscv.F_OFFSET]))
+            : (Object)_x[riscv.A0];
+    }
+
+    // ------------------------------------------------------------------------
+    // Counts
+
+    // Counts for the named function
+    public Counts counts( String name ) {
+        for( Counts c : _counts )
+            if( c._name.equals(name) )
+                return c;
+        throw new InterpreterException("Unknown function "+name);
+    }
+
+    // Counts over all functions
+    public Counts total() {
+        Counts sum = new Counts("total");
+        for( Counts c : _counts )
+            sum.add(c);
+        return sum;
+    }
+
+    public String printCounts() {
+        SB sb = new SB();
+        sb.p(String.format("%-12s %10s %8s %8s %8s %8s %6s %6s %6s","function","insts","loads","stores","branches","taken","calls","spldr","splst")).nl();
+        for( Counts c : _counts )
+            sb.p(c.toString()).nl();
+        return sb.p(total().toString()).nl().toString();
+    }
+
+    // ------------------------------------------------------------------------
+    // Memory
+
+    private int addr( long adr, int size, boolean store ) {
+        if( adr < CODE_BASE )
+            throw new InterpreterException("Null pointer access at 0x"+Long.toHexString(adr)+" pc=0x"+Integer.toHexString(_pc));
+        if( adr+size > _mem.length || (store && adr < _codeEnd) )
+            throw new InterpreterException("Invalid "+(store ? "store" : "load")+" at 0x"+Long.toHexString(adr)+" pc=0x"+Integer.toHexString(_pc));
+        return (int)adr;
+    }
+    private long load( long adr, int func3 ) {
+        return switch( func3 ) {
+        case 0 ->      _buf.get     (addr(adr,1,false));          // LB
+        case 1 ->      _buf.getShort(addr(adr,2,false));          // LH
+        case 2 ->      _buf.getInt  (addr(adr,4,false));          // LW
+        case 3 ->      _buf.getLong (addr(adr,8,false));          // LD
+        case 4 ->      _buf.get     (addr(adr,1,false)) & 0xFFL;  // LBU
+        case 5 ->      _buf.getShort(addr(adr,2,false)) & 0xFFFFL;// LHU
+        case 6 ->      _buf.getInt  (addr(adr,4,false)) & 0xFFFFFFFFL; // LWU
+        default -> throw illegal();
+        };
+    }
+    private void store( long adr, int func3, long x ) {
+        switch( func3 ) {
+        case 0 -> _buf.put     (addr(adr,1,true),(byte )x);
+        case 1 -> _buf.putShort(addr(adr,2,true),(short)x);
+        case 2 -> _buf.putInt  (addr(adr,4,true),(int  )x);
+        case 3 -> _buf.putLong (addr(adr,8,true),       x);
+        default -> throw illegal();
+        }
+    }
+
+    // External calls, via the Encoding sentinels
+    private void calloc() {
+        long size = _x[riscv.A0] * _x[riscv.A1];
+        long adr = _heap;
+        if( size < 0 || adr+size > _mem.length-STACK_SIZE )
+            throw new InterpreterException("Out of memory allocating "+size+" bytes");
+        Arrays.fill(_mem,(int)adr,(int)(adr+size),(byte)0);
+        _heap = (int)(adr+size+15 & -16);
+        _x[riscv.A0] = adr;
+    }
+    private void write() {
+        long len = _x[riscv.A2];
+        _out.write(_mem,addr(_x[riscv.A1],(int)len,false),(int)len);
+        _x[riscv.A0] = len;
+    }
+
+    // ------------------------------------------------------------------------
+    // Execution
+
+    private InterpreterException illegal() {
+        return new InterpreterException("Illegal instruction 0x"+Integer.toHexString(_buf.getInt(_pc))+" at pc=0x"+Integer.toHexString(_pc));
+    }
+
+    private void run() {
+        long insts = 0;
+        while( true ) {
+            // Sentinel addresses for the outermost return and external calls
+            if( _pc < CODE_BASE ) {
+                if( _pc == HALT ) return;
+                if( _pc == CALLOC ) calloc();
+                else if( _pc == WRITE ) write();
+                else throw new InterpreterException("Jump to 0x"+Integer.toHexString(_pc));
+                _pc = (int)_x[riscv.RPC];
+                continue;
+            }
+            if( _pc >= _codeEnd || (_pc&3)!=0 )
+                throw new InterpreterException("Jump to 0x"+Integer.toHexString(_pc));
+            if( ++insts > _maxInsts )
+                throw new InterpreterException("Evaluation exceeded "+_maxInsts+" instructions");
+            Counts cnt = _counts[_funOf[(_pc-CODE_BASE)>>2]];
+            cnt._insts++;
+            step(_buf.getInt(_pc),cnt);
+            _x[0] = 0;
+        }
+    }
+
+    private void step( int insn, Counts cnt ) {
+        int op  =  insn        & 0x7F;
+        int rd  = (insn >>  7) & 0x1F;
+        int f3  = (insn >> 12) & 0x07;
+        int rs1 = (insn >> 15) & 0x1F;
+        int rs2 = (insn >> 20) & 0x1F;
+        int f7  =  insn >>> 25;
+        long[] x = _x;
+        int next = _pc+4;
+        switch( op ) {
+        case 0b0110111 -> x[rd] = (long)(insn & 0xFFFFF000);     // LUI
+        case 0b0010111 -> x[rd] = _pc + (long)(insn & 0xFFFFF000); // AUIPC
+        case 0b1101111 -> {                                      // JAL
+            if( rd != 0 ) cnt._calls++;
+            x[rd] = next;
+            next = _pc + jimm(insn);
+        }
+        case 0b1100111 -> {                                      // JALR
+            if( f3 != 0 ) throw illegal();
+            int target = (int)(x[rs1] + (insn>>20)) & ~1;
+            if( rd != 0 ) cnt._calls++;
+            x[rd] = next;
+            next = target;
+        }
+        case 0b1100011 -> {                                      // Branches
+            long a = x[rs1], b = x[rs2];
+            boolean taken = switch( f3 ) {
+            case 0 -> a == b;
+            case 1 -> a != b;
+            case 4 -> a <  b;
+            case 5 -> a >= b;
+            case 6 -> Long.compareUnsigned(a,b) <  0;
+            case 7 -> Long.compareUnsigned(a,b) >= 0;
+            default -> throw illegal();
+            };
+            cnt._branches++;
+            if( taken ) { cnt._taken++; next = _pc + bimm(insn); }
+        }
+        case 0b0000011 -> {                                      // Loads
+            cnt._loads++;
+            if( rs1 == riscv.RSP ) cnt._spillLoads++;
+            x[rd] = load(x[rs1] + (insn>>20), f3);
+        }
+        case 0b0100011 -> {                                      // Stores
+            cnt._stores++;
+            if( rs1 == riscv.RSP ) cnt._spillStores++;
+            store(x[rs1] + simm(insn), f3, x[rs2]);
+        }
+        case 0b0010011 -> x[rd] = opImm(f3, x[rs1], insn>>20);
+        case 0b0011011 -> x[rd] = opImm32(f3, (int)x[rs1], insn>>20);
+        case 0b0110011 -> x[rd] = f7==1 ? mul(f3,x[rs1],x[rs2]) : op(f3,f7,x[rs1],x[rs2]);
+        case 0b0111011 -> x[rd] = f7==1 ? mul32(f3,(int)x[rs1],(int)x[rs2]) : op32(f3,f7,(int)x[rs1],(int)x[rs2]);
+        case 0b0001111 -> { }                                    // FENCE
+        case 0b0000111 -> {                                      // FLW, FLD
+            cnt._loads++;
+            if( rs1 == riscv.RSP ) cnt._spillLoads++;
+            long adr = x[rs1] + (insn>>20);
+            if( f3==2 ) _f[rd] = box((int)load(adr,2));
+            else if( f3==3 ) _f[rd] = load(adr,3);
+            else throw illegal();
+        }
+        case 0b0100111 -> {                                      // FSW, FSD
+            cnt._stores++;
+            if( rs1 == riscv.RSP ) cnt._spillStores++;
+            if( f3 != 2 && f3 != 3 ) throw illegal();
+            store(x[rs1] + simm(insn), f3, _f[rs2]);
+        }
+        case 0b1010011 -> opFP(insn, rd, f3, rs1, rs2, f7);
+        case 0b1000011, 0b1000111, 0b1001011, 0b1001111 -> fma(insn, op, rd, f3, rs1, rs2);
+        default -> throw illegal();                              // Including ECALL, EBREAK
+        }
+        _pc = next;
+    }
+
+    // Immediates
+    private static int simm( int insn ) { return ((insn>>25)<<5) | ((insn>>7)&0x1F); }
+    private static int bimm( int insn ) {
+        return ((insn>>31)<<12) | (((insn>>7)&1)<<11) | (((insn>>25)&0x3F)<<5) | (((insn>>8)&0xF)<<1);
+    }
+    private static int jimm( int insn ) {
+        return ((insn>>31)<<20) | (insn & 0xFF000) | (((insn>>20)&1)<<11) | (((insn>>21)&0x3FF)<<1);
+    }
+
+    private long opImm( int f3, long a, int imm ) {
+        int sh = imm & 0x3F;
+        return switch( f3 ) {
+        case 0 -> a + imm;                                      // ADDI
+        case 1 -> a << sh;                                      // SLLI
+        case 2 -> a < imm ? 1 : 0;                              // SLTI
+        case 3 -> Long.compareUnsigned(a,imm) < 0 ? 1 : 0;      // SLTIU
+        case 4 -> a ^ imm;                                      // XORI
+        case 5 -> (imm & 0x400)==0 ? a >>> sh : a >> sh;        // SRLI, SRAI
+        case 6 -> a | imm;                                      // ORI
+        case 7 -> a & imm;                                      // ANDI
+        default -> throw illegal();
+        };
+    }
+    private long opImm32( int f3, int a, int imm ) {
+        int sh = imm & 0x1F;
+        return switch( f3 ) {
+        case 0 -> a + imm;                                      // ADDIW
+        case 1 -> a << sh;                                      // SLLIW
+        case 5 -> (imm & 0x400)==0 ? a >>> sh : a >> sh;        // SRLIW, SRAIW
+        default -> throw illegal();
+        };
+    }
+    private long op( int f3, int f7, long a, long b ) {
+        int sh = (int)b & 0x3F;
+        if( f7 == 0x20 )
+            return switch( f3 ) {
+            case 0 -> a - b;                                    // SUB
+            case 5 -> a >> sh;                                  // SRA
+            default -> throw illegal();
+            };
+        if( f7 != 0 ) throw illegal();
+        return switch( f3 ) {
+        case 0 -> a + b;                                        // ADD
+        case 1 -> a << sh;                                      // SLL
+        case 2 -> a < b ? 1 : 0;                                // SLT
+        case 3 -> Long.compareUnsigned(a,b) < 0 ? 1 : 0;        // SLTU
+        case 4 -> a ^ b;                                        // XOR
+        case 5 -> a >>> sh;                                     // SRL
+        case 6 -> a | b;                                        // OR
+        case 7 -> a & b;                                        // AND
+        default -> throw illegal();
+        };
+    }
+    private long op32( int f3, int f7, int a, int b ) {
+        int sh = b & 0x1F;
+        if( f7 == 0x20 )
+            return switch( f3 ) {
+            case 0 -> a - b;                                    // SUBW
+            case 5 -> a >> sh;                                  // SRAW
+            default -> throw illegal();
+            };
+        if( f7 != 0 ) throw illegal();
+        return switch( f3 ) {
+        case 0 -> a + b;                                        // ADDW
+        case 1 -> a << sh;                                      // SLLW
+        case 5 -> a >>> sh;                                     // SRLW
+        default -> throw illegal();
+        };
+    }
+    // M extension.  Division by zero and overflow do not trap.
+    private long mul( int f3, long a, long b ) {
+        return switch( f3 ) {
+        case 0 -> a * b;                                        // MUL
+        case 1 -> Math.multiplyHigh(a,b);                       // MULH
+        case 2 -> Math.multiplyHigh(a,b) + (b < 0 ? a : 0);     // MULHSU
+        case 3 -> Math.unsignedMultiplyHigh(a,b);               // MULHU
+        case 4 -> b==0 ? -1 : (a==Long.MIN_VALUE && b==-1 ? a : a / b); // DIV
+        case 5 -> b==0 ? -1 : Long.divideUnsigned(a,b);         // DIVU
+        case 6 -> b==0 ? a  : (a==Long.MIN_VALUE && b==-1 ? 0 : a % b); // REM
+        case 7 -> b==0 ? a  : Long.remainderUnsigned(a,b);      // REMU
+        default -> throw illegal();
+        };
+    }
+    private long mul32( int f3, int a, int b ) {
+        return switch( f3 ) {
+        case 0 -> a * b;                                        // MULW
+        case 4 -> b==0 ? -1 : (a==Integer.MIN_VALUE && b==-1 ? a : a / b); // DIVW
+        case 5 -> b==0 ? -1 : Integer.divideUnsigned(a,b);      // DIVUW
+        case 6 -> b==0 ? a  : (a==Integer.MIN_VALUE && b==-1 ? 0 : a % b); // REMW
+        case 7 -> b==0 ? a  : Integer.remainderUnsigned(a,b);   // REMUW
+        default -> throw illegal();
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    // F and D extensions
+
+    // Singles are NaN-boxed in the 64-bit registers
+    private static long box( int bits ) { return 0xFFFFFFFF00000000L | (bits & 0xFFFFFFFFL); }
+    private static int unbox( long bits ) { return (bits>>>32)==0xFFFFFFFFL ? (int)bits : 0x7FC00000; }
+    private float  s( int r ) { return Float.intBitsToFloat(unbox(_f[r])); }
+    private double d( int r ) { return Double.longBitsToDouble(_f[r]); }
+    private void s( int r, float  v ) { _f[r] = box(Float.floatToRawIntBits(v)); }
+    private void d( int r, double v ) { _f[r] = Double.doubleToRawLongBits(v); }
+
+    // Java arithmetic rounds to nearest even; the dynamic mode is always RNE
+    private void rne( int rm ) {
+        if( rm != riscv.RM.RNE.ordinal() && rm != riscv.RM.DYN.ordinal() )
+            throw new InterpreterException("Unsupported rounding mode "+riscv.RM.values()[rm]+" at pc=0x"+Integer.toHexString(_pc));
+    }
+
+    private void opFP( int insn, int rd, int rm, int rs1, int rs2, int f7 ) {
+        boolean dbl = (f7&3)==1;
+        if( (f7&3) > 1 ) throw illegal();
+        long[] x = _x;
+        switch( f7>>2 ) {
+        case 0b00000, 0b00001, 0b00010, 0b00011 -> {           // FADD, FSUB, FMUL, FDIV
+            rne(rm);
+            if( dbl ) {
+                double a = d(rs1), b = d(rs2);
+                d(rd, switch( f7>>2 ) { case 0 -> a+b; case 1 -> a-b; case 2 -> a*b; default -> a/b; });
+            } else {
+                float a = s(rs1), b = s(rs2);
+                s(rd, switch( f7>>2 ) { case 0 -> a+b; case 1 -> a-b; case 2 -> a*b; default -> a/b; });
+            }
+        }
+        case 0b01011 -> {                                       // FSQRT
+            rne(rm);
+            if( dbl ) d(rd,Math.sqrt(d(rs1)));
+            else s(rd,(float)Math.sqrt(s(rs1)));
+        }
+        case 0b00100 -> {                                       // FSGNJ, FSGNJN, FSGNJX
+            long sign = dbl ? Long.MIN_VALUE : 0x80000000L;
+            long a = dbl ? _f[rs1] : unbox(_f[rs1]) & 0xFFFFFFFFL;
+            long b = dbl ? _f[rs2] : unbox(_f[rs2]) & 0xFFFFFFFFL;
+            long r = switch( rm ) {
+            case 0 -> (a & ~sign) | (b & sign);
+            case 1 -> (a & ~sign) | (~b & sign);
+            case 2 -> a ^ (b & sign);
+            default -> throw illegal();
+            };
+            _f[rd] = dbl ? r : box((int)r);
+        }
+        case 0b00101 -> {                                       // FMIN, FMAX
+            if( rm > 1 ) throw illegal();
+            double a = dbl ? d(rs1) : s(rs1), b = dbl ? d(rs2) : s(rs2);
+            double r;
+            if( Double.isNaN(a) && Double.isNaN(b) ) r = Double.NaN;
+            else if( Double.isNaN(a) ) r = b;
+            else if( Double.isNaN(b) ) r = a;
+            else r = rm==0 ? Math.min(a,b) : Math.max(a,b);
+            if( dbl ) d(rd,r); else s(rd,(float)r);
+        }
+        case 0b01000 -> {                                       // FCVT.S.D, FCVT.D.S
+            if( dbl ) { if( rs2 != 0 ) throw illegal(); d(rd,s(rs1)); }
+            else { if( rs2 != 1 ) throw illegal(); rne(rm); s(rd,(float)d(rs1)); }
+        }
+        case 0b10100 -> {                                       // FLE, FLT, FEQ
+            double a = dbl ? d(rs1) : s(rs1), b = dbl ? d(rs2) : s(rs2);
+            x[rd] = switch( rm ) {
+            case 0 -> a <= b ? 1 : 0;
+            case 1 -> a <  b ? 1 : 0;
+            case 2 -> a == b ? 1 : 0;
+            default -> throw illegal();
+            };
+        }
+        case 0b11000 -> x[rd] = toInt(dbl ? d(rs1) : s(rs1), rs2, rm); // FCVT.{W,WU,L,LU}
+        case 0b11010 -> {                                       // FCVT.{S,D}.{W,WU,L,LU}
+            rne(rm);
+            long a = x[rs1];
+            if( rs2 == 0 ) a = (int)a;
+            else if( rs2 == 1 ) a &= 0xFFFFFFFFL;
+            else if( rs2 > 3 ) throw illegal();
+            // Large unsigned longs halve, keeping the sticky bit, then double
+            boolean half = rs2 == 3 && a < 0;
+            if( half ) a = a>>>1 | (a&1);
+            if( dbl ) d(rd, half ? 2.0*a : a);
+            else s(rd, half ? 2.0f*a : a);
+        }
+        case 0b11100 -> {                                       // FMV.X.{W,D}, FCLASS
+            if( rs2 != 0 ) throw illegal();
+            if( rm==0 ) x[rd] = dbl ? _f[rs1] : (long)(int)_f[rs1];
+            else if( rm==1 ) x[rd] = fclass(dbl ? d(rs1) : s(rs1), dbl ? Double.MIN_NORMAL : Float.MIN_NORMAL);
+            else throw illegal();
+        }
+        case 0b11110 -> {                                       // FMV.{W,D}.X
+            if( rs2 != 0 || rm != 0 ) throw illegal();
+            _f[rd] = dbl ? x[rs1] : box((int)x[rs1]);
+        }
+        default -> throw illegal();
+        }
+    }
+
+    // Fused multiply-add family, R4 format
+    private void fma( int insn, int op, int rd, int rm, int rs1, int rs2 ) {
+        rne(rm);
+        int rs3 = insn>>>27;
+        int fmt = (insn>>25)&3;
+        if( fmt > 1 ) throw illegal();
+        // FMADD a*b+c, FMSUB a*b-c, FNMSUB -a*b+c, FNMADD -a*b-c
+        boolean negA = op==0b1001011 || op==0b1001111;
+        boolean negC = op==0b1000111 || op==0b1001111;
+        if( fmt==1 ) {
+            double a = d(rs1), c = d(rs3);
+            d(rd,Math.fma(negA ? -a : a, d(rs2), negC ? -c : c));
+        } else {
+            float a = s(rs1), c = s(rs3);
+            s(rd,Math.fma(negA ? -a : a, s(rs2), negC ? -c : c));
+        }
+    }
+
+    // Float to integer, saturating; NaN converts to the largest value
+    private long toInt( double v, int kind, int rm ) {
+        double r = switch( rm == riscv.RM.DYN.ordinal() ? 0 : rm ) {
+        case 0 -> Math.rint(v);                                 // RNE
+        case 1 -> v < 0 ? Math.ceil(v) : Math.floor(v);         // RTZ
+        case 2 -> Math.floor(v);                                // RDN
+        case 3 -> Math.ceil(v);                                 // RUP
+        case 4 -> v < 0 ? -Math.floor(-v+0.5) : Math.floor(v+0.5); // RMM
+        default -> throw illegal();
+        };
+        return switch( kind ) {
+        case 0 -> Double.isNaN(r) ? Integer.MAX_VALUE : (long)(int)Math.max(Integer.MIN_VALUE,Math.min(Integer.MAX_VALUE,r));
+        case 1 -> Double.isNaN(r) || r >= 4294967295.0 ? -1L : r <= 0 ? 0 : (long)(int)(long)r;
+        case 2 -> Double.isNaN(r) ? Long.MAX_VALUE : (long)r;
+        case 3 -> Double.isNaN(r) || r >= 18446744073709551615.0 ? -1L : r <= 0 ? 0
+                : r < 9223372036854775808.0 ? (long)r : (long)(r/2)<<1;
+        default -> throw illegal();
+        };
+    }
+
+    private static long fclass( double v, double minNormal ) {
+        boolean neg = Double.doubleToRawLongBits(v) < 0 || (v < 0);
+        if( Double.isNaN(v) ) return 1<<9;                      // Quiet NaN; signalling NaNs are not tracked
+        if( Double.isInfinite(v) ) return neg ? 1 : 1<<7;
+        if( v == 0 ) return neg ? 1<<3 : 1<<4;
+        boolean sub = Math.abs(v) < minNormal;
+        return neg ? (sub ? 1<<2 : 1<<1) : (sub ? 1<<5 : 1<<6);
+    }
+}
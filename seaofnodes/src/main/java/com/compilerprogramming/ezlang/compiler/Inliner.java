@@ -0,0 +1,223 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
+import com.compilerprogramming.ezlang.compiler.node.*;
+import com.compilerprogramming.ezlang.compiler.type.Type;
+import com.compilerprogramming.ezlang.compiler.type.TypeFunPtr;
+import com.compilerprogramming.ezlang.compiler.util.Ary;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+/**
+ * Inlines small functions into their call sites, by cloning the function
+ * body.  Runs in rounds after the peepholes reach a fixed point; each round
+ * inlines the call sites in the program then the peepholes run again, which
+ * also optimizes the inlined bodies for their arguments.
+ * <p>
+ * The original function is kept: all functions are exported and may be
+ * called from outside.  Once linked to nothing but Start, it is still
+ * generated.
+ * <p>
+ * The cost model:
+ * <ul>
+ * <li>A function is inlined if its body is at most {@link #MAX_SIZE} nodes,
+ *   not counting the Fun, Parms and Return which inlining removes.</li>
+ * <li>Calls copied by inlining are one deeper than the call inlined; calls
+ *   at {@link #MAX_DEPTH} are not inlined.  This bounds the unrolling of
+ *   recursive functions, and the nesting of chains of small functions.</li>
+ * <li>Across all rounds the program may grow by its own size, but at least
+ *   {@link #MIN_BUDGET} nodes; smaller functions are inlined first.</li>
+ * </ul>
+ * Inlining adds CFG edges and invalidates the cached idepths; the caches are
+ * invalidated once per round, before the peepholes look at idepths again.
+ */
+public class Inliner {
+
+    // Largest body inlined
+    public static final int MAX_SIZE = 40;
+    // Calls copied from this many nested inlines are not inlined
+    public static final int MAX_DEPTH = 3;
+    // Minimum growth allowed for the whole program
+    public static final int MIN_BUDGET = 400;
+
+    private final CodeGen _code;
+    // Inline depth of calls copied by inlining; missing is depth 0
+    private final IdentityHashMap<CallNode,Integer> _depth = new IdentityHashMap<>();
+    // Nodes the program may still grow by
+    private int _budget;
+    // Calls inlined so far
+    public int _inlined;
+
+    public Inliner( CodeGen code ) { _code = code; }
+
+    /**
+     * Inline until no call site qualifies.  Peepholes must be at a fixed point.
+     */
+    public void inline() {
+        _budget = Math.max(MIN_BUDGET, size());
+        // Depth bounds the rounds: every round inlines calls one deeper
+        for( int round=0; round<=MAX_DEPTH && round(); round++ ) {
+            // Bulk invalidate the idepths before the peepholes use them
+            _code.invalidateIDepthCaches();
+            _code._iter.iterate(_code);
+        }
+    }
+
+    // One round: inline all qualifying call sites, smallest bodies first
+    private boolean round() {
+        ArrayList<CallNode> calls = new ArrayList<>();
+        _code._stop.walk( n -> {
+                if( n instanceof CallNode call ) calls.add(call);
+                return null;
+            });
+        IdentityHashMap<FunNode,Ary<Node>> bodies = new IdentityHashMap<>();
+        calls.removeIf( call -> body(target(call),bodies)==null );
+        calls.sort( (x,y) -> body(target(x),bodies)._len - body(target(y),bodies)._len );
+
+        boolean progress = false;
+        for( CallNode call : calls ) {
+            // Earlier inlines may have killed the call, or inlined into the
+            // function; recompute the body.
+            if( call.isDead() ) continue;
+            FunNode fun = target(call);
+            if( fun==null ) continue;
+            bodies.remove(fun);
+            Ary<Node> body = body(fun,bodies);
+            if( body==null || body._len > _budget ) continue;
+            _budget -= body._len;
+            inline(call,fun,body);
+            progress = true;
+        }
+        return progress;
+    }
+
+    // The function a call site can inline, or null
+    private FunNode target( CallNode call ) {
+        CallEndNode cend = call.cend();
+        if( cend==null || cend.nIns()!=2 || !(cend.in(1) instanceof ReturnNode ret) )
+            return null;
+        FunNode fun = ret.fun();
+        if( call._type != Type.CONTROL ||                 // Unreachable call
+            !(call.fptr()._type instanceof TypeFunPtr tfp) || !tfp.isConstant() ||
+            call.err() != null ||                         // Bad args
+            fun.isDead() || ret.inProgress() ||
+            ret.ctrl()._type != Type.CONTROL ||           // Never returns
+            ret.expr() == null ||
+            _depth.getOrDefault(call,0) >= MAX_DEPTH )
+            return null;
+        return fun;
+    }
+
+    // Nodes cloned to inline the function; null if too large, or the body is
+    // not closed (e.g. an infinite loop not reaching the Return).  The body is
+    // the CFG from the Fun to the Return, and all nodes reached from the Fun
+    // through uses which are not pinned outside that CFG.
+    private static Ary<Node> body( FunNode fun, IdentityHashMap<FunNode,Ary<Node>> bodies ) {
+        if( fun==null ) return null;
+        if( bodies.containsKey(fun) ) return bodies.get(fun);
+        BitSet cfgs = new BitSet();
+        walkUp(fun.ret(),cfgs);
+        Ary<Node> body = new Ary<>(Node.class);
+        Ary<Node> work = new Ary<>(Node.class);
+        BitSet visit = new BitSet();
+        work.push(fun);
+        visit.set(fun._nid);
+        outer:
+        while( !work.isEmpty() ) {
+            Node n = work.pop();
+            if( !(n instanceof FunNode || n instanceof ParmNode) )
+                body.push(n);
+            if( body._len > MAX_SIZE ) { body = null; break; }
+            for( Node use : n._outputs ) {
+                if( use==null || use instanceof ReturnNode ) continue;
+                // The RPC is only for the Return
+                if( n instanceof ParmNode parm && parm._idx==0 ) { body = null; break outer; }
+                boolean in = use instanceof CFGNode ? cfgs.get(use._nid) : (use.in(0)==null || cfgs.get(use.in(0)._nid));
+                if( in ) {
+                    if( !visit.get(use._nid) ) { visit.set(use._nid); work.push(use); }
+                } else if( !(use instanceof FunNode || use instanceof ParmNode) ) {
+                    body = null;    // Escapes the body, e.g. an infinite loop
+                    break outer;
+                }
+            }
+        }
+        bodies.put(fun,body);
+        return body;
+    }
+
+    private static void walkUp( CFGNode n, BitSet cfgs ) {
+        if( cfgs.get(n._nid) ) return;
+        cfgs.set(n._nid);
+        if( n instanceof FunNode ) return;
+        if( n instanceof RegionNode )
+            for( int i=1; i<n.nIns(); i++ )
+                walkUp(n.cfg(i),cfgs);
+        else walkUp(n.cfg0(),cfgs);
+    }
+
+    // Clone the body into the call site, and replace the call
+    private void inline( CallNode call, FunNode fun, Ary<Node> body ) {
+        CallEndNode cend = call.cend();
+        ReturnNode ret = fun.ret();
+        int depth = _depth.getOrDefault(call,0)+1;
+
+        // Fun and Parms map to the call inputs; the RPC is only used by the
+        // Return, which is not copied.
+        IdentityHashMap<Node,Node> map = new IdentityHashMap<>();
+        map.put(fun,call.in(0));
+        for( Node n : fun._outputs )
+            if( n instanceof ParmNode parm && parm._idx>0 )
+                map.put(parm, call.in(parm._idx));
+
+        // Copy all nodes, then the edges.  A CallEnd is built from its Call,
+        // the Return is linked when the call links.
+        for( Node n : body )
+            if( !(n instanceof CallEndNode) )
+                map.put(n, n.copy());
+        for( Node n : body )
+            if( n instanceof CallEndNode cend0 ) {
+                CallEndNode c = new CallEndNode((CallNode)map.get(cend0.call()));
+                c._type = cend0._type;
+                map.put(n, c);
+            }
+        for( Node n : body ) {
+            Node c = map.get(n);
+            if( !(n instanceof CallEndNode) )
+                for( Node def : n._inputs )
+                    c.addDef(def==null ? null : map.getOrDefault(def,def));
+            if( c instanceof CFGNode cfg ) cfg._idepth = 0;
+            if( c instanceof CallNode call0 ) _depth.put(call0,depth);
+            _code.add(c);
+        }
+
+        Node ctrl = map.getOrDefault(ret.ctrl(),ret.ctrl());
+        Node mem  = map.getOrDefault(ret.mem (),ret.mem ());
+        Node rez  = map.getOrDefault(ret.expr(),ret.expr());
+
+        // Unlink the call; the function lost a caller
+        call.unlink_all();
+        _code.add(fun);
+        _code.add(ret);
+        _code.addAll(fun._outputs);
+        _depth.remove(call);
+
+        // Users of the call results use the Return inputs.  Killing the last
+        // projection kills the CallEnd and Call.
+        while( cend.nOuts() > 0 ) {
+            Node use = cend.out(cend.nOuts()-1);
+            if( use instanceof CProjNode cproj ) cproj.subsume(ctrl);
+            else use.subsume(((ProjNode)use)._idx==1 ? mem : rez);
+        }
+        if( !cend.isDead() ) cend.kill();
+        _inlined++;
+    }
+
+    // Live nodes in the program
+    private int size() {
+        int[] cnt = new int[1];
+        _code._stop.walk( n -> { cnt[0]++; return null; } );
+        return cnt[0];
+    }
+}
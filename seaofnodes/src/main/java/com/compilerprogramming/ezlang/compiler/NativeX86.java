@@ -0,0 +1,206 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
+import com.compilerprogramming.ezlang.compiler.codegen.Encoding;
+import com.compilerprogramming.ezlang.compiler.node.FunNode;
+import com.compilerprogramming.ezlang.compiler.node.cpus.x86_64_v2.x86_64_v2;
+import com.compilerprogramming.ezlang.compiler.type.*;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+
+/**
+ *  Runs the code generated for the x86_64_v2 CPU natively, on Linux x86-64.
+ * <p>
+ *  Takes a program linked in memory, i.e.
+ *  {@code code.driver(Phase.Encoding,"x86_64_v2","SystemV").exportELF(null)},
+ *  and copies the encoded bits with the constant pool into an mmap'd
+ *  segment, which is then made read-only and executable.  Every function is
+ *  bound to a downcall {@link MethodHandle}; Int and pointer arguments are
+ *  longs, Float arguments are doubles or floats by size.
+ * <p>
+ *  The external calls were patched to the sentinel addresses in {@link
+ *  Encoding}, just before the code.  Small stubs at the sentinels jump to
+ *  upcalls into Java: {@code calloc} allocates from an {@link Arena} freed
+ *  when this runtime is closed, and {@code write} collects the bytes in
+ *  {@link #_out}.
+ * <p>
+ *  Uses the Foreign Function and Memory API, a preview in Java 21; run with
+ *  {@code --enable-preview --enable-native-access=ALL-UNNAMED}.
+ */
+public class NativeX86 implements AutoCloseable {
+
+    // Bytes before the code holding the external call stubs; keeps the
+    // code 16b aligned
+    static final int PREFIX = 64;
+    static final int PAGE = 4096;
+
+    // mmap and mprotect flags
+    static final int PROT_READ = 1, PROT_WRITE = 2, PROT_EXEC = 4;
+    static final int MAP_PRIVATE = 0x02, MAP_ANONYMOUS = 0x20;
+
+    static final Linker LINKER = Linker.nativeLinker();
+    static final MethodHandle MMAP, MPROTECT, MUNMAP, CALLOC, WRITE;
+    static {
+        SymbolLookup libc = LINKER.defaultLookup();
+        MMAP     = libc("mmap"    , FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_LONG));
+        MPROTECT = libc("mprotect", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT));
+        MUNMAP   = libc("munmap"  , FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CALLOC = lookup.findVirtual(NativeX86.class, "calloc", MethodType.methodType(long.class, long.class, long.class));
+            WRITE  = lookup.findVirtual(NativeX86.class, "write" , MethodType.methodType(long.class, long.class, long.class, long.class));
+        } catch( ReflectiveOperationException e ) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+    private static MethodHandle libc( String name, FunctionDescriptor desc ) {
+        return LINKER.downcallHandle(LINKER.defaultLookup().find(name).orElseThrow(), desc);
+    }
+
+    final CodeGen _code;
+    private final Arena _arena = Arena.ofShared();
+    private final MemorySegment _seg; // Stubs, code and constant pool
+    private final long _base;         // Address of the code
+    private final HashMap<String,MethodHandle> _handles = new HashMap<>();
+
+    // Bytes written by the program to any file descriptor
+    public final ByteArrayOutputStream _out = new ByteArrayOutputStream();
+
+    public NativeX86( CodeGen code ) {
+        if( code._phase != CodeGen.Phase.Export || !(code._mach instanceof x86_64_v2) || !code._encoding._linked )
+            throw new IllegalArgumentException("Expected x86_64_v2 code linked in memory, got phase "+code._phase);
+        if( !"SystemV".equals(code._callingConv) )
+            throw new IllegalArgumentException("Expected the SystemV calling convention, got "+code._callingConv);
+        String os = System.getProperty("os.name"), arch = System.getProperty("os.arch");
+        if( !os.startsWith("Linux") || !(arch.equals("amd64") || arch.equals("x86_64")) )
+            throw new UnsupportedOperationException("Native execution needs Linux x86-64, not "+os+" "+arch);
+        _code = code;
+        Encoding enc = code._encoding;
+        int len = enc._bits.size();
+        long size = (PREFIX+len+PAGE-1) & -PAGE;
+
+        // Writable while filling in, then executable
+        MemorySegment seg;
+        try {
+            seg = (MemorySegment)MMAP.invokeExact(MemorySegment.NULL, size, PROT_READ|PROT_WRITE, MAP_PRIVATE|MAP_ANONYMOUS, -1, 0L);
+        } catch( Throwable t ) { throw new InterpreterException("mmap failed: "+t); }
+        if( seg.address() == -1L )
+            throw new InterpreterException("mmap of "+size+" bytes failed");
+        _seg = seg.reinterpret(size);
+        _base = _seg.address()+PREFIX;
+        MemorySegment.copy(enc.bits(),0,_seg,ValueLayout.JAVA_BYTE,PREFIX,len);
+        stub(Encoding.SENTINEL_CALLOC, 0 , upcall(CALLOC, FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG)));
+        stub(Encoding.SENTINEL_WRITE , 16, upcall(WRITE , FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG, ValueLayout.JAVA_LONG)));
+        int rez;
+        try {
+            rez = (int)MPROTECT.invokeExact(_seg, size, PROT_READ|PROT_EXEC);
+        } catch( Throwable t ) { throw new InterpreterException("mprotect failed: "+t); }
+        if( rez != 0 ) {
+            close();
+            throw new InterpreterException("mprotect failed, executable memory not allowed?");
+        }
+
+        // Bind every function
+        for( var n : code._start._outputs )
+            if( n instanceof FunNode fun && fun._name != null )
+                _handles.put(fun._name, LINKER.downcallHandle(MemorySegment.ofAddress(_base+enc._opStart[fun._nid]), desc(fun.sig())));
+    }
+
+    private MemorySegment upcall( MethodHandle mh, FunctionDescriptor desc ) {
+        return LINKER.upcallStub(mh.bindTo(this), desc, _arena);
+    }
+
+    // The sentinels are only 4 bytes apart; each holds a short jump back to
+    // a stub at offset off in the prefix:
+    //   movabs rax,#target
+    //   jmp    rax
+    private void stub( int sentinel, int off, MemorySegment target ) {
+        _seg.set(ValueLayout.JAVA_BYTE, off  , (byte)0x48);
+        _seg.set(ValueLayout.JAVA_BYTE, off+1, (byte)0xB8);
+        _seg.set(ValueLayout.JAVA_LONG_UNALIGNED, off+2, target.address());
+        _seg.set(ValueLayout.JAVA_BYTE, off+10, (byte)0xFF);
+        _seg.set(ValueLayout.JAVA_BYTE, off+11, (byte)0xE0);
+        int at = PREFIX+sentinel;
+        _seg.set(ValueLayout.JAVA_BYTE, at  , (byte)0xEB);
+        _seg.set(ValueLayout.JAVA_BYTE, at+1, (byte)(off - (at+2)));
+    }
+
+    private static MemoryLayout layout( Type t ) {
+        return t instanceof TypeFloat tf
+            ? (tf._sz==32 ? ValueLayout.JAVA_FLOAT : ValueLayout.JAVA_DOUBLE)
+            : ValueLayout.JAVA_LONG;
+    }
+    private static FunctionDescriptor desc( TypeFunPtr sig ) {
+        MemoryLayout[] args = new MemoryLayout[sig.nargs()];
+        for( int i=0; i<args.length; i++ )
+            args[i] = layout(sig.arg(i));
+        return FunctionDescriptor.of(layout(sig.ret()),args);
+    }
+
+    // ------------------------------------------------------------------------
+    // Calls
+
+    // Handle to call the named function directly
+    public MethodHandle handle( String name ) {
+        MethodHandle mh = _handles.get(name);
+        if( mh == null ) throw new InterpreterException("Unknown function "+name);
+        return mh;
+    }
+
+    // Call the named function; Int and pointer arguments are Longs, Float
+    // arguments are Doubles.  Returns a Long or Double.
+    public Object call( String name, Object... args ) {
+        MethodHandle mh = handle(name);
+        MethodType mt = mh.type();
+        if( args.length != mt.parameterCount() )
+            throw new InterpreterException("Expected "+mt.parameterCount()+" arguments calling "+name+", got "+args.length);
+        Object[] xargs = new Object[args.length];
+        for( int i=0; i<args.length; i++ ) {
+            Number x = (Number)args[i];
+            Class<?> c = mt.parameterType(i);
+            xargs[i] = c==long.class ? (Object)x.longValue() : c==double.class ? (Object)x.doubleValue() : (Object)x.floatValue();
+        }
+        Object rez;
+        try {
+            rez = mh.invokeWithArguments(xargs);
+        } catch( RuntimeException | Error e ) {
+            throw e;
+        } catch( Throwable t ) {
+            throw new InterpreterException("Calling "+name+": "+t);
+        }
+        return rez instanceof Float f ? (Object)f.doubleValue() : rez;
+    }
+
+    // ------------------------------------------------------------------------
+    // External calls, upcalled from the stubs
+
+    // Exceptions cannot unwind through native frames; failures return null
+    // like libc does.
+    private long calloc( long num, long size ) {
+        long bytes = num*size;
+        if( bytes < 0 ) return 0;
+        // Arena memory is zeroed
+        try { return _arena.allocate(Math.max(bytes,1),16).address(); }
+        catch( OutOfMemoryError e ) { return 0; }
+    }
+
+    private long write( long fd, long buf, long len ) {
+        byte[] bytes = MemorySegment.ofAddress(buf).reinterpret(len).toArray(ValueLayout.JAVA_BYTE);
+        synchronized( _out ) { _out.write(bytes,0,bytes.length); }
+        return len;
+    }
+
+    // Unmap the code and free all allocations; handles are no longer usable
+    @Override public void close() {
+        try {
+            int ignore = (int)MUNMAP.invokeExact(_seg, _seg.byteSize());
+        } catch( Throwable ignore ) { }
+        _arena.close();
+    }
+}
@@ -1,5 +1,6 @@
 package com.compilerprogramming.ezlang.compiler;
 
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
 import com.compilerprogramming.ezlang.compiler.type.*;
 
 
@@ -29,7 +30,7 @@ public class Var {
     public Type type() {
         if( !_type.isFRef() ) return _type;
         // Update self to no longer use the forward ref type
-        Type def = Compiler.TYPES.get(((TypeMemPtr)_type)._obj._name);
+        Type def = CodeGen.CODE().P.TYPES.get(((TypeMemPtr)_type)._obj._name);
         return (_type=_type.meet(def));
     }
 
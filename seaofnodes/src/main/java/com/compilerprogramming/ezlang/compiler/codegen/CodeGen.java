@@ -16,9 +16,11 @@ import java.util.IdentityHashMap;
 @SuppressWarnings("unchecked")
 public class CodeGen {
     public static final String PORTS = "com.compilerprogramming.ezlang.compiler.node.cpus";
-    // Last created CodeGen as a global; used all over to avoid passing about a
-    // "context".
-    public static CodeGen CODE;
+    // The CodeGen running on the current thread; used all over to avoid
+    // passing about a "context".  Each thread has its own, so independent
+    // compilations can run in parallel.
+    private static final ThreadLocal<CodeGen> CURRENT = new ThreadLocal<>();
+    public static CodeGen CODE() { return CURRENT.get(); }
 
     public enum Phase {
         Parse,                  // Parse ASCII text into Sea-of-Nodes IR
@@ -43,7 +45,7 @@ public class CodeGen {
     // ---------------------------
     public CodeGen( String src ) { this(src, TypeInteger.BOT, 123L ); }
     public CodeGen( String src, TypeInteger arg, long workListSeed ) {
-        CODE = this;
+        CURRENT.set(this);
         _phase = null;
         _callingConv = null;
         _start = new StartNode(arg);
@@ -58,6 +60,7 @@ public class CodeGen {
     // All passes up to Phase, except ELF
     public CodeGen driver( Phase phase ) { return driver(phase,null,null); }
     public CodeGen driver( Phase phase, String cpu, String callingConv ) {
+        CURRENT.set(this);      // Might resume on a different thread
         if( _phase==null )                       parse();
         int p1 = phase.ordinal();
         if( _phase.ordinal() < p1 && _phase.ordinal() < Phase.Opto      .ordinal() ) opto();
@@ -97,7 +100,7 @@ public class CodeGen {
     // OK).  This happens with inlining, which bumps the version to bulk
     // invalidate the idepth caches.
     private int _iDepthVersion = 0;
-    public void invalidateIDepthCaches() { _iDepthVersion++; }
+    public void invalidateIDepthCaches() { _iDepthVersion++; assert _iDepthVersion < 100; }
     public boolean validIDepth(int idepth) {
         if( idepth==0 ) return false;
         if( _iDepthVersion==0 ) return true;
@@ -187,6 +190,12 @@ public class CodeGen {
     public void iterCnt() { if( !_midAssert ) _iter_cnt++; }
     public void iterNop() { if( !_midAssert ) _iter_nop_cnt++; }
 
+    // Inline small functions into their callers
+    public boolean _inlining = true;
+    public CodeGen inlining( boolean inlining ) { _inlining = inlining; return this; }
+    // Calls inlined
+    public int _inlined;
+
     // Run ideal optimizations
     public int _tOpto;
     public CodeGen opto() {
@@ -196,6 +205,13 @@ public class CodeGen {
 
         // Pessimistic peephole optimization on a worklist
         _iter.iterate(this);
+
+        // Inline small functions, re-running peepholes after each round
+        if( _inlining ) {
+            Inliner inliner = new Inliner(this);
+            inliner.inline();
+            _inlined = inliner._inlined;
+        }
         _tOpto = (int)(System.currentTimeMillis() - t0);
 
         // TODO:
@@ -402,6 +418,17 @@ public class CodeGen {
     }
 
 
+    // ---------------------------
+    // Execution profile from an earlier run of the same source, compiled
+    // with the same options, see Eval.  Used by the basic block layout.
+    public Profile _profile;
+    public CodeGen profile( Profile profile ) {
+        if( profile != null && !profile.matches(this) )
+            throw new IllegalArgumentException("Profile was collected from a different source or with different options");
+        _profile = profile;
+        return this;
+    }
+
     // ---------------------------
     // Encoding
     public int _tEncode;
@@ -478,7 +505,7 @@ public class CodeGen {
 //    public CodeGen printENCODING() {
 //        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
 //
-//        for(Node bb : CodeGen.CODE._cfg) {
+//        for(Node bb : CodeGen.CODE()._cfg) {
 //            for(Node n: bb.outs()) {
 //                if(n instanceof MachNode) {
 //                    ((MachNode) n).encoding(E);
@@ -217,10 +217,15 @@ public class ElfFile {
     private void encodeFunctions(SymbolSection symbols, DataSection text) {
         for( int i=0; i<_code._cfg._len; i++ ) {
             if( !(_code._cfg.at(i) instanceof FunNode fun) ) continue;
-            // skip until the function ends
-            while( !(_code._cfg.at(i) instanceof ReturnNode ret) )
-                i++;
-            int end = _code._encoding._opStart[ret._nid] + _code._encoding._opLen[ret._nid];
+            // skip until the function ends; cold blocks may follow the Return
+            int end = 0;
+            for( CFGNode bb = fun; ; bb = _code._cfg.at(++i) ) {
+                for( Node n : bb._outputs )
+                    if( n instanceof MachNode )
+                        end = Math.max(end, _code._encoding._opStart[n._nid] + _code._encoding._opLen[n._nid]);
+                if( _code._cfg.at(i+1) instanceof FunNode || _code._cfg.at(i+1) instanceof StopNode )
+                    break;
+            }
 
             Symbol func = new Symbol(fun._name, text._index, SYM_BIND_GLOBAL, SYM_TYPE_FUNC);
             func._value = _code._encoding._opStart[fun._nid];
@@ -46,6 +46,10 @@ public class Encoding {
     // Function headers now padded when printing
     public boolean _padFunHeads;
 
+    // Linked in memory: constant pool appended and external calls patched,
+    // see LinkMem
+    public boolean _linked;
+
     // Big Constant relocation info.
     public static class Relo {
         public final Node _op;
@@ -181,6 +185,9 @@ public class Encoding {
     // unconditional jumps.  Attempt to keep backwards branches taken, forwards
     // not-taken (this is the default prediction on most hardware).  Layout is
     // still Reverse Post Order but with more restrictions.
+    //
+    // With a profile, the more frequent side of a branch falls through, and
+    // rarely taken sides are laid out after the function's Return.
     private void basicBlockLayout() {
         IdentityHashMap<LoopNode,Ary<CFGNode>> rpos = new IdentityHashMap<>();
         Ary<CFGNode> rpo = new Ary<>(CFGNode.class);
@@ -190,8 +197,10 @@ public class Encoding {
         for( Node n : _code._start._outputs )
             if( n instanceof FunNode fun ) {
                 int x = rpo._len;
+                _cold = new Ary<>(CFGNode.class);
                 _rpo_cfg(fun, visit, rpos );
-                assert rpo.at(x) instanceof ReturnNode;
+                assert rpo.at(x) instanceof ReturnNode || !_cold.isEmpty();
+                coldLayout(rpo, x, visit);
             }
         rpo.add(_code._start);
 
@@ -203,21 +212,51 @@ public class Encoding {
     }
 
 
+    // Profile-guided layout.  Cold sides of branches are not walked with their
+    // function, but collected here and walked after.
+    private Ary<CFGNode> _cold;
+    // While walking the cold blocks, the RPO they go in
+    private Ary<CFGNode> _coldRpo;
+
+    // Lay out the cold blocks of a function after its Return.  Each cold side
+    // is entered only by its branch, and ends in a jump back to the hot code
+    // (or another branch, or the Return), so the cold walks can go anywhere
+    // the prior block does not fall into.  In post-order the Return is at 'x'.
+    private void coldLayout( Ary<CFGNode> rpo, int x, BitSet visit ) {
+        if( _cold.isEmpty() ) return;
+        _coldRpo = new Ary<>(CFGNode.class);
+        IdentityHashMap<LoopNode,Ary<CFGNode>> rpos = new IdentityHashMap<>();
+        for( CFGNode cold : _cold )
+            _rpo_cfg(cold, visit, rpos);
+        // Insert the cold blocks just before the Return in post-order
+        Ary<CFGNode> hot = new Ary<>(Arrays.copyOfRange(rpo.asAry(), x, rpo._len));
+        rpo.setLen(x);
+        rpo.addAll(_coldRpo);
+        rpo.addAll(hot);
+        _coldRpo = null;
+    }
+
+    // RPO for blocks in this loop; blocks walked for the cold layout go in
+    // the cold RPO unless in a loop also walked for the cold layout.
+    private Ary<CFGNode> rpo( IdentityHashMap<LoopNode,Ary<CFGNode>> rpos, LoopNode loop ) {
+        Ary<CFGNode> rpo = rpos.get(loop);
+        return rpo==null ? _coldRpo : rpo;
+    }
+
     private void _rpo_cfg(CFGNode bb, BitSet visit, IdentityHashMap<LoopNode,Ary<CFGNode>> rpos ) {
         if( bb==null || visit.get(bb._nid) ) return;
         visit.set(bb._nid);
         CFGNode next = bb.uctrl();
 
         // Loops run an inner "rpo_cfg", then append the entire loop body in
-        // place.  This keeps loop bodies completely contained, although if
-        // Some Day Later we have real profile data we ought to arrange the
-        // branch orderings based on frequency.
+        // place.  This keeps loop bodies completely contained; with a profile
+        // the branch orderings inside are arranged by frequency.
         if( bb instanceof LoopNode loop ) {
             Ary<CFGNode> body = new Ary<>(CFGNode.class); // Private RPO for the loop
             rpos.put(loop.loop(),body);                   // Find it via loop tree
             _rpo_cfg(next,visit,rpos);                    // RPO the loop
             body.add(loop);                               // Include loop last (first in RPO)
-            Ary<CFGNode> outer = rpos.get(loop.cfg(1).loop());
+            Ary<CFGNode> outer = rpo(rpos,loop.cfg(1).loop());
             outer.addAll(body); // Append to original CFG
             return;
         }
@@ -228,25 +267,35 @@ public class Encoding {
             CProjNode t = iff.cproj(0);
             CProjNode f = iff.cproj(1);
             // Invert the branch or not
-            if( shouldInvert(t,f,iff.loopDepth()) ) {
+            boolean cold = false;
+            if( shouldInvert(iff,t,f,iff.loopDepth()) ) {
+                cold = _code._profile != null && _code._profile.cold(iff,1);
                 iff.negate();
                 t.invert();
                 f.invert();
                 CProjNode tmp=f; f=t; t=tmp; // Swap t/f
-            }
+            } else
+                cold = _code._profile != null && _code._profile.cold(iff,0);
 
             // Whichever side is visited first becomes last in the RPO.  With
             // no loops, visit the False side last (so True side first) so that
             // when the False RPO visit returns, the IF is immediately next.
             // When the RPO is reversed, the fall-through path will always be
             // following the IF.
-            _rpo_cfg(t,visit,rpos); // True side first
+            //
+            // A cold True side is walked after the function, unless it is an
+            // empty block branching straight back to the loop head.  Loop
+            // exits are rare per iteration but not per loop, and stay put.
+            if( cold && _coldRpo==null && t.loopDepth() >= iff.loopDepth() && !forwardsEmptyScan(t,iff.loopDepth()) )
+                _cold.add(t);
+            else
+                _rpo_cfg(t,visit,rpos); // True side first
             next = f;               // False side last
         }
 
         // If the *next* BB has already been visited, and we are not already a
         // jump, we may need an unconditional forwards jump here
-        Ary<CFGNode> rpo = rpos.get(bb.loop());
+        Ary<CFGNode> rpo = rpo(rpos,bb.loop());
         if( next!=null && visit.get(next._nid) && !(bb instanceof IfNode) ) {
             boolean needJump = next instanceof LoopNode
                 // Empty blocks from an IF will invert the IF and backwards
@@ -270,7 +319,7 @@ public class Encoding {
     }
 
     // Should this test be inverted?
-    private static boolean shouldInvert(CFGNode t, CFGNode f, int bld) {
+    private boolean shouldInvert(IfNode iff, CFGNode t, CFGNode f, int bld) {
         int tld = t.loopDepth(), fld = f.loopDepth();
         // These next two are symmetric and can happen in any order; if `tld <
         // bld` is true, the `fld < bld` must be false, or else both directions
@@ -288,6 +337,12 @@ public class Encoding {
         if( forwardsEmptyScan(t,bld) ) return false;
         if( forwardsEmptyScan(f,bld) ) return true ;
 
+        // Profiled: the more frequent side falls through
+        if( _code._profile != null ) {
+            long tcnt = _code._profile.taken(iff), fcnt = _code._profile.notTaken(iff);
+            if( tcnt != fcnt ) return tcnt > fcnt;
+        }
+
         // Fall/false into a full block, Jump/true to an empty block.
         if( f.nOuts()>1 && t.nOuts()==1 ) return false;
         if( t.nOuts()>1 && f.nOuts()==1 ) return true ;
@@ -309,10 +364,12 @@ public class Encoding {
     // Is the CFG from "next" to the end empty?  This means jumping to "next"
     // will naturally fall into the end.
     private static boolean backwardsEmptyScan(Ary<CFGNode> rpo, CFGNode next) {
-        for( int i=rpo._len-1; rpo.at(i)!=next; i-- )
-            if( rpo.at(i).nOuts()!=1 )
-                return false;
-        return true;
+        for( int i=rpo._len-1; i>=0; i-- ) {
+            if( rpo.at(i)==next ) return true;
+            if( rpo.at(i).nOuts()!=1 ) return false;
+        }
+        // Not found: 'next' is laid out in another part of the function
+        return false;
     }
 
     // --------------------------------------------------
@@ -6,44 +6,46 @@ import java.util.BitSet;
 import java.util.IdentityHashMap;
 
 // Interference Graph
-abstract public class IFG {
-    // Interference Graph Support
+public class IFG {
+    // Interference Graph Support.  The live-out sets, worklist and bitsets
+    // are reused from round to round of the same register allocation, and
+    // are not shared between allocations.
 
     // Map from a Basic Block to Live-Out: {a map from a Live Range to a Def}
-    private static final IdentityHashMap<CFGNode,IdentityHashMap<LRG,Node>> BBOUTS = new IdentityHashMap<>();
-    static void resetBBLiveOut() {
-        for( IdentityHashMap<LRG,Node> bbout : BBOUTS.values() )
+    private final IdentityHashMap<CFGNode,IdentityHashMap<LRG,Node>> _bbouts = new IdentityHashMap<>();
+    void resetBBLiveOut() {
+        for( IdentityHashMap<LRG,Node> bbout : _bbouts.values() )
             bbout.clear();
     }
-    static final IdentityHashMap<LRG,Node> TMP = new IdentityHashMap<>();
+    final IdentityHashMap<LRG,Node> _tmp = new IdentityHashMap<>();
 
     // Inteference Graph: Array of Bitsets
-    static final Ary<BitSet> IFG = new Ary<>(BitSet.class);
-    static void resetIFG() {
-        for( BitSet bs : IFG )
+    final Ary<BitSet> _ifg = new Ary<>(BitSet.class);
+    void resetIFG() {
+        for( BitSet bs : _ifg )
             if( bs!=null ) bs.clear();
     }
 
     // Set matching bit
-    private static void addIFG( LRG lrg0, LRG lrg1 ) {
+    private void addIFG( LRG lrg0, LRG lrg1 ) {
         short x0 = lrg0._lrg, x1 = lrg1._lrg;
         // Triangulate
         if( x0 < x1 ) _addIFG(x0,x1);
         else          _addIFG(x1,x0);
     }
     // Add lrg1 to lrg0's conflict set
-    private static void _addIFG( short x0, short x1 ) {
-        BitSet ifg = IFG.atX(x0);
+    private void _addIFG( short x0, short x1 ) {
+        BitSet ifg = _ifg.atX(x0);
         if( ifg==null )
-            IFG.setX(x0,ifg = new BitSet());
+            _ifg.setX(x0,ifg = new BitSet());
         ifg.set(x1);
     }
 
 
-    private static final Ary<CFGNode> WORK = new Ary<>(CFGNode.class);
-    static void pushWork(CFGNode bb) {
-        if( WORK.find(bb) == -1 )
-            WORK.push(bb);
+    private final Ary<CFGNode> _work = new Ary<>(CFGNode.class);
+    void pushWork(CFGNode bb) {
+        if( _work.find(bb) == -1 )
+            _work.push(bb);
     }
 
     // ------------------------------------------------------------------------
@@ -63,20 +65,20 @@ abstract public class IFG {
     // - At block head, "push" the new live-out to prior blocks.
     // - - If they pick up new live-outs, put them on the worklist.
 
-    public static boolean build( int round, RegAlloc alloc ) {
+    public boolean build( int round, RegAlloc alloc ) {
         // Reset all to empty
         resetBBLiveOut();
         resetIFG();
 
         // Last block has nothing live out
-        assert WORK.isEmpty();
+        assert _work.isEmpty();
         for( CFGNode bb : alloc._code._cfg )
             if( bb.blockHead())
-                WORK.push( bb );
+                _work.push( bb );
 
         // Process blocks until no more changes
-        while( !WORK.isEmpty() )
-            do_block(round,alloc,WORK.pop());
+        while( !_work.isEmpty() )
+            do_block(round,alloc,_work.pop());
 
         if( alloc.success() )
             convert2DAdjacency(alloc);
@@ -84,12 +86,12 @@ abstract public class IFG {
     }
 
     // Walk one block backwards, compute live-in from live-out, and build IFG
-    static void do_block( int round, RegAlloc alloc, CFGNode bb ) {
+    void do_block( int round, RegAlloc alloc, CFGNode bb ) {
         assert bb.blockHead();
-        IdentityHashMap<LRG,Node> live_out = BBOUTS.get(bb);
-        TMP.clear();
+        IdentityHashMap<LRG,Node> live_out = _bbouts.get(bb);
+        _tmp.clear();
         if( live_out != null )
-            TMP.putAll(live_out);   // Copy bits to temp
+            _tmp.putAll(live_out);   // Copy bits to temp
 
         // A backwards walk over instructions in the basic block
         for( int inum = bb.nOuts()-1; inum >= 0; inum-- ) {
@@ -116,14 +118,14 @@ abstract public class IFG {
             mergeLiveOut(alloc,bb,0);
     }
 
-    private static void do_node(RegAlloc alloc, Node n) {
+    private void do_node(RegAlloc alloc, Node n) {
         // Defining means killing live LRG
         LRG lrg = alloc.lrg(n);
         if( lrg != null ) {
             // Check for def-side self-conflict live ranges.  These must split,
             // and only happens during the first round a particular LRG splits.
             selfConflict(alloc,n,lrg);
-            TMP.remove(lrg);    // Kill def
+            _tmp.remove(lrg);    // Kill def
         }
 
         // Phis use and define the same live range, i.e. these LRGs already
@@ -139,7 +141,7 @@ abstract public class IFG {
         // Interfere n with all live
         if( lrg!=null ) {
             // Interfere n with all live
-            for( LRG tlrg : TMP.keySet() ) {
+            for( LRG tlrg : _tmp.keySet() ) {
                 assert tlrg.leader();
                 // Skip self
                 if( lrg != tlrg &&
@@ -175,9 +177,9 @@ abstract public class IFG {
                 RegMask ni_mask = m.regmap(i);
                 if( ni_mask!=null && ni_mask.size1() ) { // Must-use single register
                     // Search all current live
-                    for( LRG tlrg : TMP.keySet() ) {
+                    for( LRG tlrg : _tmp.keySet() ) {
                         assert tlrg.leader();
-                        Node live = TMP.get(tlrg);
+                        Node live = _tmp.get(tlrg);
                         if( live != def && live instanceof MachNode lmach && lmach.outregmap().overlap(ni_mask) ) {
                             // Deny the register, since it absolutely must be used here
                             if( !tlrg.clr(ni_mask.firstReg()) )
@@ -191,18 +193,18 @@ abstract public class IFG {
 
             // All inputs live - except in self conflicts, where we keep the prior def alive
             // until it goes.
-            TMP.put(lrg1,def);
+            _tmp.put(lrg1,def);
         }
     }
 
     // Single-register defines *must* have their register; other live ranges
     // *must* avoid this register, so instead of interfering we remove the
     // single register from the other rmask.
-    private static void kills( RegAlloc alloc, MachNode m ) {
+    private void kills( RegAlloc alloc, MachNode m ) {
         RegMask killMask = m.killmap();
         if( killMask==null ) return;
         // Kill registers with all live
-        for( LRG tlrg : TMP.keySet() ) {
+        for( LRG tlrg : _tmp.keySet() ) {
             assert tlrg.leader();
             // Always, tlrg cannot use kills
             if( tlrg._mask.overlap(killMask) ) {
@@ -226,10 +228,10 @@ abstract public class IFG {
 
     // Check for self-conflict live ranges.  These must split, and only happens
     // during the first round a particular LRG splits.
-    private static void selfConflict(RegAlloc alloc, Node n, LRG lrg) {
-        selfConflict(alloc,n,lrg,TMP.get(lrg));
+    private void selfConflict(RegAlloc alloc, Node n, LRG lrg) {
+        selfConflict(alloc,n,lrg,_tmp.get(lrg));
     }
-    private static void selfConflict(RegAlloc alloc, Node n, LRG lrg, Node prior) {
+    private void selfConflict(RegAlloc alloc, Node n, LRG lrg, Node prior) {
         if( prior!=null && prior != n ) {
             lrg.selfConflict(prior);
             lrg.selfConflict(n);
@@ -237,17 +239,17 @@ abstract public class IFG {
         }
     }
 
-    // Merge TMP into bb's live-out set; if changes put bb on WORK
-    private static void mergeLiveOut( RegAlloc alloc, CFGNode priorbb, int i ) {
+    // Merge _tmp into bb's live-out set; if changes put bb on _work
+    private void mergeLiveOut( RegAlloc alloc, CFGNode priorbb, int i ) {
         CFGNode bb = priorbb.cfg(i);
         if( bb == null ) return; // Start has no prior
         while( !bb.blockHead() ) bb = bb.cfg0();
 
         // Lazy get live-out set for bb
-        IdentityHashMap<LRG, Node> lrgs = BBOUTS.computeIfAbsent( bb, k -> new IdentityHashMap<>() );
+        IdentityHashMap<LRG, Node> lrgs = _bbouts.computeIfAbsent( bb, k -> new IdentityHashMap<>() );
 
-        for( LRG lrg : TMP.keySet() ) {
-            Node def = TMP.get(lrg);
+        for( LRG lrg : _tmp.keySet() ) {
+            Node def = _tmp.get(lrg);
             // Effective def comes from phi input from prior block
             if( def instanceof PhiNode phi && phi.cfg0()==priorbb ) {
                 assert i!=0;
@@ -265,12 +267,12 @@ abstract public class IFG {
     }
 
 
-    static void convert2DAdjacency( RegAlloc alloc ) {
+    void convert2DAdjacency( RegAlloc alloc ) {
         // Convert the 2-D array of bits (a 1-D array of BitSets) into an
         // adjacency matrix.
         int maxlrg = alloc._LRGS.length;
         for( int i=1; i<maxlrg; i++ ) {
-            BitSet ifg = IFG.atX(i);
+            BitSet ifg = _ifg.atX(i);
             if( ifg != null ) {
                 LRG lrg0 = alloc._LRGS[i];
                 for( int lrg = ifg.nextSetBit(0); lrg>=0; lrg=ifg.nextSetBit(lrg+1) ) {
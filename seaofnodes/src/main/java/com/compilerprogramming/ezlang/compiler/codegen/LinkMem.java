@@ -14,6 +14,7 @@ public class LinkMem {
         // Write any large constants into a constant pool; they
         // are accessed by RIP-relative addressing.
         enc.writeConstantPool(enc._bits,true);
+        enc._linked = true;
 
         return _code;
     }
@@ -5,12 +5,23 @@ import com.compilerprogramming.ezlang.compiler.node.*;
 
 import java.util.*;
 
-public abstract class ListScheduler {
+public class ListScheduler {
 
     // eXtra per-node stuff for scheduling.
     // Nodes are all block-local, and projections fold into their parent.
-    private static final IdentityHashMap<Node,XSched> XS = new IdentityHashMap<>();
-    private static class XSched {
+    // A fresh scheduler is made for every compilation, so this is never
+    // shared between threads.
+    private final IdentityHashMap<Node,XSched> XS = new IdentityHashMap<>();
+    private final Ary<XSched> FREE = new Ary<>(XSched.class);
+    private void alloc(CFGNode bb, Node n) {
+        XSched x = FREE.pop();
+        XS.put(n, (x==null ? new XSched() : x).init(bb,n));
+    }
+    private XSched get(Node n) { return n==null ? null : XS.get(n instanceof ProjNode && !(n.in(0) instanceof CallEndNode) ? n.in(0) : n); }
+
+    private ListScheduler() {}
+
+    private class XSched {
 
         Node _n;         // Node this extra is for
         int _bcnt;       // Not-ready not-scheduled inputs
@@ -19,15 +30,8 @@ public abstract class ListScheduler {
         boolean _rdef;   // Node IS a "remote def" of a value used in other block
         boolean _single; // Defines a single register, likely to conflict
 
-        static final Ary<XSched> FREE = new Ary<>(XSched.class);
-        static void alloc(CFGNode bb, Node n) {
-            XSched x = FREE.pop();
-            XS.put(n, (x==null ? new XSched() : x).init(bb,n));
-        }
         void free() { _n = null; FREE.push(this); }
 
-        static XSched get(Node n) { return n==null ? null : XS.get(n instanceof ProjNode && !(n.in(0) instanceof CallEndNode) ? n.in(0) : n); }
-
         private XSched init(CFGNode bb, Node n) {
             _n = n;
             _bcnt = 0;
@@ -86,11 +90,11 @@ public abstract class ListScheduler {
                 readyUp(_n);
             return true;
         }
-        private static void readyUp(Node n) {
+        private void readyUp(Node n) {
             for( Node use : n._outputs )
                 _readyUp(use);
         }
-        private static void _readyUp(Node use) {
+        private void _readyUp(Node use) {
             XSched xs = get(use);
             if( xs!=null && !(use instanceof PhiNode) )
                 { assert xs._bcnt>0; xs._bcnt--; xs._rcnt++; }
@@ -106,26 +110,26 @@ public abstract class ListScheduler {
 
     // List schedule every block
     public static void sched( CodeGen code ) {
-        XS.clear();
+        ListScheduler ls = new ListScheduler();
         for( CFGNode bb : code._cfg )
             if( bb.blockHead() )
-                local(bb,false);
+                ls.local(bb,false);
     }
 
     // Classic list scheduler
-    private static void local( CFGNode bb, boolean trace ) {
+    private void local( CFGNode bb, boolean trace ) {
         assert XS.isEmpty();
         int len = bb.nOuts();
 
         // Count block-locals, remote inputs and outputs
         for( int i=0; i<len; i++ )
-            XSched.alloc(bb,bb.out(i));
+            alloc(bb,bb.out(i));
 
         // Nodes are ready if they are not used by other nodes in this block.
         // Move ready up front.
         int ready = 0;
         for( int i=0; i<len; i++ )
-            if( XSched.get(bb.out(i)).isReady() ) // No block-local inputs?
+            if( get(bb.out(i)).isReady() ) // No block-local inputs?
                 bb._outputs.swap(ready++,i);      // Move into ready set
         assert len==0 || ready > 0;
 
@@ -156,8 +160,8 @@ public abstract class ListScheduler {
         XS.clear();
     }
 
-    private static int ready(CFGNode bb, Node use, int ready) {
-        if( use!=null && use.in(0)==bb && !(use instanceof PhiNode) && XSched.get(use).decIsReady() )
+    private int ready(CFGNode bb, Node use, int ready) {
+        if( use!=null && use.in(0)==bb && !(use instanceof PhiNode) && get(use).decIsReady() )
             bb._outputs.set(ready++, use); // Became ready, move into ready set
             //bb._outputs.swap(ready++,use);  // Became ready, move into ready set
         return ready;
@@ -165,7 +169,7 @@ public abstract class ListScheduler {
 
 
     // Pick best between sched and ready.
-    private static int best( Ary<Node> blk, int sched, int ready, boolean trace ) {
+    private int best( Ary<Node> blk, int sched, int ready, boolean trace ) {
         int pick = sched;
         Node p = blk.at(pick);
         int score = score(p);
@@ -182,8 +186,8 @@ public abstract class ListScheduler {
     }
 
     // Highest score wins.  Max at 1000, min at 10, except specials.
-    private static final int[] CNT = new int[3];
-    static int score( Node n ) {
+    private final int[] CNT = new int[3];
+    int score( Node n ) {
         if( n instanceof  ProjNode     ) return 1001; // Pinned at block entry
         if( n instanceof CProjNode     ) return 1001; // Pinned at block entry
         if( n instanceof   PhiNode     ) return 1000;
@@ -206,7 +210,7 @@ public abstract class ListScheduler {
         // Defines a single register based on def & uses, and the output is not
         // ready.  Scale to 200 for multi-def.
         CNT[1]=CNT[2]=0;
-        XSched xn = XSched.get(n);
+        XSched xn = get(n);
         // If defining a remote value, just generically stall alot.  Value is
         // used in a later block, can we delay until the end of this block?
         if( xn._rdef ) score = 200; // If defining a remote value, just generically stall alot
@@ -224,7 +228,7 @@ public abstract class ListScheduler {
         // Scale to 100,200 if the single-def is also single-register.
         CNT[1]=CNT[2]=0;
         for( int i=1; i<n.nIns(); i++ ) {
-            XSched xd = XSched.get( n.in(i) );
+            XSched xd = get( n.in(i) );
             if( xd != null && n.in(i).nOuts()==1 )
                 CNT[xd._single || ((MachNode)n).regmap(i)!=null && ((MachNode)n).regmap(i).size1() ? 2 : 1]++;
         }
@@ -242,13 +246,13 @@ public abstract class ListScheduler {
 
     // If CFG user in this block, it must be last, so definitely stall
     // single-def (which stalls flags on x86,arm until the jmp).
-    private static boolean singleUseNotReady( Node n, boolean single ) {
+    private boolean singleUseNotReady( Node n, boolean single ) {
         // If n can rematerialize, assume allocator will split into private uses
         // as needed.  No impact on local scheduling.
         if( n.nOuts()>1 && n instanceof MachNode mach && mach.isClone() )
             return false;
         for( Node use : n.outs() ) {
-            XSched xu = XSched.get(use);
+            XSched xu = get(use);
             if( xu != null && xu._n instanceof CFGNode ) return true;
             if( xu != null && xu._bcnt > 0 )
                 CNT[single ? 2 : 1]++; // Since bcnt>0 or CFG, stall until user is more ready
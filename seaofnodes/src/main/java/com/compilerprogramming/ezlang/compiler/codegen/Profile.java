@@ -0,0 +1,172 @@
+package com.compilerprogramming.ezlang.compiler.codegen;
+
+import com.compilerprogramming.ezlang.compiler.node.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+/**
+ *  Execution profile: taken/not-taken counts per If and entry/back-edge
+ *  counts per Loop, collected by {@link com.compilerprogramming.ezlang.compiler.Eval}
+ *  and consumed by the basic block layout in {@link Encoding}.
+ * <p>
+ *  Branches and loops are keyed by their CFG pre-order number, assigned when
+ *  building the loop tree.  The numbering is deterministic for a given source
+ *  and is copied to the machine nodes by instruction selection, so a profile
+ *  collected on the ideal graph applies to a later compile of the same
+ *  source with the same options, for any CPU.  Options that change the graph,
+ *  i.e. inlining, change the numbering, so the profile records a hash of the
+ *  source and these options to reject stale profiles.
+ * <p>
+ *  On disk the profile is a small binary: a magic, a version, the hash then
+ *  the branch and loop tables.  Tables are sorted by key and written as
+ *  key deltas and counts in unsigned LEB128 varints.
+ */
+public class Profile {
+    private static final int MAGIC = 0x455A5046; // "EZPF"
+    private static final int VERSION = 2;
+
+    // A side of a branch is cold if taken less than 1 in COLD_RATIO times
+    // that the branch executes.
+    public static final int COLD_RATIO = 100;
+
+    // Hash of the source and the options that change the graph
+    public final int _hash;
+    // Key is the If _pre; [0] taken (True side), [1] not-taken (False side)
+    private final HashMap<Integer,long[]> _branches = new HashMap<>();
+    // Key is the Loop _pre; [0] entries, [1] back-edges taken
+    private final HashMap<Integer,long[]> _loops = new HashMap<>();
+
+    public Profile( CodeGen code ) { this(code._src, code._inlining); }
+    public Profile( String src, boolean inlining ) { this(hash(src, inlining)); }
+    private Profile( int hash ) { _hash = hash; }
+
+    static int hash( String src, boolean inlining ) {
+        CRC32 crc = new CRC32();
+        crc.update(src.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        crc.update(inlining ? 1 : 0);
+        return (int)crc.getValue();
+    }
+
+    // True if this profile was collected from the source, compiled with the options
+    public boolean matches( String src, boolean inlining ) { return _hash == hash(src, inlining); }
+    public boolean matches( CodeGen code ) { return matches(code._src, code._inlining); }
+
+    // ------------------------------------------------------------------------
+    // Recording
+    public void branch( IfNode iff, boolean taken ) {
+        _branches.computeIfAbsent(iff._pre, k -> new long[2])[taken ? 0 : 1]++;
+    }
+    public void loop( LoopNode loop, boolean backEdge ) {
+        _loops.computeIfAbsent(loop._pre, k -> new long[2])[backEdge ? 1 : 0]++;
+    }
+
+    // ------------------------------------------------------------------------
+    // Queries
+    private static final long[] NONE = new long[2];
+    private long[] branch( CFGNode iff ) { return _branches.getOrDefault(iff._pre, NONE); }
+    private long[] loop  ( CFGNode loop) { return _loops   .getOrDefault(loop._pre, NONE); }
+
+    public long taken   ( IfNode iff ) { return branch(iff)[0]; }
+    public long notTaken( IfNode iff ) { return branch(iff)[1]; }
+    // Count for the projection, 0 is the True side and 1 the False side
+    public long count( IfNode iff, int idx ) { return branch(iff)[idx]; }
+
+    public long entries  ( LoopNode loop ) { return loop(loop)[0]; }
+    public long backEdges( LoopNode loop ) { return loop(loop)[1]; }
+    // Average back-edges taken per entry into the loop
+    public double tripCount( LoopNode loop ) {
+        long[] cnt = loop(loop);
+        return cnt[0]==0 ? 0 : (double)cnt[1]/cnt[0];
+    }
+
+    // Side idx of the branch is rarely taken compared to the other side.  A
+    // branch that never ran has no profile and no cold side.
+    public boolean cold( IfNode iff, int idx ) {
+        long[] cnt = branch(iff);
+        long total = cnt[0]+cnt[1];
+        return total > 0 && cnt[idx]*COLD_RATIO < total;
+    }
+
+    public int numBranches() { return _branches.size(); }
+    public int numLoops() { return _loops.size(); }
+
+    // ------------------------------------------------------------------------
+    // Compact on-disk format
+    public void write( OutputStream os ) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeInt(_hash);
+        write(out,_branches);
+        write(out,_loops);
+        out.flush();
+    }
+
+    private static void write( DataOutputStream out, HashMap<Integer,long[]> table ) throws IOException {
+        Integer[] keys = table.keySet().toArray(new Integer[0]);
+        Arrays.sort(keys);
+        uleb(out,keys.length);
+        int prior = 0;
+        for( int key : keys ) {
+            long[] cnt = table.get(key);
+            uleb(out,key-prior);
+            uleb(out,cnt[0]);
+            uleb(out,cnt[1]);
+            prior = key;
+        }
+    }
+
+    public static Profile read( InputStream is ) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if( in.readInt() != MAGIC )
+            throw new IOException("Not a profile");
+        int version = in.readByte();
+        if( version != VERSION )
+            throw new IOException("Unsupported profile version "+version);
+        Profile p = new Profile(in.readInt());
+        read(in,p._branches);
+        read(in,p._loops);
+        return p;
+    }
+
+    private static void read( DataInputStream in, HashMap<Integer,long[]> table ) throws IOException {
+        int len = (int)uleb(in);
+        int key = 0;
+        for( int i=0; i<len; i++ ) {
+            key += (int)uleb(in);
+            table.put(key, new long[]{uleb(in),uleb(in)});
+        }
+    }
+
+    public void save( Path path ) throws IOException {
+        try( OutputStream os = Files.newOutputStream(path) ) { write(os); }
+    }
+    public static Profile load( Path path ) throws IOException {
+        try( InputStream is = Files.newInputStream(path) ) { return read(is); }
+    }
+
+    private static void uleb( DataOutputStream out, long x ) throws IOException {
+        while( (x & ~0x7FL) != 0 ) {
+            out.writeByte((int)(x & 0x7F) | 0x80);
+            x >>>= 7;
+        }
+        out.writeByte((int)x);
+    }
+    private static long uleb( DataInputStream in ) throws IOException {
+        long x = 0;
+        for( int shift=0; ; shift += 7 ) {
+            int b = in.readUnsignedByte();
+            x |= (long)(b & 0x7F) << shift;
+            if( (b & 0x80)==0 ) return x;
+        }
+    }
+
+    @Override public String toString() {
+        return "Profile{branches="+_branches.size()+", loops="+_loops.size()+"}";
+    }
+}
@@ -53,6 +53,9 @@ public class RegAlloc {
     // Top-level program graph structure
     final CodeGen _code;
 
+    // Interference Graph, rebuilt every round
+    final IFG _ifg = new IFG();
+
     public int _spills, _spillScaled;
 
     // -----------------------
@@ -188,7 +191,7 @@ public class RegAlloc {
             // Build Live Ranges
             BuildLRG.run(round,this) && // if no hard register conflicts
             // Build Interference Graph
-            IFG.build(round,this) &&    // If no self conflicts or uncolorable
+            _ifg.build(round,this) &&   // If no self conflicts or uncolorable
             // Conservative coalesce copies
             Coalesce.coalesce(round,this) &&
             // Color attempt
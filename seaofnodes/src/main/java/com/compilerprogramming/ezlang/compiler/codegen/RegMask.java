@@ -106,7 +106,7 @@ public class RegMask {
 
     @Override public String toString() { return toString(new SB()).toString(); }
     public SB toString(SB sb) {
-        Machine mach = CodeGen.CODE._mach;
+        Machine mach = CodeGen.CODE()._mach;
         if( _bits0==0 && _bits1==0 ) return sb.p("[]");
         sb.p("[");
         String[] regs = mach.regs();
@@ -57,6 +57,9 @@ public abstract class ArithNode extends Node {
             in(2) instanceof PhiNode rhs &&
             lhs.nIns() >= 2 && !lhs.inProgress() &&
             lhs.region()==rhs.region() &&
+            // Not around a loop; with constant entry values (e.g. inlined
+            // constant arguments) each push-up makes another, endlessly.
+            !(lhs.region() instanceof LoopNode) &&
             lhs.nIns()>2 && // A 1-input Phi will collapse already
             // Disallow with self-looping phi; these will collapse
             (lhs.in(2)!=lhs && rhs.in(2)!=rhs) ) {
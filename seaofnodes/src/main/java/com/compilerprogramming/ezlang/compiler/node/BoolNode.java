@@ -1,6 +1,6 @@
 package com.compilerprogramming.ezlang.compiler.node;
 
-import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
 import com.compilerprogramming.ezlang.compiler.util.Utils;
 import com.compilerprogramming.ezlang.compiler.type.*;
 import java.util.BitSet;
@@ -56,7 +56,7 @@ abstract public class BoolNode extends Node {
     public Node idealize() {
         // Compare of same
         if( in(1)==in(2) )
-            return this instanceof LT ? Compiler.ZERO : new ConstantNode(TRUE);
+            return this instanceof LT ? CodeGen.CODE().P.ZERO : new ConstantNode(TRUE);
 
         // Equals pushes constant to the right; 5==X becomes X==5.
         if( this instanceof EQ ) {
@@ -1,6 +1,5 @@
 package com.compilerprogramming.ezlang.compiler.node;
 
-import com.compilerprogramming.ezlang.compiler.Compiler;
 import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
 import com.compilerprogramming.ezlang.compiler.type.*;
 import java.util.BitSet;
@@ -70,7 +69,7 @@ public abstract class CFGNode extends Node {
      */
     public int _idepth;
     public int idepth() {
-        return CodeGen.CODE.validIDepth(_idepth) ? _idepth : (_idepth=CodeGen.CODE.iDepthFrom(idom().idepth()));
+        return CodeGen.CODE().validIDepth(_idepth) ? _idepth : (_idepth=CodeGen.CODE().iDepthFrom(idom().idepth()));
     }
 
     // Return the immediate dominator of this Node and compute dom tree depth.
@@ -136,7 +135,7 @@ public abstract class CFGNode extends Node {
                             { call.unlink_all(); done=false; }
         }
 
-        _ltree = stop._ltree = Compiler.XCTRL._ltree = new LoopTree((StartNode)this);
+        _ltree = stop._ltree = CodeGen.CODE().P.XCTRL._ltree = new LoopTree((StartNode)this);
         _bltWalk(2,null,stop, new BitSet());
     }
     int _bltWalk( int pre, FunNode fun, StopNode stop, BitSet post ) {
@@ -1,6 +1,6 @@
 package com.compilerprogramming.ezlang.compiler.node;
 
-import com.compilerprogramming.ezlang.compiler.Compiler;
+import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
 import com.compilerprogramming.ezlang.compiler.type.Type;
 import com.compilerprogramming.ezlang.compiler.type.TypeTuple;
 import java.util.BitSet;
@@ -38,7 +38,7 @@ public class CProjNode extends CFGNode {
     public Node idealize() {
         if( ctrl()._type instanceof TypeTuple tt ) {
             if( tt._types[_idx]== Type.XCONTROL )
-                return Compiler.XCTRL; // We are dead
+                return CodeGen.CODE().P.XCTRL; // We are dead
             if( ctrl() instanceof IfNode && tt._types[1-_idx]== Type.XCONTROL ) // Only true for IfNodes
                 return ctrl().in(0);               // We become our input control
         }
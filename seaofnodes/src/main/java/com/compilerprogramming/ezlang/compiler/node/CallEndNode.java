@@ -1,7 +1,5 @@
 package com.compilerprogramming.ezlang.compiler.node;
 
-import com.compilerprogramming.ezlang.compiler.Compiler;
-import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
 import com.compilerprogramming.ezlang.compiler.type.*;
 import java.util.BitSet;
 
@@ -10,12 +8,8 @@ import java.util.BitSet;
  */
 public class CallEndNode extends CFGNode implements MultiNode {
 
-    // When set true, this Call/CallEnd/Fun/Return is being trivially inlined
-    private boolean _folding;
     public final TypeRPC _rpc;
 
-    public static final boolean ALLOW_INLINING_CALLS = false;   // FIXME this is pending
-
     public CallEndNode(CallNode call) { super(new Node[]{call}); _rpc = TypeRPC.constant(_nid); }
     public CallEndNode(CallEndNode cend) { super(cend); _rpc = cend._rpc; }
 
@@ -24,11 +18,6 @@ public class CallEndNode extends CFGNode implements MultiNode {
 
     public CallNode call() { return (CallNode)in(0); }
 
-    @Override public CFGNode idom(Node dep) {
-        // Folding the idom is the one inlining Return
-        return _folding ? cfg(1) : super.idom(dep);
-    }
-
     @Override
     public StringBuilder _print1(StringBuilder sb, BitSet visited) {
         sb.append("cend( ");
@@ -56,63 +45,7 @@ public class CallEndNode extends CFGNode implements MultiNode {
         return TypeTuple.make(call._type,TypeMem.BOT,ret);
     }
 
-    @Override
-    public Node idealize() {
-
-        // Trivial inlining: call site calls a single function; single function
-        // is only called by this call site.
-        // EZ Lang - we do not support inlining calls yet
-        // EZ Lang - possibly requires updating the type dict to say inlined function is dead
-        if( ALLOW_INLINING_CALLS && !_folding && nIns()==2 && in(0) instanceof CallNode call ) {
-            Node fptr = call.fptr();
-            if( fptr.nOuts() == 1 && // Only user is this call
-                fptr instanceof ConstantNode && // We have an immediate call
-                // Function is being called, and its not-null
-                fptr._type instanceof TypeFunPtr tfp && tfp.notNull() &&
-                // Arguments are correct
-                call.err()==null ) {
-                ReturnNode ret = (ReturnNode)in(1);
-                FunNode fun = ret.fun();
-                // Expecting Start, and the Call
-                if( fun.nIns()==3 ) {
-                    assert fun.in(1) instanceof StartNode && fun.in(2)==call;
-                    // Disallow self-recursive inlining (loop unrolling by another name)
-                    CFGNode idom = call;
-                    while( !(idom instanceof FunNode) && idom!=null )
-                        idom = idom.idom();
-                    // Inline?
-                    if( idom != fun && idom != null ) {
-                        // Trivial inline: rewrite
-                        _folding = true;
-                        // Rewrite Fun so the normal RegionNode ideal collapses
-                        fun._folding = true;
-                        fun.setDef(1, Compiler.XCTRL); // No default/unknown StartNode caller
-                        fun.setDef(2,call.ctrl());  // Bypass the Call;
-                        fun.ret().setDef(3,null);   // Return is folding also
-                        CodeGen.CODE.addAll(fun._outputs);
-                        // Repeat defs 1 layer down, for users of Parm (Phis)
-                        for( Node parm : fun._outputs )
-                            if( parm instanceof ParmNode )
-                                CodeGen.CODE.addAll(parm._outputs);
-
-                        // Inlining immediately blows all cache idepth fields past the inline point.
-                        // Bump the global version number invalidating them en-masse.
-                        CodeGen.CODE.invalidateIDepthCaches();
-                        return this;
-                    }
-                } else {
-                    addDep(fun);
-                }
-            } else { // Function ptr has multiple users (so maybe multiple call sites)
-                addDep(fptr);
-            }
-        }
-
-        return null;
-    }
-
-    @Override public Node pcopy(int idx) {
-        return _folding ? in(1).in(idx) : null;
-    }
+    // Inlining is done by the Inliner, which replaces the Call and CallEnd
+    @Override public Node idealize() { return null; }
 
 }
@@ -31,7 +31,7 @@ public class CallNode extends CFGNode {
     }
     public String name() {
         if( fptr()._type instanceof TypeFunPtr tfp && tfp.isConstant() ) {
-            FunNode fun = CodeGen.CODE.link(tfp);
+            FunNode fun = CodeGen.CODE().link(tfp);
             if( fun !=null ) return fun._name;
             if( fptr() instanceof ExternNode ex )  return ex._extern;
         }
@@ -102,8 +102,8 @@ public class CallNode extends CFGNode {
                 for( ; fidxs!=0; fidxs = TypeFunPtr.nextFIDX(fidxs) ) {
                     int fidx = Long.numberOfTrailingZeros(fidxs);
                     TypeFunPtr tfp0 = tfp.makeFrom(fidx);
-                    FunNode fun = CodeGen.CODE.link(tfp0);
-                    if( fun!=null && !fun._folding && !linked(fun) )
+                    FunNode fun = CodeGen.CODE().link(tfp0);
+                    if( fun!=null && !linked(fun) )
                         progress = link(fun);
                 }
             }
@@ -129,7 +129,7 @@ public class CallNode extends CFGNode {
             if( use instanceof ParmNode parm )
                 parm.addDef(parm._idx==0 ? new ConstantNode(cend()._rpc).peephole() : arg(parm._idx));
         // Call end points to function return
-        CodeGen.CODE.add(cend()).addDef(fun.ret());
+        CodeGen.CODE().add(cend()).addDef(fun.ret());
         return this;
     }
 
@@ -19,7 +19,7 @@ import java.util.BitSet;
 public class ConstantNode extends Node {
     public final Type _con;
     public ConstantNode( Type type ) {
-        super(new Node[]{CodeGen.CODE._start});
+        super(new Node[]{CodeGen.CODE()._start});
         _con = _type = type;
     }
     public ConstantNode( ConstantNode con ) { super(con);  _con = con._type;  }
@@ -37,7 +37,7 @@ public class ConstantNode extends Node {
     @Override
     public StringBuilder _print1(StringBuilder sb, BitSet visited) {
         if( _con instanceof TypeFunPtr tfp && tfp.isConstant() ) {
-            FunNode fun = CodeGen.CODE.link(tfp);
+            FunNode fun = CodeGen.CODE().link(tfp);
             if( fun!=null && fun._name != null )
                 return sb.append("{ ").append(fun._name).append("}");
         }
@@ -14,9 +14,6 @@ import static com.compilerprogramming.ezlang.compiler.codegen.CodeGen.CODE;
 
 public class FunNode extends RegionNode {
 
-    // When set true, this Call/CallEnd/Fun/Return is being trivially inlined
-    boolean _folding;
-
     private TypeFunPtr _sig;    // Initial signature
     private ReturnNode _ret;    // Return pointer
 
@@ -65,7 +62,7 @@ public class FunNode extends RegionNode {
     public void setSig( TypeFunPtr sig ) {
         assert sig.isa(_sig);
         if( _sig != sig ) {
-            CODE.add(this);
+            CODE().add(this);
             _sig = sig;
         }
     }
@@ -88,11 +85,8 @@ public class FunNode extends RegionNode {
 
         // Some linked path dies
         Node progress = deadPath();
-        if( progress!=null ) {
-            if( nIns()==3 && in(2) instanceof CallNode call )
-                CODE.add(call.cend()); // If Start and one call, check for inline
+        if( progress!=null )
             return progress;
-        }
 
         // Upgrade inferred or user-written return type to actual
         if( _ret!=null && _ret._type instanceof TypeTuple tt && tt.ret() != _sig.ret() )
@@ -114,21 +108,18 @@ public class FunNode extends RegionNode {
 
         // If down to a single input, become that input
         if( nIns()==2 && !hasPhi() ) {
-            CODE.add( CODE._stop ); // Stop will remove dead path
-            CODE.add( _ret );       // Return will compute to TOP control
+            CODE().add( CODE()._stop ); // Stop will remove dead path
+            CODE().add( _ret );       // Return will compute to TOP control
             return in(1); // Collapse if no Phis; 1-input Phis will collapse on their own
         }
 
         return null;
     }
 
-    // Bypass Region idom, always assume depth == 1, one more than Start,
-    // unless folding then just a ID on input#1
-    @Override public int idepth() {
-        return _folding ? super.idepth() : CodeGen.CODE.iDepthAt(1);
-    }
+    // Bypass Region idom, always assume depth == 1, one more than Start
+    @Override public int idepth() { return CodeGen.CODE().iDepthAt(1); }
     // Bypass Region idom, always assume idom is Start
-    @Override public CFGNode idom(Node dep) { return _folding && nIns()==3 ? cfg(2) : (nIns()>1 ? cfg(1) : null); }
+    @Override public CFGNode idom(Node dep) { return nIns()>1 ? cfg(1) : null; }
 
     // Always in-progress until we run out of unknown callers
     public boolean unknownCallers() { return nIns()>=2 && in(1) instanceof StartNode; }
@@ -66,7 +66,7 @@ public class LoadNode extends MemOpNode {
             Node memA = mem2.alias(_alias);
             for( Node ld : memA._outputs )
                 if( ld instanceof LoadNode )
-                    CodeGen.CODE.add(ld);
+                    CodeGen.CODE().add(ld);
             setDef(1,memA);
             return this;
         }
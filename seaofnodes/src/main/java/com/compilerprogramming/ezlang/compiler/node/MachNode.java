@@ -10,7 +10,7 @@ import com.compilerprogramming.ezlang.compiler.util.Utils;
 public interface MachNode {
 
     // Easy access to the abstract Machine
-    default Machine machine() { return CodeGen.CODE._mach; }
+    default Machine machine() { return CodeGen.CODE()._mach; }
 
     // Run a post-instruction-selection action
     default void postSelect( CodeGen code ) { }
@@ -56,7 +56,7 @@ public abstract class Node implements Cloneable {
 
 
     Node(Node... inputs) {
-        _nid = CODE.getUID(); // allocate unique dense ID
+        _nid = CODE().getUID(); // allocate unique dense ID
         _inputs = new Ary<>(Node.class);
         Collections.addAll(_inputs,inputs);
         _outputs = new Ary<>(Node.class);
@@ -68,8 +68,8 @@ public abstract class Node implements Cloneable {
     // Make a Node using the existing arrays of nodes.
     // Used by any pass rewriting all Node classes but not the edges.
     Node( Node n ) {
-        assert CodeGen.CODE._phase.ordinal() >= CodeGen.Phase.Select.ordinal();
-        _nid = CODE.getUID(); // allocate unique dense ID
+        assert CodeGen.CODE()._phase.ordinal() >= CodeGen.Phase.Select.ordinal();
+        _nid = CODE().getUID(); // allocate unique dense ID
         _inputs  = new Ary<>(n==null ? new Node[0] : n._inputs.asAry());
         _outputs = new Ary<>(Node.class);
         _type = n==null ? Type.BOTTOM : n._type;
@@ -178,7 +178,7 @@ public abstract class Node implements Cloneable {
         if( old_def != null ) {        // If the old def exists, remove a def->use edge
             if( old_def.delUse(this) ) // If we removed the last use, the old def is now dead
                 old_def.kill();        // Kill old def
-            else CODE.add(old_def);    // Else old lost a use, so onto worklist
+            else CODE().add(old_def);    // Else old lost a use, so onto worklist
         }
         moveDepsToWorklist();
         // Return new_def for easy flow-coding
@@ -264,7 +264,7 @@ public abstract class Node implements Cloneable {
         while( nIns()>0 ) { // Set all inputs to null, recursively killing unused Nodes
             Node old_def = _inputs.removeLast();
             // Revisit neighbor because removed use
-            if( old_def != null && CODE.add(old_def).delUse(this) )
+            if( old_def != null && CODE().add(old_def).delUse(this) )
                 old_def.kill(); // If we removed the last use, the old def is now dead
         }
         assert isDead();        // Really dead now
@@ -312,8 +312,8 @@ public abstract class Node implements Cloneable {
             int idx = n._inputs.find(this);
             n._inputs.set(idx,nnn);
             nnn.addUse(n);
-            CODE.add(n);
-            CODE.addAll(n._outputs);
+            CODE().add(n);
+            CODE().addAll(n._outputs);
         }
         kill();
     }
@@ -409,7 +409,7 @@ public abstract class Node implements Cloneable {
      * </ul>
      */
     public final Node peepholeOpt( ) {
-        CODE.iterCnt();
+        CODE().iterCnt();
         // Compute initial or improved Type
         Type old = setType(compute());
 
@@ -422,9 +422,9 @@ public abstract class Node implements Cloneable {
 
         // Global Value Numbering
         if( _hash==0 ) {
-            Node n = CODE._gvn.get(this); // Will set _hash as a side effect
+            Node n = CODE()._gvn.get(this); // Will set _hash as a side effect
             if( n==null )
-                CODE._gvn.put(this,this);  // Put in table now
+                CODE()._gvn.put(this,this);  // Put in table now
             else {
                 // Because of random worklist ordering, the two equal nodes
                 // might have different types.  Because of monotonicity, both
@@ -442,7 +442,7 @@ public abstract class Node implements Cloneable {
             return n;           // Report progress
 
         if( old!=_type ) return this; // Report progress;
-        CODE.iterNop();
+        CODE().iterNop();
         return null;            // No progress
     }
 
@@ -488,7 +488,7 @@ public abstract class Node implements Cloneable {
         assert old==null || type.isa(old); // Since _type not set, can just re-run this in assert in the debugger
         if( old == type ) return old;
         _type = type;       // Set _type late for easier assert debugging
-        CODE.addAll(_outputs);
+        CODE().addAll(_outputs);
         moveDepsToWorklist();
         return old;
     }
@@ -559,7 +559,7 @@ public abstract class Node implements Cloneable {
     <N extends Node> N addDep( N dep ) {
         // Running peepholes during the big assert cannot have side effects
         // like adding dependencies.
-        if( CODE._midAssert ) return dep;
+        if( CODE()._midAssert ) return dep;
         if( dep._deps==null ) dep._deps = new Ary<>(Node.class);
         if( dep._deps   .find(this) != -1 ) return dep; // Already on list
         if( dep._inputs .find(this) != -1 ) return dep; // No need for deps on immediate neighbors
@@ -571,7 +571,7 @@ public abstract class Node implements Cloneable {
     // Move the dependents onto a worklist, and clear for future dependents.
     public void moveDepsToWorklist( ) {
         if( _deps==null ) return;
-        CODE.addAll(_deps);
+        CODE().addAll(_deps);
         _deps.clear();
     }
 
@@ -604,7 +604,7 @@ public abstract class Node implements Cloneable {
     // If the _hash is set, then the Node is in the GVN table; remove it.
     void unlock() {
         if( _hash==0 ) return;
-        Node old = CODE._gvn.remove(this); // Pull from table
+        Node old = CODE()._gvn.remove(this); // Pull from table
         assert old==this;
         _hash=0;                // Out of table now
     }
@@ -689,7 +689,7 @@ public abstract class Node implements Cloneable {
         Node n;
         try { n = (Node)clone(); }
         catch( Exception e ) { throw new RuntimeException(e); }
-        n._nid = CODE.getUID(); // allocate unique dense ID
+        n._nid = CODE().getUID(); // allocate unique dense ID
         n._inputs  = new Ary<>(Node.class);
         n._outputs = new Ary<>(Node.class);
         n._deps = null;
@@ -706,15 +706,15 @@ public abstract class Node implements Cloneable {
     // Utility to walk the entire graph applying a function; return the first
     // not-null result.
     final public <E> E walk( Function<Node,E> pred ) {
-        assert CODE._visit.isEmpty();
+        assert CODE()._visit.isEmpty();
         E rez = _walk(pred);
-        CODE._visit.clear();
+        CODE()._visit.clear();
         return rez;
     }
 
     private <E> E _walk( Function<Node,E> pred ) {
-        if( CODE._visit.get(_nid) ) return null; // Been there, done that
-        CODE._visit.set(_nid);
+        if( CODE()._visit.get(_nid) ) return null; // Been there, done that
+        CODE()._visit.set(_nid);
         E x = pred.apply(this);
         if( x != null ) return x;
         for( Node def : _inputs  )  if( def != null && (x = def._walk(pred)) != null ) return x;
@@ -88,6 +88,10 @@ public class PhiNode extends Node {
         if( live != null ) {
             if( live._type.isa(_type) )
                 return live;
+            // Memory cannot be upcast; keep the Phi.  E.g. a loop memory Phi
+            // once an inlined call no longer writes memory.
+            if( isMem() )
+                return null;
             // Keep the Phi upcast
             return new CastNode(_type,null,live);
         }
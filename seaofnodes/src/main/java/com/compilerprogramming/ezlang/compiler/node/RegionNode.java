@@ -1,6 +1,5 @@
 package com.compilerprogramming.ezlang.compiler.node;
 
-import com.compilerprogramming.ezlang.compiler.Compiler;
 import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
 import com.compilerprogramming.ezlang.compiler.type.Type;
 import java.util.*;
@@ -64,14 +63,14 @@ public class RegionNode extends CFGNode {
                             PhiNode phi2 = phi.in(i) instanceof PhiNode phi2x && phi2x.region()==region ? phi2x : null;
                             for( int j=1; j<region.nIns(); j++ )
                                 phi.addDef(phi2==null ? phi.in(i) : phi2.in(j));
-                            CodeGen.CODE.add(phi);
+                            CodeGen.CODE().add(phi);
                         }
                     }
 
                     // Fold Region
                     for( int j=1; j<region.nIns(); j++ )
                         addDef(region.in(j));
-                    setDef(i,Compiler.XCTRL);
+                    setDef(i,CodeGen.CODE().P.XCTRL);
                     return this;
                 }
         }
@@ -98,9 +97,9 @@ public class RegionNode extends CFGNode {
             nouts = nOuts();
             for( int i=0; i<nOuts(); i++ )
                 if( out(i) instanceof PhiNode phi && phi.nIns()==nIns() )
-                    CodeGen.CODE.addAll(phi.delDef(path)._outputs);
+                    CodeGen.CODE().addAll(phi.delDef(path)._outputs);
         }
-        return isDead() ? Compiler.XCTRL : delDef(path);
+        return isDead() ? CodeGen.CODE().P.XCTRL : delDef(path);
     }
 
 
@@ -137,12 +136,12 @@ public class RegionNode extends CFGNode {
 
     // Immediate dominator of Region is a little more complicated.
     @Override public int idepth() {
-        if( CodeGen.CODE.validIDepth(_idepth) )
+        if( CodeGen.CODE().validIDepth(_idepth) )
             return _idepth;
         int d=0;
         for( Node n : _inputs )
             if( n!=null )
-                d = Math.max(d,CodeGen.CODE.iDepthFrom(((CFGNode)n).idepth()));
+                d = Math.max(d,CodeGen.CODE().iDepthFrom(((CFGNode)n).idepth()));
         return _idepth = d;
     }
 
@@ -148,8 +148,8 @@ public class ReturnNode extends CFGNode {
     }
     public RegMask regmap(int i) {
         return i==2
-            ? CodeGen.CODE._mach.retMask(_fun.sig())
-            : CodeGen.CODE._retMasks[i];
+            ? CodeGen.CODE()._mach.retMask(_fun.sig())
+            : CodeGen.CODE()._retMasks[i];
     }
     public RegMask outregmap() { return null; }
     public void encoding( Encoding enc ) { throw Utils.TODO(); }
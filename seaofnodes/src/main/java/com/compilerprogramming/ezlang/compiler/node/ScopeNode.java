@@ -161,10 +161,10 @@ public class ScopeNode extends MemMergeNode {
                     setDef(n._idx,fref.addDef(init));     // Set FRef to defined; tell parser also
                 }
             }
-        Var v = new Var(nIns(),name,declaredType,xfinal,init==Compiler.XCTRL);
+        Var v = new Var(nIns(),name,declaredType,xfinal,init==CodeGen.CODE().P.XCTRL);
         _vars.add(v);
         // Creating a forward reference
-        if( init==Compiler.XCTRL )
+        if( init==CodeGen.CODE().P.XCTRL )
             init = new FRefNode(v).init();
         addDef(init);
         return true;
@@ -281,7 +281,7 @@ public class ScopeNode extends MemMergeNode {
         mem()._merge(that.mem(),r);
         this ._merge(that      ,r);
         that.kill();            // Kill merged scope
-        CodeGen.CODE.add(r);
+        CodeGen.CODE().add(r);
         return r.unkeep();
     }
 
@@ -356,7 +356,7 @@ public class ScopeNode extends MemMergeNode {
             return;           // Dead, do not add any guards
         // Invert the If conditional
         if( invert )
-            pred = pred instanceof NotNode not ? not.in(1) : CodeGen.CODE.add(new NotNode(pred).peephole());
+            pred = pred instanceof NotNode not ? not.in(1) : CodeGen.CODE().add(new NotNode(pred).peephole());
         // This is a zero/null test.
         // Compute the positive test type.
         Type tnz = pred._type.nonZero();
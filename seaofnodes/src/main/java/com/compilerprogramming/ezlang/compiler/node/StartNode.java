@@ -36,7 +36,7 @@ public class StartNode extends LoopNode implements MultiNode {
         // Find "main", it's the start.
         CFGNode C = null;
         for( Node use : _outputs )
-            if( use instanceof FunNode fun && fun.sig().isa(CodeGen.CODE._main) )
+            if( use instanceof FunNode fun && fun.sig().isa(CodeGen.CODE()._main) )
                 { assert C==null; C = fun; }
         return C;
     }
@@ -49,7 +49,7 @@ public class StartNode extends LoopNode implements MultiNode {
     @Override public Node idealize() { return null; }
 
     // No immediate dominator, and idepth==0
-    @Override public int idepth() { return CodeGen.CODE.iDepthAt(0); }
+    @Override public int idepth() { return CodeGen.CODE().iDepthAt(0); }
     @Override public CFGNode idom(Node dep) { return null; }
 
 }
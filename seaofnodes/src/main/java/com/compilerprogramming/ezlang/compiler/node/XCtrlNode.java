@@ -5,7 +5,7 @@ import com.compilerprogramming.ezlang.compiler.type.Type;
 import java.util.BitSet;
 
 public class XCtrlNode extends CFGNode {
-    public XCtrlNode() { super(new Node[]{CodeGen.CODE._start}); }
+    public XCtrlNode() { super(new Node[]{CodeGen.CODE()._start}); }
     @Override public String label() { return "Xctrl"; }
     @Override public StringBuilder _print1(StringBuilder sb, BitSet visited) { return sb.append("Xctrl"); }
     @Override public boolean isConst() { return true; }
@@ -565,7 +565,7 @@ public class arm extends Machine {
 
     @Override public RegMask callArgMask(TypeFunPtr tfp, int idx, int maxArgSlot ) { return callInMask(tfp,idx,maxArgSlot); }
     static RegMask callInMask(TypeFunPtr tfp, int idx, int maxArgSlot ) {
-        if( idx==0 ) return CodeGen.CODE._rpcMask;
+        if( idx==0 ) return CodeGen.CODE()._rpcMask;
         if( idx==1 ) return null;
         // Count floats in signature up to index
         if( idx-2 >= tfp.nargs() ) return null; // Anti-dependence
@@ -787,8 +787,8 @@ public class arm extends Machine {
     }
 
 
-    private static int off;
-    private static Node idx;
+    private int off;
+    private Node idx;
     private Node st(StoreNode st) {
         return new StoreARM(address(st),st.ptr(),idx,off,st.val());
     }
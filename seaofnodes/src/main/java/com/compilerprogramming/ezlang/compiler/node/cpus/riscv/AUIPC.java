@@ -13,7 +13,8 @@ public class AUIPC extends ConstantNode implements MachNode, RIPRelSize {
     @Override public RegMask regmap(int i) { return null; }
     @Override public RegMask outregmap() { return riscv.WMASK; }
     @Override public boolean isClone() { return true; }
-    @Override public AUIPC copy() { return new AUIPC(_con); }
+    private AUIPC( AUIPC auipc ) { super(auipc); }
+    @Override public AUIPC copy() { return new AUIPC(this); }
     @Override public String op() { return "auipc"; }
     @Override public void encoding( Encoding enc ) {
         enc.relo(this);
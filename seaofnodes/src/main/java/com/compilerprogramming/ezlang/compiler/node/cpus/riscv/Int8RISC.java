@@ -35,9 +35,9 @@ public class Int8RISC extends ConstantNode implements MachNode, RIPRelSize {
         short dst = enc.reg(this);
         short tmp = (short)riscv.T6;
         // AUIPC dst,#hi20_constant_pool
-        enc.patch4(opStart  , riscv.u_type(riscv.OP_AUIPC, tmp, delta>>12));
+        enc.patch4(opStart  , riscv.u_type(riscv.OP_AUIPC, tmp, riscv.hi20(delta)));
         // Load dst,[dst+#low12_constant_pool]
-        enc.patch4(opStart+4, riscv.i_type(riscv.OP_LOAD, dst, 0b11, tmp, delta & 0xFFF));
+        enc.patch4(opStart+4, riscv.i_type(riscv.OP_LOAD, dst, 0b11, tmp, riscv.lo12(delta)));
     }
 
     @Override public void asm(CodeGen code, SB sb) {
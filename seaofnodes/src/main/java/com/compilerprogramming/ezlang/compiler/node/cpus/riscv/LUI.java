@@ -15,7 +15,9 @@ public class LUI extends ConstantNode implements MachNode {
     @Override public RegMask regmap(int i) { return null; }
     @Override public RegMask outregmap() { return riscv.WMASK; }
     @Override public boolean isClone() { return true; }
-    @Override public LUI copy() { return new LUI((int)((TypeInteger)_con).value()); }
+    private LUI( LUI lui ) { super(lui); }
+    // Clones must not hook up to Start, see GlobalCodeMotion
+    @Override public LUI copy() { return new LUI(this); }
     @Override public String op() { return "lui"; }
     @Override public void encoding( Encoding enc ) {
         long x = ((TypeInteger)_con).value();
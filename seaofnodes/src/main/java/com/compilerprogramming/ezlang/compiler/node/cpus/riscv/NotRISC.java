@@ -14,7 +14,8 @@ public class NotRISC extends MachConcreteNode implements MachNode {
     @Override public void encoding( Encoding enc ) {
         short dst = enc.reg(this );
         short src = enc.reg(in(1));
-        enc.add4(riscv.i_type(riscv.OP_IMM, dst, 2, src, 1));
+        // seqz: unsigned src < 1
+        enc.add4(riscv.i_type(riscv.OP_IMM, dst, 3, src, 1));
     }
     @Override public void asm(CodeGen code, SB sb) { sb.p(code.reg(this)); }
 }
@@ -38,9 +38,9 @@ public class TFPRISC extends ConstantNode implements MachNode, RIPRelSize {
             // AUIPC (upper 20 bits)
             // opstart of add
             int next = opStart + opLen;
-            enc.patch4(opStart,riscv.u_type(riscv.OP_AUIPC, rpc, delta>>12));
+            enc.patch4(opStart,riscv.u_type(riscv.OP_AUIPC, rpc, riscv.hi20(delta)));
             // addi(low 12 bits)
-            enc.patch4(next,riscv.i_type(riscv.OP_IMM, rpc, 0, rpc, delta & 0xFFF));
+            enc.patch4(next,riscv.i_type(riscv.OP_IMM, rpc, 0, rpc, riscv.lo12(delta)));
             // addi
         } else {
              // should not happen as one instruction is 4 byte, and TFP arm encodes 2.
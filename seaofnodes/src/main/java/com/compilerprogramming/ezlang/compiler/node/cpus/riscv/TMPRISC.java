@@ -29,9 +29,9 @@ public class TMPRISC extends ConstantNode implements MachNode, RIPRelSize {
     @Override public void patch( Encoding enc, int opStart, int opLen, int delta ) {
         short dst = enc.reg(this);
         // AUIPC dst,#hi20_constant_pool
-        enc.patch4(opStart  , riscv.u_type(riscv.OP_AUIPC, dst, delta>>12));
+        enc.patch4(opStart  , riscv.u_type(riscv.OP_AUIPC, dst, riscv.hi20(delta)));
         // Load dst,[dst+#low12_constant_pool]
-        enc.patch4(opStart+4, riscv.i_type(riscv.OP_IMM, dst, 0, dst, delta & 0xFFF));
+        enc.patch4(opStart+4, riscv.i_type(riscv.OP_IMM, dst, 0, dst, riscv.lo12(delta)));
     }
 
     @Override public void asm(CodeGen code, SB sb) {
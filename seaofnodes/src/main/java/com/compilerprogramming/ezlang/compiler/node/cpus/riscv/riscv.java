@@ -165,6 +165,11 @@ public class riscv extends Machine {
         return (imm20 << 12) | (rd << 7) | opcode;
     }
 
+    // PC-relative AUIPC plus a 12-bit immediate.  The low 12 bits sign
+    // extend, so when bit 11 is set the high 20 bits round up to compensate.
+    public static int hi20( int delta ) { return (delta + 0x800) >> 12; }
+    public static int lo12( int delta ) { return delta & 0xFFF; }
+
     public static int j_type(int opcode, int rd, int delta) {
         assert -(1L<<20) <= delta && delta < (1L<<20);
         assert 0 <= rd && rd < 32;
@@ -524,7 +529,7 @@ public class riscv extends Machine {
     // Gather addressing mode bits prior to constructing.  This is a builder
     // pattern, but saving the bits in a *local* *global* here to keep mess
     // contained.
-    private static int off;
+    private int off;
     private Node address( MemOpNode mop ) {
         off = 0;  // Reset
         Node base = mop.ptr();
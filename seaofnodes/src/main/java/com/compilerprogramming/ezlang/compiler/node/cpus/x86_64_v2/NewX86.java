@@ -4,7 +4,7 @@ import com.compilerprogramming.ezlang.compiler.codegen.*;
 import com.compilerprogramming.ezlang.compiler.node.*;
 import com.compilerprogramming.ezlang.compiler.util.SB;
 
-public class NewX86 extends NewNode implements MachNode {
+public class NewX86 extends NewNode implements MachNode, RIPRelSize {
     // A pre-zeroed chunk of memory.
     NewX86( NewNode nnn ) { super(nnn); }
     @Override public void encoding( Encoding enc ) {
@@ -15,6 +15,14 @@ public class NewX86 extends NewNode implements MachNode {
         enc.add1(0xE8);
         enc.add4(0);            // offset
     }
+
+    // Patch is for running "new" in a JIT.
+    @Override public byte encSize(int delta) { return 5+5; }
+
+    // Delta is from opcode start, but the call measures from its own end
+    @Override public void patch( Encoding enc, int opStart, int opLen, int delta ) {
+        enc.patch4(opStart+6, delta-10);
+    }
     // General form: "alloc #bytes  PC"
     @Override public void asm(CodeGen code, SB sb) {
         sb.p("ldi   rcx = #1\n");
@@ -192,7 +192,7 @@ public class x86_64_v2 extends Machine {
         if( idx==0 ) return RPC_MASK;
         if( idx==1 ) return null;
         if( idx-2 >= tfp.nargs() ) return null; // Anti-dependence
-        return switch( CodeGen.CODE._callingConv ) {
+        return switch( CodeGen.CODE()._callingConv ) {
         case "SystemV" -> callSys5 (tfp,idx,maxArgSlot);
         case "Win64"   -> callWin64(tfp,idx,maxArgSlot);
         default -> throw Utils.TODO();
@@ -201,7 +201,7 @@ public class x86_64_v2 extends Machine {
 
     // Maximum stack args used by this signature
     @Override public short maxArgSlot( TypeFunPtr tfp ) {
-        return switch( CodeGen.CODE._callingConv ) {
+        return switch( CodeGen.CODE()._callingConv ) {
         case "SystemV" -> maxArgSlotSys5 (tfp);
         case "Win64"   -> maxArgSlotWin64(tfp);
         default -> throw Utils.TODO();
@@ -314,10 +314,10 @@ public class x86_64_v2 extends Machine {
         (1L<<XMM4) | (1L<<XMM5) ;
 
     @Override public long callerSave() {
-        return switch (CodeGen.CODE._callingConv) {
+        return switch (CodeGen.CODE()._callingConv) {
         case "SystemV" -> SYSTEM5_CALLER_SAVE;
         case "Win64"   ->   WIN64_CALLER_SAVE;
-        default -> throw new IllegalArgumentException("Unknown calling convention: " + CodeGen.CODE._callingConv);
+        default -> throw new IllegalArgumentException("Unknown calling convention: " + CodeGen.CODE()._callingConv);
         };
     }
     @Override public long neverSave() { return 1L<<RSP; }
@@ -463,7 +463,7 @@ public class x86_64_v2 extends Machine {
 
     // Because X86 flags, a normal ideal Bool is 2 X86 ops: a "cmp" and at "setz".
     // Ideal If reading from a setz will skip it and use the "cmp" instead.
-    private static boolean swap, unsigned;
+    private boolean swap, unsigned;
     private Node cmp( BoolNode bool ) {
         swap = unsigned = false;
         Node cmp = _cmp(bool);
@@ -605,8 +605,8 @@ public class x86_64_v2 extends Machine {
     // Gather X86 addressing mode bits prior to constructing.  This is a
     // builder pattern, but saving the bits in a *local* *global* here to keep
     // mess contained.
-    private static int off, scale, imm;
-    private static Node idx, val;
+    private int off, scale, imm;
+    private Node idx, val;
     private <N extends MemOpNode > N address(N mop) {
         off = scale = imm = 0;  // Reset
         idx = val = null;
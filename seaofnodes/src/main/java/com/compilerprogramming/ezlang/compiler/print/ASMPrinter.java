@@ -103,8 +103,11 @@ public abstract class ASMPrinter {
 
         if( fun._frameAdjust != 0 )
             iadr = doInst(iadr,sb,code,fun,cfgidx,fun,true,true);
-        while( !(code._cfg.at(cfgidx) instanceof ReturnNode) )
-            iadr = doBlock(iadr,sb,code,fun,cfgidx++);
+        // Blocks up to the next function; profiled layouts put cold blocks
+        // after the Return.
+        for( int i=cfgidx; i==cfgidx || !(code._cfg.at(i) instanceof FunNode || code._cfg.at(i) instanceof StopNode); i++ )
+            if( !(code._cfg.at(i) instanceof ReturnNode) )
+                iadr = doBlock(iadr,sb,code,fun,i);
 
         // Function separator
         sb.p("---");
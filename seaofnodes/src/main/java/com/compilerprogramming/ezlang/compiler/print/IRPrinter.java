@@ -38,7 +38,7 @@ public abstract class IRPrinter {
 
 
     public static String prettyPrint(Node node, int depth) {
-        return CodeGen.CODE._phase.ordinal() > CodeGen.Phase.Schedule.ordinal()
+        return CodeGen.CODE()._phase.ordinal() > CodeGen.Phase.Schedule.ordinal()
             ? _prettyPrintScheduled( node, depth )
             : _prettyPrint( node, depth );
     }
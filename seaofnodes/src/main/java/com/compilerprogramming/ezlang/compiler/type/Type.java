@@ -3,7 +3,7 @@ package com.compilerprogramming.ezlang.compiler.type;
 import com.compilerprogramming.ezlang.compiler.util.SB;
 import com.compilerprogramming.ezlang.compiler.util.Utils;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * These types are part of a Monotone Analysis Framework,
@@ -22,7 +22,7 @@ import java.util.HashMap;
  */
 
 public class Type {
-    static final HashMap<Type, Type> INTERN = new HashMap<>();
+    static final ConcurrentHashMap<Type, Type> INTERN = new ConcurrentHashMap<>();
 
     // ----------------------------------------------------------
     // Simple types are implemented fully here.  "Simple" means: the code and
@@ -100,14 +100,19 @@ public class Type {
     // *correctness* with cyclic type definitions.  Simple structural recursive
     // checks go exponential with merely sharing, but with cycles they will
     // stack overflow and crash.  Interning means we do not need to have sharing
-    // checks with every type compare, only during interning.
+    // checks with every type compare, only during interning.  The table is
+    // shared by all compilations in the JVM, so it is a concurrent map; the
+    // first of two racing threads to intern an equal type wins, and both get
+    // the same instance back.
 
     // Factory method which interns "this"
     @SuppressWarnings("unchecked")
     public  <T extends Type> T intern() {
         T nnn = (T)INTERN.get(this);
-        if( nnn==null )
-            INTERN.put(nnn=(T)this,this);
+        if( nnn==null ) {
+            nnn = (T)INTERN.putIfAbsent(this,this);
+            if( nnn==null ) nnn = (T)this;
+        }
         return nnn;
     }
 
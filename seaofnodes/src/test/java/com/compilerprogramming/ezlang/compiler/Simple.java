@@ -53,7 +53,7 @@ Options:
   --dump-after-all         - dump intermediate representation after all passes
   --dot                    - dump grapical representation of intermediate code into *.dot file(s)
   -S                       - dump generated assembler code
-  --eval                   - evaluate the compiled code in emulator
+  --eval                   - evaluate the compiled code in the riscv emulator
   --run                    - run the compiled code natively; this is the default
   --dump-size              - print the size of generated code
   --dump-time              - print compilation and execution times
@@ -212,6 +212,7 @@ Options:
         }
 
         if (input_filename == null) throw bad("no input file' (use --help)");
+        first_arg = i+1;
         if( !input_filename.isEmpty() && !input_filename.endsWith(".ez") )
             throw bad("File extension must be .ez");
         String base = input_filename.substring(0,input_filename.length()-4);
@@ -221,6 +222,12 @@ Options:
             if (abi == null) abi = system_abi;
             do_codegen = true;
         }
+        if (do_eval) {
+            if (cpu == null) cpu = "riscv";
+            if (abi == null) abi = system_abi;
+            if (!cpu.equals("riscv")) throw bad("--eval requires --cpu riscv");
+            do_codegen = true;
+        }
 
         // Read input file
         try {
@@ -260,7 +267,8 @@ Options:
             code.encode();
             dump(code, dump, DUMP_AFTER_ENCODE);
 
-            code.exportELF(base+".o");
+            // The emulator and native runs use the code linked in memory
+            code.exportELF(do_eval || do_run ? null : base+".o");
         }
 
         dump(code, dump, DUMP_FINAL);
@@ -277,22 +285,36 @@ Options:
             print_compilation_times(code);
         }
 
-//        if (do_eval) {
-//            // TODO: Support for evaluation of functions with different argument numbers and types
-//            long t = System.currentTimeMillis();
-//            long arg = (first_arg < args.length) ? Integer.valueOf(args[first_arg]) : 0;
-//            System.out.println(Eval2.eval(code, arg, 100000));
-//            if (do_print_time) {
-//                System.out.println(String.format("EXECUTION TIME:             %.3f sec",
-//                    (System.currentTimeMillis() - t) / 1e3));
-//            }
-//        } else
+        // Arguments to main are integers
+        Object[] margs = new Object[args.length - first_arg];
+        for (int j = 0; j < margs.length; j++)
+            margs[j] = Long.valueOf(args[first_arg + j]);
+
+        if (do_eval) {
+            long t = System.currentTimeMillis();
+            EvalRisc5 eval = new EvalRisc5(code);
+            System.out.println(eval.call("main", margs));
+            System.out.print(eval._out.toString());
+            if (do_print_time) {
+                System.out.println(String.format("EXECUTION TIME:             %.3f sec",
+                    (System.currentTimeMillis() - t) / 1e3));
+                System.out.print(eval.printCounts());
+            }
+        } else
         if (do_run) {
             if (cpu != system_cpu || abi != system_abi) {
                 System.err.println("ERROR: cannot run code on not native target");
                 System.exit(1);
             }
-            throw Utils.TODO();
+            long t = System.currentTimeMillis();
+            try (NativeX86 x86 = new NativeX86(code)) {
+                System.out.println(x86.call("main", margs));
+                System.out.print(x86._out.toString());
+            }
+            if (do_print_time) {
+                System.out.println(String.format("EXECUTION TIME:             %.3f sec",
+                    (System.currentTimeMillis() - t) / 1e3));
+            }
         }
     }
 }
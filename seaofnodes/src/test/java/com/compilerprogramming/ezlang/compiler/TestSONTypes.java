@@ -1,11 +1,23 @@
 package com.compilerprogramming.ezlang.compiler;
 
 import com.compilerprogramming.ezlang.compiler.codegen.CodeGen;
+import com.compilerprogramming.ezlang.compiler.codegen.Profile;
+import com.compilerprogramming.ezlang.compiler.node.*;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static com.compilerprogramming.ezlang.compiler.Main.PORTS;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class TestSONTypes {
 
@@ -219,4 +231,290 @@ func foo()->Int {
                 }
                 """, 0, null);
     }
+
+    static final String[] PARALLEL_SRCS = {
+            """
+            func main()->Int {
+                return 42
+            }
+            """,
+            """
+            func max(a: Int, b: Int)->Int {
+                if (a < b) return b
+                return a
+            }
+            func main()->Int {
+                return max(3, 4) * 2
+            }
+            """,
+            """
+            func sum(n: Int)->Int {
+                var i = 0
+                var s = 0
+                while (i < n) {
+                    s = s + i*i
+                    i = i + 1
+                }
+                return s
+            }
+            func main()->Int {
+                return sum(100)
+            }
+            """,
+            """
+            func gcd(a: Int, b: Int)->Int {
+                while (b != 0) {
+                    var t = b
+                    b = a - (a / b) * b
+                    a = t
+                }
+                return a
+            }
+            func main()->Int {
+                return gcd(48, 18)
+            }
+            """,
+    };
+    static final String[] CPUS = { "x86_64_v2", "riscv", "arm" };
+
+    static String compileAsm( String src, String cpu ) {
+        CodeGen code = new CodeGen(src);
+        code.driver(CodeGen.Phase.Encoding, cpu, "SystemV");
+        return code.asm();
+    }
+
+    @Test
+    public void testParallelCompiles() throws Exception {
+        List<String> serial = new ArrayList<>();
+        for( String src : PARALLEL_SRCS )
+            for( String cpu : CPUS )
+                serial.add(compileAsm(src,cpu));
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            for( int round = 0; round < 4; round++ ) {
+                List<Future<String>> results = new ArrayList<>();
+                for( String src : PARALLEL_SRCS )
+                    for( String cpu : CPUS )
+                        results.add(pool.submit(() -> compileAsm(src,cpu)));
+                for( int i = 0; i < results.size(); i++ )
+                    assertEquals(serial.get(i), results.get(i).get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static final String PROFILE_SRC = """
+            func rare(i: Int)->Int {
+                return i*i - 7
+            }
+            func sum(n: Int)->Int {
+                var i = 0
+                var s = 0
+                while (i < n) {
+                    if (i == 500) s = s + rare(i)
+                    else s = s + i
+                    i = i + 1
+                }
+                return s
+            }
+            func main()->Int {
+                return sum(1000)
+            }
+            """;
+
+    // Profiles apply to compiles with the same options; no inlining keeps
+    // rare() a call.
+    static Profile profile( String src, long expect ) {
+        CodeGen code = new CodeGen(src).inlining(false);
+        code.driver(CodeGen.Phase.LocalSched);
+        Profile profile = new Profile(code);
+        assertEquals(expect, new Eval(code,profile).call("main"));
+        return profile;
+    }
+
+    @Test
+    public void testProfileEval() throws IOException {
+        Profile profile = profile(PROFILE_SRC, 499500L - 500 + 500*500 - 7);
+        assertEquals(2, profile.numBranches()); // Loop exit and the rare test
+        assertEquals(1, profile.numLoops());
+
+        // Round trip through the on-disk format
+        ByteArrayOutputStream bits = new ByteArrayOutputStream();
+        profile.write(bits);
+        Profile read = Profile.read(new ByteArrayInputStream(bits.toByteArray()));
+        assertTrue(read.matches(PROFILE_SRC, false));
+        assertEquals(profile.numBranches(), read.numBranches());
+        assertEquals(profile.numLoops(), read.numLoops());
+        assertTrue(bits.size() < 32);
+
+        // Stale profiles are rejected
+        assertThrows(IllegalArgumentException.class, () -> new CodeGen(PROFILE_SRC.replace("500","501")).inlining(false).profile(read));
+        // So are profiles collected with different options
+        assertFalse(read.matches(PROFILE_SRC, true));
+        assertThrows(IllegalArgumentException.class, () -> new CodeGen(PROFILE_SRC).profile(read));
+    }
+
+    @Test
+    public void testProfileLayout() {
+        Profile profile = profile(PROFILE_SRC, 499500L - 500 + 500*500 - 7);
+        for( String cpu : CPUS ) {
+            CodeGen code = new CodeGen(PROFILE_SRC).inlining(false).profile(profile);
+            code.driver(CodeGen.Phase.Encoding, cpu, "SystemV");
+            // The call to rare() is laid out after the Return of sum()
+            FunNode sum = null;
+            boolean ret = false, cold = false;
+            for( CFGNode bb : code._cfg ) {
+                if( bb instanceof FunNode fun ) { sum = "sum".equals(fun._name) ? fun : null; ret = false; }
+                if( sum == null ) continue;
+                if( bb instanceof ReturnNode ) ret = true;
+                if( ret && bb instanceof CallNode ) cold = true;
+            }
+            assertTrue(cpu, cold);
+            assertTrue(code.asm().contains("rare"));
+        }
+    }
+
+    static final String INLINE_SRC = """
+struct Point { var x: Int var y: Int }
+func getX(p: Point)->Int { return p.x }
+func getY(p: Point)->Int { return p.y }
+func add(a: Int, b: Int)->Int { return a + b }
+func sq(a: Int)->Int { return a * a }
+func dist2(p: Point, q: Point)->Int {
+    return add(sq(getX(p) - getX(q)), sq(getY(p) - getY(q)))
+}
+func fact(n: Int)->Int {
+    if (n <= 1) return 1
+    return n * fact(n - 1)
+}
+func main()->Int {
+    var i = 0
+    var s = 0
+    var o = new Point{x=0, y=0}
+    while (i < 1000) {
+        var p = new Point{x=i, y=add(i, 3)}
+        s = add(s, dist2(p, o))
+        i = i + 1
+    }
+    return s + fact(10)
+}
+""";
+
+    @Test
+    public void testInline() {
+        long expect = 0;
+        for( long i=0; i<1000; i++ ) expect += i*i + (i+3)*(i+3);
+        expect += 3628800;
+
+        CodeGen slow = new CodeGen(INLINE_SRC).inlining(false).driver(CodeGen.Phase.LocalSched);
+        Eval slowEval = new Eval(slow,null);
+        assertEquals(0, slow._inlined);
+        assertEquals(expect, slowEval.call("main"));
+
+        CodeGen fast = new CodeGen(INLINE_SRC).driver(CodeGen.Phase.LocalSched);
+        Eval fastEval = new Eval(fast,null);
+        assertTrue(fast._inlined > 0);
+        assertEquals(expect, fastEval.call("main"));
+        assertTrue(fastEval.blocks()*4 < slowEval.blocks());
+
+        // Recursion is unrolled to a bounded depth, fact() still calls itself
+        assertTrue(fast._inlined <= 20);
+        assertEquals(3628800L, fastEval.call("fact", 10L));
+
+        // x86_64_v2 cannot yet allocate registers for struct arguments
+        for( String cpu : new String[]{ "riscv", "arm" } )
+            new CodeGen(INLINE_SRC).driver(CodeGen.Phase.Encoding, cpu, "SystemV");
+    }
+
+    // The other execution tests turn inlining off to keep calls to count;
+    // inlined code must give the same results on every backend.
+    @Test
+    public void testInlinedBackends() throws Throwable {
+        String arch = System.getProperty("os.arch");
+        boolean x86 = System.getProperty("os.name").startsWith("Linux") && (arch.equals("amd64") || arch.equals("x86_64"));
+        List<String> srcs = new ArrayList<>(List.of(PARALLEL_SRCS));
+        srcs.add(PROFILE_SRC);
+        srcs.add(INLINE_SRC);
+        for( String src : srcs ) {
+            Object expect = new Eval(new CodeGen(src).inlining(false).driver(CodeGen.Phase.LocalSched),null).call("main");
+            CodeGen code = new CodeGen(src).driver(CodeGen.Phase.LocalSched);
+            assertEquals(expect, new Eval(code,null).call("main"));
+            CodeGen riscv = new CodeGen(src).driver("riscv", "SystemV", null);
+            assertEquals(expect, new EvalRisc5(riscv).call("main"));
+            // x86_64_v2 cannot yet allocate registers for struct arguments
+            if( x86 && src != INLINE_SRC )
+                try( NativeX86 native86 = new NativeX86(new CodeGen(src).driver("x86_64_v2", "SystemV", null)) ) {
+                    assertEquals(expect, native86.call("main"));
+                }
+        }
+        assertTrue(new CodeGen(PROFILE_SRC).driver(CodeGen.Phase.LocalSched)._inlined > 0);
+    }
+
+    static EvalRisc5 risc5( String src ) throws IOException {
+        return new EvalRisc5(new CodeGen(src).inlining(false).driver("riscv", "SystemV", null));
+    }
+
+    @Test
+    public void testEvalRisc5() throws IOException {
+        for( String src : PARALLEL_SRCS ) {
+            CodeGen code = new CodeGen(src).inlining(false).driver(CodeGen.Phase.LocalSched);
+            assertEquals(new Eval(code,null).call("main"), risc5(src).call("main"));
+        }
+
+        // Constant pool, calls and spills
+        EvalRisc5 eval = risc5(PROFILE_SRC);
+        assertEquals(499500L - 500 + 500*500 - 7, eval.call("main"));
+        assertEquals(1L, eval.counts("sum")._calls);
+        assertEquals(3L, eval.counts("rare")._insts);
+        assertEquals(1001L*2 - 1, eval.counts("sum")._branches);
+        assertEquals(eval.total()._insts, eval.counts("main")._insts + eval.counts("sum")._insts + eval.counts("rare")._insts);
+        assertEquals(1000000000007L, risc5("func main()->Int { return 1000000*1000000 + 7 }").call("main"));
+
+        // Recursion and the calloc sentinel
+        eval = risc5(INLINE_SRC);
+        assertEquals(3628800L, eval.call("fact", 10L));
+        assertEquals(9L, eval.counts("fact")._calls);
+        assertTrue(eval.counts("fact")._spillStores > 0);
+        long expect = 3628800;
+        for( long i=0; i<1000; i++ ) expect += i*i + (i+3)*(i+3);
+        assertEquals(expect, eval.call("main"));
+        assertTrue(eval.counts("main")._stores >= 2000);
+    }
+
+    @Test
+    public void testNativeX86() throws Throwable {
+        String arch = System.getProperty("os.arch");
+        assumeTrue(System.getProperty("os.name").startsWith("Linux") && (arch.equals("amd64") || arch.equals("x86_64")));
+        for( String src : PARALLEL_SRCS ) {
+            CodeGen code = new CodeGen(src).inlining(false).driver(CodeGen.Phase.LocalSched);
+            Object expect = new Eval(code,null).call("main");
+            try( NativeX86 x86 = new NativeX86(new CodeGen(src).inlining(false).driver("x86_64_v2", "SystemV", null)) ) {
+                assertEquals(expect, x86.call("main"));
+            }
+        }
+
+        // Constant pool, calls and the calloc upcall
+        try( NativeX86 x86 = new NativeX86(new CodeGen(PROFILE_SRC).inlining(false).driver("x86_64_v2", "SystemV", null)) ) {
+            assertEquals(499500L - 500 + 500*500 - 7, x86.call("main"));
+            assertEquals(2493L, x86.call("rare", 50L));
+        }
+        String alloc = """
+                struct Point { var x: Int var y: Int }
+                func main()->Int {
+                    var s = 0
+                    var i = 0
+                    while (i < 1000) {
+                        var p = new Point{x=i, y=i+3}
+                        s = s + p.x*p.y
+                        i = i + 1
+                    }
+                    return s
+                }
+                """;
+        try( NativeX86 x86 = new NativeX86(new CodeGen(alloc).inlining(false).driver("x86_64_v2", "SystemV", null)) ) {
+            assertEquals(334332000L, x86.call("main"));
+            assertEquals(334332000L, (long)x86.handle("main").invokeExact());
+        }
+    }
 }
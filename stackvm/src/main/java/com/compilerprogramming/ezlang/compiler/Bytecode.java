@@ -0,0 +1,82 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.types.EZType;
+
+/**
+ * Linearized form of a function, produced by the {@link BytecodeGenerator}
+ * and executed by the interpreter.
+ *
+ * The code is a dense int array. Each instruction starts with its opcode
+ * from {@link Instruction}, followed by its inline operands:
+ *
+ * <pre>
+ * PUSH_I     value
+ * LOAD_FUNC  typeIndex
+ * LOAD_VAR   local
+ * STORE      local
+ * NEW        typeIndex argc
+ * CALL       argc
+ * CBR        trueTarget falseTarget
+ * JUMP       target
+ * </pre>
+ *
+ * All other instructions have no inline operands. Branch targets are
+ * absolute indices into the code array. The exit block is encoded as a
+ * single RET instruction, at which point a function that returns a value
+ * has it on top of the operand stack.
+ */
+public class Bytecode {
+
+    public final int[] code;
+    /**
+     * Array, struct and function types referenced by the code
+     */
+    public final EZType[] types;
+    public final int frameSize;
+
+    public Bytecode(int[] code, EZType[] types, int frameSize) {
+        this.code = code;
+        this.types = types;
+        this.frameSize = frameSize;
+    }
+
+    /**
+     * Whether the call at pc returns its result right away, i.e. it is
+     * followed by a return, or by a jump to a return
+     */
+    public boolean isTailCall(int pc) {
+        assert code[pc] == Instruction.CALL;
+        int next = pc + 2;
+        if (code[next] == Instruction.JUMP)
+            next = code[next+1];
+        return code[next] == Instruction.RET;
+    }
+
+    public static int length(int opcode) {
+        return switch (opcode) {
+            case Instruction.PUSH_I, Instruction.LOAD_FUNC, Instruction.LOAD_VAR,
+                 Instruction.STORE, Instruction.CALL, Instruction.JUMP -> 2;
+            case Instruction.NEW, Instruction.CBR -> 3;
+            default -> 1;
+        };
+    }
+
+    public StringBuilder toStr(StringBuilder sb) {
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            sb.append(pc).append(": ").append(Instruction.opNames[opcode]);
+            switch (opcode) {
+                case Instruction.LOAD_FUNC -> sb.append(" ").append(types[code[pc+1]].name);
+                case Instruction.NEW -> sb.append(" ").append(types[code[pc+1]].name).append(" ").append(code[pc+2]);
+                default -> {
+                    for (int i = 1; i < length(opcode); i++)
+                        sb.append(" ").append(code[pc+i]);
+                }
+            }
+            sb.append("\n");
+            pc += length(opcode);
+        }
+        return sb;
+    }
+}
@@ -0,0 +1,129 @@
+package com.compilerprogramming.ezlang.compiler;
+
+import com.compilerprogramming.ezlang.types.EZType;
+
+import java.util.*;
+
+/**
+ * Linearizes the basic blocks of a function into {@link Bytecode}.
+ * Blocks are laid out in the order they were created, which follows
+ * the source order, with the exit block last. Branch targets are resolved
+ * to absolute code offsets, and jumps to the next block are elided.
+ */
+public class BytecodeGenerator {
+
+    private int[] code = new int[64];
+    private int pc = 0;
+    private final List<EZType> types = new ArrayList<>();
+    private final Map<EZType, Integer> typeIndex = new IdentityHashMap<>();
+    // Code offsets that hold a branch target, with the target block
+    private final List<Integer> fixupOffsets = new ArrayList<>();
+    private final List<BasicBlock> fixupTargets = new ArrayList<>();
+
+    public Bytecode generate(CompiledFunction function) {
+        List<BasicBlock> blocks = findAllBlocks(function);
+        Map<BasicBlock, Integer> blockOffsets = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            BasicBlock block = blocks.get(i);
+            blockOffsets.put(block, pc);
+            if (block == function.exit) {
+                emit(Instruction.RET);
+                break;
+            }
+            BasicBlock next = i+1 < blocks.size() ? blocks.get(i+1) : null;
+            for (Instruction instruction: block.instructions) {
+                generate(instruction, next);
+                // Skip dead code following a return, break or continue
+                if (instruction.isTerminal())
+                    break;
+            }
+        }
+        for (int i = 0; i < fixupOffsets.size(); i++)
+            code[fixupOffsets.get(i)] = blockOffsets.get(fixupTargets.get(i));
+        return new Bytecode(Arrays.copyOf(code, pc), types.toArray(new EZType[0]), function.frameSize());
+    }
+
+    /**
+     * Finds the reachable blocks, sorted by block id, with the exit block last
+     */
+    private static List<BasicBlock> findAllBlocks(CompiledFunction function) {
+        List<BasicBlock> blocks = new ArrayList<>();
+        Set<BasicBlock> visited = new HashSet<>();
+        Deque<BasicBlock> worklist = new ArrayDeque<>();
+        worklist.push(function.entry);
+        visited.add(function.entry);
+        while (!worklist.isEmpty()) {
+            BasicBlock block = worklist.pop();
+            if (block != function.exit)
+                blocks.add(block);
+            for (BasicBlock succ: block.successors) {
+                if (visited.add(succ))
+                    worklist.push(succ);
+            }
+        }
+        blocks.sort(Comparator.comparingInt(b -> b.bid));
+        blocks.add(function.exit);
+        return blocks;
+    }
+
+    private void generate(Instruction instruction, BasicBlock next) {
+        switch (instruction) {
+            case Instruction.PushConst pushConst -> {
+                emit(Instruction.PUSH_I);
+                emit(pushConst.value);
+            }
+            case Instruction.LoadFunction loadFunction -> {
+                emit(Instruction.LOAD_FUNC);
+                emit(type(loadFunction.functionType));
+            }
+            case Instruction.LoadVar loadVar -> {
+                emit(Instruction.LOAD_VAR);
+                emit(loadVar.reg);
+            }
+            case Instruction.Store store -> {
+                emit(Instruction.STORE);
+                emit(store.reg);
+            }
+            case Instruction.New newInst -> {
+                emit(Instruction.NEW);
+                emit(type(newInst.type));
+                emit(newInst.argc);
+            }
+            case Instruction.Call call -> {
+                emit(Instruction.CALL);
+                emit(call.argc);
+            }
+            case Instruction.ConditionalBranch cbr -> {
+                emit(Instruction.CBR);
+                emitTarget(cbr.trueBlock);
+                emitTarget(cbr.falseBlock);
+            }
+            case Instruction.Jump jump -> {
+                if (jump.jumpTo != next) {
+                    emit(Instruction.JUMP);
+                    emitTarget(jump.jumpTo);
+                }
+            }
+            default -> emit(instruction.opcode);
+        }
+    }
+
+    private int type(EZType type) {
+        return typeIndex.computeIfAbsent(type, t -> {
+            types.add(t);
+            return types.size()-1;
+        });
+    }
+
+    private void emitTarget(BasicBlock target) {
+        fixupOffsets.add(pc);
+        fixupTargets.add(target);
+        emit(-1);
+    }
+
+    private void emit(int word) {
+        if (pc == code.length)
+            code = Arrays.copyOf(code, code.length * 2);
+        code[pc++] = word;
+    }
+}
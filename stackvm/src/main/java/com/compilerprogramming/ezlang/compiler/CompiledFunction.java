@@ -10,13 +10,20 @@ public class CompiledFunction {
 
     public BasicBlock entry;
     public BasicBlock exit;
+    public final EZType.EZTypeFunction functionType;
     private int bid = 0;
+    private int maxLocals = 0;
+    /**
+     * Linearized code for the interpreter, generated on first use
+     */
+    private volatile Bytecode bytecode;
     private BasicBlock currentBlock;
     private BasicBlock currentBreakTarget;
     private BasicBlock currentContinueTarget;
 
     public CompiledFunction(Symbol.FunctionTypeSymbol functionSymbol) {
         AST.FuncDecl funcDecl = (AST.FuncDecl) functionSymbol.functionDecl;
+        this.functionType = (EZType.EZTypeFunction) functionSymbol.type;
         setVirtualRegisters(funcDecl.scope);
         this.bid = 0;
         this.entry = this.currentBlock = createBlock();
@@ -26,6 +33,21 @@ public class CompiledFunction {
         compileStatement(funcDecl.block);
         exitBlockIfNeeded();
     }
+
+    /**
+     * Number of local variable slots needed by the function,
+     * the first slots hold the parameters.
+     */
+    public int frameSize() {
+        return maxLocals;
+    }
+
+    public Bytecode bytecode() {
+        Bytecode code = bytecode;
+        if (code == null)
+            bytecode = code = new BytecodeGenerator().generate(this);
+        return code;
+    }
 	
     private void exitBlockIfNeeded() {
         if (currentBlock != null &&
@@ -44,6 +66,7 @@ public class CompiledFunction {
             }
         }
         scope.maxReg = reg;
+        maxLocals = Math.max(maxLocals, reg);
         for (Scope childScope: scope.children) {
             setVirtualRegisters(childScope);
         }
@@ -319,7 +342,21 @@ public class CompiledFunction {
     }
 
     private boolean compileNewExpr(AST.NewExpr newExpr) {
-        code(new Instruction.New(newExpr.type));
+        int argc = 0;
+        // Structs ignore the length, which the parser sets to the number of initializers
+        if (newExpr.type instanceof EZType.EZTypeArray && newExpr.len != null) {
+            boolean indexed = compileExpr(newExpr.len);
+            if (indexed)
+                codeIndexedLoad();
+            argc++;
+            if (newExpr.initValue != null) {
+                indexed = compileExpr(newExpr.initValue);
+                if (indexed)
+                    codeIndexedLoad();
+                argc++;
+            }
+        }
+        code(new Instruction.New(newExpr.type, argc));
         return false;
     }
 
@@ -416,7 +453,11 @@ public class CompiledFunction {
     }
 
     private boolean compileConstantExpr(AST.LiteralExpr constantExpr) {
-        code(new Instruction.PushConst(constantExpr.value.num.intValue()));
+        if (constantExpr.type instanceof EZType.EZTypeInteger)
+            code(new Instruction.PushConst(constantExpr.value.num.intValue()));
+        else if (constantExpr.type instanceof EZType.EZTypeNull)
+            code(new Instruction.PushNull());
+        else throw new CompilerException("Invalid constant type");
         return false;
     }
 
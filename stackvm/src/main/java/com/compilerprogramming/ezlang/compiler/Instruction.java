@@ -30,6 +30,7 @@ public class Instruction {
     public static final int GT = 22;
     public static final int LE = 23;
     public static final int GE = 24;
+    public static final int PUSH_NULL = 25;
 
     static final String[] opNames = {
         "ret",
@@ -56,7 +57,8 @@ public class Instruction {
         "lt",
         "gt",
         "le",
-        "ge"
+        "ge",
+        "pushnull"
     };
 
     public final int opcode;
@@ -85,6 +87,12 @@ public class Instruction {
         }
     }
 
+    public static class PushNull extends Instruction {
+        public PushNull() {
+            super(PUSH_NULL);
+        }
+    }
+
     public static class BinaryOp extends Instruction {
         public BinaryOp(int opcode) {
             super(opcode);
@@ -123,13 +131,22 @@ public class Instruction {
 
     public static class New extends Instruction {
         public final EZType type;
-        public New(EZType type) {
+        /**
+         * Number of values on the stack used to initialize the
+         * new object - array length and initial value.
+         */
+        public final int argc;
+        public New(EZType type, int argc) {
             super(NEW);
             this.type = type;
+            this.argc = argc;
         }
         @Override
         public StringBuilder toStr(StringBuilder sb) {
-            return super.toStr(sb).append(" ").append(type.name);
+            super.toStr(sb).append(" ").append(type.name);
+            if (argc > 0)
+                sb.append(" ").append(argc);
+            return sb;
         }
     }
 
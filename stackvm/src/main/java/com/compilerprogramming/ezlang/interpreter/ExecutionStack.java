@@ -0,0 +1,83 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+
+import java.util.Arrays;
+
+/**
+ * The execution stack holds the locals and operand stacks of executing functions.
+ *
+ * Each slot has two parts: an unboxed integer in {@link #ints} and a
+ * reference in {@link #stack}. A null reference means the slot holds
+ * an Int, and the value is in the integer part. Arrays, structs and null
+ * are held as references.
+ *
+ * The stack starts at its initial size and grows as calls nest deeper,
+ * up to {@link #maxSize} slots. The arrays are replaced when they grow,
+ * so callers must not hold on to them across {@link #ensureCapacity}.
+ */
+public class ExecutionStack {
+
+    public static final int DEFAULT_MAX_SIZE = 1 << 24;
+
+    public Value[] stack;
+    public long[] ints;
+    public final int maxSize;
+
+    public ExecutionStack(int initialSize) {
+        this(initialSize, DEFAULT_MAX_SIZE);
+    }
+
+    public ExecutionStack(int initialSize, int maxSize) {
+        this.stack = new Value[initialSize];
+        this.ints = new long[initialSize];
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Grows the stack to hold at least the given number of slots
+     *
+     * @throws InterpreterException if that exceeds {@link #maxSize}
+     */
+    public void ensureCapacity(int size) {
+        if (size <= stack.length)
+            return;
+        if (size > maxSize)
+            throw new InterpreterException("Stack overflow: " + size + " slots needed, at most " + maxSize + " allowed");
+        int newSize = (int) Math.min(maxSize, Math.max(size, 2L * stack.length));
+        stack = Arrays.copyOf(stack, newSize);
+        ints = Arrays.copyOf(ints, newSize);
+    }
+
+    public void setInt(int slot, long value) {
+        ints[slot] = value;
+        stack[slot] = null;
+    }
+
+    /**
+     * Stores a boxed value, unboxing integers
+     */
+    public void setValue(int slot, Value value) {
+        if (value instanceof Value.IntegerValue integerValue)
+            setInt(slot, integerValue.value);
+        else if (value != null)
+            stack[slot] = value;
+        else
+            throw new IllegalStateException("Cannot store uninitialized value");
+    }
+
+    /**
+     * Gets the value in the slot, boxing integers
+     */
+    public Value getValue(int slot) {
+        Value value = stack[slot];
+        if (value == null)
+            value = Value.IntegerValue.valueOf(ints[slot]);
+        return value;
+    }
+
+    public void copy(int fromSlot, int toSlot) {
+        ints[toSlot] = ints[fromSlot];
+        stack[toSlot] = stack[fromSlot];
+    }
+}
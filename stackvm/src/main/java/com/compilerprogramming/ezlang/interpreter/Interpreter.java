@@ -0,0 +1,278 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.Bytecode;
+import com.compilerprogramming.ezlang.compiler.CompiledFunction;
+import com.compilerprogramming.ezlang.compiler.Instruction;
+import com.compilerprogramming.ezlang.exceptions.InterpreterException;
+import com.compilerprogramming.ezlang.types.EZType;
+import com.compilerprogramming.ezlang.types.Symbol;
+import com.compilerprogramming.ezlang.types.TypeDictionary;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Interpreter for the stack machine.
+ *
+ * A frame on the execution stack consists of the function's locals followed
+ * by its operand stack. The arguments of a call are pushed onto the caller's
+ * operand stack, and become the first locals of the callee's frame. The slot
+ * below the arguments holds the function being called, and on return it
+ * receives the return value.
+ */
+public class Interpreter {
+
+    TypeDictionary typeDictionary;
+    // Struct types compare by name, layouts are kept per type instance
+    private final Map<EZType.EZTypeStruct, Value.StructLayout> layouts = new IdentityHashMap<>();
+
+    public Interpreter(TypeDictionary typeDictionary) {
+        this.typeDictionary = typeDictionary;
+    }
+
+    public Value run(String functionName) {
+        Symbol symbol = typeDictionary.lookup(functionName);
+        if (symbol instanceof Symbol.FunctionTypeSymbol functionSymbol) {
+            CompiledFunction function = (CompiledFunction) functionSymbol.code();
+            ExecutionStack execStack = new ExecutionStack(1024);
+            // Slot 0 receives the return value
+            execute(execStack, function, 1, 0);
+            if (function.functionType.returnType instanceof EZType.EZTypeVoid)
+                return null;
+            return execStack.getValue(0);
+        }
+        else {
+            throw new InterpreterException("Unknown function: " + functionName);
+        }
+    }
+
+    /**
+     * The layout of the struct type's values, computed on first use.
+     */
+    Value.StructLayout layout(EZType.EZTypeStruct structType) {
+        return layouts.computeIfAbsent(structType, Value.StructLayout::new);
+    }
+
+    /**
+     * Executes the function whose frame starts at fp, with nargs arguments
+     * already in place. The return value is left in the slot below the frame.
+     *
+     * Calls do not recurse on the Java stack. A call saves the function,
+     * frame and resume pc of the caller in a stack of frame records, and
+     * the return of the callee pops them. A call whose result is returned
+     * right away, i.e. {@code return f(...)}, replaces the caller's frame
+     * instead of pushing a new one.
+     */
+    private void execute(ExecutionStack execStack, CompiledFunction function, int fp, int nargs) {
+        Bytecode bytecode = function.bytecode();
+        int[] code = bytecode.code;
+        // The operand stack cannot grow deeper than the code is long
+        execStack.ensureCapacity(fp + bytecode.frameSize + code.length);
+        long[] ints = execStack.ints;
+        Value[] stack = execStack.stack;
+        // Locals that are not arguments start out as Int 0
+        for (int i = fp + nargs; i < fp + bytecode.frameSize; i++)
+            execStack.setInt(i, 0);
+        // sp is the top of the operand stack
+        int sp = fp + bytecode.frameSize - 1;
+        int pc = 0;
+        // Callers waiting for a return
+        CompiledFunction[] callers = new CompiledFunction[16];
+        int[] callerFps = new int[16];
+        int[] callerPcs = new int[16];
+        int depth = 0;
+
+        while (true) {
+            switch (code[pc]) {
+                case Instruction.PUSH_I -> {
+                    execStack.setInt(++sp, code[pc+1]);
+                    pc += 2;
+                }
+                case Instruction.PUSH_NULL -> {
+                    stack[++sp] = Value.NullValue.NULL;
+                    pc += 1;
+                }
+                case Instruction.LOAD_VAR -> {
+                    execStack.copy(fp + code[pc+1], ++sp);
+                    pc += 2;
+                }
+                case Instruction.STORE -> {
+                    execStack.copy(sp--, fp + code[pc+1]);
+                    pc += 2;
+                }
+                case Instruction.POP -> {
+                    stack[sp--] = null;
+                    pc += 1;
+                }
+                case Instruction.ADD_I -> { sp--; ints[sp] = ints[sp] + ints[sp+1]; pc += 1; }
+                case Instruction.SUB_I -> { sp--; ints[sp] = ints[sp] - ints[sp+1]; pc += 1; }
+                case Instruction.MUL_I -> { sp--; ints[sp] = ints[sp] * ints[sp+1]; pc += 1; }
+                case Instruction.DIV_I -> { sp--; ints[sp] = ints[sp] / ints[sp+1]; pc += 1; }
+                case Instruction.MOD_I -> { sp--; ints[sp] = ints[sp] % ints[sp+1]; pc += 1; }
+                case Instruction.LT -> { sp--; ints[sp] = ints[sp] < ints[sp+1] ? 1 : 0; pc += 1; }
+                case Instruction.GT -> { sp--; ints[sp] = ints[sp] > ints[sp+1] ? 1 : 0; pc += 1; }
+                case Instruction.LE -> { sp--; ints[sp] = ints[sp] <= ints[sp+1] ? 1 : 0; pc += 1; }
+                case Instruction.GE -> { sp--; ints[sp] = ints[sp] >= ints[sp+1] ? 1 : 0; pc += 1; }
+                case Instruction.EQ -> {
+                    sp--;
+                    execStack.setInt(sp, equals(execStack, sp, sp+1) ? 1 : 0);
+                    pc += 1;
+                }
+                case Instruction.NE -> {
+                    sp--;
+                    execStack.setInt(sp, equals(execStack, sp, sp+1) ? 0 : 1);
+                    pc += 1;
+                }
+                case Instruction.NEG_I -> {
+                    ints[sp] = -ints[sp];
+                    pc += 1;
+                }
+                case Instruction.NOT -> {
+                    ints[sp] = ints[sp] == 0 ? 1 : 0;
+                    pc += 1;
+                }
+                case Instruction.JUMP -> pc = code[pc+1];
+                case Instruction.CBR -> {
+                    // Non-integer values are always true
+                    boolean condition = stack[sp] != null || ints[sp] != 0;
+                    stack[sp--] = null;
+                    pc = condition ? code[pc+1] : code[pc+2];
+                }
+                case Instruction.LOAD_FUNC -> {
+                    // Only the index into the type pool is pushed, CALL resolves it
+                    execStack.setInt(++sp, code[pc+1]);
+                    pc += 2;
+                }
+                case Instruction.CALL -> {
+                    int argc = code[pc+1];
+                    int calleeSlot = sp - argc;
+                    EZType.EZTypeFunction callee = (EZType.EZTypeFunction) bytecode.types[(int) ints[calleeSlot]];
+                    if (bytecode.isTailCall(pc)) {
+                        // The callee takes over this frame, and returns to our caller
+                        for (int i = 0; i < argc; i++)
+                            execStack.copy(calleeSlot + 1 + i, fp + i);
+                    }
+                    else {
+                        if (depth == callers.length) {
+                            callers = Arrays.copyOf(callers, depth * 2);
+                            callerFps = Arrays.copyOf(callerFps, depth * 2);
+                            callerPcs = Arrays.copyOf(callerPcs, depth * 2);
+                        }
+                        callers[depth] = function;
+                        callerFps[depth] = fp;
+                        callerPcs[depth] = pc + 2;
+                        depth++;
+                        fp = calleeSlot + 1;
+                    }
+                    function = (CompiledFunction) callee.code;
+                    bytecode = function.bytecode();
+                    code = bytecode.code;
+                    execStack.ensureCapacity(fp + bytecode.frameSize + code.length);
+                    ints = execStack.ints;
+                    stack = execStack.stack;
+                    for (int i = fp + argc; i < fp + bytecode.frameSize; i++)
+                        execStack.setInt(i, 0);
+                    sp = fp + bytecode.frameSize - 1;
+                    pc = 0;
+                }
+                case Instruction.NEW -> {
+                    EZType type = bytecode.types[code[pc+1]];
+                    int argc = code[pc+2];
+                    if (type instanceof EZType.EZTypeArray arrayType) {
+                        long len = argc > 0 ? ints[sp-argc+1] : 0;
+                        Value initValue = argc > 1 ? execStack.getValue(sp) : null;
+                        sp -= argc;
+                        stack[++sp] = new Value.ArrayValue(arrayType, len, initValue);
+                    }
+                    else if (type instanceof EZType.EZTypeStruct structType)
+                        stack[++sp] = new Value.StructValue(layout(structType));
+                    else
+                        throw new IllegalStateException("Unexpected type: " + type);
+                    pc += 3;
+                }
+                case Instruction.LOAD_INDEXED -> {
+                    int index = (int) ints[sp--];
+                    Value object = stack[sp];
+                    if (object instanceof Value.ArrayValue arrayValue) {
+                        if (arrayValue.isIntArray())
+                            execStack.setInt(sp, arrayValue.getInt(index));
+                        else
+                            loadElement(execStack, sp, arrayValue.get(index));
+                    }
+                    else if (object instanceof Value.StructValue structValue) {
+                        if (structValue.layout.isInt(index))
+                            execStack.setInt(sp, structValue.getInt(index));
+                        else
+                            loadElement(execStack, sp, structValue.get(index));
+                    }
+                    else
+                        throw new InterpreterException("Unexpected value: " + object);
+                    pc += 1;
+                }
+                case Instruction.STORE_INDEXED -> {
+                    // The array or struct is left on the stack
+                    int index = (int) ints[sp-1];
+                    Value object = stack[sp-2];
+                    if (object instanceof Value.ArrayValue arrayValue) {
+                        if (arrayValue.isIntArray())
+                            arrayValue.setInt(index, ints[sp]);
+                        else
+                            arrayValue.set(index, execStack.getValue(sp));
+                    }
+                    else if (object instanceof Value.StructValue structValue) {
+                        if (structValue.layout.isInt(index))
+                            structValue.setInt(index, ints[sp]);
+                        else
+                            structValue.set(index, execStack.getValue(sp));
+                    }
+                    else
+                        throw new InterpreterException("Unexpected value: " + object);
+                    sp -= 2;
+                    pc += 1;
+                }
+                case Instruction.RET -> {
+                    if (function.functionType.returnType instanceof EZType.EZTypeVoid)
+                        // A call always produces a value, so that it can be popped
+                        execStack.setInt(fp-1, 0);
+                    else if (sp >= fp + bytecode.frameSize)
+                        execStack.copy(sp, fp-1);
+                    else
+                        throw new InterpreterException("Function " + function.functionType.name + " did not return a value");
+                    if (depth == 0)
+                        return;
+                    // Resume the caller, the return value replaces the callee
+                    sp = fp - 1;
+                    depth--;
+                    function = callers[depth];
+                    fp = callerFps[depth];
+                    pc = callerPcs[depth];
+                    callers[depth] = null;
+                    bytecode = function.bytecode();
+                    code = bytecode.code;
+                }
+                default -> throw new IllegalStateException("Unexpected opcode " + code[pc] + " at " + pc);
+            }
+        }
+    }
+
+    private static boolean equals(ExecutionStack execStack, int left, int right) {
+        Value l = execStack.stack[left];
+        Value r = execStack.stack[right];
+        if (l == null && r == null)
+            return execStack.ints[left] == execStack.ints[right];
+        return l == r || (l instanceof Value.NullValue && r instanceof Value.NullValue);
+    }
+
+    /**
+     * Loads a reference array element or struct field into a slot.
+     * Int elements are unboxed and loaded directly; references that
+     * were never initialized are null.
+     */
+    private static void loadElement(ExecutionStack execStack, int slot, Value value) {
+        if (value != null)
+            execStack.setValue(slot, value);
+        else
+            execStack.stack[slot] = Value.NullValue.NULL;
+    }
+}
@@ -0,0 +1,181 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.types.EZType;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+public class Value {
+    static public class IntegerValue extends Value {
+        public IntegerValue(long value) {
+            this.value = value;
+        }
+        public final long value;
+
+        // Integer values are immutable, small ones are shared
+        private static final int CACHE_LOW = -128;
+        private static final int CACHE_HIGH = 1024;
+        private static final IntegerValue[] CACHE = new IntegerValue[CACHE_HIGH - CACHE_LOW];
+        static {
+            for (int i = 0; i < CACHE.length; i++)
+                CACHE[i] = new IntegerValue(CACHE_LOW + i);
+        }
+        /**
+         * Returns the shared value for small integers, a new value otherwise
+         */
+        public static IntegerValue valueOf(long value) {
+            if (value >= CACHE_LOW && value < CACHE_HIGH)
+                return CACHE[(int) value - CACHE_LOW];
+            return new IntegerValue(value);
+        }
+    }
+    static public class NullValue extends Value {
+        public static final NullValue NULL = new NullValue();
+        public NullValue() {}
+    }
+    /**
+     * Arrays are specialized by element type: the elements of an
+     * array of Int are kept unboxed in a long[], all other elements
+     * in a Value[]. Only one of the two is allocated.
+     *
+     * Storing at index {@link #size()} appends, the backing array
+     * grows by half its length so that appends are amortized.
+     * Elements of a reference array that were never initialized
+     * are null.
+     */
+    static public class ArrayValue extends Value {
+        public final EZType.EZTypeArray arrayType;
+        private long[] ints;
+        private Value[] values;
+        private int size;
+        public ArrayValue(EZType.EZTypeArray arrayType, long len, Value initValue) {
+            this.arrayType = arrayType;
+            this.size = Math.toIntExact(len);
+            if (arrayType.getElementType() instanceof EZType.EZTypeInteger) {
+                ints = new long[size];
+                if (initValue instanceof IntegerValue integerValue && integerValue.value != 0)
+                    Arrays.fill(ints, integerValue.value);
+            }
+            else {
+                values = new Value[size];
+                if (initValue != null)
+                    Arrays.fill(values, initValue);
+            }
+        }
+        public boolean isIntArray() {
+            return ints != null;
+        }
+        public int size() {
+            return size;
+        }
+        public long getInt(int index) {
+            return ints[Objects.checkIndex(index, size)];
+        }
+        public void setInt(int index, long value) {
+            if (index == size) {
+                if (size == ints.length)
+                    ints = Arrays.copyOf(ints, grow(size));
+                size++;
+            }
+            ints[Objects.checkIndex(index, size)] = value;
+        }
+        /**
+         * Gets the element, boxing integers
+         */
+        public Value get(int index) {
+            if (ints != null)
+                return IntegerValue.valueOf(getInt(index));
+            return values[Objects.checkIndex(index, size)];
+        }
+        /**
+         * Sets the element, unboxing integers
+         */
+        public void set(int index, Value value) {
+            if (ints != null) {
+                setInt(index, ((IntegerValue) value).value);
+                return;
+            }
+            if (index == size) {
+                if (size == values.length)
+                    values = Arrays.copyOf(values, grow(size));
+                size++;
+            }
+            values[Objects.checkIndex(index, size)] = value;
+        }
+        private static int grow(int length) {
+            return length + (length >> 1) + 1;
+        }
+    }
+    /**
+     * Where the fields of a struct type live in a {@link StructValue}:
+     * Int fields are packed into a long[], all other fields into a
+     * Value[]. The offset of a field is its index in the array that
+     * holds it. Computed once per struct type, see
+     * {@link Interpreter#layout(EZType.EZTypeStruct)}.
+     */
+    static public final class StructLayout {
+        public final EZType.EZTypeStruct structType;
+        final boolean[] isInt;
+        final int[] offsets;
+        final int numInts;
+        final int numValues;
+        public StructLayout(EZType.EZTypeStruct structType) {
+            this.structType = structType;
+            int n = structType.numFields();
+            isInt = new boolean[n];
+            offsets = new int[n];
+            int ints = 0, values = 0;
+            for (int i = 0; i < n; i++) {
+                isInt[i] = structType.getField(structType.getFieldName(i)) instanceof EZType.EZTypeInteger;
+                offsets[i] = isInt[i] ? ints++ : values++;
+            }
+            numInts = ints;
+            numValues = values;
+        }
+        public boolean isInt(int index) {
+            return isInt[index];
+        }
+    }
+    /**
+     * Int fields are unboxed, see {@link StructLayout}. Int fields
+     * start at 0, other fields that were never set are null.
+     */
+    static public class StructValue extends Value {
+        public final EZType.EZTypeStruct structType;
+        public final StructLayout layout;
+        private final long[] ints;
+        private final Value[] values;
+        public StructValue(StructLayout layout) {
+            this.structType = layout.structType;
+            this.layout = layout;
+            this.ints = layout.numInts == 0 ? null : new long[layout.numInts];
+            this.values = layout.numValues == 0 ? null : new Value[layout.numValues];
+        }
+        public StructValue(EZType.EZTypeStruct structType) {
+            this(new StructLayout(structType));
+        }
+        public long getInt(int index) {
+            return ints[layout.offsets[index]];
+        }
+        public void setInt(int index, long value) {
+            ints[layout.offsets[index]] = value;
+        }
+        /**
+         * Gets the field, boxing integers
+         */
+        public Value get(int index) {
+            if (layout.isInt[index])
+                return IntegerValue.valueOf(ints[layout.offsets[index]]);
+            return values[layout.offsets[index]];
+        }
+        /**
+         * Sets the field, unboxing integers
+         */
+        public void set(int index, Value value) {
+            if (layout.isInt[index])
+                ints[layout.offsets[index]] = ((IntegerValue) value).value;
+            else
+                values[layout.offsets[index]] = value;
+        }
+    }
+}
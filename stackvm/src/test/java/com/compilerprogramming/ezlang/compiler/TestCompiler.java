@@ -227,7 +227,8 @@ L1:
         String result = compileSrc(src);
         Assert.assertEquals("""
 L0:
-	new [Int]
+	pushi 3
+	new [Int] 1
 	pushi 0
 	pushi 1
 	storeindexed
@@ -252,7 +253,8 @@ L1:
         String result = compileSrc(src);
         Assert.assertEquals("""
 L0:
-	new [Int]
+	pushi 1
+	new [Int] 1
 	pushi 0
 	load 0
 	storeindexed
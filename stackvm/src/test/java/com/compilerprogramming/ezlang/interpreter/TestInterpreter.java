@@ -0,0 +1,647 @@
+package com.compilerprogramming.ezlang.interpreter;
+
+import com.compilerprogramming.ezlang.compiler.Compiler;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestInterpreter {
+
+    Value compileAndRun(String src, String mainFunction) {
+        var compiler = new Compiler();
+        var typeDict = compiler.compileSrc(src);
+        var compiled = compiler.dumpIR(typeDict);
+        System.out.println(compiled);
+        var interpreter = new Interpreter(typeDict);
+        return interpreter.run(mainFunction);
+    }
+
+    @Test
+    public void testFunction1() {
+        String src = """
+                func foo()->Int {
+                    return 42;
+                }
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue
+            && integerValue.value == 42);
+    }
+
+    @Test
+    public void testFunction2() {
+        String src = """
+                func bar()->Int {
+                    return 42;
+                }
+                func foo()->Int {
+                    return bar();
+                }
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue
+                && integerValue.value == 42);
+    }
+
+    @Test
+    public void testFunction3() {
+        String src = """
+                func negate(n: Int)->Int {
+                    return -n;
+                }
+                func foo()->Int {
+                    return negate(42);
+                }
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue
+                && integerValue.value == -42);
+    }
+
+    @Test
+    public void testFunction4() {
+        String src = """
+                func foo(x: Int, y: Int)->Int { return x+y; }
+                func bar()->Int { var t = foo(1,2); return t+1; }
+                """;
+        var value = compileAndRun(src, "bar");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue
+                && integerValue.value == 4);
+    }
+
+    @Test
+    public void testFunction5() {
+        String src = """
+                func bar()->Int { var t = new [Int] {1,21,3}; return t[1]; }
+                """;
+        var value = compileAndRun(src, "bar");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue
+                && integerValue.value == 21);
+    }
+
+    @Test
+    public void testFunction6() {
+        String src = """
+                struct Test
+                {
+                    var field: Int
+                }
+                func foo()->Test 
+                {
+                    var test = new Test{ field = 42 }
+                    return test
+                }
+                func bar()->Int { return foo().field }
+                """;
+        var value = compileAndRun(src, "bar");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue
+                && integerValue.value == 42);
+    }
+
+    @Test
+    public void testFunction100() {
+        String src = """
+                struct Test
+                {
+                    var field: Int
+                }
+                func foo()->Test? 
+                {
+                    return null;
+                }
+
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.NullValue);
+    }
+
+    @Test
+    public void testFunction101() {
+        String src = """
+                func foo()->Int 
+                {
+                    return null == null;
+                }
+
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction102() {
+        String src = """
+                struct Foo
+                {
+                    var next: Foo?
+                }
+                func foo()->Int 
+                {
+                    var f = new Foo{ next = null }
+                    return null == f.next
+                }
+
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction103() {
+        String src = """
+                struct Foo
+                {
+                    var i: Int
+                }
+                func foo()->Int 
+                {
+                    var f = new [Foo?] { new Foo{i = 1}, null }
+                    return null == f[1] && 1 == f[0].i
+                }
+
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction104() {
+        String src = """
+                func foo()->Int 
+                {
+                    return 1 == 1 && 2 == 2
+                }
+
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction105() {
+        String src = """
+                func bar(a: Int, b: Int)->Int 
+                {
+                    return a+1 == b-1 && b / a == 2
+                }
+                func foo()->Int
+                {
+                    return bar(3,5)
+                }
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 0);
+    }
+
+    @Test
+    public void testFunction106() {
+        String src = """
+                func bar(a: Int, b: Int)->Int 
+                {
+                    return a+1 == b-1 || b / a == 2
+                }
+                func foo()->Int
+                {
+                    return bar(3,5)
+                }
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction107() {
+        String src = """
+                func bar(a: [Int])->Int 
+                {
+                    return a[0]+a[2] == a[1]-a[2] || a[1] / a[0] == 2
+                }
+                func foo()->Int
+                {
+                    return bar(new [Int] {3,5,1})
+                }
+                """;
+        var value = compileAndRun(src, "foo");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+        @Test
+    public void testMergeSort() {
+        String src = """
+// based on the top-down version from https://en.wikipedia.org/wiki/Merge_sort
+// via https://github.com/SeaOfNodes/Simple
+func merge_sort(a: [Int], b: [Int], n: Int) 
+{
+    copy_array(a, 0, n, b)
+    split_merge(a, 0, n, b)
+}
+
+func split_merge(b: [Int], begin: Int, end: Int, a: [Int])
+{
+    if (end - begin <= 1)
+        return;
+    var middle = (end + begin) / 2
+    split_merge(a, begin, middle, b)
+    split_merge(a, middle, end, b)
+    merge(b, begin, middle, end, a)
+}
+
+func merge(b: [Int], begin: Int, middle: Int, end: Int, a: [Int])
+{
+    var i = begin
+    var j = middle
+    var k = begin
+    while (k < end) {
+        // && and ||
+        var cond = 0
+        if (i < middle) {
+            if (j >= end)          cond = 1;
+            else if (a[i] <= a[j]) cond = 1;
+        }
+        if (cond)
+        {
+            b[k] = a[i]
+            i = i + 1
+        }
+        else
+        {
+            b[k] = a[j]
+            j = j + 1
+        }
+        k = k + 1
+    }
+}
+
+func copy_array(a: [Int], begin: Int, end: Int, b: [Int])
+{
+    var k = begin
+    while (k < end)
+    {
+        b[k] = a[k]
+        k = k + 1
+    }
+}
+
+func eq(a: [Int], b: [Int], n: Int)->Int
+{
+    var result = 1
+    var i = 0
+    while (i < n)
+    {
+        if (a[i] != b[i])
+        {
+            result = 0
+            break
+        }
+        i = i + 1
+    } 
+    return result
+}
+
+func main()->Int
+{
+    var a = new [Int]{10,9,8,7,6,5,4,3,2,1}
+    var b = new [Int]{ 0,0,0,0,0,0,0,0,0,0}
+    var expect = new [Int]{1,2,3,4,5,6,7,8,9,10}
+    merge_sort(a, b, 10)
+    return eq(a,expect,10)
+}
+""";
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction108() {
+        String src = """
+                func make(len: Int, val: Int)->[Int]
+                {
+                    return new [Int]{len=len, value=val}
+                }
+                func main()->Int
+                {
+                    var arr = make(3,3);
+                    var i = 0
+                    while (i < 3) {
+                        if (arr[i] != 3)
+                            return 1
+                        i = i + 1
+                    }
+                    return 0
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 0);
+    }
+
+    @Test
+    public void testFunction109() {
+        String src = """
+func sieve(N: Int)->[Int]
+{
+    // The main Sieve array
+    var ary = new [Int]{len=N,value=0}
+    // The primes less than N
+    var primes = new [Int]{len=N/2,value=0}
+    // Number of primes so far, searching at index p
+    var nprimes = 0
+    var p=2
+    // Find primes while p^2 < N
+    while( p*p < N ) {
+        // skip marked non-primes
+        while( ary[p] ) {
+            p = p + 1
+        }
+        // p is now a prime
+        primes[nprimes] = p
+        nprimes = nprimes+1
+        // Mark out the rest non-primes
+        var i = p + p
+        while( i < N ) {
+            ary[i] = 1
+            i = i + p
+        }
+        p = p + 1
+    }
+
+    // Now just collect the remaining primes, no more marking
+    while ( p < N ) {
+        if( !ary[p] ) {
+            primes[nprimes] = p
+            nprimes = nprimes + 1
+        }
+        p = p + 1
+    }
+
+    // Copy/shrink the result array
+    var rez = new [Int]{len=nprimes,value=0}
+    var j = 0
+    while( j < nprimes ) {
+        rez[j] = primes[j]
+        j = j + 1
+    }
+    return rez
+}
+func eq(a: [Int], b: [Int], n: Int)->Int
+{
+    var result = 1
+    var i = 0
+    while (i < n)
+    {
+        if (a[i] != b[i])
+        {
+            result = 0
+            break
+        }
+        i = i + 1
+    }
+    return result
+}
+
+func main()->Int
+{
+    var rez = sieve(20)
+    var expected = new [Int]{2,3,5,7,11,13,17,19}
+    return eq(rez,expected,8)
+}
+""";
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction110() {
+        String src = """
+func swap(arr: [Int], i: Int, j: Int) {
+    var tmp = arr[i];
+    arr[i] = arr[j];
+    arr[j] = tmp;
+}
+
+func partition(arr: [Int], low: Int, high: Int)->Int {
+    var pivot = arr[high];
+    var i = low;
+    var j = low;
+    while (j < high) {
+        if (arr[j] < pivot) {
+            swap(arr, i, j);
+            i = i + 1;
+        }
+        j = j + 1;
+    }
+    swap(arr, i, high);
+    return i;
+}
+
+func quicksort(arr: [Int], low: Int, high: Int) {
+    if (low < high) {
+        var p = partition(arr, low, high);
+        quicksort(arr, low, p - 1);
+        quicksort(arr, p + 1, high);
+    }
+}
+
+func eq(a: [Int], b: [Int], n: Int)->Int
+{
+    var result = 1
+    var i = 0
+    while (i < n)
+    {
+        if (a[i] != b[i])
+        {
+            result = 0
+            break
+        }
+        i = i + 1
+    }
+    return result
+}
+
+func main()->Int
+{
+    var nums = new [Int]{33, 10, 55, 71, 29, 3};
+    var expected = new [Int]{3,10,29,33,55,71}
+    quicksort(nums, 0, 5);
+    return eq(nums,expected,6)
+}
+""";
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1);
+    }
+
+    @Test
+    public void testFunction112() {
+        String src = """
+func fib(n: Int)->Int
+{
+    if (n < 2)
+        return n
+    return fib(n-1) + fib(n-2)
+}
+func main()->Int
+{
+    var i = 0
+    var sum = 0
+    while (1) {
+        i = i + 1
+        if (i > 10)
+            break
+        if (i % 2)
+            continue
+        sum = sum + fib(i)
+    }
+    return sum
+}
+""";
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 1+3+8+21+55);
+    }
+
+    @Test
+    public void testFunction113() {
+        String src = """
+                struct Node
+                {
+                    var next: Node?
+                    var value: Int
+                }
+                func main()->Int
+                {
+                    var a = new [Int]{len=3}
+                    var n = new Node{}
+                    var sum = a[0] + a[1] + a[2] + n.value
+                    if (n.next == null)
+                        sum = sum + 7
+                    return sum
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 7);
+    }
+
+    @Test
+    public void testArrayAppend() {
+        String src = """
+                struct Box
+                {
+                    var value: Int
+                }
+                func main()->Int
+                {
+                    var a = new [Int]{len=2, value=5}
+                    var b = new [Box]{}
+                    var i = 2
+                    while (i < 100) {
+                        a[i] = i
+                        i = i + 1
+                    }
+                    i = 0
+                    while (i < 50) {
+                        b[i] = new Box{ value = a[i] }
+                        i = i + 1
+                    }
+                    var sum = 0
+                    i = 0
+                    while (i < 50) {
+                        sum = sum + a[i + 50] - b[i].value
+                        i = i + 1
+                    }
+                    return sum
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 2491);
+    }
+
+    @Test
+    public void testStructLayout() {
+        String src = """
+                struct Tree
+                {
+                    var left: Tree?
+                    var value: Int
+                    var right: Tree?
+                    var count: Int
+                }
+                func main()->Int
+                {
+                    var leaf = new Tree{ value = 7 }
+                    var root = new Tree{ left = leaf, value = 3 }
+                    root.right = new Tree{ count = 2 }
+                    root.count = root.left.value + root.right.count
+                    if (leaf.left != null) return -1
+                    return root.count * 100 + root.right.value * 10 + root.value
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertNotNull(value);
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 903);
+    }
+
+    @Test
+    public void testDeepRecursion() {
+        String src = """
+                func sum(n: Int)->Int {
+                    if (n == 0) return 0
+                    return n + sum(n - 1)
+                }
+                func main()->Int {
+                    return sum(100000)
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 100000L * 100001 / 2);
+    }
+
+    @Test
+    public void testTailCall() {
+        String src = """
+                func count(n: Int, acc: Int)->Int {
+                    if (n == 0) return acc
+                    return count(n - 1, acc + 2)
+                }
+                func main()->Int {
+                    return count(1000000, 0)
+                }
+                """;
+        var value = compileAndRun(src, "main");
+        Assert.assertTrue(value instanceof Value.IntegerValue integerValue &&
+                integerValue.value == 2000000);
+    }
+}